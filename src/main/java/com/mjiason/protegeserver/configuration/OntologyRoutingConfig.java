@@ -0,0 +1,113 @@
+package com.mjiason.protegeserver.configuration;
+
+import com.mjiason.protegeserver.services.OntologyRegistry;
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import io.micrometer.common.lang.NonNull;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springdoc.core.utils.SpringDocUtils;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the ontology a request addresses. Handlers take the {@link OntologyStorageService} they work on as a
+ * parameter: under /api/ontologies/{ontologyId} it is the store of that named ontology, elsewhere the default one.
+ * The ontology is leased from the {@link OntologyRegistry} before the handler runs and released once the response,
+ * streamed ones included, is complete.
+ */
+@Configuration
+public class OntologyRoutingConfig implements WebMvcConfigurer {
+
+    private static final String ONTOLOGY_ID = "ontologyId";
+    private static final String LEASE_ATTRIBUTE = OntologyRoutingConfig.class.getName() + ".lease";
+
+    static {
+        // The store is not part of the request, so it is left out of the API documentation
+        SpringDocUtils.getConfig().addRequestWrapperToIgnore(OntologyStorageService.class);
+    }
+
+    private final OntologyRegistry registry;
+    private final ResponseCache responseCache;
+
+    public OntologyRoutingConfig(OntologyRegistry registry, ResponseCache responseCache) {
+        this.registry = registry;
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public void addInterceptors(@NonNull InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new AsyncHandlerInterceptor() {
+            @Override
+            public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull Object handler) {
+                // An async dispatch of a streamed response still holds the lease taken by the original request
+                if (request.getAttribute(LEASE_ATTRIBUTE) == null && usesStorageService(handler)) {
+                    request.setAttribute(LEASE_ATTRIBUTE, registry.acquire(getOntologyId(request)));
+                }
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                        @NonNull Object handler, Exception ex) {
+                if (request.getAttribute(LEASE_ATTRIBUTE) instanceof OntologyRegistry.Lease lease) {
+                    request.removeAttribute(LEASE_ATTRIBUTE);
+                    lease.close();
+                }
+            }
+        }).addPathPatterns("/api/**");
+        // Registered after the lease, which the cache needs to read the versions of the ontology
+        interceptors.addInterceptor(responseCache).addPathPatterns("/api/**");
+    }
+
+    @Override
+    public void addArgumentResolvers(@NonNull List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new HandlerMethodArgumentResolver() {
+            @Override
+            public boolean supportsParameter(@NonNull MethodParameter parameter) {
+                return parameter.getParameterType() == OntologyStorageService.class;
+            }
+
+            @Override
+            public Object resolveArgument(@NonNull MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                          @NonNull NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+                OntologyRegistry.Lease lease = (OntologyRegistry.Lease) webRequest.getAttribute(LEASE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+                if (lease == null) {
+                    throw new IllegalStateException("No ontology leased for " + parameter.getMethod());
+                }
+                return lease.getStorageService();
+            }
+        });
+    }
+
+    /**
+     * @return the store leased for the request, null if its handler does not use one
+     */
+    static OntologyStorageService getStorageService(HttpServletRequest request) {
+        return request.getAttribute(LEASE_ATTRIBUTE) instanceof OntologyRegistry.Lease lease ? lease.getStorageService() : null;
+    }
+
+    private static boolean usesStorageService(Object handler) {
+        return handler instanceof HandlerMethod handlerMethod && Arrays.stream(handlerMethod.getMethodParameters())
+                .anyMatch(parameter -> parameter.getParameterType() == OntologyStorageService.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getOntologyId(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables == null ? null : variables.get(ONTOLOGY_ID);
+    }
+}
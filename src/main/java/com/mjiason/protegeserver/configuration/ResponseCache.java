@@ -0,0 +1,228 @@
+package com.mjiason.protegeserver.configuration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import io.micrometer.common.lang.NonNull;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the responses of {@link VersionedResponse} handlers by the version of the entity collections they are built
+ * from. Every such response carries a strong ETag of the version, and a request whose If-None-Match holds it is
+ * answered with 304 Not Modified from the version counters alone. Otherwise the serialized response of the version is
+ * sent from the cache if it is there, gzipped when the client accepts it, and only a miss runs the handler.
+ * <p>
+ * Cached responses are kept as JSON and gzipped JSON, keyed by the request path and query. A response of an older
+ * version is replaced when the new one is built, and the least recently used responses are dropped while the cache
+ * holds more than its maximum size.
+ * <p>
+ * The cache runs after the ontology of the request was leased by {@link OntologyRoutingConfig}, which registers it.
+ */
+@ControllerAdvice
+public class ResponseCache implements HandlerInterceptor, ResponseBodyAdvice<Object> {
+
+    private static final String VERSION_ATTRIBUTE = ResponseCache.class.getName() + ".version";
+    private static final String GZIP = "gzip";
+    // Response headers of the handler that are part of the cached response, like the link to the next page
+    private static final List<String> CACHED_HEADERS = List.of("X-Next-Cursor", HttpHeaders.LINK);
+
+    private static final class Entry {
+        private final String version;
+        private final byte[] json;
+        private final byte[] gzipped;
+        private final Map<String, String> headers;
+
+        private Entry(String version, byte[] json, byte[] gzipped, Map<String, String> headers) {
+            this.version = version;
+            this.json = json;
+            this.gzipped = gzipped;
+            this.headers = headers;
+        }
+
+        private long size() {
+            return json.length + gzipped.length;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final long maxSize;
+
+    // Guarded by itself, in access order so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public ResponseCache(ObjectMapper objectMapper, @Value("${protege.cache.max-size:64MB}") DataSize maxSize) {
+        this.objectMapper = objectMapper;
+        this.maxSize = maxSize.toBytes();
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull Object handler) throws IOException {
+        VersionedResponse versioned = handler instanceof HandlerMethod handlerMethod
+                ? handlerMethod.getMethodAnnotation(VersionedResponse.class) : null;
+        OntologyStorageService storageService = OntologyRoutingConfig.getStorageService(request);
+        if (versioned == null || storageService == null || !"GET".equals(request.getMethod())) {
+            return true;
+        }
+        Set<EntityKind> kinds = versioned.value().length == 0 ? EnumSet.noneOf(EntityKind.class) : EnumSet.copyOf(Arrays.asList(versioned.value()));
+        // Read before the handler reads the collections, so the response is at least as new as its version
+        String version = storageService.getVersion(kinds);
+        request.setAttribute(VERSION_ATTRIBUTE, version);
+
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), version)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            setCacheHeaders(response, version, gzip);
+            return false;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(request));
+        }
+        if (entry == null || !entry.version.equals(version)) {
+            return true;
+        }
+        byte[] body = gzip ? entry.gzipped : entry.json;
+        response.setStatus(HttpServletResponse.SC_OK);
+        entry.headers.forEach(response::setHeader);
+        setCacheHeaders(response, version, gzip);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        return false;
+    }
+
+    @Override
+    public boolean supports(@NonNull MethodParameter returnType, @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(VersionedResponse.class);
+    }
+
+    // Caches the body of a miss while it is written, the response itself goes out as the handler built it
+    @Override
+    public Object beforeBodyWrite(Object body, @NonNull MethodParameter returnType, @NonNull MediaType contentType,
+                                  @NonNull Class<? extends HttpMessageConverter<?>> converterType,
+                                  @NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest) || !(response instanceof ServletServerHttpResponse servletResponse)
+                || !(servletRequest.getServletRequest().getAttribute(VERSION_ATTRIBUTE) instanceof String version)
+                || servletResponse.getServletResponse().getStatus() != HttpServletResponse.SC_OK
+                || !MediaType.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return body;
+        }
+        response.getHeaders().setETag(etag(version, false));
+        response.getHeaders().setCacheControl("no-cache");
+        response.getHeaders().setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            // Left to the message converter, which reports it as for any other response
+            return body;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String header : CACHED_HEADERS) {
+            String value = response.getHeaders().getFirst(header);
+            if (value != null) {
+                headers.put(header, value);
+            }
+        }
+        put(key(servletRequest.getServletRequest()), new Entry(version, json, gzip(json), headers));
+        return body;
+    }
+
+    private void put(String key, Entry entry) {
+        // A single response taking a large share of the cache would evict everything else
+        if (entry.size() > maxSize / 8) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            size += entry.size() - (previous == null ? 0 : previous.size());
+            for (Iterator<Entry> eldest = entries.values().iterator(); size > maxSize && eldest.hasNext(); ) {
+                size -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static String key(HttpServletRequest request) {
+        String query = request.getQueryString();
+        return query == null ? request.getRequestURI() : request.getRequestURI() + "?" + query;
+    }
+
+    // The gzipped response is another representation of the same version, so it gets an ETag of its own
+    private static String etag(String version, boolean gzip) {
+        return "\"" + version + (gzip ? "-" + GZIP : "") + "\"";
+    }
+
+    private static void setCacheHeaders(HttpServletResponse response, String version, boolean gzip) {
+        response.setHeader(HttpHeaders.ETAG, etag(version, gzip));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private static boolean isNotModified(String ifNoneMatch, String version) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag(version, false)) || trimmed.equals(etag(version, true))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header of a request, null when it has none
+     * @return true if the client accepts gzip, which it does not when it gives gzip a quality of 0
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(GZIP)) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream output = new GZIPOutputStream(gzipped)) {
+            output.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not compress a response", e);
+        }
+        return gzipped.toByteArray();
+    }
+}
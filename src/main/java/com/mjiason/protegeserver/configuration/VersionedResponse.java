@@ -0,0 +1,23 @@
+package com.mjiason.protegeserver.configuration;
+
+import com.mjiason.protegeserver.models.EntityKind;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a GET handler whose JSON response only depends on its request and on the entity collections of the given kinds
+ * of the ontology it addresses. The response is tagged with the version of the collections and served by the
+ * {@link ResponseCache} until one of them changes.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface VersionedResponse {
+
+    /**
+     * @return the kinds of entities the response is built from, none when it only depends on the ontology itself
+     */
+    EntityKind[] value() default {};
+}
@@ -0,0 +1,121 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mjiason.protegeserver.services.EntityPage;
+import com.mjiason.protegeserver.services.ValidationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the responses of the collection endpoints. A page is returned as a JSON array, optionally projected onto the
+ * requested fields, and the cursor of the next page is sent in the X-Next-Cursor header and as a Link with rel="next".
+ * Cursors are the URL-safe Base64 of the last unique name of the page, clients should treat them as opaque.
+ * <p>
+ * For bulk exports a whole collection can instead be streamed as NDJSON, one entity per line, serialized straight
+ * from the live collection to the response without ever holding more than one entity in memory.
+ */
+final class EntityPages {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private EntityPages() {
+    }
+
+    /**
+     * @return the unique name the cursor points after, or null when no cursor was given
+     */
+    static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid cursor: " + cursor);
+        }
+    }
+
+    static String encodeCursor(String uniqueName) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(uniqueName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ResponseEntity<List<?>> toResponse(EntityPage<?> page, String fields, ObjectMapper objectMapper) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            String cursor = encodeCursor(page.getNextCursor());
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", cursor)
+                    .build()
+                    .toUriString();
+            response.header(NEXT_CURSOR_HEADER, cursor)
+                    .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(project(page.getItems(), fields, objectMapper));
+    }
+
+    static ResponseEntity<StreamingResponseBody> toNdjsonResponse(Iterable<?> entities, String fields, ObjectMapper objectMapper) {
+        Set<String> selected = parseFields(fields);
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                boolean first = true;
+                for (Object entity : entities) {
+                    writer.writeValue(generator, selected == null ? entity : project(entity, selected, objectMapper));
+                    generator.writeRaw('\n');
+                    if (first) {
+                        // Get the first line to the client right away, later lines go out as the buffers fill
+                        generator.flush();
+                        first = false;
+                    }
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private static List<?> project(List<?> items, String fields, ObjectMapper objectMapper) {
+        Set<String> selected = parseFields(fields);
+        if (selected == null) {
+            return items;
+        }
+        List<ObjectNode> projected = new ArrayList<>(items.size());
+        for (Object item : items) {
+            projected.add(project(item, selected, objectMapper));
+        }
+        return projected;
+    }
+
+    // Keeps only the requested properties of the entity, unknown property names are ignored
+    private static ObjectNode project(Object item, Set<String> selected, ObjectMapper objectMapper) {
+        ObjectNode node = objectMapper.valueToTree(item);
+        node.retain(selected);
+        return node;
+    }
+
+    // Null when all properties are requested
+    private static Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        return Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
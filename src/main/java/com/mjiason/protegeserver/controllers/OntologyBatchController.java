@@ -0,0 +1,59 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.models.OntologyBatchItemAPI;
+import com.mjiason.protegeserver.models.OntologyBatchResultAPI;
+import com.mjiason.protegeserver.services.EntityNotFoundException;
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import com.mjiason.protegeserver.services.ValidationException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping({"/api/ontology/batch", "/api/ontologies/{ontologyId}/batch"})
+@Tag(name = "Ontology Batch API", description = "Bulk creation of classes, properties and individuals")
+public class OntologyBatchController {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Create entities in bulk", description = "Accepts a JSON array or NDJSON of items that each hold one of "
+            + "ontologyClass, objectProperty, dataProperty or individual. The whole batch is validated first and then created "
+            + "as a whole, or rejected without changing the ontology. Parent classes may be defined later in the same batch.")
+    public ResponseEntity<OntologyBatchResultAPI> createBatch(OntologyStorageService storageService, HttpServletRequest request) throws IOException {
+        // A top-level array and whitespace separated values are both read item by item
+        List<OntologyBatchItemAPI> items = new ArrayList<>();
+        try (MappingIterator<OntologyBatchItemAPI> iterator = objectMapper.readerFor(OntologyBatchItemAPI.class)
+                .readValues(request.getInputStream())) {
+            while (iterator.hasNextValue()) {
+                items.add(iterator.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("Could not parse batch item " + items.size() + ": " + e.getOriginalMessage());
+        }
+        return ResponseEntity.ok(storageService.addBatch(items));
+    }
+
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<String> handleValidationException(ValidationException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    @ExceptionHandler(EntityNotFoundException.class)
+    public ResponseEntity<String> handleEntityNotFoundException(EntityNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+}
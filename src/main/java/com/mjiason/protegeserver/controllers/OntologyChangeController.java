@@ -0,0 +1,144 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.mjiason.protegeserver.models.OntologyChangeEventAPI;
+import com.mjiason.protegeserver.services.ChangesExpiredException;
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import com.mjiason.protegeserver.services.ValidationException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RestController
+@RequestMapping({"/api/ontology/changes", "/api/ontologies/{ontologyId}/changes"})
+@Tag(name = "Ontology Change Feed API", description = "Follow the additions and removals of entities instead of reading the ontology again")
+public class OntologyChangeController {
+
+    // Header holding the sequence a consumer continues from
+    private static final String SEQUENCE_HEADER = "X-Change-Sequence";
+
+    private static final Duration MAX_WAIT = Duration.ofSeconds(60);
+    // An idle stream sends a comment every interval, which also notices clients that went away
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+    private static final int EVENTS_PER_READ = 1000;
+
+    // Every stream is written by a thread of its own, so a slow client only holds up its own stream
+    private final ExecutorService streams = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore openStreams;
+
+    public OntologyChangeController(@Value("${protege.feed.max-streams:256}") int maxStreams) {
+        this.openStreams = new Semaphore(maxStreams);
+    }
+
+    @GetMapping
+    @Operation(summary = "Get the changes", description = "Returns the additions and removals of entities following the change with "
+            + "sequence after, oldest first. With wait, up to 60 seconds, the request waits for the next change when there is none yet. "
+            + "The " + SEQUENCE_HEADER + " header holds the sequence to continue from. Without after no changes are returned, only the "
+            + "header, which a consumer reads before reading the ontology. A RELOAD event means the whole ontology was replaced, and "
+            + "410 Gone that the changes following after are no longer kept; in both cases the consumer reads the ontology again.")
+    public ResponseEntity<List<OntologyChangeEventAPI>> getChanges(OntologyStorageService storageService,
+                                                                   @RequestParam(required = false) Long after,
+                                                                   @RequestParam(defaultValue = "1000") int limit,
+                                                                   @RequestParam(defaultValue = "0") int wait) throws InterruptedException {
+        if (after == null) {
+            return ResponseEntity.ok().header(SEQUENCE_HEADER, Long.toString(storageService.getLastChangeSequence())).body(List.of());
+        }
+        if (wait < 0 || wait > MAX_WAIT.toSeconds()) {
+            throw new ValidationException("Wait must be between 0 and " + MAX_WAIT.toSeconds() + " seconds");
+        }
+        List<OntologyChangeEventAPI> changes = storageService.getChanges(after, limit, Duration.ofSeconds(wait));
+        long next = changes.isEmpty() ? after : changes.get(changes.size() - 1).getSequence();
+        return ResponseEntity.ok().header(SEQUENCE_HEADER, Long.toString(next)).body(changes);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream the changes", description = "Streams the additions and removals of entities as server-sent change "
+            + "events, with the sequence as event id. The stream starts after the change with sequence after, or after the one in the "
+            + "Last-Event-ID header when reconnecting, and otherwise with the next change. A consumer that falls behind by more than "
+            + "the changes kept gets an expired event and the stream ends, as it does when the ontology is closed.")
+    public ResponseEntity<SseEmitter> streamChanges(OntologyStorageService storageService,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) throws InterruptedException {
+        long start = after != null ? after : lastEventId != null ? lastEventId : storageService.getLastChangeSequence();
+        // Reports a position that is no longer available before the stream starts
+        storageService.getChanges(start, 1, Duration.ZERO);
+        if (!openStreams.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        SseEmitter emitter = new SseEmitter(0L);
+        AtomicBoolean open = new AtomicBoolean(true);
+        emitter.onCompletion(() -> open.set(false));
+        emitter.onError(error -> open.set(false));
+        try {
+            streams.execute(() -> stream(storageService, start, emitter, open));
+        } catch (RuntimeException e) {
+            openStreams.release();
+            throw e;
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    private void stream(OntologyStorageService storageService, long start, SseEmitter emitter, AtomicBoolean open) {
+        long position = start;
+        try {
+            while (open.get() && !storageService.isClosed()) {
+                List<OntologyChangeEventAPI> changes = storageService.getChanges(position, EVENTS_PER_READ, HEARTBEAT_INTERVAL);
+                if (changes.isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+                for (OntologyChangeEventAPI change : changes) {
+                    emitter.send(SseEmitter.event().id(Long.toString(change.getSequence())).name("change")
+                            .data(change, MediaType.APPLICATION_JSON));
+                    position = change.getSequence();
+                }
+            }
+            emitter.complete();
+        } catch (ChangesExpiredException e) {
+            try {
+                emitter.send(SseEmitter.event().name("expired").data(e.getMessage(), MediaType.TEXT_PLAIN));
+                emitter.complete();
+            } catch (IOException sendFailed) {
+                // The client went away as well
+            }
+        } catch (IOException e) {
+            // The client went away, the emitter has already completed the response
+        } catch (InterruptedException e) {
+            // Only interrupted on shutdown, after the server has closed the connections
+            Thread.currentThread().interrupt();
+        } finally {
+            openStreams.release();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        streams.shutdownNow();
+    }
+
+    @ExceptionHandler(ChangesExpiredException.class)
+    public ResponseEntity<String> handleChangesExpiredException(ChangesExpiredException ex) {
+        return ResponseEntity.status(HttpStatus.GONE).contentType(MediaType.TEXT_PLAIN).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<String> handleValidationException(ValidationException ex) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(ex.getMessage());
+    }
+}
@@ -1,54 +1,106 @@
 package com.mjiason.protegeserver.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.configuration.VersionedResponse;
+import com.mjiason.protegeserver.models.EntityKind;
 import com.mjiason.protegeserver.models.OntologyClassAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import com.mjiason.protegeserver.services.EntityPage;
 import com.mjiason.protegeserver.services.OntologyStorageService;
 import com.mjiason.protegeserver.services.ValidationException;
 import com.mjiason.protegeserver.services.EntityNotFoundException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
-import java.util.Collection;
+import java.util.List;
 
 @RestController
-@RequestMapping("/api/ontology/classes")
+@RequestMapping({"/api/ontology/classes", "/api/ontologies/{ontologyId}/classes"})
 @Tag(name = "Ontology Class API", description = "CRUD operations for Ontology Classes")
 public class OntologyClassController {
 
-    private final OntologyStorageService storageService;
+    private final ObjectMapper objectMapper;
+    private final PageLimits pageLimits;
 
-    public OntologyClassController(OntologyStorageService storageService) {
-        this.storageService = storageService;
+    public OntologyClassController(ObjectMapper objectMapper, PageLimits pageLimits) {
+        this.objectMapper = objectMapper;
+        this.pageLimits = pageLimits;
     }
 
     @PostMapping
     @Operation(summary = "Create an Ontology Class", description = "Adds a new class to the ontology with validation.")
-    public ResponseEntity<OntologyClassAPI> createClass(@RequestBody OntologyClassAPI ontologyClass) {
+    public ResponseEntity<OntologyClassAPI> createClass(OntologyStorageService storageService, @RequestBody OntologyClassAPI ontologyClass) {
         storageService.addOntologyClass(ontologyClass);
         return ResponseEntity.ok(ontologyClass);
     }
 
     @GetMapping("/{uniqueName}")
     @Operation(summary = "Get an Ontology Class", description = "Retrieves a specific ontology class by unique name.")
-    public ResponseEntity<OntologyClassAPI> getClass(@PathVariable String uniqueName) {
+    @VersionedResponse(EntityKind.CLASS)
+    public ResponseEntity<OntologyClassAPI> getClass(OntologyStorageService storageService, @PathVariable String uniqueName) {
         OntologyClassAPI ontologyClass = storageService.getOntologyClass(uniqueName);
         return ResponseEntity.ok(ontologyClass);
     }
 
+    @GetMapping("/{uniqueName}/ancestors")
+    @Operation(summary = "Get the superclasses of an Ontology Class", description = "Retrieves all direct and indirect parent classes, every class before its own superclasses.")
+    public ResponseEntity<List<String>> getAncestors(OntologyStorageService storageService, @PathVariable String uniqueName) {
+        return ResponseEntity.ok(storageService.getAncestorClasses(uniqueName));
+    }
+
+    @GetMapping("/{uniqueName}/descendants")
+    @Operation(summary = "Get the subclasses of an Ontology Class", description = "Retrieves all direct and indirect subclasses.")
+    public ResponseEntity<List<String>> getDescendants(OntologyStorageService storageService, @PathVariable String uniqueName) {
+        return ResponseEntity.ok(storageService.getDescendantClasses(uniqueName));
+    }
+
+    @GetMapping("/{uniqueName}/subsumes/{otherName}")
+    @Operation(summary = "Check subsumption", description = "Returns true if the other class is the class itself or one of its direct or indirect subclasses.")
+    public ResponseEntity<Boolean> subsumes(OntologyStorageService storageService, @PathVariable String uniqueName, @PathVariable String otherName) {
+        return ResponseEntity.ok(storageService.subsumes(uniqueName, otherName));
+    }
+
+    @GetMapping("/{uniqueName}/instances")
+    @Operation(summary = "Get the instances of an Ontology Class", description = "Retrieves the individuals asserted to be of the class, "
+            + "with transitive=true also those of its subclasses. Paged and projected like the individual collection.")
+    public ResponseEntity<List<?>> getInstances(OntologyStorageService storageService, @PathVariable String uniqueName,
+                                                @RequestParam(defaultValue = "false") boolean transitive,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit,
+                                                @RequestParam(required = false) String fields) {
+        EntityPage<OntologyIndividualAPI> page = storageService.getInstances(uniqueName, transitive, EntityPages.decodeCursor(cursor), pageLimits.resolve(limit));
+        return EntityPages.toResponse(page, fields, objectMapper);
+    }
+
     @DeleteMapping("/{uniqueName}")
     @Operation(summary = "Delete an Ontology Class", description = "Removes an ontology class from storage by unique name.")
-    public ResponseEntity<Void> deleteClass(@PathVariable String uniqueName) {
+    public ResponseEntity<Void> deleteClass(OntologyStorageService storageService, @PathVariable String uniqueName) {
         storageService.removeOntologyClass(uniqueName);
         return ResponseEntity.ok().build();
     }
 
     @GetMapping
-    @Operation(summary = "Get all Ontology Classes", description = "Retrieves all classes in the ontology.")
-    public ResponseEntity<Collection<OntologyClassAPI>> getAllClasses() {
-        return ResponseEntity.ok(storageService.getAllOntologyClasses());
+    @Operation(summary = "Get all Ontology Classes", description = "Retrieves the classes in unique name order. The result is paged by limit, 1000 entities by default "
+            + "and at most 10000, the cursor of the next page is returned in the X-Next-Cursor and Link headers. "
+            + "Fields restricts every class to the listed comma separated properties.")
+    @VersionedResponse(EntityKind.CLASS)
+    public ResponseEntity<List<?>> getAllClasses(OntologyStorageService storageService, @RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) String fields) {
+        EntityPage<OntologyClassAPI> page = storageService.getOntologyClasses(EntityPages.decodeCursor(cursor), pageLimits.resolve(limit));
+        return EntityPages.toResponse(page, fields, objectMapper);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export all Ontology Classes", description = "Streams every one of the classes as NDJSON, one per line in unique name order.")
+    public ResponseEntity<StreamingResponseBody> streamAllClasses(OntologyStorageService storageService, @RequestParam(required = false) String fields) {
+        return EntityPages.toNdjsonResponse(storageService.getAllOntologyClasses(), fields, objectMapper);
     }
 
     // Exception handlers
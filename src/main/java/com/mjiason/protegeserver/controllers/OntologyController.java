@@ -1,5 +1,6 @@
 package com.mjiason.protegeserver.controllers;
 
+import com.mjiason.protegeserver.configuration.VersionedResponse;
 import com.mjiason.protegeserver.models.OntologyAPI;
 import com.mjiason.protegeserver.services.OntologyStorageService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -11,18 +12,13 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
-@RequestMapping("/api/ontology")
+@RequestMapping({"/api/ontology", "/api/ontologies/{ontologyId}"})
 @Tag(name = "Ontology Management", description = "Operations for loading and saving ontology files")
 public class OntologyController {
-    private final OntologyStorageService ontologyStorageService;
-
-    public OntologyController(OntologyStorageService ontologyStorageService) {
-        this.ontologyStorageService = ontologyStorageService;
-    }
-
     @GetMapping("/")
     @Operation(summary = "Get ontology", description = "Retrieves the current ontology.")
-    public ResponseEntity<OntologyAPI> getOntology() {
+    @VersionedResponse
+    public ResponseEntity<OntologyAPI> getOntology(OntologyStorageService ontologyStorageService) {
         OntologyAPI ontology = ontologyStorageService.getOntology();
         if (ontology == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
@@ -1,6 +1,10 @@
 package com.mjiason.protegeserver.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.configuration.VersionedResponse;
+import com.mjiason.protegeserver.models.EntityKind;
 import com.mjiason.protegeserver.models.OntologyDataPropertyAPI;
+import com.mjiason.protegeserver.services.EntityPage;
 import com.mjiason.protegeserver.services.OntologyStorageService;
 import com.mjiason.protegeserver.services.ValidationException;
 import com.mjiason.protegeserver.services.EntityNotFoundException;
@@ -8,44 +12,62 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Collection;
+import java.util.List;
 
 @RestController
-@RequestMapping("/api/ontology/data-properties")
+@RequestMapping({"/api/ontology/data-properties", "/api/ontologies/{ontologyId}/data-properties"})
 @Tag(name = "Ontology Data Property API", description = "CRUD operations for Ontology Data Properties")
 public class OntologyDataPropertyController {
 
     @Autowired
-    private OntologyStorageService storageService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PageLimits pageLimits;
 
     @PostMapping
     @Operation(summary = "Create a Data Property", description = "Adds a new data property to the ontology with validation.")
-    public ResponseEntity<OntologyDataPropertyAPI> createDataProperty(@RequestBody OntologyDataPropertyAPI dataProperty) {
+    public ResponseEntity<OntologyDataPropertyAPI> createDataProperty(OntologyStorageService storageService, @RequestBody OntologyDataPropertyAPI dataProperty) {
         storageService.addDataProperty(dataProperty);
         return ResponseEntity.ok(dataProperty);
     }
 
     @GetMapping("/{uniqueName}")
     @Operation(summary = "Get a Data Property", description = "Retrieves a specific data property by unique name.")
-    public ResponseEntity<OntologyDataPropertyAPI> getDataProperty(@PathVariable String uniqueName) {
+    @VersionedResponse(EntityKind.DATA_PROPERTY)
+    public ResponseEntity<OntologyDataPropertyAPI> getDataProperty(OntologyStorageService storageService, @PathVariable String uniqueName) {
         OntologyDataPropertyAPI property = storageService.getDataProperty(uniqueName);
         return ResponseEntity.ok(property);
     }
 
     @DeleteMapping("/{uniqueName}")
     @Operation(summary = "Delete a Data Property", description = "Removes a data property by unique name.")
-    public ResponseEntity<Void> deleteDataProperty(@PathVariable String uniqueName) {
+    public ResponseEntity<Void> deleteDataProperty(OntologyStorageService storageService, @PathVariable String uniqueName) {
         storageService.removeDataProperty(uniqueName);
         return ResponseEntity.ok().build();
     }
 
     @GetMapping
-    @Operation(summary = "Get all Data Properties", description = "Retrieves all data properties in the ontology.")
-    public ResponseEntity<Collection<OntologyDataPropertyAPI>> getAllDataProperties() {
-        return ResponseEntity.ok(storageService.getAllDataProperties());
+    @Operation(summary = "Get all Data Properties", description = "Retrieves the data properties in unique name order. The result is paged by limit, 1000 entities by default "
+            + "and at most 10000, the cursor of the next page is returned in the X-Next-Cursor and Link headers. "
+            + "Fields restricts every data property to the listed comma separated properties.")
+    @VersionedResponse(EntityKind.DATA_PROPERTY)
+    public ResponseEntity<List<?>> getAllDataProperties(OntologyStorageService storageService, @RequestParam(required = false) String cursor,
+                                                        @RequestParam(required = false) Integer limit,
+                                                        @RequestParam(required = false) String fields) {
+        EntityPage<OntologyDataPropertyAPI> page = storageService.getDataProperties(EntityPages.decodeCursor(cursor), pageLimits.resolve(limit));
+        return EntityPages.toResponse(page, fields, objectMapper);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export all Data Properties", description = "Streams every one of the data properties as NDJSON, one per line in unique name order.")
+    public ResponseEntity<StreamingResponseBody> streamAllDataProperties(OntologyStorageService storageService, @RequestParam(required = false) String fields) {
+        return EntityPages.toNdjsonResponse(storageService.getAllDataProperties(), fields, objectMapper);
     }
 
     // Exception handlers
@@ -1,31 +1,47 @@
 package com.mjiason.protegeserver.controllers;
 
+import com.mjiason.protegeserver.configuration.ResponseCache;
+import com.mjiason.protegeserver.models.OntologyImportAPI;
+import com.mjiason.protegeserver.services.EntityNotFoundException;
+import com.mjiason.protegeserver.services.OntologyImportService;
 import com.mjiason.protegeserver.services.OntologyStorageService;
+import com.mjiason.protegeserver.services.UploadTooLargeException;
+import com.mjiason.protegeserver.services.ValidationException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.formats.OWLXMLDocumentFormat;
 import org.semanticweb.owlapi.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
-@RequestMapping("/api/ontology/file")
+@RequestMapping({"/api/ontology/file", "/api/ontologies/{ontologyId}/file"})
 @Tag(name = "Ontology File API", description = "Operations for loading and saving ontology files")
 public class OntologyFileController {
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     @Autowired
-    private OntologyStorageService storageService;
+    private OntologyImportService importService;
 
     @PostMapping(value = "/upload", consumes = {"multipart/form-data"})
     @Operation(summary = "Upload an ontology file", description = "Loads an ontology from an OWL file.")
-    public ResponseEntity<Void> uploadOntologyFile(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Void> uploadOntologyFile(OntologyStorageService storageService, @RequestParam("file") MultipartFile file) {
         try {
             OWLOntology loadedOntology = storageService.loadOWLOntology(file.getInputStream());
             if (loadedOntology == null) {
@@ -40,23 +56,86 @@ public class OntologyFileController {
         }
     }
 
+    @PostMapping("/upload/stream")
+    @Operation(summary = "Stream an ontology file", description = "Parses the raw request body as it arrives, without multipart buffering. "
+            + "The serialization is taken from Content-Type (RDF/XML by default) and gzip, deflate or zstd bodies are accepted via Content-Encoding.")
+    public ResponseEntity<OntologyImportAPI> uploadOntologyStream(OntologyStorageService storageService, HttpServletRequest request,
+                                                                  @RequestParam(value = "importId", required = false) String importId) throws IOException {
+        OntologyImportAPI result = importService.importOntology(storageService, importId, request.getInputStream(),
+                request.getHeader(HttpHeaders.CONTENT_ENCODING), request.getContentType());
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/upload/progress")
+    @Operation(summary = "List ontology imports", description = "Returns the progress of the running and recently finished streamed uploads of the ontology.")
+    public ResponseEntity<List<OntologyImportAPI>> getImports(OntologyStorageService storageService) {
+        return ResponseEntity.ok(importService.getAllImports(storageService));
+    }
+
+    @GetMapping("/upload/progress/{importId}")
+    @Operation(summary = "Get ontology import progress", description = "Returns the bytes read so far by a streamed upload, and the axioms once it is parsed.")
+    public ResponseEntity<OntologyImportAPI> getImport(OntologyStorageService storageService, @PathVariable String importId) {
+        return ResponseEntity.ok(importService.getImport(storageService, importId));
+    }
+
     @GetMapping("/download")
-    @Operation(summary = "Download the ontology file", description = "Saves the current in-memory ontology to an OWL file.")
-    public ResponseEntity<byte[]> downloadOntologyFile() {
-        try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            storageService.applyChangesToOntology();
-            storageService.saveOntologyToOutputStream(outputStream);
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=ontology.owl")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(outputStream.toByteArray());
-        } catch (OWLOntologyStorageException e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).build();
+    @Operation(summary = "Download the ontology file", description = "Streams the current in-memory ontology as an OWL file, gzip-compressed when the client accepts it.")
+    public ResponseEntity<StreamingResponseBody> downloadOntologyFile(
+            OntologyStorageService storageService,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        storageService.applyChangesToOntology();
+
+        // No Content-Length is set, so the serialization is sent with chunked transfer encoding. It is written to a
+        // temporary file first, so a slow client does not hold the OWLOntology lock that writers and compaction wait for
+        boolean gzip = ResponseCache.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = outputStream -> {
+            Path serialized = Files.createTempFile("ontology", ".owl");
+            try {
+                storageService.saveOntologyToFile(serialized);
+                OutputStream target = gzip ? new GZIPOutputStream(outputStream, STREAM_BUFFER_SIZE) : outputStream;
+                Files.copy(serialized, target);
+                if (target instanceof GZIPOutputStream gzipOutputStream) {
+                    gzipOutputStream.finish();
+                }
+                target.flush();
+            } catch (OWLOntologyStorageException e) {
+                throw new IOException("Failed to serialize the ontology", e);
+            } finally {
+                Files.deleteIfExists(serialized);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=ontology.owl")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
         }
+        return response.body(body);
+    }
+
+    @PostMapping("/snapshot")
+    @Operation(summary = "Snapshot the ontology", description = "Saves the current ontology with all edits to the storage directory together with "
+            + "a binary snapshot of its indexed state. The next start memory-maps the snapshot instead of parsing the ontology.")
+    public ResponseEntity<Void> writeSnapshot(OntologyStorageService storageService) throws IOException, OWLOntologyStorageException {
+        storageService.writeSnapshot();
+        return ResponseEntity.ok().build();
     }
-}
 
+    // Exception handlers
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<String> handleValidationException(ValidationException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    @ExceptionHandler(EntityNotFoundException.class)
+    public ResponseEntity<String> handleEntityNotFoundException(EntityNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
 
+    @ExceptionHandler(UploadTooLargeException.class)
+    public ResponseEntity<String> handleUploadTooLargeException(UploadTooLargeException ex) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(ex.getMessage());
+    }
+}
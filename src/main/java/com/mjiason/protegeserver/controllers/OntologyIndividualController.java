@@ -1,6 +1,12 @@
 package com.mjiason.protegeserver.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.configuration.VersionedResponse;
+import com.mjiason.protegeserver.models.EntityKind;
 import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import com.mjiason.protegeserver.models.OntologyTraversalStepAPI;
+import com.mjiason.protegeserver.models.TraversalDirection;
+import com.mjiason.protegeserver.services.EntityPage;
 import com.mjiason.protegeserver.services.OntologyStorageService;
 import com.mjiason.protegeserver.services.ValidationException;
 import com.mjiason.protegeserver.services.EntityNotFoundException;
@@ -8,44 +14,110 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @RestController
-@RequestMapping("/api/ontology/individuals")
+@RequestMapping({"/api/ontology/individuals", "/api/ontologies/{ontologyId}/individuals"})
 @Tag(name = "Ontology Individual API", description = "CRUD operations for Ontology Individuals")
 public class OntologyIndividualController {
 
     @Autowired
-    private OntologyStorageService storageService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PageLimits pageLimits;
 
     @PostMapping
     @Operation(summary = "Create an Individual", description = "Adds a new individual to the ontology with validation.")
-    public ResponseEntity<OntologyIndividualAPI> createIndividual(@RequestBody OntologyIndividualAPI individual) {
+    public ResponseEntity<OntologyIndividualAPI> createIndividual(OntologyStorageService storageService, @RequestBody OntologyIndividualAPI individual) {
         storageService.addIndividual(individual);
         return ResponseEntity.ok(individual);
     }
 
     @GetMapping("/{uniqueName}")
     @Operation(summary = "Get an Individual", description = "Retrieves a specific individual by unique name.")
-    public ResponseEntity<OntologyIndividualAPI> getIndividual(@PathVariable String uniqueName) {
+    @VersionedResponse(EntityKind.INDIVIDUAL)
+    public ResponseEntity<OntologyIndividualAPI> getIndividual(OntologyStorageService storageService, @PathVariable String uniqueName) {
         OntologyIndividualAPI individual = storageService.getIndividual(uniqueName);
         return ResponseEntity.ok(individual);
     }
 
+    @GetMapping("/{uniqueName}/referenced-by")
+    @Operation(summary = "Get the Individuals referencing an Individual", description = "Retrieves, per object property, the individuals "
+            + "whose relations point at the individual. Property restricts the result to one object property.")
+    public ResponseEntity<Map<String, List<String>>> getReferencingIndividuals(OntologyStorageService storageService, @PathVariable String uniqueName,
+                                                                            @RequestParam(required = false) String property) {
+        return ResponseEntity.ok(storageService.getReferencingIndividuals(uniqueName, property));
+    }
+
+    @GetMapping("/{uniqueName}/traverse")
+    @Operation(summary = "Traverse the relations of an Individual", description = "Walks the object property relations breadth-first "
+            + "from the individual, following the given properties (all when omitted) in the given direction up to maxDepth steps. "
+            + "With closure=true symmetric properties are followed both ways and chains of a transitive property count as one step.")
+    public ResponseEntity<List<OntologyTraversalStepAPI>> traverse(OntologyStorageService storageService, @PathVariable String uniqueName,
+                                                                   @RequestParam(name = "property", required = false) List<String> properties,
+                                                                   @RequestParam(defaultValue = "OUTGOING") TraversalDirection direction,
+                                                                   @RequestParam(defaultValue = "3") int maxDepth,
+                                                                   @RequestParam(defaultValue = "false") boolean closure,
+                                                                   @RequestParam(defaultValue = "10000") int limit) {
+        return ResponseEntity.ok(storageService.traverse(uniqueName, properties, direction, maxDepth, closure, limit));
+    }
+
+    @GetMapping("/{uniqueName}/path/{targetName}")
+    @Operation(summary = "Find a path between two Individuals", description = "Returns the steps of a shortest chain of object property "
+            + "relations from the individual to the target, or an empty list if there is none within maxDepth steps. "
+            + "Limit bounds the number of individuals visited.")
+    public ResponseEntity<List<OntologyTraversalStepAPI>> findPath(OntologyStorageService storageService, @PathVariable String uniqueName,
+                                                                   @PathVariable String targetName,
+                                                                   @RequestParam(name = "property", required = false) List<String> properties,
+                                                                   @RequestParam(defaultValue = "BOTH") TraversalDirection direction,
+                                                                   @RequestParam(defaultValue = "6") int maxDepth,
+                                                                   @RequestParam(defaultValue = "false") boolean closure,
+                                                                   @RequestParam(defaultValue = "1000000") int limit) {
+        return ResponseEntity.ok(storageService.findPath(uniqueName, targetName, properties, direction, maxDepth, closure, limit));
+    }
+
     @DeleteMapping("/{uniqueName}")
     @Operation(summary = "Delete an Individual", description = "Removes an individual by unique name.")
-    public ResponseEntity<Void> deleteIndividual(@PathVariable String uniqueName) {
+    public ResponseEntity<Void> deleteIndividual(OntologyStorageService storageService, @PathVariable String uniqueName) {
         storageService.removeIndividual(uniqueName);
         return ResponseEntity.ok().build();
     }
 
     @GetMapping
-    @Operation(summary = "Get all Individuals", description = "Retrieves all individuals in the ontology.")
-    public ResponseEntity<Collection<OntologyIndividualAPI>> getAllIndividuals() {
-        return ResponseEntity.ok(storageService.getAllIndividuals());
+    @Operation(summary = "Get all Individuals", description = "Retrieves the individuals in unique name order. The result is paged by limit, 1000 individuals by default "
+            + "and at most 10000, the cursor of the next page is returned in the X-Next-Cursor and Link headers. "
+            + "Fields restricts every individual to the listed comma separated properties. "
+            + "Every where condition, like hasAge>30 or hasCity='Lviv', restricts the result to the individuals with a matching "
+            + "data property value; =, <, <=, > and >= compare by the range of the property, strings support = only. "
+            + "Filtered individuals are returned in the order they were added.")
+    @VersionedResponse(EntityKind.INDIVIDUAL)
+    public ResponseEntity<List<?>> getAllIndividuals(OntologyStorageService storageService, @RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     @RequestParam(required = false) String fields,
+                                                     @RequestParam(required = false) List<String> where) {
+        String after = EntityPages.decodeCursor(cursor);
+        EntityPage<OntologyIndividualAPI> page = where == null || where.isEmpty()
+                ? storageService.getIndividuals(after, pageLimits.resolve(limit))
+                : storageService.findIndividuals(where, after, pageLimits.resolve(limit));
+        return EntityPages.toResponse(page, fields, objectMapper);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export all Individuals", description = "Streams every one of the individuals as NDJSON, one per line in unique name order. "
+            + "With where conditions only the matching individuals are streamed, in the order they were added.")
+    public ResponseEntity<StreamingResponseBody> streamAllIndividuals(OntologyStorageService storageService, @RequestParam(required = false) String fields,
+                                                                      @RequestParam(required = false) List<String> where) {
+        Iterable<OntologyIndividualAPI> individuals = where == null || where.isEmpty()
+                ? storageService.getAllIndividuals()
+                : storageService.findAllIndividuals(where);
+        return EntityPages.toNdjsonResponse(individuals, fields, objectMapper);
     }
 
     // Exception handlers
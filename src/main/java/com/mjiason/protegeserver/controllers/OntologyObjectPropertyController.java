@@ -1,6 +1,10 @@
 package com.mjiason.protegeserver.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.configuration.VersionedResponse;
+import com.mjiason.protegeserver.models.EntityKind;
 import com.mjiason.protegeserver.models.OntologyObjectPropertyAPI;
+import com.mjiason.protegeserver.services.EntityPage;
 import com.mjiason.protegeserver.services.OntologyStorageService;
 import com.mjiason.protegeserver.services.ValidationException;
 import com.mjiason.protegeserver.services.EntityNotFoundException;
@@ -8,44 +12,62 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Collection;
+import java.util.List;
 
 @RestController
-@RequestMapping("/api/ontology/object-properties")
+@RequestMapping({"/api/ontology/object-properties", "/api/ontologies/{ontologyId}/object-properties"})
 @Tag(name = "Ontology Object Property API", description = "CRUD operations for Ontology Object Properties")
 public class OntologyObjectPropertyController {
 
     @Autowired
-    private OntologyStorageService storageService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PageLimits pageLimits;
 
     @PostMapping
     @Operation(summary = "Create an Object Property", description = "Adds a new object property to the ontology with validation.")
-    public ResponseEntity<Void> createObjectProperty(@RequestBody OntologyObjectPropertyAPI objectProperty) {
+    public ResponseEntity<Void> createObjectProperty(OntologyStorageService storageService, @RequestBody OntologyObjectPropertyAPI objectProperty) {
         storageService.addObjectProperty(objectProperty);
         return ResponseEntity.ok().build();
     }
 
     @GetMapping("/{uniqueName}")
     @Operation(summary = "Get an Object Property", description = "Retrieves a specific object property by unique name.")
-    public ResponseEntity<OntologyObjectPropertyAPI> getObjectProperty(@PathVariable String uniqueName) {
+    @VersionedResponse(EntityKind.OBJECT_PROPERTY)
+    public ResponseEntity<OntologyObjectPropertyAPI> getObjectProperty(OntologyStorageService storageService, @PathVariable String uniqueName) {
         OntologyObjectPropertyAPI property = storageService.getObjectProperty(uniqueName);
         return ResponseEntity.ok(property);
     }
 
     @DeleteMapping("/{uniqueName}")
     @Operation(summary = "Delete an Object Property", description = "Removes an object property by unique name.")
-    public ResponseEntity<Void> deleteObjectProperty(@PathVariable String uniqueName) {
+    public ResponseEntity<Void> deleteObjectProperty(OntologyStorageService storageService, @PathVariable String uniqueName) {
         storageService.removeObjectProperty(uniqueName);
         return ResponseEntity.ok().build();
     }
 
     @GetMapping
-    @Operation(summary = "Get all Object Properties", description = "Retrieves all object properties in the ontology.")
-    public ResponseEntity<Collection<OntologyObjectPropertyAPI>> getAllObjectProperties() {
-        return ResponseEntity.ok(storageService.getAllObjectProperties());
+    @Operation(summary = "Get all Object Properties", description = "Retrieves the object properties in unique name order. The result is paged by limit, 1000 entities by default "
+            + "and at most 10000, the cursor of the next page is returned in the X-Next-Cursor and Link headers. "
+            + "Fields restricts every object property to the listed comma separated properties.")
+    @VersionedResponse(EntityKind.OBJECT_PROPERTY)
+    public ResponseEntity<List<?>> getAllObjectProperties(OntologyStorageService storageService, @RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) Integer limit,
+                                                          @RequestParam(required = false) String fields) {
+        EntityPage<OntologyObjectPropertyAPI> page = storageService.getObjectProperties(EntityPages.decodeCursor(cursor), pageLimits.resolve(limit));
+        return EntityPages.toResponse(page, fields, objectMapper);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export all Object Properties", description = "Streams every one of the object properties as NDJSON, one per line in unique name order.")
+    public ResponseEntity<StreamingResponseBody> streamAllObjectProperties(OntologyStorageService storageService, @RequestParam(required = false) String fields) {
+        return EntityPages.toNdjsonResponse(storageService.getAllObjectProperties(), fields, objectMapper);
     }
 
     // Exception handlers
@@ -0,0 +1,55 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import com.mjiason.protegeserver.services.ValidationException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+@RestController
+@RequestMapping({"/api/ontology/query", "/api/ontologies/{ontologyId}/query"})
+@Tag(name = "Ontology Query API", description = "Basic graph pattern queries over the classes, relations and data property values of the individuals")
+public class OntologyQueryController {
+
+    private static final String QUERY_DESCRIPTION = "Evaluates a SPARQL-style basic graph pattern, like "
+            + "SELECT ?person ?age WHERE { ?person a Person ; hasAge ?age . FILTER(?age >= 30) } LIMIT 10. "
+            + "Subjects and objects are variables, unique names or quoted literals, predicates are object properties, "
+            + "data properties or rdf:type (also written as a) for the asserted classes. Filters compare with =, !=, <, <=, > and >=, "
+            + "literals compare by the range of their data property. LIMIT and OFFSET page the solutions. "
+            + "The solutions are streamed as NDJSON, one object mapping the selected variables to values per line.";
+
+    private final ObjectMapper objectMapper;
+
+    public OntologyQueryController(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Query the Individuals", description = QUERY_DESCRIPTION)
+    public ResponseEntity<StreamingResponseBody> query(OntologyStorageService storageService, @RequestParam String query) {
+        return EntityPages.toNdjsonResponse(storageService.query(query), null, objectMapper);
+    }
+
+    @PostMapping(consumes = {MediaType.TEXT_PLAIN_VALUE, "application/sparql-query"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Query the Individuals with the query as body", description = QUERY_DESCRIPTION)
+    public ResponseEntity<StreamingResponseBody> queryBody(OntologyStorageService storageService, @RequestBody String query) {
+        return EntityPages.toNdjsonResponse(storageService.query(query), null, objectMapper);
+    }
+
+    @GetMapping("/plan")
+    @Operation(summary = "Explain a query", description = "Returns the triple patterns of the query in the order the cost-based planner evaluates them.")
+    public ResponseEntity<List<String>> explain(OntologyStorageService storageService, @RequestParam String query) {
+        return ResponseEntity.ok(storageService.explainQuery(query));
+    }
+
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<String> handleValidationException(ValidationException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+}
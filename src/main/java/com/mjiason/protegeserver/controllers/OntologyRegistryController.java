@@ -0,0 +1,62 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.mjiason.protegeserver.models.NamedOntologyAPI;
+import com.mjiason.protegeserver.services.EntityNotFoundException;
+import com.mjiason.protegeserver.services.OntologyRegistry;
+import com.mjiason.protegeserver.services.ValidationException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/ontologies")
+@Tag(name = "Named Ontology API", description = "Operations for managing the named ontologies served under /api/ontologies/{ontologyId}")
+public class OntologyRegistryController {
+
+    private final OntologyRegistry registry;
+
+    public OntologyRegistryController(OntologyRegistry registry) {
+        this.registry = registry;
+    }
+
+    @GetMapping
+    @Operation(summary = "Get all named ontologies", description = "Lists the named ontologies and whether they are loaded.")
+    public ResponseEntity<List<NamedOntologyAPI>> getAllOntologies() {
+        return ResponseEntity.ok(registry.getAllOntologies());
+    }
+
+    @PutMapping("/{ontologyId}")
+    @Operation(summary = "Create a named ontology", description = "Creates an empty ontology addressed as /api/ontologies/{ontologyId}. "
+            + "Its entities, files and imports are kept apart from every other ontology.")
+    public ResponseEntity<NamedOntologyAPI> createOntology(@PathVariable String ontologyId) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(registry.createOntology(ontologyId));
+    }
+
+    @GetMapping("/{ontologyId}")
+    @Operation(summary = "Get a named ontology", description = "Returns whether the ontology is loaded and its estimated heap usage.")
+    public ResponseEntity<NamedOntologyAPI> getOntology(@PathVariable String ontologyId) {
+        return ResponseEntity.ok(registry.getOntology(ontologyId));
+    }
+
+    @DeleteMapping("/{ontologyId}")
+    @Operation(summary = "Delete a named ontology", description = "Unloads the ontology and deletes its files.")
+    public ResponseEntity<Void> deleteOntology(@PathVariable String ontologyId) {
+        registry.deleteOntology(ontologyId);
+        return ResponseEntity.ok().build();
+    }
+
+    // Exception handlers
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<String> handleValidationException(ValidationException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    @ExceptionHandler(EntityNotFoundException.class)
+    public ResponseEntity<String> handleEntityNotFoundException(EntityNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+}
@@ -0,0 +1,51 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.models.OntologySearchResultAPI;
+import com.mjiason.protegeserver.services.EntityPage;
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import com.mjiason.protegeserver.services.ValidationException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping({"/api/ontology/search", "/api/ontologies/{ontologyId}/search"})
+@Tag(name = "Ontology Search API", description = "Full-text search over the names, labels and comments of all entities")
+public class OntologySearchController {
+
+    private final ObjectMapper objectMapper;
+    private final PageLimits pageLimits;
+
+    public OntologySearchController(ObjectMapper objectMapper, PageLimits pageLimits) {
+        this.objectMapper = objectMapper;
+        this.pageLimits = pageLimits;
+    }
+
+    @GetMapping
+    @Operation(summary = "Search entities", description = "Finds classes, properties and individuals whose unique name, label or comment "
+            + "contains every word of q, best match first. Words are matched case- and accent-insensitively, with prefix=true also "
+            + "as the start of a longer word and with fuzzy=true also with one typo. Kind restricts the result to one kind of entity. "
+            + "The result is paged like the entity collections, 20 hits per page unless a limit of at most 10000 is given.")
+    public ResponseEntity<List<?>> search(OntologyStorageService storageService,
+                                          @RequestParam String q,
+                                          @RequestParam(required = false) EntityKind kind,
+                                          @RequestParam(defaultValue = "true") boolean prefix,
+                                          @RequestParam(defaultValue = "true") boolean fuzzy,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer limit,
+                                          @RequestParam(required = false) String fields) {
+        EntityPage<OntologySearchResultAPI> page = storageService.search(q, kind, prefix, fuzzy, EntityPages.decodeCursor(cursor),
+                limit == null ? null : pageLimits.resolve(limit));
+        return EntityPages.toResponse(page, fields, objectMapper);
+    }
+
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<String> handleValidationException(ValidationException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+}
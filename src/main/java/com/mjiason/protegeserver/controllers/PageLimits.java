@@ -0,0 +1,39 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.mjiason.protegeserver.services.ValidationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds the pages of the collection endpoints. A request without a limit gets the default page size, so no request
+ * materializes a whole collection, and a limit above the maximum is rejected. Whole collections are exported as NDJSON.
+ */
+@Component
+class PageLimits {
+
+    private final int defaultSize;
+    private final int maxSize;
+
+    PageLimits(@Value("${protege.page.default-size:1000}") int defaultSize,
+               @Value("${protege.page.max-size:10000}") int maxSize) {
+        if (defaultSize < 1 || defaultSize > maxSize) {
+            throw new IllegalArgumentException("Default page size must be between 1 and the maximum of " + maxSize + ": " + defaultSize);
+        }
+        this.defaultSize = defaultSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param limit the requested page size, null for the default one
+     * @return the number of entities to put in the page
+     */
+    int resolve(Integer limit) {
+        if (limit == null) {
+            return defaultSize;
+        }
+        if (limit < 1 || limit > maxSize) {
+            throw new ValidationException("Limit must be between 1 and " + maxSize + ".");
+        }
+        return limit;
+    }
+}
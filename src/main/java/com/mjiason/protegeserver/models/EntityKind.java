@@ -0,0 +1,8 @@
+package com.mjiason.protegeserver.models;
+
+public enum EntityKind {
+    CLASS,              // owl:Class
+    OBJECT_PROPERTY,    // owl:ObjectProperty
+    DATA_PROPERTY,      // owl:DatatypeProperty
+    INDIVIDUAL          // owl:NamedIndividual
+}
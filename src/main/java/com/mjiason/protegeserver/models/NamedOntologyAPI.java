@@ -0,0 +1,14 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NamedOntologyAPI {
+    private String ontologyId;          // Id the ontology is addressed by under /api/ontologies/{ontologyId}
+    private boolean loaded;             // Whether the ontology is in memory, it is loaded on first use
+    private long estimatedHeapUsage;    // Rough estimate of the heap held by the ontology in bytes, 0 unless loaded
+}
@@ -0,0 +1,18 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entity of a batch create request, exactly one of the fields must be set.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OntologyBatchItemAPI {
+    private OntologyClassAPI ontologyClass;             // Class to create
+    private OntologyObjectPropertyAPI objectProperty;   // Object property to create
+    private OntologyDataPropertyAPI dataProperty;       // Data property to create
+    private OntologyIndividualAPI individual;           // Individual to create
+}
@@ -0,0 +1,15 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OntologyBatchResultAPI {
+    private int ontologyClasses;        // Classes created by the batch
+    private int objectProperties;       // Object properties created by the batch
+    private int dataProperties;         // Data properties created by the batch
+    private int individuals;            // Individuals created by the batch
+}
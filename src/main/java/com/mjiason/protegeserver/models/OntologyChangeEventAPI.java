@@ -0,0 +1,23 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OntologyChangeEventAPI {
+
+    public enum Operation {
+        ADD,                // The entity was added or replaced
+        REMOVE,             // The entity was removed
+        RELOAD              // The whole ontology was replaced, consumers have to read it again
+    }
+
+    private long sequence;          // Position in the change feed, one more than the previous event
+    private Operation operation;    // What happened
+    private EntityKind kind;        // Which entity collection was touched, null for RELOAD
+    private String uniqueName;      // Unique name of the entity, null for RELOAD
+    private Object entity;          // The added or removed entity, null for RELOAD
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -12,5 +14,9 @@ public class OntologyClassAPI {
     private String parentClass;                // Parent class for the class
     private String label;                     // Human-readable label
     private String comment;                   // Description or comment
-}
+    private List<String> parentClasses;       // All direct parent classes, parentClass is the first of them
 
+    public OntologyClassAPI(String uniqueName, String parentClass, String label, String comment) {
+        this(uniqueName, parentClass, label, comment, null);
+    }
+}
@@ -0,0 +1,27 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OntologyImportAPI {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String importId;        // Identifier of the import, generated unless the client provides one
+    private Status status;          // Current state of the import
+    private long bytesRead;         // Uncompressed bytes consumed by the parser so far, the progress of a running import
+    private long axiomsRead;        // Axioms parsed, 0 until parsing has finished
+    private Instant startedAt;      // When the upload started
+    private Instant finishedAt;     // When the upload finished, null while running
+    private String error;           // Failure message, null unless the import failed
+}
@@ -24,5 +24,11 @@ public class OntologyIndividualAPI {
 
     // Data properties: property name -> property value(s)
     private Map<String, List<String>> filledDataProperties;
-}
 
+    private List<String> classNames;             // All classes the individual belongs to, className is the first of them
+
+    public OntologyIndividualAPI(String uniqueName, String className, String label, String comment,
+                                 Map<String, List<String>> objectPropertyRelations, Map<String, List<String>> filledDataProperties) {
+        this(uniqueName, className, label, comment, objectPropertyRelations, filledDataProperties, null);
+    }
+}
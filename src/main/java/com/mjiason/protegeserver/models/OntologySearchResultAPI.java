@@ -0,0 +1,16 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OntologySearchResultAPI {
+    private EntityKind kind;        // Kind of the entity found
+    private String uniqueName;      // Unique name of the entity
+    private String label;           // Label of the entity, if any
+    private String comment;         // Comment of the entity, if any
+    private double score;           // Relevance of the entity to the query, higher is better
+}
@@ -0,0 +1,16 @@
+package com.mjiason.protegeserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OntologyTraversalStepAPI {
+    private String individual;      // Individual reached by this step
+    private int depth;              // Number of steps from the start individual
+    private String property;        // Object property followed to reach the individual, null for the start individual
+    private String predecessor;     // Individual the step was taken from, null for the start individual
+    private boolean inverse;        // True if the property was followed from its object to its subject
+}
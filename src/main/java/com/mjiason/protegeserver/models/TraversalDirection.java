@@ -0,0 +1,7 @@
+package com.mjiason.protegeserver.models;
+
+public enum TraversalDirection {
+    OUTGOING,   // From an individual to the individuals it points at
+    INCOMING,   // From an individual to the individuals that point at it
+    BOTH        // Either way
+}
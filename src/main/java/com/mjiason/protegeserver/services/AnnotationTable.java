@@ -0,0 +1,54 @@
+package com.mjiason.protegeserver.services;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rdfs:label and rdfs:comment of every IRI in an ontology, collected in a single pass over its annotation assertions.
+ * Only the first literal value of each annotation is kept. The table is read-only once built.
+ */
+class AnnotationTable {
+
+    private static final IRI LABEL = OWLRDFVocabulary.RDFS_LABEL.getIRI();
+    private static final IRI COMMENT = OWLRDFVocabulary.RDFS_COMMENT.getIRI();
+
+    private final Map<IRI, String> labels = new HashMap<>();
+    private final Map<IRI, String> comments = new HashMap<>();
+
+    static AnnotationTable build(OWLOntology ontology) {
+        AnnotationTable table = new AnnotationTable();
+        ontology.axioms(AxiomType.ANNOTATION_ASSERTION).forEach(table::add);
+        return table;
+    }
+
+    private void add(OWLAnnotationAssertionAxiom axiom) {
+        IRI subject = axiom.getSubject().asIRI().orElse(null);
+        OWLLiteral value = axiom.getValue().asLiteral().orElse(null);
+        if (subject == null || value == null) {
+            return;
+        }
+        IRI property = axiom.getProperty().getIRI();
+        if (property.equals(LABEL)) {
+            labels.putIfAbsent(subject, value.getLiteral());
+        } else if (property.equals(COMMENT)) {
+            comments.putIfAbsent(subject, value.getLiteral());
+        }
+    }
+
+    /**
+     * @return the label of the subject, or an empty string if it has none
+     */
+    String getLabel(IRI subject) {
+        return labels.getOrDefault(subject, "");
+    }
+
+    /**
+     * @return the comment of the subject, or an empty string if it has none
+     */
+    String getComment(IRI subject) {
+        return comments.getOrDefault(subject, "");
+    }
+}
@@ -0,0 +1,98 @@
+package com.mjiason.protegeserver.services;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+
+/**
+ * Reverse index from the classes, properties and individuals of an OWLOntology to the axioms that reference them.
+ * Annotation assertions are indexed by their subject IRI, so they are returned for every entity with that IRI.
+ * The index has to be told about every axiom that is added to or removed from the ontology.
+ */
+class AxiomIndex {
+
+    private final Map<OWLEntity, Set<OWLAxiom>> axiomsByEntity = new HashMap<>();
+    private final Map<IRI, Set<OWLAxiom>> annotationsBySubject = new HashMap<>();
+    private final Map<String, Set<OWLEntity>> entitiesByShortForm = new HashMap<>();
+
+    void rebuild(OWLOntology ontology) {
+        axiomsByEntity.clear();
+        annotationsBySubject.clear();
+        entitiesByShortForm.clear();
+        ontology.axioms().forEach(this::add);
+    }
+
+    void add(OWLAxiom axiom) {
+        if (axiom instanceof OWLAnnotationAssertionAxiom annotationAxiom) {
+            annotationAxiom.getSubject().asIRI().ifPresent(subject ->
+                    annotationsBySubject.computeIfAbsent(subject, k -> new HashSet<>()).add(axiom));
+            return;
+        }
+        axiom.signature().filter(AxiomIndex::isIndexed).forEach(entity -> {
+            Set<OWLAxiom> axioms = axiomsByEntity.computeIfAbsent(entity, k -> {
+                entitiesByShortForm.computeIfAbsent(k.getIRI().getShortForm(), name -> new HashSet<>()).add(k);
+                return new HashSet<>();
+            });
+            axioms.add(axiom);
+        });
+    }
+
+    void remove(OWLAxiom axiom) {
+        if (axiom instanceof OWLAnnotationAssertionAxiom annotationAxiom) {
+            annotationAxiom.getSubject().asIRI().ifPresent(subject -> removeFrom(annotationsBySubject, subject, axiom));
+            return;
+        }
+        axiom.signature().filter(AxiomIndex::isIndexed).forEach(entity -> {
+            if (removeFrom(axiomsByEntity, entity, axiom)) {
+                removeFrom(entitiesByShortForm, entity.getIRI().getShortForm(), entity);
+            }
+        });
+    }
+
+    /**
+     * @return true if an axiom other than an annotation assertion references the entity
+     */
+    boolean contains(OWLEntity entity) {
+        return axiomsByEntity.containsKey(entity);
+    }
+
+    /**
+     * @return the entities of the given type whose IRI has the given short form
+     */
+    Set<OWLEntity> getEntities(String shortForm, EntityType<?> type) {
+        Set<OWLEntity> entities = new HashSet<>();
+        for (OWLEntity entity : entitiesByShortForm.getOrDefault(shortForm, Collections.emptySet())) {
+            if (entity.isType(type)) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * @return a copy of every axiom that references the entity, including annotation assertions on its IRI
+     */
+    Set<OWLAxiom> getAxioms(OWLEntity entity) {
+        Set<OWLAxiom> axioms = new HashSet<>(axiomsByEntity.getOrDefault(entity, Collections.emptySet()));
+        axioms.addAll(annotationsBySubject.getOrDefault(entity.getIRI(), Collections.emptySet()));
+        return axioms;
+    }
+
+    private static boolean isIndexed(OWLEntity entity) {
+        return entity.isOWLClass() || entity.isOWLObjectProperty() || entity.isOWLDataProperty() || entity.isOWLNamedIndividual();
+    }
+
+    // Removes the value and drops the key once nothing is left, returns true if the key was dropped
+    private static <K, V> boolean removeFrom(Map<K, Set<V>> map, K key, V value) {
+        Set<V> values = map.get(key);
+        if (values == null) {
+            return false;
+        }
+        values.remove(value);
+        if (values.isEmpty()) {
+            map.remove(key);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.models.OntologyChangeEventAPI;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent changes of one ontology, in a ring buffer of fixed capacity. Every event gets the next sequence
+ * number, and consumers follow the feed by reading the events after the last sequence they have seen.
+ * <p>
+ * Appending never waits for consumers: the buffer overwrites its oldest event, and a consumer whose position was
+ * overwritten is told so by a {@link ChangesExpiredException} and has to read the ontology again. Consumers only hold
+ * the monitor while copying their events out.
+ * <p>
+ * An event gets its sequence when it is appended, in the order the changes are applied, but consumers only see it once
+ * it is published, after the change is durable in the write-ahead log. Publishing up to a sequence publishes every
+ * earlier event as well.
+ * <p>
+ * Sequences start at the creation time of the feed in microseconds, so they keep increasing across restarts and
+ * reloads, and a position from an earlier feed is recognized as expired rather than read from the wrong events.
+ */
+class ChangeFeed {
+
+    private final OntologyChangeEventAPI[] events;
+
+    // Guarded by this
+    private final long firstSequence;
+    private long appendedSequence;
+    // The latest published event, consumers read up to here
+    private long lastSequence;
+    private boolean closed;
+
+    ChangeFeed(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Change feed capacity must be positive: " + capacity);
+        }
+        events = new OntologyChangeEventAPI[capacity];
+        lastSequence = System.currentTimeMillis() * 1000;
+        appendedSequence = lastSequence;
+        firstSequence = lastSequence + 1;
+    }
+
+    /**
+     * Appends the event of a change without publishing it yet, see {@link #publish(long)}.
+     */
+
+    synchronized void append(OntologyChange change) {
+        append(OntologyChangeEventAPI.Operation.valueOf(change.getOperation().name()), change.getKind(),
+                change.getUniqueName(), change.getEntity());
+    }
+
+    /**
+     * Appends and publishes a reload, which supersedes every change appended before it.
+     */
+    synchronized void appendReload() {
+        append(OntologyChangeEventAPI.Operation.RELOAD, null, null, null);
+        publish(appendedSequence);
+    }
+
+    private void append(OntologyChangeEventAPI.Operation operation, EntityKind kind, String uniqueName, Object entity) {
+        long sequence = ++appendedSequence;
+        events[index(sequence)] = new OntologyChangeEventAPI(sequence, operation, kind, uniqueName, entity);
+    }
+
+    /**
+     * Makes the events up to the sequence visible to consumers.
+     */
+    synchronized void publish(long sequence) {
+        long published = Math.min(sequence, appendedSequence);
+        if (published > lastSequence) {
+            lastSequence = published;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the sequence of the latest appended event, published or not
+     */
+    synchronized long getAppendedSequence() {
+        return appendedSequence;
+    }
+
+    /**
+     * @return the sequence of the latest published event
+     */
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @param after sequence of the last event the consumer has seen
+     * @param limit maximum number of events returned
+     * @return the events following the given sequence, oldest first, empty when there are none yet
+     * @throws ChangesExpiredException if events following the sequence were already overwritten, or the sequence is
+     *                                 not one of this feed
+     */
+    synchronized List<OntologyChangeEventAPI> read(long after, int limit) {
+        // Events appended but not published yet may have overwritten published ones already
+        long oldest = Math.max(firstSequence, appendedSequence - events.length + 1);
+        if (after < oldest - 1 || after > lastSequence) {
+            throw new ChangesExpiredException("Changes after " + after + " are no longer available, the feed holds "
+                    + oldest + " to " + lastSequence + ". Read the ontology again and follow the feed from "
+                    + lastSequence);
+        }
+        int count = (int) Math.min(limit, lastSequence - after);
+        List<OntologyChangeEventAPI> result = new ArrayList<>(count);
+        for (long sequence = after + 1; sequence <= after + count; sequence++) {
+            result.add(events[index(sequence)]);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #read(long, int)}, but waits up to the timeout for the next event when there is none yet.
+     *
+     * @return the events, empty if the timeout passed or the feed was closed before one was appended
+     */
+    synchronized List<OntologyChangeEventAPI> await(long after, int limit, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (after == lastSequence && !closed && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return read(after, limit);
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // Wakes up the waiting consumers, which then end their streams
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private int index(long sequence) {
+        return (int) Math.floorMod(sequence, (long) events.length);
+    }
+}
@@ -0,0 +1,7 @@
+package com.mjiason.protegeserver.services;
+
+public class ChangesExpiredException extends RuntimeException {
+    public ChangesExpiredException(String message) {
+        super(message);
+    }
+}
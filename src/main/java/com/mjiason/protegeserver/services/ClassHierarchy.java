@@ -0,0 +1,464 @@
+package com.mjiason.protegeserver.services;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Subclass hierarchy of the classes of one ontology, including classes with several parents.
+ * <p>
+ * The transitive closure is encoded twice with post-order intervals. Downwards, the hierarchy is numbered in post-order
+ * along a spanning forest, and every class keeps the merged intervals of all of its descendants: a subsumption check is
+ * a binary search over those intervals, usually a single one, and listing the descendants is linear in their number.
+ * Upwards, the inverted hierarchy is numbered the same way, so listing the ancestors is an interval lookup as well.
+ * <p>
+ * Post-order numbers are spaced out, and every class keeps the free numbers below its own for new subclasses. Adding a
+ * class that no other class lists as a parent, the usual way a taxonomy grows, and removing a class without subclasses
+ * update the encoding in place. Any other change, such as moving a class to other parents, drops the encoding, and the
+ * first query afterwards rebuilds it in linear time. A cycle of subclass axioms is broken at an arbitrary edge.
+ */
+class ClassHierarchy {
+
+    // Numbers owned by every class of a rebuilt encoding: its own post-order number and the free ones for new subclasses
+    private static final long BLOCK = 1L << 32;
+    // Largest range handed to a new class, the rest stays free for its later siblings
+    private static final long MAX_SLICE = 1L << 20;
+
+    private final Map<String, List<String>> parentsByClass = new HashMap<>();
+    // Guards both maps and the closure, queries share it and changes take it exclusively
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Null when the encoding has to be rebuilt by the next query
+    private Closure closure;
+
+    void put(String uniqueName, List<String> parentClasses) {
+        List<String> parents = List.copyOf(parentClasses);
+        lock.writeLock().lock();
+        try {
+            List<String> previous = parentsByClass.put(uniqueName, parents);
+            if (closure != null && !(previous != null && previous.equals(parents) || previous == null && closure.addLeaf(uniqueName, parents))) {
+                closure = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String uniqueName) {
+        lock.writeLock().lock();
+        try {
+            if (parentsByClass.remove(uniqueName) != null && closure != null && !closure.removeLeaf(uniqueName)) {
+                closure = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return all classes the given class is a subclass of, every class before its own superclasses, empty if the class
+     * is unknown
+     */
+    List<String> getAncestors(String uniqueName) {
+        lock.readLock().lock();
+        try {
+            return closure().getAncestors(uniqueName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all subclasses of the given class in hierarchy order, empty if the class is unknown
+     */
+    List<String> getDescendants(String uniqueName) {
+        lock.readLock().lock();
+        try {
+            return closure().getDescendants(uniqueName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the descendant is the ancestor itself or one of its direct or indirect subclasses
+     */
+    boolean subsumes(String ancestor, String descendant) {
+        lock.readLock().lock();
+        try {
+            return closure().subsumes(ancestor, descendant);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Called with the read lock held, a missing encoding is rebuilt under the write lock which is then downgraded
+    private Closure closure() {
+        Closure current = closure;
+        if (current != null) {
+            return current;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (closure == null) {
+                closure = new Closure(parentsByClass);
+            }
+            current = closure;
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return current;
+    }
+
+    // Interval encoding of the hierarchy, changed in place by leaf additions and removals
+    private static final class Closure {
+
+        private static final byte UNVISITED = 0;
+        private static final byte ON_STACK = 1;
+        private static final byte FINISHED = 2;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names;
+        private int size;                    // Ids handed out, the arrays grow ahead of it
+        private int[][] parents;
+        private int[] childCount;            // Subclasses that are classes of the ontology, a class without any is a leaf
+
+        private long[] low;                  // Lowest number of the range of the class in the spanning forest
+        private long[] post;                 // Post-order number of the class, the highest of its range
+        private long[] lastUsed;             // Highest number of the range taken by a subclass, the ones above it up to post are free
+        private long[][] intervals;          // Sorted, disjoint [low, high] pairs of numbers covering the class and its descendants
+        private final NavigableMap<Long, Integer> byPost = new TreeMap<>();
+
+        private long[] upPost;               // Post-order number in the inverted hierarchy, higher than that of any ancestor
+        private long[][] upIntervals;        // Sorted, disjoint [low, high] pairs of inverted numbers covering the class and its ancestors
+        private final NavigableMap<Long, Integer> byUpPost = new TreeMap<>();
+        private long nextPost;
+        private long nextUpPost;
+
+        // Parents named by a class that are not (or no longer) classes of the ontology, adding one of them is not a leaf
+        private final Set<String> missingParents = new HashSet<>();
+
+        Closure(Map<String, List<String>> parentsByClass) {
+            names = parentsByClass.keySet().toArray(new String[0]);
+            int n = names.length;
+            size = n;
+            for (int i = 0; i < n; i++) {
+                ids.put(names[i], i);
+            }
+
+            // Parents that are not classes of the ontology are left out
+            parents = new int[n][];
+            childCount = new int[n];
+            for (int i = 0; i < n; i++) {
+                parents[i] = resolveParents(i, parentsByClass.getOrDefault(names[i], List.of()));
+                for (int parent : parents[i]) {
+                    childCount[parent]++;
+                }
+            }
+            int[][] children = new int[n][];
+            for (int i = 0; i < n; i++) {
+                children[i] = new int[childCount[i]];
+            }
+            int[] fill = childCount.clone();
+            for (int i = 0; i < n; i++) {
+                for (int parent : parents[i]) {
+                    children[parent][--fill[parent]] = i;
+                }
+            }
+
+            low = new long[n];
+            post = new long[n];
+            lastUsed = new long[n];
+            intervals = new long[n][];
+            upPost = new long[n];
+            upIntervals = new long[n][];
+
+            long[] downPost = new long[n];
+            long[] downLow = new long[n];
+            number(children, parents, downLow, downPost, intervals, BLOCK);
+            for (int i = 0; i < n; i++) {
+                // The block of a class is its post-order number and the free numbers right below it
+                post[i] = downPost[i];
+                low[i] = downLow[i];
+                lastUsed[i] = downPost[i] - BLOCK;
+                byPost.put(post[i], i);
+            }
+            nextPost = (long) n * BLOCK;
+
+            number(parents, children, new long[n], upPost, upIntervals, 1);
+            for (int i = 0; i < n; i++) {
+                byUpPost.put(upPost[i], i);
+            }
+            nextUpPost = n;
+        }
+
+        private int[] resolveParents(int self, List<String> parentNames) {
+            return parentNames.stream()
+                    .peek(parent -> {
+                        if (!ids.containsKey(parent)) {
+                            missingParents.add(parent);
+                        }
+                    })
+                    .map(ids::get)
+                    .filter(parent -> parent != null && parent != self)
+                    .mapToInt(Integer::intValue)
+                    .distinct()
+                    .toArray();
+        }
+
+        // Iterative depth-first search over the edges from a class to the given next classes, taxonomies can be far deeper
+        // than the thread stack allows. Every finished class takes the next block of numbers, the highest of which is its post.
+        private static void number(int[][] next, int[][] previous, long[] low, long[] post, long[][] intervals, long block) {
+            int n = next.length;
+            byte[] visit = new byte[n];
+            int[] stack = new int[n];
+            int[] nextIndex = new int[n];
+            long counter = 0;
+
+            // Start where there is no previous class, so the spanning forest follows the hierarchy, then pick up classes
+            // only reachable through a cycle
+            for (int pass = 0; pass < 2; pass++) {
+                for (int root = 0; root < n; root++) {
+                    if (visit[root] != UNVISITED || (pass == 0 && previous[root].length > 0)) {
+                        continue;
+                    }
+                    int top = 0;
+                    stack[0] = root;
+                    visit[root] = ON_STACK;
+                    low[root] = counter * block;
+                    while (top >= 0) {
+                        int node = stack[top];
+                        if (nextIndex[node] < next[node].length) {
+                            int child = next[node][nextIndex[node]++];
+                            if (visit[child] == UNVISITED) {
+                                visit[child] = ON_STACK;
+                                low[child] = counter * block;
+                                stack[++top] = child;
+                            }
+                        } else {
+                            post[node] = counter * block + block - 1;
+                            counter++;
+                            visit[node] = FINISHED;
+                            intervals[node] = mergeIntervals(node, next, visit, intervals, low[node], post[node]);
+                            top--;
+                        }
+                    }
+                }
+            }
+        }
+
+        // The subtree of the spanning forest is one interval, classes reached through other edges add their own
+        private static long[] mergeIntervals(int node, int[][] next, byte[] visit, long[][] intervals, long subtreeLow, long subtreeHigh) {
+            List<long[]> pieces = new ArrayList<>();
+            for (int child : next[node]) {
+                // A child still on the stack closes a cycle, that edge is ignored
+                if (visit[child] != FINISHED) {
+                    continue;
+                }
+                long[] childIntervals = intervals[child];
+                for (int i = 0; i < childIntervals.length; i += 2) {
+                    if (childIntervals[i] < subtreeLow || childIntervals[i + 1] > subtreeHigh) {
+                        pieces.add(new long[]{childIntervals[i], childIntervals[i + 1]});
+                    }
+                }
+            }
+            pieces.add(new long[]{subtreeLow, subtreeHigh});
+            return merge(pieces);
+        }
+
+        private static long[] merge(List<long[]> pieces) {
+            if (pieces.size() == 1) {
+                return pieces.get(0).clone();
+            }
+            pieces.sort(Comparator.comparingLong(piece -> piece[0]));
+            long[] merged = new long[pieces.size() * 2];
+            int size = 0;
+            for (long[] piece : pieces) {
+                if (size > 0 && piece[0] <= merged[size - 1] + 1) {
+                    merged[size - 1] = Math.max(merged[size - 1], piece[1]);
+                } else {
+                    merged[size++] = piece[0];
+                    merged[size++] = piece[1];
+                }
+            }
+            return Arrays.copyOf(merged, size);
+        }
+
+        /**
+         * Adds a class no other class lists as a parent. Its range is taken from the free numbers of its first parent, which
+         * lie within the intervals of every ancestor of that parent and of no other class, so only the ancestors reached
+         * through the other parents have to be extended. Upwards, it is numbered after every class.
+         *
+         * @return false if the class cannot be added in place and the encoding has to be rebuilt
+         */
+        boolean addLeaf(String uniqueName, List<String> parentNames) {
+            if (missingParents.contains(uniqueName)) {
+                return false;
+            }
+            int id = size;
+            int[] resolved = resolveParents(id, parentNames);
+
+            long rangeLow;
+            long rangeHigh;
+            if (resolved.length == 0) {
+                rangeLow = nextPost;
+                rangeHigh = nextPost + BLOCK - 1;
+                nextPost += BLOCK;
+            } else {
+                int primary = resolved[0];
+                long free = post[primary] - lastUsed[primary] - 1;
+                if (free < 1) {
+                    return false;
+                }
+                rangeLow = lastUsed[primary] + 1;
+                rangeHigh = rangeLow + Math.min(MAX_SLICE, Math.max(1, free / 2)) - 1;
+                lastUsed[primary] = rangeHigh;
+            }
+
+            grow(id + 1);
+            size = id + 1;
+            names[id] = uniqueName;
+            ids.put(uniqueName, id);
+            parents[id] = resolved;
+            low[id] = rangeLow;
+            post[id] = rangeHigh;
+            lastUsed[id] = rangeLow - 1;
+            intervals[id] = new long[]{rangeLow, rangeHigh};
+            byPost.put(rangeHigh, id);
+
+            List<long[]> upPieces = new ArrayList<>();
+            upPost[id] = nextUpPost++;
+            upPieces.add(new long[]{upPost[id], upPost[id]});
+            for (int parent : resolved) {
+                childCount[parent]++;
+                long[] parentIntervals = upIntervals[parent];
+                for (int i = 0; i < parentIntervals.length; i += 2) {
+                    upPieces.add(new long[]{parentIntervals[i], parentIntervals[i + 1]});
+                }
+            }
+            upIntervals[id] = merge(upPieces);
+            byUpPost.put(upPost[id], id);
+
+            // Ancestors through the other parents do not cover the range yet
+            for (int ancestor : ancestorIds(id)) {
+                if (!contains(intervals[ancestor], rangeHigh)) {
+                    List<long[]> pieces = new ArrayList<>();
+                    for (int i = 0; i < intervals[ancestor].length; i += 2) {
+                        pieces.add(new long[]{intervals[ancestor][i], intervals[ancestor][i + 1]});
+                    }
+                    pieces.add(new long[]{rangeLow, rangeHigh});
+                    intervals[ancestor] = merge(pieces);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes a class without subclasses. Its numbers stay in the intervals of its ancestors, but no longer map to a class.
+         *
+         * @return false if the class has subclasses and the encoding has to be rebuilt
+         */
+        boolean removeLeaf(String uniqueName) {
+            Integer id = ids.get(uniqueName);
+            if (id == null) {
+                return true;
+            }
+            if (childCount[id] > 0) {
+                return false;
+            }
+            ids.remove(uniqueName);
+            byPost.remove(post[id]);
+            byUpPost.remove(upPost[id]);
+            for (int parent : parents[id]) {
+                childCount[parent]--;
+            }
+            parents[id] = new int[0];
+            intervals[id] = new long[0];
+            upIntervals[id] = new long[0];
+            return true;
+        }
+
+        private void grow(int minimumCapacity) {
+            if (minimumCapacity <= names.length) {
+                return;
+            }
+            int capacity = Math.max(minimumCapacity, names.length + (names.length >> 1) + 16);
+            names = Arrays.copyOf(names, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            low = Arrays.copyOf(low, capacity);
+            post = Arrays.copyOf(post, capacity);
+            lastUsed = Arrays.copyOf(lastUsed, capacity);
+            intervals = Arrays.copyOf(intervals, capacity);
+            upPost = Arrays.copyOf(upPost, capacity);
+            upIntervals = Arrays.copyOf(upIntervals, capacity);
+        }
+
+        // Ancestors in inverted post-order, highest first, which puts every class before its own superclasses
+        private List<Integer> ancestorIds(int id) {
+            List<Integer> ancestors = new ArrayList<>();
+            long[] classIntervals = upIntervals[id];
+            for (int i = classIntervals.length - 2; i >= 0; i -= 2) {
+                for (int ancestor : byUpPost.subMap(classIntervals[i], true, classIntervals[i + 1], true).descendingMap().values()) {
+                    if (ancestor != id) {
+                        ancestors.add(ancestor);
+                    }
+                }
+            }
+            return ancestors;
+        }
+
+        List<String> getAncestors(String uniqueName) {
+            Integer id = ids.get(uniqueName);
+            if (id == null) {
+                return List.of();
+            }
+            List<String> ancestors = new ArrayList<>();
+            for (int ancestor : ancestorIds(id)) {
+                ancestors.add(names[ancestor]);
+            }
+            return ancestors;
+        }
+
+        List<String> getDescendants(String uniqueName) {
+            Integer id = ids.get(uniqueName);
+            if (id == null) {
+                return List.of();
+            }
+            List<String> descendants = new ArrayList<>();
+            long[] classIntervals = intervals[id];
+            for (int i = 0; i < classIntervals.length; i += 2) {
+                for (int descendant : byPost.subMap(classIntervals[i], true, classIntervals[i + 1], true).values()) {
+                    if (descendant != id) {
+                        descendants.add(names[descendant]);
+                    }
+                }
+            }
+            return descendants;
+        }
+
+        boolean subsumes(String ancestor, String descendant) {
+            Integer ancestorId = ids.get(ancestor);
+            Integer descendantId = ids.get(descendant);
+            if (ancestorId == null || descendantId == null) {
+                return false;
+            }
+            return contains(intervals[ancestorId], post[descendantId]);
+        }
+
+        private static boolean contains(long[] classIntervals, long number) {
+            // Find the last interval starting at or before the number
+            int lowIndex = 0;
+            int highIndex = classIntervals.length / 2 - 1;
+            while (lowIndex <= highIndex) {
+                int middle = (lowIndex + highIndex) >>> 1;
+                if (classIntervals[middle * 2] <= number) {
+                    lowIndex = middle + 1;
+                } else {
+                    highIndex = middle - 1;
+                }
+            }
+            return highIndex >= 0 && number <= classIntervals[highIndex * 2 + 1];
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.mjiason.protegeserver.services;
+
+import lombok.Getter;
+
+/**
+ * One individual of an {@link IndividualStore}, immutable once created. Class and property names are ids from the
+ * dictionaries of the store. Relations are laid out CSR style in a single array: for every property its id, the
+ * number of values and then the values, which are individual ids for object properties and ids from the value
+ * dictionary of the store for data properties.
+ */
+@Getter
+class CompactIndividual {
+
+    static final int[] NO_IDS = new int[0];
+
+    private final int id;
+    private final String label;
+    private final String comment;
+    private final int[] classIds;
+    private final int[] objectRelations;    // Null when the individual has no object property relation map
+    private final int[] dataRelations;      // Null when the individual has no data property map
+
+    CompactIndividual(int id, String label, String comment, int[] classIds, int[] objectRelations, int[] dataRelations) {
+        this.id = id;
+        this.label = label;
+        this.comment = comment;
+        this.classIds = classIds;
+        this.objectRelations = objectRelations;
+        this.dataRelations = dataRelations;
+    }
+}
@@ -0,0 +1,15 @@
+package com.mjiason.protegeserver.services;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of a collection of entities, ordered by unique name.
+ */
+@Value
+public class EntityPage<T> {
+
+    List<T> items;          // Entities of this page in unique name order
+    String nextCursor;      // Unique name of the last entity of this page, null when there are no further pages
+}
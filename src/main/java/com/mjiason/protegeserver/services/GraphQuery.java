@@ -0,0 +1,332 @@
+package com.mjiason.protegeserver.services;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A basic graph pattern query in a subset of the SPARQL syntax, parsed from text like
+ * <pre>
+ * SELECT ?person ?age WHERE {
+ *     ?person a Person ;
+ *             knows ?friend .
+ *     ?friend hasAge ?age .
+ *     FILTER(?age &gt;= 30 &amp;&amp; ?age &lt; 40)
+ * } LIMIT 10 OFFSET 20
+ * </pre>
+ * Terms are variables, unique names or quoted literals. Predicates are unique names of properties or rdf:type,
+ * also written as a. Patterns sharing a subject can be joined with ; and patterns sharing a subject and predicate
+ * with , as in SPARQL. A filter is a conjunction of comparisons of terms with =, !=, &lt;, &lt;=, &gt; and &gt;=.
+ */
+@Value
+class GraphQuery {
+
+    /**
+     * A variable or a constant, exactly one of them is set.
+     */
+    @Value
+    static class Term {
+        String variable;        // Name of the variable without its leading ?
+        String constant;        // Unique name or literal value
+
+        boolean isVariable() {
+            return variable != null;
+        }
+
+        @Override
+        public String toString() {
+            return isVariable() ? "?" + variable : constant;
+        }
+    }
+
+    @Value
+    static class TriplePattern {
+        Term subject;
+        String predicate;       // Unique name of a property, or rdf:type
+        Term object;
+    }
+
+    @Value
+    static class Comparison {
+        Term left;
+        ValueIndex.Operator operator;
+        boolean negated;        // True for !=, which is written as a negated equality
+        Term right;
+    }
+
+    List<String> projection;            // The selected variables, null for all of them
+    List<TriplePattern> patterns;
+    List<Comparison> filters;           // The comparisons of all filters, which all have to hold
+    long offset;
+    Long limit;                         // Null for all solutions
+
+    private enum TokenType {VARIABLE, NAME, LITERAL, SYMBOL, END}
+
+    @Value
+    private static class Token {
+        TokenType type;
+        String text;
+        int position;
+
+        boolean is(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+
+        boolean isKeyword(String keyword) {
+            return type == TokenType.NAME && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    // Characters that end a unique name, whitespace aside
+    private static final String DELIMITERS = "{}(),;*<>=!&|\"'?$#";
+
+    static GraphQuery parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new ValidationException("Query cannot be null or empty");
+        }
+        return new Parser(tokenize(text)).parseQuery();
+    }
+
+    private static List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        int position = 0;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            int start = position;
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (c == '#') {
+                while (position < text.length() && text.charAt(position) != '\n') {
+                    position++;
+                }
+            } else if (c == '?' || c == '$') {
+                position++;
+                while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                    position++;
+                }
+                if (position == start + 1) {
+                    throw new ValidationException("Variable without a name at position " + start);
+                }
+                tokens.add(new Token(TokenType.VARIABLE, text.substring(start + 1, position), start));
+            } else if (c == '"' || c == '\'') {
+                StringBuilder literal = new StringBuilder();
+                position++;
+                while (position < text.length() && text.charAt(position) != c) {
+                    char next = text.charAt(position++);
+                    if (next == '\\' && position < text.length()) {
+                        char escaped = text.charAt(position++);
+                        next = switch (escaped) {
+                            case 'n' -> '\n';
+                            case 't' -> '\t';
+                            case 'r' -> '\r';
+                            default -> escaped;
+                        };
+                    }
+                    literal.append(next);
+                }
+                if (position == text.length()) {
+                    throw new ValidationException("Unterminated literal at position " + start);
+                }
+                position++;
+                tokens.add(new Token(TokenType.LITERAL, literal.toString(), start));
+            } else if (text.startsWith("!=", position) || text.startsWith("<=", position) || text.startsWith(">=", position)
+                    || text.startsWith("&&", position) || text.startsWith("||", position)) {
+                position += 2;
+                tokens.add(new Token(TokenType.SYMBOL, text.substring(start, position), start));
+            } else if (DELIMITERS.indexOf(c) >= 0 || c == '.') {
+                position++;
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c), start));
+            } else {
+                while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+                        && DELIMITERS.indexOf(text.charAt(position)) < 0) {
+                    position++;
+                }
+                // A dot ending the name terminates the pattern, as in "?person knows alice."
+                int end = position;
+                while (text.charAt(end - 1) == '.') {
+                    end--;
+                }
+                tokens.add(new Token(TokenType.NAME, text.substring(start, end), start));
+                for (int dot = end; dot < position; dot++) {
+                    tokens.add(new Token(TokenType.SYMBOL, ".", dot));
+                }
+            }
+        }
+        tokens.add(new Token(TokenType.END, "end of query", text.length()));
+        return tokens;
+    }
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private int next;
+
+        private final List<TriplePattern> patterns = new ArrayList<>();
+        private final List<Comparison> filters = new ArrayList<>();
+
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        private GraphQuery parseQuery() {
+            expectKeyword("SELECT");
+            List<String> projection = null;
+            if (peek().is("*")) {
+                next++;
+            } else {
+                projection = new ArrayList<>();
+                while (peek().getType() == TokenType.VARIABLE) {
+                    projection.add(tokens.get(next++).getText());
+                }
+                if (projection.isEmpty()) {
+                    throw error("a variable or *");
+                }
+            }
+            if (peek().isKeyword("WHERE")) {
+                next++;
+            }
+            expect("{");
+            while (!peek().is("}")) {
+                if (peek().isKeyword("FILTER")) {
+                    next++;
+                    parseFilter();
+                } else {
+                    parseTriples();
+                }
+                if (peek().is(".")) {
+                    next++;
+                }
+            }
+            next++;
+
+            long offset = 0;
+            Long limit = null;
+            while (peek().getType() != TokenType.END) {
+                if (peek().isKeyword("LIMIT") && limit == null) {
+                    next++;
+                    limit = parseCount();
+                } else if (peek().isKeyword("OFFSET") && offset == 0) {
+                    next++;
+                    offset = parseCount();
+                } else {
+                    throw error("LIMIT, OFFSET or the end of the query");
+                }
+            }
+            return new GraphQuery(projection, patterns, filters, offset, limit);
+        }
+
+        // A subject followed by predicate and object lists, the predicates separated by ; and the objects by ,
+        private void parseTriples() {
+            Term subject = parseTerm();
+            do {
+                if (peek().is(";")) {
+                    next++;
+                }
+                // A ; may also end the list
+                if (peek().is(".") || peek().is("}")) {
+                    break;
+                }
+                String predicate = parsePredicate();
+                patterns.add(new TriplePattern(subject, predicate, parseTerm()));
+                while (peek().is(",")) {
+                    next++;
+                    patterns.add(new TriplePattern(subject, predicate, parseTerm()));
+                }
+            } while (peek().is(";"));
+        }
+
+        private String parsePredicate() {
+            Token token = peek();
+            if (token.getType() == TokenType.VARIABLE) {
+                throw new ValidationException("Variable predicates are not supported: ?" + token.getText());
+            }
+            if (token.getType() != TokenType.NAME) {
+                throw error("a property");
+            }
+            next++;
+            return token.getText();
+        }
+
+        private void parseFilter() {
+            expect("(");
+            filters.add(parseComparison());
+            while (peek().is("&&")) {
+                next++;
+                filters.add(parseComparison());
+            }
+            if (peek().is("||")) {
+                throw new ValidationException("Disjunctions in filters are not supported, at position " + peek().getPosition());
+            }
+            expect(")");
+        }
+
+        private Comparison parseComparison() {
+            Term left = parseTerm();
+            Token token = peek();
+            ValueIndex.Operator operator = null;
+            for (ValueIndex.Operator candidate : ValueIndex.Operator.values()) {
+                if (token.is(candidate.getSymbol())) {
+                    operator = candidate;
+                }
+            }
+            boolean negated = token.is("!=");
+            if (operator == null && !negated) {
+                throw error("one of =, !=, <, <=, >, >=");
+            }
+            next++;
+            return new Comparison(left, negated ? ValueIndex.Operator.EQUAL : operator, negated, parseTerm());
+        }
+
+        private Term parseTerm() {
+            Token token = peek();
+            switch (token.getType()) {
+                case VARIABLE -> {
+                    next++;
+                    return new Term(token.getText(), null);
+                }
+                case NAME, LITERAL -> {
+                    next++;
+                    return new Term(null, token.getText());
+                }
+                default -> throw error("a variable, a unique name or a literal");
+            }
+        }
+
+        private long parseCount() {
+            Token token = peek();
+            try {
+                long count = Long.parseLong(token.getText());
+                if (token.getType() == TokenType.NAME && count >= 0) {
+                    next++;
+                    return count;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw error("a non-negative number");
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!peek().isKeyword(keyword)) {
+                throw error(keyword);
+            }
+            next++;
+        }
+
+        private void expect(String symbol) {
+            if (!peek().is(symbol)) {
+                throw error("'" + symbol + "'");
+            }
+            next++;
+        }
+
+        private Token peek() {
+            return tokens.get(next);
+        }
+
+        private ValidationException error(String expected) {
+            Token token = peek();
+            return new ValidationException("Expected " + expected + " but found '" + token.getText() + "' at position " + token.getPosition());
+        }
+    }
+}
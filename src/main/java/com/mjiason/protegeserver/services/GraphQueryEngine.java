@@ -0,0 +1,680 @@
+package com.mjiason.protegeserver.services;
+
+import java.util.*;
+
+/**
+ * Evaluates the basic graph pattern of a {@link GraphQuery} over the individuals of an {@link OntologyState}. Every
+ * triple pattern matches either the asserted classes of individuals, their object property relations or their data
+ * property values, and the patterns are joined on their shared variables.
+ * <p>
+ * The join order is chosen by cost: for every subset of the patterns the cheapest order to evaluate it is found,
+ * estimating the solutions of every step from the {@link PropertyStatistics} of its property and the exact sizes of
+ * the posting lists its constants select. A filter comparing a literal with a constant narrows the pattern that binds
+ * the literal to the matching range of the {@link ValueIndex} before it is evaluated.
+ * <p>
+ * Solutions are produced one at a time by a nested loop over the steps in that order. Every step narrows the candidate
+ * subjects through an index where it can and then reads the matches from their compact records, so memory is bounded
+ * by the candidates of the open steps, and reading stops as soon as the limit is reached.
+ */
+class GraphQueryEngine {
+
+    // Planning looks at every subset of the patterns
+    private static final int MAX_PATTERNS = 16;
+    private static final Set<String> TYPE_PREDICATES = Set.of("a", "rdf:type", "http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+
+    private enum PredicateKind {TYPE, OBJECT, DATA}
+
+    private enum VariableKind {
+        INDIVIDUAL("an individual"),
+        CLASS("a class"),
+        LITERAL("a literal");
+
+        private final String description;
+
+        VariableKind(String description) {
+            this.description = description;
+        }
+    }
+
+    // A triple pattern resolved against the dictionaries of the state
+    private static final class Step {
+        private final int index;                    // Position of the pattern in the query
+        private final PredicateKind kind;
+        private final int property;                 // Id of the property, -1 for rdf:type
+        private final int subjectVariable;          // -1 when the subject is a constant
+        private final int subjectId;                // Id of the constant subject
+        private final int objectVariable;           // -1 when the object is a constant
+        private final int objectId;                 // Id of the constant object individual or class
+        private final String objectValue;           // Constant object literal
+        private final ValueIndex.ValueType type;    // How literals of a data property compare
+        // Conditions on the literal the step binds, taken from the filters
+        private final List<ValueIndex.Condition> conditions = new ArrayList<>();
+        private boolean empty;                      // Set when a constant does not exist, the step matches nothing
+
+        private Step(int index, PredicateKind kind, int property, int subjectVariable, int subjectId, int objectVariable, int objectId,
+                     String objectValue, ValueIndex.ValueType type) {
+            this.index = index;
+            this.kind = kind;
+            this.property = property;
+            this.subjectVariable = subjectVariable;
+            this.subjectId = subjectId;
+            this.objectVariable = objectVariable;
+            this.objectId = objectId;
+            this.objectValue = objectValue;
+            this.type = type;
+        }
+
+        private long variables() {
+            return (subjectVariable < 0 ? 0 : 1L << subjectVariable) | (objectVariable < 0 ? 0 : 1L << objectVariable);
+        }
+    }
+
+    // A filter comparison with its variables resolved, a constant side has a variable of -1
+    private static final class Filter {
+        private final int leftVariable;
+        private final String leftValue;
+        private final ValueIndex.Operator operator;
+        private final boolean negated;
+        private final int rightVariable;
+        private final String rightValue;
+
+        private Filter(int leftVariable, String leftValue, ValueIndex.Operator operator, boolean negated,
+                       int rightVariable, String rightValue) {
+            this.leftVariable = leftVariable;
+            this.leftValue = leftValue;
+            this.operator = operator;
+            this.negated = negated;
+            this.rightVariable = rightVariable;
+            this.rightValue = rightValue;
+        }
+
+        private long variables() {
+            return (leftVariable < 0 ? 0 : 1L << leftVariable) | (rightVariable < 0 ? 0 : 1L << rightVariable);
+        }
+    }
+
+    private final OntologyState state;
+    private final GraphQuery query;
+
+    private final Map<String, Integer> variables = new LinkedHashMap<>();
+    private final String[] variableNames;
+    private final List<VariableKind> variableKinds = new ArrayList<>();
+    // How every literal variable compares, as the range of the first data property that binds it
+    private final List<ValueIndex.ValueType> literalTypes = new ArrayList<>();
+    private final int[] projection;
+
+    private final Step[] steps;             // In evaluation order once planned
+    private final List<Filter>[] filters;   // The filters to check once the step at the same index matched
+
+    /**
+     * Resolves the query against the state and plans it, so an invalid query is rejected before evaluation starts.
+     */
+    @SuppressWarnings("unchecked")
+    GraphQueryEngine(OntologyState state, GraphQuery query) {
+        this.state = state;
+        this.query = query;
+        if (query.getPatterns().isEmpty()) {
+            throw new ValidationException("Query needs at least one triple pattern.");
+        }
+        if (query.getPatterns().size() > MAX_PATTERNS) {
+            throw new ValidationException("Query can have at most " + MAX_PATTERNS + " triple patterns.");
+        }
+        List<Step> resolved = new ArrayList<>();
+        for (GraphQuery.TriplePattern pattern : query.getPatterns()) {
+            resolved.add(resolve(pattern, resolved));
+        }
+        List<Filter> resolvedFilters = new ArrayList<>();
+        for (GraphQuery.Comparison comparison : query.getFilters()) {
+            resolvedFilters.add(resolve(comparison, resolved));
+        }
+        this.projection = resolveProjection();
+        this.variableNames = variables.keySet().toArray(new String[0]);
+
+        this.steps = plan(resolved);
+        this.filters = new List[steps.length];
+        long bound = 0;
+        for (int i = 0; i < steps.length; i++) {
+            bound |= steps[i].variables();
+            filters[i] = new ArrayList<>();
+            for (Iterator<Filter> iterator = resolvedFilters.iterator(); iterator.hasNext(); ) {
+                Filter filter = iterator.next();
+                if ((filter.variables() & ~bound) == 0) {
+                    filters[i].add(filter);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the solutions, every one mapping the selected variables to unique names or literal values. The pattern
+     * is evaluated anew for every iterator.
+     */
+    Iterable<Map<String, String>> solutions() {
+        return Evaluation::new;
+    }
+
+    /**
+     * @return the triple patterns in the order they are evaluated
+     */
+    List<String> explain() {
+        List<String> explanation = new ArrayList<>();
+        for (Step step : steps) {
+            GraphQuery.TriplePattern pattern = query.getPatterns().get(step.index);
+            explanation.add(pattern.getSubject() + " " + pattern.getPredicate() + " " + pattern.getObject());
+        }
+        return explanation;
+    }
+
+    private Step resolve(GraphQuery.TriplePattern pattern, List<Step> resolved) {
+        String predicate = pattern.getPredicate();
+        PredicateKind kind;
+        if (TYPE_PREDICATES.contains(predicate)) {
+            kind = PredicateKind.TYPE;
+        } else if (state.getObjectProperties().containsKey(predicate)) {
+            kind = PredicateKind.OBJECT;
+        } else if (state.getDataProperties().containsKey(predicate)) {
+            kind = PredicateKind.DATA;
+        } else {
+            throw new ValidationException("Unknown property: " + predicate);
+        }
+        int property = kind == PredicateKind.TYPE ? -1 : state.getPropertyIds().find(predicate);
+
+        GraphQuery.Term subject = pattern.getSubject();
+        int subjectVariable = subject.isVariable() ? variable(subject.getVariable(), VariableKind.INDIVIDUAL) : -1;
+        int subjectId = subject.isVariable() ? -1 : state.getIndividualIds().find(subject.getConstant());
+
+        GraphQuery.Term object = pattern.getObject();
+        VariableKind objectKind = switch (kind) {
+            case TYPE -> VariableKind.CLASS;
+            case OBJECT -> VariableKind.INDIVIDUAL;
+            case DATA -> VariableKind.LITERAL;
+        };
+        int objectVariable = object.isVariable() ? variable(object.getVariable(), objectKind) : -1;
+        int objectId = -1;
+        if (!object.isVariable() && kind != PredicateKind.DATA) {
+            objectId = kind == PredicateKind.TYPE ? state.getClassIds().find(object.getConstant())
+                    : state.getIndividualIds().find(object.getConstant());
+        }
+        ValueIndex.ValueType type = kind == PredicateKind.DATA ? state.getValueIndex().getType(predicate) : ValueIndex.ValueType.STRING;
+        if (objectVariable >= 0 && objectKind == VariableKind.LITERAL && literalTypes.get(objectVariable) == null) {
+            literalTypes.set(objectVariable, type);
+        }
+
+        Step step = new Step(resolved.size(), kind, property, subjectVariable, subjectId, objectVariable, objectId,
+                kind == PredicateKind.DATA && !object.isVariable() ? object.getConstant() : null, type);
+        // A name no individual, class or property ever had cannot match
+        step.empty = kind != PredicateKind.TYPE && property < 0 || !subject.isVariable() && subjectId < 0
+                || !object.isVariable() && kind != PredicateKind.DATA && objectId < 0
+                || !object.isVariable() && kind == PredicateKind.DATA && type.parse(object.getConstant()) == null;
+        return step;
+    }
+
+    private int variable(String name, VariableKind kind) {
+        Integer index = variables.get(name);
+        if (index == null) {
+            if (variables.size() == Long.SIZE) {
+                throw new ValidationException("Query can have at most " + Long.SIZE + " variables.");
+            }
+            index = variables.size();
+            variables.put(name, index);
+            variableKinds.add(kind);
+            literalTypes.add(null);
+        } else if (variableKinds.get(index) != kind) {
+            throw new ValidationException("Variable ?" + name + " is used both as " + variableKinds.get(index).description
+                    + " and as " + kind.description + ".");
+        }
+        return index;
+    }
+
+    private Filter resolve(GraphQuery.Comparison comparison, List<Step> resolved) {
+        int left = filterVariable(comparison.getLeft());
+        int right = filterVariable(comparison.getRight());
+        Filter filter = new Filter(left, comparison.getLeft().getConstant(), comparison.getOperator(), comparison.isNegated(),
+                right, comparison.getRight().getConstant());
+
+        // A literal compared with a constant narrows the steps binding the literal to the matching values
+        if (left >= 0 && right >= 0 || left < 0 && right < 0 || comparison.isNegated()) {
+            return filter;
+        }
+        int variable = left >= 0 ? left : right;
+        ValueIndex.ValueType type = literalTypes.get(variable);
+        Object value = type == null ? null : type.parse(left >= 0 ? filter.rightValue : filter.leftValue);
+        if (value == null || type == ValueIndex.ValueType.STRING && comparison.getOperator() != ValueIndex.Operator.EQUAL) {
+            return filter;
+        }
+        ValueIndex.Operator operator = left >= 0 ? comparison.getOperator() : mirror(comparison.getOperator());
+        for (Step step : resolved) {
+            if (step.objectVariable == variable && step.type == type && step.property >= 0) {
+                step.conditions.add(new ValueIndex.Condition(step.property, operator, value));
+            }
+        }
+        return filter;
+    }
+
+    // The operator with its sides swapped, a < b holds exactly when b > a
+    private static ValueIndex.Operator mirror(ValueIndex.Operator operator) {
+        return switch (operator) {
+            case EQUAL -> ValueIndex.Operator.EQUAL;
+            case LESS -> ValueIndex.Operator.GREATER;
+            case LESS_OR_EQUAL -> ValueIndex.Operator.GREATER_OR_EQUAL;
+            case GREATER -> ValueIndex.Operator.LESS;
+            case GREATER_OR_EQUAL -> ValueIndex.Operator.LESS_OR_EQUAL;
+        };
+    }
+
+    private int filterVariable(GraphQuery.Term term) {
+        if (!term.isVariable()) {
+            return -1;
+        }
+        Integer index = variables.get(term.getVariable());
+        if (index == null) {
+            throw new ValidationException("Filter variable ?" + term.getVariable() + " is not used in any triple pattern.");
+        }
+        return index;
+    }
+
+    private int[] resolveProjection() {
+        if (query.getProjection() == null) {
+            return variables.values().stream().mapToInt(Integer::intValue).toArray();
+        }
+        int[] selected = new int[query.getProjection().size()];
+        for (int i = 0; i < selected.length; i++) {
+            Integer index = variables.get(query.getProjection().get(i));
+            if (index == null) {
+                throw new ValidationException("Selected variable ?" + query.getProjection().get(i) + " is not used in any triple pattern.");
+            }
+            selected[i] = index;
+        }
+        return selected;
+    }
+
+    // Planning
+
+    // Estimated solutions of every step, counted once while planning
+    private double[] triples;
+    private double[] subjects;
+    private double[] objects;
+    private double[] selected;      // Postings matching the constant object or the conditions, -1 when there are none
+
+    /**
+     * Orders the steps by dynamic programming over the subsets of the steps: the cheapest order of a subset extends the
+     * cheapest order of one of its subsets by one step. The cost of an order sums the estimated work of every step,
+     * which is the number of solutions it starts from times the work of one lookup, plus the solutions it produces.
+     */
+    private Step[] plan(List<Step> resolved) {
+        int count = resolved.size();
+        collectStatistics(resolved);
+
+        int subsets = 1 << count;
+        double[] cost = new double[subsets];
+        double[] solutions = new double[subsets];
+        long[] bound = new long[subsets];
+        int[] last = new int[subsets];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        cost[0] = 0;
+        solutions[0] = 1;
+        for (int subset = 0; subset < subsets; subset++) {
+            if (cost[subset] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                if ((subset & 1 << i) != 0) {
+                    continue;
+                }
+                double[] estimate = estimate(resolved.get(i), bound[subset]);
+                double produced = solutions[subset] * estimate[0];
+                double extended = cost[subset] + solutions[subset] * estimate[1] + produced;
+                int next = subset | 1 << i;
+                if (extended < cost[next]) {
+                    cost[next] = extended;
+                    solutions[next] = produced;
+                    bound[next] = bound[subset] | resolved.get(i).variables();
+                    last[next] = i;
+                }
+            }
+        }
+
+        Step[] ordered = new Step[count];
+        for (int subset = subsets - 1, position = count - 1; subset != 0; position--) {
+            ordered[position] = resolved.get(last[subset]);
+            subset &= ~(1 << last[subset]);
+        }
+        return ordered;
+    }
+
+    private void collectStatistics(List<Step> resolved) {
+        int count = resolved.size();
+        triples = new double[count];
+        subjects = new double[count];
+        objects = new double[count];
+        selected = new double[count];
+        long individuals = state.getIndividuals().size();
+        PropertyStatistics typeStatistics = null;
+        for (int i = 0; i < count; i++) {
+            Step step = resolved.get(i);
+            PropertyStatistics statistics = switch (step.kind) {
+                case TYPE -> typeStatistics == null ? typeStatistics = state.getInstanceIndex().getStatistics(individuals) : typeStatistics;
+                case OBJECT -> state.getRelationIndex().getStatistics(step.property);
+                case DATA -> state.getValueIndex().getStatistics(step.property);
+            };
+            triples[i] = statistics.getTriples();
+            subjects[i] = Math.max(1, statistics.getSubjects());
+            objects[i] = Math.max(1, statistics.getObjects());
+            selected[i] = -1;
+            if (step.empty) {
+                selected[i] = 0;
+            } else if (step.objectVariable < 0) {
+                selected[i] = switch (step.kind) {
+                    case TYPE -> state.getInstanceIndex().count(step.objectId);
+                    case OBJECT -> state.getRelationIndex().countSubjects(step.objectId, step.property);
+                    case DATA -> state.getValueIndex().count(equality(step, step.objectValue), Long.MAX_VALUE);
+                };
+            } else {
+                for (ValueIndex.Condition condition : step.conditions) {
+                    long matching = state.getValueIndex().count(condition, (long) triples[i]);
+                    selected[i] = selected[i] < 0 ? matching : Math.min(selected[i], matching);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the estimated solutions of the step per solution it starts from, and the work to find them
+     */
+    private double[] estimate(Step step, long bound) {
+        if (step.empty) {
+            return new double[]{0, 1};
+        }
+        boolean subjectBound = step.subjectVariable < 0 || (bound & 1L << step.subjectVariable) != 0;
+        boolean objectBound = step.objectVariable >= 0
+                && ((bound & 1L << step.objectVariable) != 0 || step.objectVariable == step.subjectVariable);
+        double individuals = Math.max(1, state.getIndividuals().size());
+        double t = triples[step.index];
+        double s = subjects[step.index];
+        double o = objects[step.index];
+        double narrowed = selected[step.index];
+
+        if (subjectBound) {
+            // A lookup reads the record of the subject
+            if (narrowed >= 0) {
+                return new double[]{narrowed / s, 1};
+            }
+            return new double[]{objectBound ? Math.min(1, t / (s * o)) : t / s, 1};
+        }
+        if (objectBound) {
+            return new double[]{t / o, t / o};
+        }
+        if (narrowed >= 0) {
+            return new double[]{narrowed, narrowed};
+        }
+        // Nothing narrows the subjects, every individual is read
+        return new double[]{t, individuals};
+    }
+
+    private static ValueIndex.Condition equality(Step step, String value) {
+        return new ValueIndex.Condition(step.property, ValueIndex.Operator.EQUAL, step.type.parse(value));
+    }
+
+    // Evaluation
+
+    private final class Evaluation implements Iterator<Map<String, String>> {
+
+        // The candidate subjects of the step at the same level and the matches read from the current one
+        private final int[][] candidates = new int[steps.length][];
+        private final int[] nextCandidate = new int[steps.length];
+        private final int[] scanEnd = new int[steps.length];        // Id to scan up to when there are no candidates
+        private final CompactIndividual[] individuals = new CompactIndividual[steps.length];
+        private final int[] position = new int[steps.length];
+        private final int[] end = new int[steps.length];
+
+        private final int[] ids = new int[variables.size()];
+        private final String[] literals = new String[variables.size()];
+        private final long[] boundAt = new long[steps.length];     // Variables bound before the step at the same level
+
+        private int level;
+        private long skipped;
+        private long produced;
+        private Map<String, String> next;
+        private boolean done;
+
+        private Evaluation() {
+            long bound = 0;
+            for (int i = 0; i < steps.length; i++) {
+                boundAt[i] = bound;
+                bound |= steps[i].variables();
+            }
+            for (Step step : steps) {
+                if (step.empty) {
+                    done = true;
+                }
+            }
+            if (!done) {
+                open(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !done) {
+                if (query.getLimit() != null && produced >= query.getLimit()) {
+                    done = true;
+                } else if (advance()) {
+                    if (skipped < query.getOffset()) {
+                        skipped++;
+                    } else {
+                        produced++;
+                        next = solution();
+                    }
+                } else {
+                    done = true;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map<String, String> solution = next;
+            next = null;
+            return solution;
+        }
+
+        // Moves to the next solution of all steps, false when there is none left
+        private boolean advance() {
+            while (level >= 0) {
+                if (!match(level)) {
+                    level--;
+                } else if (passes(filters[level])) {
+                    if (level == steps.length - 1) {
+                        return true;
+                    }
+                    open(++level);
+                }
+            }
+            return false;
+        }
+
+        private Map<String, String> solution() {
+            Map<String, String> solution = new LinkedHashMap<>();
+            for (int variable : projection) {
+                solution.put(variableNames[variable], value(variable));
+            }
+            return solution;
+        }
+
+        private String value(int variable) {
+            return switch (variableKinds.get(variable)) {
+                case INDIVIDUAL -> state.getIndividualIds().name(ids[variable]);
+                case CLASS -> state.getClassIds().name(ids[variable]);
+                case LITERAL -> literals[variable];
+            };
+        }
+
+        private boolean isBound(int level, int variable) {
+            return (boundAt[level] & 1L << variable) != 0;
+        }
+
+        // Narrows the candidate subjects of the step through an index where its bound terms allow it
+        private void open(int level) {
+            Step step = steps[level];
+            individuals[level] = null;
+            nextCandidate[level] = 0;
+            candidates[level] = null;
+            boolean subjectBound = step.subjectVariable < 0 || isBound(level, step.subjectVariable);
+            boolean objectBound = step.objectVariable < 0 || isBound(level, step.objectVariable);
+            if (subjectBound) {
+                candidates[level] = new int[]{step.subjectVariable < 0 ? step.subjectId : ids[step.subjectVariable]};
+            } else if (objectBound && step.objectVariable != step.subjectVariable) {
+                candidates[level] = switch (step.kind) {
+                    case TYPE -> state.getInstanceIndex().getInstances(objectId(step));
+                    case OBJECT -> state.getRelationIndex().getSubjectIds(objectId(step), step.property);
+                    case DATA -> {
+                        String value = step.objectVariable < 0 ? step.objectValue : literals[step.objectVariable];
+                        yield step.type.parse(value) == null ? CompactIndividual.NO_IDS
+                                : state.getValueIndex().find(List.of(equality(step, value)));
+                    }
+                };
+            } else if (!step.conditions.isEmpty()) {
+                candidates[level] = state.getValueIndex().find(step.conditions);
+            } else {
+                scanEnd[level] = state.getIndividualIds().size();
+            }
+        }
+
+        private int objectId(Step step) {
+            return step.objectVariable < 0 ? step.objectId : ids[step.objectVariable];
+        }
+
+        // Binds the next match of the step, false when its candidates are used up
+        private boolean match(int level) {
+            Step step = steps[level];
+            while (true) {
+                CompactIndividual individual = individuals[level];
+                if (individual != null && matchRecord(level, step, individual)) {
+                    return true;
+                }
+                individuals[level] = null;
+                int subject = nextSubject(level);
+                if (subject < 0) {
+                    return false;
+                }
+                individual = state.getIndividuals().get(subject);
+                if (individual != null && seek(level, step, individual)) {
+                    individuals[level] = individual;
+                    if (step.subjectVariable >= 0) {
+                        ids[step.subjectVariable] = subject;
+                    }
+                }
+            }
+        }
+
+        private int nextSubject(int level) {
+            if (nextCandidate[level] < 0) {
+                return -1;
+            }
+            int[] levelCandidates = candidates[level];
+            int limit = levelCandidates == null ? scanEnd[level] : levelCandidates.length;
+            if (nextCandidate[level] >= limit) {
+                nextCandidate[level] = -1;
+                return -1;
+            }
+            int index = nextCandidate[level]++;
+            return levelCandidates == null ? index : levelCandidates[index];
+        }
+
+        // Finds the values of the property in the record of the individual, false when it has none
+        private boolean seek(int level, Step step, CompactIndividual individual) {
+            if (step.kind == PredicateKind.TYPE) {
+                position[level] = 0;
+                end[level] = individual.getClassIds().length;
+                return end[level] > 0;
+            }
+            int[] relations = step.kind == PredicateKind.OBJECT ? individual.getObjectRelations() : individual.getDataRelations();
+            if (relations == null) {
+                return false;
+            }
+            for (int at = 0; at < relations.length; at += 2 + relations[at + 1]) {
+                if (relations[at] == step.property) {
+                    position[level] = at + 2;
+                    end[level] = at + 2 + relations[at + 1];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Binds the next value of the record that matches the bound object, a bound object matches at most once
+        private boolean matchRecord(int level, Step step, CompactIndividual individual) {
+            boolean objectBound = step.objectVariable < 0 || isBound(level, step.objectVariable)
+                    || step.objectVariable == step.subjectVariable;
+            int[] values = switch (step.kind) {
+                case TYPE -> individual.getClassIds();
+                case OBJECT -> individual.getObjectRelations();
+                case DATA -> individual.getDataRelations();
+            };
+            while (position[level] < end[level]) {
+                int value = values[position[level]++];
+                if (step.kind == PredicateKind.DATA) {
+                    String literal = state.getValueIds().name(value);
+                    if (!objectBound) {
+                        literals[step.objectVariable] = literal;
+                        return true;
+                    }
+                    String expected = step.objectVariable < 0 ? step.objectValue : literals[step.objectVariable];
+                    if (equal(step.type, literal, expected)) {
+                        position[level] = end[level];
+                        return true;
+                    }
+                } else if (!objectBound) {
+                    ids[step.objectVariable] = value;
+                    return true;
+                } else if (value == (step.objectVariable == step.subjectVariable ? individual.getId() : objectId(step))) {
+                    position[level] = end[level];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean passes(List<Filter> levelFilters) {
+            for (Filter filter : levelFilters) {
+                ValueIndex.ValueType type = filter.leftVariable >= 0 && literalTypes.get(filter.leftVariable) != null
+                        ? literalTypes.get(filter.leftVariable)
+                        : filter.rightVariable >= 0 && literalTypes.get(filter.rightVariable) != null
+                        ? literalTypes.get(filter.rightVariable) : ValueIndex.ValueType.STRING;
+                String left = filter.leftVariable >= 0 ? value(filter.leftVariable) : filter.leftValue;
+                String right = filter.rightVariable >= 0 ? value(filter.rightVariable) : filter.rightValue;
+                if (!holds(type, left, filter.operator, filter.negated, right)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Values that do not parse as the type compare as neither equal nor unequal
+    private static boolean holds(ValueIndex.ValueType type, String left, ValueIndex.Operator operator, boolean negated, String right) {
+        Object leftValue = type.parse(left);
+        Object rightValue = type.parse(right);
+        if (leftValue == null || rightValue == null) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        int comparison = ((Comparable<Object>) leftValue).compareTo(rightValue);
+        return switch (operator) {
+            case EQUAL -> negated != (comparison == 0);
+            case LESS -> comparison < 0;
+            case LESS_OR_EQUAL -> comparison <= 0;
+            case GREATER -> comparison > 0;
+            case GREATER_OR_EQUAL -> comparison >= 0;
+        };
+    }
+
+    private static boolean equal(ValueIndex.ValueType type, String left, String right) {
+        return holds(type, left, ValueIndex.Operator.EQUAL, false, right);
+    }
+}
@@ -0,0 +1,229 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact storage of the individuals of one ontology. The names of individuals, classes and properties and the data
+ * property values are interned into dense int ids, so every name and value is held once however often it is
+ * referenced, and every individual is kept as a {@link CompactIndividual} holding its classes and relations in
+ * primitive arrays. Like names, values are never released, which costs little as long as values repeat. The API models are only
+ * materialized when an individual is read.
+ * <p>
+ * Individuals can be looked up by name, in unique name order for paging, and by id for walking their relations.
+ * Writers hold the individual lock, except while a state that is not published yet is populated.
+ */
+class IndividualStore {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final NameDictionary individualIds;
+    private final NameDictionary classIds;
+    private final NameDictionary propertyIds;
+    private final NameDictionary valueIds;
+
+    private final ConcurrentNavigableMap<String, CompactIndividual> byName = new ConcurrentSkipListMap<>();
+    // Chunks are never copied once created, so a slot set by a writer cannot get lost when the outer array grows
+    private volatile AtomicReferenceArray<CompactIndividual>[] byId = newChunks(16);
+
+    IndividualStore(NameDictionary individualIds, NameDictionary classIds, NameDictionary propertyIds, NameDictionary valueIds) {
+        this.individualIds = individualIds;
+        this.classIds = classIds;
+        this.propertyIds = propertyIds;
+        this.valueIds = valueIds;
+    }
+
+    /**
+     * Converts the API model into its compact form, interning all of its names.
+     */
+    CompactIndividual intern(OntologyIndividualAPI individual) {
+        int id = individualIds.id(individual.getUniqueName());
+
+        List<String> classNames = individual.getClassNames();
+        if (classNames == null) {
+            String className = individual.getClassName();
+            classNames = className == null || className.isEmpty() ? List.of() : List.of(className);
+        }
+        int[] classes = classNames.isEmpty() ? CompactIndividual.NO_IDS : new int[classNames.size()];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = classIds.id(classNames.get(i));
+        }
+
+        int[] objectRelations = null;
+        if (individual.getObjectPropertyRelations() != null) {
+            objectRelations = encode(individual.getObjectPropertyRelations(), individualIds::id);
+        }
+        int[] dataRelations = null;
+        if (individual.getFilledDataProperties() != null) {
+            dataRelations = encode(individual.getFilledDataProperties(), valueIds::id);
+        }
+        return new CompactIndividual(id, individual.getLabel(), individual.getComment(), classes, objectRelations, dataRelations);
+    }
+
+    /**
+     * @return the individual with the same name that was replaced, or null
+     */
+    CompactIndividual put(CompactIndividual individual) {
+        CompactIndividual previous = byName.put(individualIds.name(individual.getId()), individual);
+        chunk(individual.getId(), true).set(individual.getId() & (CHUNK_SIZE - 1), individual);
+        return previous;
+    }
+
+    /**
+     * @return the removed individual, or null if there is none with the name
+     */
+    CompactIndividual remove(String uniqueName) {
+        CompactIndividual removed = byName.remove(uniqueName);
+        if (removed != null) {
+            chunk(removed.getId(), false).set(removed.getId() & (CHUNK_SIZE - 1), null);
+        }
+        return removed;
+    }
+
+    OntologyIndividualAPI get(String uniqueName) {
+        CompactIndividual individual = byName.get(uniqueName);
+        return individual == null ? null : materialize(individual);
+    }
+
+    CompactIndividual get(int id) {
+        AtomicReferenceArray<CompactIndividual> chunk = chunk(id, false);
+        return chunk == null ? null : chunk.get(id & (CHUNK_SIZE - 1));
+    }
+
+    boolean contains(String uniqueName) {
+        return byName.containsKey(uniqueName);
+    }
+
+    int size() {
+        return byName.size();
+    }
+
+    /**
+     * @return the compact individuals in unique name order
+     */
+    ConcurrentNavigableMap<String, CompactIndividual> records() {
+        return byName;
+    }
+
+    /**
+     * @return a read-only view of the individuals in unique name order, materialized one at a time while iterating
+     */
+    Collection<OntologyIndividualAPI> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<OntologyIndividualAPI> iterator() {
+                Iterator<CompactIndividual> records = byName.values().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return records.hasNext();
+                    }
+
+                    @Override
+                    public OntologyIndividualAPI next() {
+                        return materialize(records.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return byName.size();
+            }
+        };
+    }
+
+    OntologyIndividualAPI materialize(CompactIndividual individual) {
+        List<String> classNames = new ArrayList<>(individual.getClassIds().length);
+        for (int classId : individual.getClassIds()) {
+            classNames.add(classIds.name(classId));
+        }
+        Map<String, List<String>> objectPropertyRelations = individual.getObjectRelations() == null
+                ? null : decode(individual.getObjectRelations(), individualIds::name);
+        Map<String, List<String>> filledDataProperties = individual.getDataRelations() == null
+                ? null : decode(individual.getDataRelations(), valueIds::name);
+        return new OntologyIndividualAPI(individualIds.name(individual.getId()), classNames.isEmpty() ? "" : classNames.get(0),
+                individual.getLabel(), individual.getComment(), objectPropertyRelations, filledDataProperties, classNames);
+    }
+
+    String getPropertyName(int propertyId) {
+        return propertyIds.name(propertyId);
+    }
+
+    String getValue(int valueId) {
+        return valueIds.name(valueId);
+    }
+
+    private interface ValueEncoder {
+        int encode(String value);
+    }
+
+    private interface ValueDecoder {
+        String decode(int value);
+    }
+
+    private int[] encode(Map<String, List<String>> relations, ValueEncoder encoder) {
+        int length = 0;
+        for (List<String> values : relations.values()) {
+            length += 2 + values.size();
+        }
+        int[] encoded = new int[length];
+        int position = 0;
+        for (Map.Entry<String, List<String>> relation : relations.entrySet()) {
+            encoded[position++] = propertyIds.id(relation.getKey());
+            encoded[position++] = relation.getValue().size();
+            for (String value : relation.getValue()) {
+                encoded[position++] = encoder.encode(value);
+            }
+        }
+        return encoded;
+    }
+
+    private Map<String, List<String>> decode(int[] encoded, ValueDecoder decoder) {
+        Map<String, List<String>> relations = new LinkedHashMap<>();
+        int position = 0;
+        while (position < encoded.length) {
+            String property = propertyIds.name(encoded[position++]);
+            int count = encoded[position++];
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(decoder.decode(encoded[position++]));
+            }
+            relations.put(property, values);
+        }
+        return relations;
+    }
+
+    private AtomicReferenceArray<CompactIndividual> chunk(int id, boolean create) {
+        int index = id >>> CHUNK_BITS;
+        AtomicReferenceArray<CompactIndividual>[] chunks = byId;
+        if (index < chunks.length && chunks[index] != null) {
+            return chunks[index];
+        }
+        if (!create) {
+            return null;
+        }
+        synchronized (this) {
+            chunks = byId;
+            if (index >= chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(index + 1, chunks.length * 2));
+            }
+            if (chunks[index] == null) {
+                chunks[index] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            }
+            // Republishing the outer array makes the new chunk visible to readers
+            byId = chunks;
+            return chunks[index];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<CompactIndividual>[] newChunks(int length) {
+        return new AtomicReferenceArray[length];
+    }
+}
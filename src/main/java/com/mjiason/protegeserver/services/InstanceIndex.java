@@ -0,0 +1,115 @@
+package com.mjiason.protegeserver.services;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Posting lists from class ids to the ids of the individuals asserted to be of that class.
+ * Writers hold the individual lock, readers only ever see whole posting lists.
+ */
+class InstanceIndex {
+
+    private final NameDictionary classIds;
+    private final Map<Integer, IntSet> instancesByClass = new ConcurrentHashMap<>();
+
+    InstanceIndex(NameDictionary classIds) {
+        this.classIds = classIds;
+    }
+
+    void add(CompactIndividual individual) {
+        for (int classId : individual.getClassIds()) {
+            instancesByClass.computeIfAbsent(classId, k -> new IntSet()).add(individual.getId());
+        }
+    }
+
+    void remove(CompactIndividual individual) {
+        for (int classId : individual.getClassIds()) {
+            IntSet instances = instancesByClass.get(classId);
+            if (instances != null) {
+                instances.remove(individual.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the instances of the class, in increasing order
+     */
+    int[] getInstances(int classId) {
+        IntSet instances = instancesByClass.get(classId);
+        return instances == null ? CompactIndividual.NO_IDS : instances.toArray();
+    }
+
+    /**
+     * @return the number of instances of the class
+     */
+    int count(int classId) {
+        IntSet instances = instancesByClass.get(classId);
+        return instances == null ? 0 : instances.size();
+    }
+
+    /**
+     * @param individuals the number of individuals in the store
+     * @return the cardinalities of class membership, counted over the posting lists of all classes
+     */
+    PropertyStatistics getStatistics(long individuals) {
+        long memberships = 0;
+        long classes = 0;
+        for (IntSet instances : instancesByClass.values()) {
+            int count = instances.size();
+            memberships += count;
+            classes += count > 0 ? 1 : 0;
+        }
+        PropertyStatistics statistics = new PropertyStatistics();
+        // Nearly every individual is of some class
+        statistics.update(memberships, Math.min(memberships, individuals), classes);
+        return statistics;
+    }
+
+    /**
+     * Collects the instances of any of the given classes, merged into one increasing sequence of ids.
+     *
+     * @param after the id to start after, -1 to start at the beginning
+     * @param max   the maximum number of ids to return
+     */
+    int[] getInstances(Collection<String> classNames, int after, int max) {
+        List<int[]> slices = new ArrayList<>();
+        long total = 0;
+        for (String className : classNames) {
+            int classId = classIds.find(className);
+            IntSet instances = classId < 0 ? null : instancesByClass.get(classId);
+            if (instances != null) {
+                int[] slice = instances.after(after, max);
+                if (slice.length > 0) {
+                    slices.add(slice);
+                    total += slice.length;
+                }
+            }
+        }
+        if (slices.isEmpty()) {
+            return new int[0];
+        }
+        if (slices.size() == 1) {
+            return slices.get(0);
+        }
+
+        // k-way merge of the sorted slices, an individual of several of the classes is returned once
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator.comparingInt(head -> slices.get(head[0])[head[1]]));
+        for (int i = 0; i < slices.size(); i++) {
+            heads.add(new int[]{i, 0});
+        }
+        int[] merged = new int[(int) Math.min(max, total)];
+        int size = 0;
+        while (!heads.isEmpty() && size < max) {
+            int[] head = heads.poll();
+            int[] slice = slices.get(head[0]);
+            int value = slice[head[1]];
+            if (size == 0 || merged[size - 1] != value) {
+                merged[size++] = value;
+            }
+            if (++head[1] < slice.length) {
+                heads.add(head);
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+}
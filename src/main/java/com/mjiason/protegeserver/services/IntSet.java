@@ -0,0 +1,69 @@
+package com.mjiason.protegeserver.services;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of ints backed by a primitive array, used as posting list. Adding ids in increasing order appends in
+ * amortized constant time, other insertions and removals shift the tail of the array.
+ */
+class IntSet {
+
+    private int[] values = new int[4];
+    private int size;
+
+    synchronized boolean add(int value) {
+        if (size > 0 && values[size - 1] < value) {
+            ensureCapacity();
+            values[size++] = value;
+            return true;
+        }
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        int insertAt = -index - 1;
+        ensureCapacity();
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = value;
+        size++;
+        return true;
+    }
+
+    synchronized boolean remove(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    synchronized boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return up to max values greater than after, in increasing order
+     */
+    synchronized int[] after(int after, int max) {
+        int index = Arrays.binarySearch(values, 0, size, after);
+        int from = index >= 0 ? index + 1 : -index - 1;
+        int to = (int) Math.min(size, (long) from + max);
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    private void ensureCapacity() {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+    }
+}
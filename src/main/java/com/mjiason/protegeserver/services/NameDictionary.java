@@ -0,0 +1,95 @@
+package com.mjiason.protegeserver.services;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Assigns dense int ids to unique names so indexes can store primitive ints instead of strings. Ids are never reused,
+ * a name that is removed and added again gets its old id back.
+ * <p>
+ * Names are found through an open addressing table of ids rather than a map of boxed ids, so a name costs a few bytes
+ * beyond the string itself. Lookups do not lock: assigning writes the name before its slot, and a resize fills a new
+ * table that is published once complete.
+ * <p>
+ * An id is only handed to readers through an index that was updated after the id was assigned, which orders the write
+ * of the name before any read of it.
+ */
+class NameDictionary {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    // Id + 1 of the name hashed to the slot or to an earlier one in its probe sequence, 0 for a free slot
+    private volatile AtomicIntegerArray slots = new AtomicIntegerArray(INITIAL_CAPACITY * 2);
+    private volatile int size;
+
+    /**
+     * @return the id of the name, a new one is assigned if the name has none yet
+     */
+    int id(String name) {
+        int id = find(name);
+        return id >= 0 ? id : assign(name);
+    }
+
+    /**
+     * @return the id of the name, or -1 if it was never assigned one
+     */
+    int find(String name) {
+        AtomicIntegerArray table = slots;
+        int mask = table.length() - 1;
+        for (int slot = spread(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (name.equals(names[entry - 1])) {
+                return entry - 1;
+            }
+        }
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private synchronized int assign(String name) {
+        int existing = find(name);
+        if (existing >= 0) {
+            return existing;
+        }
+        int id = size;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = name;
+        // Keeping the table at most half full keeps probe sequences short
+        if ((id + 1) * 2 > slots.length()) {
+            AtomicIntegerArray table = new AtomicIntegerArray(slots.length() * 2);
+            for (int i = 0; i < id; i++) {
+                insert(table, i);
+            }
+            slots = table;
+        }
+        insert(slots, id);
+        size = id + 1;
+        return id;
+    }
+
+    private void insert(AtomicIntegerArray table, int id) {
+        int mask = table.length() - 1;
+        int slot = spread(names[id].hashCode()) & mask;
+        while (table.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.set(slot, id + 1);
+    }
+
+    // Mixes the high bits of the hash into the low ones the mask keeps
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B1;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import lombok.Value;
+
+/**
+ * A single in-memory edit made by {@link OntologyStorageService}, as it is written to the write-ahead log and the change feed.
+ * For {@link Operation#ADD} the entity is the stored API model, for {@link Operation#REMOVE} it is the model that was removed.
+ */
+@Value
+public class OntologyChange {
+
+    public enum Operation {
+        ADD,
+        REMOVE
+    }
+
+    Operation operation;    // What happened to the entity
+    EntityKind kind;        // Which entity collection was touched
+    String uniqueName;      // Unique name of the entity
+    Object entity;          // OntologyClassAPI, OntologyObjectPropertyAPI, OntologyDataPropertyAPI or OntologyIndividualAPI
+}
@@ -0,0 +1,95 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The entities edited in memory since their axioms were last written to the backing OWLOntology. Entries are recorded
+ * by the mutation methods of {@link OntologyStorageService} and consumed by
+ * {@link OntologyStorageService#applyChangesToOntology()}, which writes the current model of every entity in the
+ * journal, or drops the entity's axioms when it is gone.
+ * <p>
+ * Only the kind and the name of an entity are kept, individuals as their dictionary id, and an entity edited several
+ * times is held once. The journal therefore never outgrows the entity store, even when it is never applied because
+ * nothing is persisted.
+ */
+class OntologyChangeJournal {
+
+    private final NameDictionary individualIds;
+
+    // Guarded by this
+    private Pending pending = new Pending();
+    private long nextSequence = 1;
+    // Sequence of the latest entry of each kind, kept after the entries are applied so views can tell they are stale
+    private final Map<EntityKind, Long> lastSequences = new EnumMap<>(EntityKind.class);
+
+    OntologyChangeJournal(NameDictionary individualIds) {
+        this.individualIds = individualIds;
+    }
+
+    /**
+     * Records an edit of the entity. Called after the entity was stored or removed, so applying the journal sees the edit.
+     */
+    synchronized void record(EntityKind kind, String uniqueName) {
+        if (kind == EntityKind.INDIVIDUAL) {
+            pending.individuals.set(individualIds.id(uniqueName));
+        } else {
+            pending.names.computeIfAbsent(kind, k -> new HashSet<>()).add(uniqueName);
+        }
+        lastSequences.put(kind, nextSequence++);
+    }
+
+    /**
+     * Takes every recorded entry out of the journal. Edits recorded afterwards are picked up by the next call, and
+     * entries that could not be applied are handed back through {@link #restore(Pending)}.
+     */
+    synchronized Pending drain() {
+        Pending drained = pending;
+        pending = new Pending();
+        return drained;
+    }
+
+    synchronized void restore(Pending drained) {
+        pending.individuals.or(drained.individuals);
+        drained.names.forEach((kind, names) -> pending.names.computeIfAbsent(kind, k -> new HashSet<>()).addAll(names));
+    }
+
+    /**
+     * @return the sequence of the latest entry of the kind ever recorded, 0 if there was none
+     */
+    synchronized long lastSequence(EntityKind kind) {
+        return lastSequences.getOrDefault(kind, 0L);
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    // Entries taken out of the journal together: names of classes and properties, ids of individuals
+    static final class Pending {
+
+        private final Map<EntityKind, Set<String>> names = new EnumMap<>(EntityKind.class);
+        private final BitSet individuals = new BitSet();
+
+        Set<String> getNames(EntityKind kind) {
+            return names.getOrDefault(kind, Set.of());
+        }
+
+        BitSet getIndividuals() {
+            return individuals;
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+
+        int size() {
+            return individuals.cardinality() + names.values().stream().mapToInt(Set::size).sum();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.mjiason.protegeserver.services;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.mjiason.protegeserver.models.OntologyImportAPI;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.ManchesterSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.OWLXMLDocumentFormat;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.io.OWLOntologyDocumentSourceBase;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Imports ontologies straight from a request body and keeps track of the progress of running and recent imports.
+ * Imports are tracked per ontology, so every ontology only lists and reports its own ones.
+ * <p>
+ * The body is handed to a single OWLAPI parser chosen from the content type, so it is parsed as it arrives without
+ * being copied to a temporary file or buffered in memory first.
+ */
+@Service
+public class OntologyImportService {
+
+    private static final int RECENT_IMPORTS = 32;
+    private static final int DECOMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    private final long maxUploadSize;
+
+    // Guarded by itself. Weakly keyed by the store, so the imports of a deleted ontology go away along with it
+    private final Map<OntologyStorageService, Map<String, ImportTask>> imports = new WeakHashMap<>();
+
+    public OntologyImportService(@Value("${protege.upload.max-size:4GB}") DataSize maxUploadSize) {
+        this.maxUploadSize = maxUploadSize.toBytes();
+    }
+
+    /**
+     * Parses the body and publishes the result as the current ontology of the given store.
+     *
+     * @param target          the store of the ontology to replace
+     * @param importId        identifier to report progress under, a random one is generated when null
+     * @param body            the raw request body
+     * @param contentEncoding gzip, deflate, zstd or identity, null means identity
+     * @param contentType     the serialization of the ontology, RDF/XML is assumed when it is not recognized
+     * @return the final progress of the import
+     */
+    public OntologyImportAPI importOntology(OntologyStorageService target, String importId, InputStream body,
+                                            String contentEncoding, String contentType) {
+        ImportTask task = startImport(target, importId == null || importId.isEmpty() ? UUID.randomUUID().toString() : importId);
+        try {
+            CountingInputStream input = new CountingInputStream(decompress(body, contentEncoding), task.bytesRead, maxUploadSize);
+            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+
+            OWLOntology loadedOntology;
+            try {
+                loadedOntology = manager.loadOntologyFromOntologyDocument(new InputStreamSource(input, getFormat(contentType)));
+            } catch (Exception e) {
+                if (input.limitExceeded) {
+                    throw new UploadTooLargeException("Upload exceeds the maximum size of " + maxUploadSize + " bytes");
+                }
+                // OWLAPI messages include the full parser logs, the first line is enough for the client
+                String message = String.valueOf(e.getMessage()).lines().findFirst().orElse("");
+                throw new ValidationException("Could not parse ontology: " + message);
+            }
+
+            task.axiomsRead.set(loadedOntology.getAxiomCount());
+            target.populateOntologyFromOWL(loadedOntology);
+            task.finish(OntologyImportAPI.Status.COMPLETED, null);
+            return task.toAPI();
+        } catch (IOException e) {
+            task.finish(OntologyImportAPI.Status.FAILED, e.getMessage());
+            throw new ValidationException("Could not read upload: " + e.getMessage());
+        } catch (RuntimeException e) {
+            task.finish(OntologyImportAPI.Status.FAILED, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * @param target the store the import was started for
+     */
+    public OntologyImportAPI getImport(OntologyStorageService target, String importId) {
+        synchronized (imports) {
+            ImportTask task = imports.getOrDefault(target, Map.of()).get(importId);
+            if (task == null) {
+                throw new EntityNotFoundException("Import not found: " + importId);
+            }
+            return task.toAPI();
+        }
+    }
+
+    /**
+     * @param target the store to list the running and recent imports of
+     */
+    public List<OntologyImportAPI> getAllImports(OntologyStorageService target) {
+        synchronized (imports) {
+            return imports.getOrDefault(target, Map.of()).values().stream().map(ImportTask::toAPI).toList();
+        }
+    }
+
+    private ImportTask startImport(OntologyStorageService target, String importId) {
+        synchronized (imports) {
+            Map<String, ImportTask> targetImports = imports.computeIfAbsent(target, k -> new LinkedHashMap<>());
+            ImportTask existing = targetImports.get(importId);
+            if (existing != null && existing.status == OntologyImportAPI.Status.RUNNING) {
+                throw new ValidationException("Import '" + importId + "' is already running.");
+            }
+            ImportTask task = new ImportTask(importId);
+            targetImports.remove(importId);
+            targetImports.put(importId, task);
+
+            // Forget the oldest finished imports of the ontology
+            Iterator<ImportTask> iterator = targetImports.values().iterator();
+            while (targetImports.size() > RECENT_IMPORTS && iterator.hasNext()) {
+                if (iterator.next().status != OntologyImportAPI.Status.RUNNING) {
+                    iterator.remove();
+                }
+            }
+            return task;
+        }
+    }
+
+    private static InputStream decompress(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "", "identity" -> body;
+            case "gzip", "x-gzip" -> new GZIPInputStream(body, DECOMPRESSION_BUFFER_SIZE);
+            case "deflate" -> new InflaterInputStream(body);
+            case "zstd" -> new ZstdInputStream(body);
+            default -> throw new ValidationException("Unsupported content encoding: " + contentEncoding);
+        };
+    }
+
+    private static OWLDocumentFormat getFormat(String contentType) {
+        String mimeType = contentType == null ? "" : contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        return switch (mimeType) {
+            case "application/owl+xml" -> new OWLXMLDocumentFormat();
+            case "text/turtle", "application/x-turtle" -> new TurtleDocumentFormat();
+            case "text/owl-functional" -> new FunctionalSyntaxDocumentFormat();
+            case "text/owl-manchester" -> new ManchesterSyntaxDocumentFormat();
+            default -> new RDFXMLDocumentFormat();
+        };
+    }
+
+    // Progress of one import, the counters are updated by the parsing thread and read by the progress endpoint. The
+    // ontology being parsed is never touched by readers, its manager is not thread safe, so progress while running is
+    // the number of bytes the parser consumed and the axioms are counted once parsing is done.
+    private static class ImportTask {
+        private final String importId;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong axiomsRead = new AtomicLong();
+        private volatile OntologyImportAPI.Status status = OntologyImportAPI.Status.RUNNING;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        ImportTask(String importId) {
+            this.importId = importId;
+        }
+
+        void finish(OntologyImportAPI.Status finalStatus, String message) {
+            error = message;
+            finishedAt = Instant.now();
+            status = finalStatus;
+        }
+
+        OntologyImportAPI toAPI() {
+            return new OntologyImportAPI(importId, status, bytesRead.get(), axiomsRead.get(), startedAt, finishedAt, error);
+        }
+    }
+
+    // Counts the bytes handed to the parser and fails the read once the limit is passed
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+        private final long limit;
+        private volatile boolean limitExceeded;
+
+        CountingInputStream(InputStream in, AtomicLong count, long limit) {
+            super(in);
+            this.count = count;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws IOException {
+            if (count.addAndGet(bytes) > limit) {
+                limitExceeded = true;
+                throw new IOException("Upload exceeds the maximum size of " + limit + " bytes");
+            }
+        }
+    }
+
+    // Hands the stream to exactly one parser, unlike StreamDocumentSource which first copies the whole stream into memory
+    private static class InputStreamSource extends OWLOntologyDocumentSourceBase {
+        private final InputStream inputStream;
+
+        InputStreamSource(InputStream inputStream, OWLDocumentFormat format) {
+            super("inputstream:ontology", format, null);
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public Optional<InputStream> getInputStream() {
+            return Optional.of(inputStream);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.NamedOntologyAPI;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Named ontologies served next to the default one. Every named ontology has its own {@link OntologyStorageService}
+ * with its own entity maps, locks, snapshot and write-ahead log in a directory of its own below the storage directory,
+ * so writers of one ontology never wait for another.
+ * <p>
+ * Named ontologies are loaded when they are first used. Requests hold a {@link Lease} on the ontology while they use
+ * it, and when the estimated heap of the loaded ontologies exceeds the memory budget the least recently used ones
+ * without a lease are unloaded. Their edits are kept in their write-ahead logs, so unloading loses nothing. A store is
+ * never closed while it is leased, neither by unloading nor by deleting the ontology.
+ */
+@Service
+public class OntologyRegistry {
+
+    private static final String ONTOLOGIES = "ontologies";
+    private static final Pattern ONTOLOGY_ID = Pattern.compile("[A-Za-z0-9._-]+");
+    // Estimating walks the entity maps, so edits growing an ontology are checked against the budget at most this often
+    private static final long EVICTION_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // A new ontology starts out as an empty document, the storage service loads it like any saved ontology
+    private static final String EMPTY_ONTOLOGY = """
+            <?xml version="1.0"?>
+            <rdf:RDF xmlns="http://www.semanticweb.org/ontologies/%1$s/"
+                 xml:base="http://www.semanticweb.org/ontologies/%1$s/"
+                 xmlns:owl="http://www.w3.org/2002/07/owl#"
+                 xmlns:rdf="http://www.w3.org/1999/02/22-rdf-syntax-ns#"
+                 xmlns:xml="http://www.w3.org/XML/1998/namespace"
+                 xmlns:xsd="http://www.w3.org/2001/XMLSchema#"
+                 xmlns:rdfs="http://www.w3.org/2000/01/rdf-schema#">
+                <owl:Ontology rdf:about="http://www.semanticweb.org/ontologies/%1$s"/>
+            </rdf:RDF>
+            """;
+
+    /**
+     * Access to one ontology for the duration of a request. A named ontology is not unloaded while it is leased.
+     */
+    public final class Lease implements AutoCloseable {
+        private final OntologyStorageService storageService;
+        private final Entry entry;      // Null for the default ontology, which is never unloaded
+        private boolean released;
+
+        private Lease(OntologyStorageService storageService, Entry entry) {
+            this.storageService = storageService;
+            this.entry = entry;
+        }
+
+        public OntologyStorageService getStorageService() {
+            return storageService;
+        }
+
+        @Override
+        public void close() {
+            if (entry != null && !released) {
+                released = true;
+                release(entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String ontologyId;
+        private final Path directory;
+        // Guarded by the entry itself
+        private OntologyStorageService storageService;  // Null while the ontology is not loaded
+        private int leases;             // Deleting waits on the entry until the last lease is released
+        private long lastAccess;
+        private boolean deleted;
+
+        private Entry(String ontologyId, Path directory) {
+            this.ontologyId = ontologyId;
+            this.directory = directory;
+        }
+    }
+
+    private final OntologyStorageService defaultStorageService;
+    private final Path ontologiesDirectory;     // Null when nothing is persisted, named ontologies are disabled then
+    private final long memoryBudget;
+
+    // Settings handed to the storage service of every named ontology
+    private final int loadParallelism;
+    private final String fsyncPolicy;
+    private final Duration fsyncInterval;
+    private final Duration compactionInterval;
+    private final DataSize compactionSize;
+    private final int changeFeedCapacity;
+
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+    // Set when the last eviction could not get below the budget, so releasing a lease tries again
+    private volatile boolean overBudget;
+    private volatile long lastEvictionCheck = System.nanoTime();
+
+    public OntologyRegistry(OntologyStorageService defaultStorageService,
+                            @Value("${protege.load.parallelism:1}") int loadParallelism,
+                            @Value("${protege.storage.dir:}") String storageDirectory,
+                            @Value("${protege.wal.fsync:batch}") String fsyncPolicy,
+                            @Value("${protege.wal.fsync-interval:200ms}") Duration fsyncInterval,
+                            @Value("${protege.wal.compaction-interval:1m}") Duration compactionInterval,
+                            @Value("${protege.wal.compaction-size:64MB}") DataSize compactionSize,
+                            @Value("${protege.ontologies.memory-budget:4GB}") DataSize memoryBudget,
+                            @Value("${protege.feed.capacity:10000}") int changeFeedCapacity) {
+        this.defaultStorageService = defaultStorageService;
+        this.ontologiesDirectory = storageDirectory.isEmpty() ? null : Path.of(storageDirectory, ONTOLOGIES);
+        this.memoryBudget = memoryBudget.toBytes();
+        this.loadParallelism = loadParallelism;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+        this.compactionInterval = compactionInterval;
+        this.compactionSize = compactionSize;
+        this.changeFeedCapacity = changeFeedCapacity;
+        discoverOntologies();
+    }
+
+    // The ontologies created before the last restart are registered, none of them is loaded yet
+    private void discoverOntologies() {
+        if (ontologiesDirectory == null || !Files.isDirectory(ontologiesDirectory)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.list(ontologiesDirectory)) {
+            directories.filter(Files::isDirectory)
+                    .map(directory -> directory.getFileName().toString())
+                    .filter(OntologyRegistry::isValidId)
+                    .forEach(ontologyId -> entries.put(ontologyId, new Entry(ontologyId, ontologiesDirectory.resolve(ontologyId))));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list the named ontologies", e);
+        }
+    }
+
+    /**
+     * Leases the ontology with the given id, loading it if it is not loaded.
+     *
+     * @param ontologyId id of a named ontology, null for the default ontology
+     */
+    public Lease acquire(String ontologyId) {
+        if (ontologyId == null) {
+            return new Lease(defaultStorageService, null);
+        }
+        Entry entry = getEntry(ontologyId);
+        boolean loaded = false;
+        Lease lease;
+        // Loading holds the entry only, so other ontologies stay available meanwhile
+        synchronized (entry) {
+            if (entry.deleted) {
+                throw new EntityNotFoundException("Ontology not found: " + ontologyId);
+            }
+            if (entry.storageService == null) {
+                entry.storageService = load(entry);
+                loaded = true;
+            }
+            entry.leases++;
+            entry.lastAccess = System.nanoTime();
+            lease = new Lease(entry.storageService, entry);
+        }
+        if (loaded) {
+            evict();
+        }
+        return lease;
+    }
+
+    public NamedOntologyAPI createOntology(String ontologyId) {
+        requireEnabled();
+        if (!isValidId(ontologyId)) {
+            throw new ValidationException("Ontology id must consist of letters, digits, '.', '_' and '-': " + ontologyId);
+        }
+        Entry entry = new Entry(ontologyId, ontologiesDirectory.resolve(ontologyId));
+        synchronized (entry) {
+            if (entries.putIfAbsent(ontologyId, entry) != null) {
+                throw new ValidationException("Ontology already exists: " + ontologyId);
+            }
+            try {
+                Files.createDirectories(entry.directory);
+                Files.writeString(entry.directory.resolve(OntologyStorageService.SAVED_ONTOLOGY),
+                        EMPTY_ONTOLOGY.formatted(ontologyId), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                entries.remove(ontologyId);
+                throw new UncheckedIOException("Could not create ontology " + ontologyId, e);
+            }
+            return toAPI(entry);
+        }
+    }
+
+    public NamedOntologyAPI getOntology(String ontologyId) {
+        Entry entry = getEntry(ontologyId);
+        synchronized (entry) {
+            return toAPI(entry);
+        }
+    }
+
+    public List<NamedOntologyAPI> getAllOntologies() {
+        List<NamedOntologyAPI> ontologies = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                ontologies.add(toAPI(entry));
+            }
+        }
+        return ontologies;
+    }
+
+    /**
+     * Unloads the ontology and deletes its directory. New requests for the ontology fail right away, while requests
+     * still holding a lease are waited for, so their store is not closed under them. Change streams following the
+     * ontology are ended first, as they hold their lease for as long as the client listens.
+     */
+    public void deleteOntology(String ontologyId) {
+        Entry entry = getEntry(ontologyId);
+        synchronized (entry) {
+            if (entry.deleted) {
+                throw new EntityNotFoundException("Ontology not found: " + ontologyId);
+            }
+            entry.deleted = true;
+            if (entry.storageService != null) {
+                entry.storageService.closeChangeFeed();
+            }
+            // Waiting releases the entry, so leases can be released meanwhile. The entry stays registered until the
+            // directory is gone, an ontology created with the same id would otherwise be deleted along with it
+            while (entry.leases > 0) {
+                try {
+                    entry.wait();
+                } catch (InterruptedException e) {
+                    entry.deleted = false;
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while deleting ontology " + ontologyId, e);
+                }
+            }
+            unload(entry);
+            try (Stream<Path> files = Files.walk(entry.directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not delete ontology " + ontologyId, e);
+            } finally {
+                entries.remove(ontologyId, entry);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                unload(entry);
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        boolean idle;
+        synchronized (entry) {
+            entry.leases--;
+            idle = entry.leases == 0;
+            if (idle) {
+                entry.notifyAll();
+            }
+        }
+        if (idle && (overBudget || System.nanoTime() - lastEvictionCheck >= EVICTION_CHECK_INTERVAL)) {
+            evict();
+        }
+    }
+
+    // Unloads the least recently used ontologies without a lease until the estimate fits the budget
+    private synchronized void evict() {
+        long total = defaultStorageService.estimateHeapUsage();
+        List<Entry> idle = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.storageService != null) {
+                    total += entry.storageService.estimateHeapUsage();
+                    if (entry.leases == 0) {
+                        idle.add(entry);
+                    }
+                }
+            }
+        }
+        idle.sort(Comparator.comparingLong(entry -> entry.lastAccess));
+        for (Iterator<Entry> iterator = idle.iterator(); total > memoryBudget && iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            synchronized (entry) {
+                // The entry may have been leased again since it was picked
+                if (entry.leases == 0 && entry.storageService != null) {
+                    total -= entry.storageService.estimateHeapUsage();
+                    unload(entry);
+                    System.out.println("Unloaded ontology " + entry.ontologyId + " to stay within the memory budget");
+                }
+            }
+        }
+        overBudget = total > memoryBudget;
+        lastEvictionCheck = System.nanoTime();
+    }
+
+    private OntologyStorageService load(Entry entry) {
+        return new OntologyStorageService(loadParallelism, entry.directory.toString(), fsyncPolicy,
+                fsyncInterval, compactionInterval, compactionSize, changeFeedCapacity);
+    }
+
+    private static void unload(Entry entry) {
+        if (entry.storageService == null) {
+            return;
+        }
+        try {
+            entry.storageService.close();
+        } catch (IOException e) {
+            System.out.println("Could not close ontology " + entry.ontologyId + ": " + e.getMessage());
+        }
+        entry.storageService = null;
+    }
+
+    private Entry getEntry(String ontologyId) {
+        requireEnabled();
+        Entry entry = entries.get(ontologyId);
+        if (entry == null) {
+            throw new EntityNotFoundException("Ontology not found: " + ontologyId);
+        }
+        return entry;
+    }
+
+    private void requireEnabled() {
+        if (ontologiesDirectory == null) {
+            throw new ValidationException("Named ontologies are disabled, set protege.storage.dir to enable them.");
+        }
+    }
+
+    private static boolean isValidId(String ontologyId) {
+        return ontologyId != null && ONTOLOGY_ID.matcher(ontologyId).matches()
+                && !ontologyId.equals(".") && !ontologyId.equals("..");
+    }
+
+    private static NamedOntologyAPI toAPI(Entry entry) {
+        boolean loaded = entry.storageService != null;
+        return new NamedOntologyAPI(entry.ontologyId, loaded, loaded ? entry.storageService.estimateHeapUsage() : 0);
+    }
+}
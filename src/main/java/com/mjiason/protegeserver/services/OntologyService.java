@@ -1,83 +1,69 @@
 package com.mjiason.protegeserver.services;
 
+import com.mjiason.protegeserver.models.EntityKind;
 import com.mjiason.protegeserver.models.OWLClassShort;
-import lombok.Getter;
-import org.semanticweb.owlapi.apibinding.OWLManager;
-import org.semanticweb.owlapi.model.*;
-import org.semanticweb.owlapi.search.EntitySearcher;
+import com.mjiason.protegeserver.models.OntologyClassAPI;
+import lombok.Value;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-
-
-@Getter
+/**
+ * Read-only views of the default ontology. The ontology is the one held by {@link OntologyStorageService}, so it is
+ * parsed once and only when it is first needed, and the class listing is derived from the indexed classes and cached
+ * until a class is added or removed or another ontology is loaded.
+ */
 @Service
 public class OntologyService {
 
-    private OWLOntology ontology;
-    private OWLDataFactory dataFactory;
+    private final OntologyStorageService storageService;
 
-    public OntologyService() {
-        loadOntology();
+    // The classes of a state as of the given sequence of its journal
+    @Value
+    private static class ClassListing {
+        OntologyState state;
+        long sequence;
+        List<OWLClassShort> classes;
     }
 
-    private void loadOntology() {
-        try {
-            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-            File file = new File("src/main/resources/api-ontology.owl");
-            ontology = manager.loadOntologyFromOntologyDocument(file);
-            dataFactory = manager.getOWLDataFactory();
-            System.out.println("Ontology loaded: " + ontology.getOntologyID());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    public List<OWLClassShort> getOntologyClasses() {
-        List<OWLClassShort> classInfoList = new ArrayList<>();
+    private volatile ClassListing classListing;
 
-        for (OWLClass owlClass : ontology.classesInSignature().toList()) {
-            String className = owlClass.getIRI().getShortForm();
-            String comment = getClassComment(owlClass);
-            String parentClassName = getParentClassName(owlClass);
+    public OntologyService(OntologyStorageService storageService) {
+        this.storageService = storageService;
+    }
 
-            classInfoList.add(new OWLClassShort(className, parentClassName, comment));
-        }
+    public OWLOntology getOntology() {
+        return storageService.getOWLOntology();
+    }
 
-        return classInfoList;
+    public OWLDataFactory getDataFactory() {
+        return OntologyStorageService.getDataFactory();
     }
 
-    /**
-     * Retrieves the comment (rdfs:comment) of a given OWL class.
-     *
-     * @param owlClass The OWL class.
-     * @return The comment as a String, or an empty string if not found.
-     */
-    private String getClassComment(OWLClass owlClass) {
-        for (OWLAnnotation annotation : EntitySearcher.getAnnotations(owlClass, ontology, dataFactory.getRDFSComment()).toList())
-            if (annotation.getValue() instanceof OWLLiteral) {
-                return ((OWLLiteral) annotation.getValue()).getLiteral();
-            }
-        return "";
+    public List<OWLClassShort> getOntologyClasses() {
+        OntologyState current = storageService.getState();
+        // Read before the classes, so a class edit made while listing them leaves the listing stale rather than wrong
+        long sequence = current.getJournal().lastSequence(EntityKind.CLASS);
+        ClassListing listing = classListing;
+        if (listing == null || listing.getState() != current || listing.getSequence() != sequence) {
+            listing = new ClassListing(current, sequence, listClasses(current));
+            classListing = listing;
+        }
+        return listing.getClasses();
     }
 
-    /**
-     * Retrieves the name of the parent class (if any) of a given OWL class.
-     *
-     * @param owlClass The OWL class.
-     * @return The parent class name, or an empty string if there is no parent class.
-     */
-    private String getParentClassName(OWLClass owlClass) {
-        for (OWLSubClassOfAxiom axiom : ontology.subClassAxiomsForSubClass(owlClass).toList()) {
-            OWLClassExpression superClass = axiom.getSuperClass();
-            if (!superClass.isAnonymous()) {
-                return superClass.asOWLClass().getIRI().getShortForm();
-            }
+    // The parent class is the first named superclass and the comment the rdfs:comment, each an empty string if there is none
+    private static List<OWLClassShort> listClasses(OntologyState current) {
+        List<OWLClassShort> classInfoList = new ArrayList<>();
+        for (OntologyClassAPI ontologyClass : current.getOntologyClasses().values()) {
+            String parentClassName = ontologyClass.getParentClass() == null ? "" : ontologyClass.getParentClass();
+            String comment = ontologyClass.getComment() == null ? "" : ontologyClass.getComment();
+            classInfoList.add(new OWLClassShort(ontologyClass.getUniqueName(), parentClassName, comment));
         }
-        return "";
+        return Collections.unmodifiableList(classInfoList);
     }
 }
-
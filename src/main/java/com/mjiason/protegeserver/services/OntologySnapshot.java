@@ -0,0 +1,328 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.*;
+import lombok.Value;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Binary image of the indexed state of an ontology, so a restart does not have to parse the ontology document and
+ * rebuild every entity again.
+ * <p>
+ * The file holds the SHA-256 of the document it was built from, the sequence of the last {@link WriteAheadLog} record
+ * it contains, the name and value dictionaries in id order, the entity tables
+ * and the compact individuals with their relations as they are kept in the {@link IndividualStore}. It is read through
+ * a memory mapping, and because the dictionaries keep their ids the int arrays are restored as they are, without
+ * looking up a single name. The indexes are then rebuilt from the restored individuals.
+ * <p>
+ * Writing goes to a temporary file that replaces the snapshot in one move, so a crash never leaves a torn snapshot.
+ */
+final class OntologySnapshot {
+
+    private static final int MAGIC = 0x50534E50;     // "PSNP"
+    private static final int VERSION = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Largest region mapped at once, a mapping is limited to 2 GB
+    private static final long MAPPING_WINDOW = 1L << 30;
+
+    @Value
+    static class Restored {
+        OntologyState state;    // The restored state, its indexes are not built yet
+        long logSequence;       // Sequence of the last write-ahead log record contained in the state
+    }
+
+    private OntologySnapshot() {
+    }
+
+    /**
+     * @return the hex encoded SHA-256 of the file
+     */
+    static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @param logSequence sequence of the last write-ahead log record contained in the state
+     */
+    static void write(OntologyState state, String sourceHash, long logSequence, Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                writeString(output, sourceHash);
+                output.writeLong(logSequence);
+                writeString(output, state.getOntology().getUniqueName());
+                writeString(output, state.getOntology().getBaseIRI());
+
+                writeDictionary(output, state.getIndividualIds());
+                writeDictionary(output, state.getClassIds());
+                writeDictionary(output, state.getPropertyIds());
+                writeDictionary(output, state.getValueIds());
+
+                output.writeInt(state.getOntologyClasses().size());
+                for (OntologyClassAPI ontologyClass : state.getOntologyClasses().values()) {
+                    writeString(output, ontologyClass.getUniqueName());
+                    writeString(output, ontologyClass.getParentClass());
+                    writeString(output, ontologyClass.getLabel());
+                    writeString(output, ontologyClass.getComment());
+                    writeStrings(output, ontologyClass.getParentClasses());
+                }
+
+                output.writeInt(state.getObjectProperties().size());
+                for (OntologyObjectPropertyAPI objectProperty : state.getObjectProperties().values()) {
+                    writeString(output, objectProperty.getUniqueName());
+                    writeStrings(output, objectProperty.getDomain());
+                    writeStrings(output, objectProperty.getRange());
+                    writeString(output, objectProperty.getLabel());
+                    writeString(output, objectProperty.getComment());
+                    writeStrings(output, objectProperty.getPropertyTypes() == null ? null
+                            : objectProperty.getPropertyTypes().stream().map(Enum::name).toList());
+                }
+
+                output.writeInt(state.getDataProperties().size());
+                for (OntologyDataPropertyAPI dataProperty : state.getDataProperties().values()) {
+                    writeString(output, dataProperty.getUniqueName());
+                    writeStrings(output, dataProperty.getDomain());
+                    writeString(output, dataProperty.getRange());
+                    writeString(output, dataProperty.getLabel());
+                    writeString(output, dataProperty.getComment());
+                }
+
+                output.writeInt(state.getIndividuals().size());
+                for (CompactIndividual individual : state.getIndividuals().records().values()) {
+                    output.writeInt(individual.getId());
+                    writeString(output, individual.getLabel());
+                    writeString(output, individual.getComment());
+                    writeInts(output, individual.getClassIds());
+                    writeInts(output, individual.getObjectRelations());
+                    writeInts(output, individual.getDataRelations());
+                }
+                output.writeInt(MAGIC);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Restores the state stored in the snapshot. The entity tables are complete, the instance and relation indexes
+     * still have to be built and the OWLOntology is left to the loader.
+     *
+     * @return the restored state, or null if there is no snapshot or it was built from a different document
+     * @throws IOException if the snapshot cannot be read or is damaged
+     */
+    static Restored read(Path path, String sourceHash, Callable<OWLOntology> owlOntologyLoader) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedReader input = new MappedReader(channel);
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || !sourceHash.equals(input.readString())) {
+                return null;
+            }
+            long logSequence = input.readLong();
+            OntologyState state = new OntologyState(new OntologyAPI(input.readString(), input.readString()), owlOntologyLoader);
+
+            readDictionary(input, state.getIndividualIds());
+            readDictionary(input, state.getClassIds());
+            readDictionary(input, state.getPropertyIds());
+            readDictionary(input, state.getValueIds());
+
+            for (int i = input.readInt(); i > 0; i--) {
+                OntologyClassAPI ontologyClass = new OntologyClassAPI(input.readString(), input.readString(), input.readString(),
+                        input.readString(), input.readStrings());
+                state.getOntologyClasses().put(ontologyClass.getUniqueName(), ontologyClass);
+                state.getClassHierarchy().put(ontologyClass.getUniqueName(),
+                        ontologyClass.getParentClasses() == null ? List.of() : ontologyClass.getParentClasses());
+            }
+
+            for (int i = input.readInt(); i > 0; i--) {
+                OntologyObjectPropertyAPI objectProperty = new OntologyObjectPropertyAPI(input.readString(), input.readStrings(),
+                        input.readStrings(), input.readString(), input.readString(), null);
+                List<String> propertyTypes = input.readStrings();
+                objectProperty.setPropertyTypes(propertyTypes == null ? null : new ArrayList<>(propertyTypes.stream().map(PropertyType::valueOf).toList()));
+                state.getObjectProperties().put(objectProperty.getUniqueName(), objectProperty);
+            }
+
+            for (int i = input.readInt(); i > 0; i--) {
+                OntologyDataPropertyAPI dataProperty = new OntologyDataPropertyAPI(input.readString(), input.readStrings(),
+                        input.readString(), input.readString(), input.readString());
+                state.getDataProperties().put(dataProperty.getUniqueName(), dataProperty);
+            }
+
+            IndividualStore individuals = state.getIndividuals();
+            for (int i = input.readInt(); i > 0; i--) {
+                int id = input.readInt();
+                String label = input.readString();
+                String comment = input.readString();
+                int[] classIds = input.readInts();
+                int[] objectRelations = input.readInts();
+                int[] dataRelations = input.readInts();
+                individuals.put(new CompactIndividual(id, label, comment, classIds, objectRelations, dataRelations));
+            }
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Snapshot " + path + " is truncated");
+            }
+            return new Restored(state, logSequence);
+        }
+    }
+
+    private static void writeDictionary(DataOutputStream output, NameDictionary dictionary) throws IOException {
+        int size = dictionary.size();
+        output.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            writeString(output, dictionary.name(id));
+        }
+    }
+
+    private static void readDictionary(MappedReader input, NameDictionary dictionary) throws IOException {
+        int size = input.readInt();
+        for (int id = 0; id < size; id++) {
+            if (dictionary.id(input.readString()) != id) {
+                throw new IOException("Snapshot dictionary is damaged");
+            }
+        }
+    }
+
+    // Null is written as length -1 so it survives the round trip
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream output, List<String> values) throws IOException {
+        if (values == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(values.size());
+        for (String value : values) {
+            writeString(output, value);
+        }
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        if (values == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(values.length);
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    // Reads the file through consecutive mappings, a new window is mapped when a value does not fit the current one
+    private static final class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        long readLong() throws IOException {
+            require(Long.BYTES);
+            return window.getLong();
+        }
+
+        int readInt() throws IOException {
+            require(Integer.BYTES);
+            return window.getInt();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            require(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<String> readStrings() throws IOException {
+            int count = readInt();
+            if (count < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        int[] readInts() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            require((long) length * Integer.BYTES);
+            int[] values = new int[length];
+            window.asIntBuffer().get(values);
+            window.position(window.position() + length * Integer.BYTES);
+            return values;
+        }
+
+        private void require(long bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            long position = windowStart + window.position();
+            if (position + bytes > size) {
+                throw new EOFException("Snapshot ends unexpectedly");
+            }
+            if (bytes > MAPPING_WINDOW) {
+                throw new IOException("Snapshot value of " + bytes + " bytes is too large");
+            }
+            map(position);
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_WINDOW, size - position));
+        }
+    }
+}
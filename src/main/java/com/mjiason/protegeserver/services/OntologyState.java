@@ -0,0 +1,92 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.*;
+import lombok.Getter;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Everything {@link OntologyStorageService} knows about one loaded ontology: the entity maps, the compact individual
+ * store, the backing OWLOntology, the change journal, the reverse axiom index, the class hierarchy, the instance
+ * and inverse relation indexes, the data property value indexes and the search index.
+ * <p>
+ * A state is fully built before it is published, and the service only ever replaces it as a whole, so a reader that
+ * picked up a state sees one consistent ontology for as long as it holds on to it.
+ * <p>
+ * A state restored from an {@link OntologySnapshot} has no OWLOntology yet. It is parsed from the source document the
+ * first time it is needed, which is only when the ontology is written out.
+ */
+@Getter
+class OntologyState {
+
+    private final OntologyAPI ontology;
+    private final Callable<OWLOntology> owlOntologyLoader;
+    private volatile OWLOntology owlOntology;
+
+    // Sorted by unique name so collections can be paged with a stable cursor
+    private final ConcurrentNavigableMap<String, OntologyClassAPI> ontologyClasses = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, OntologyObjectPropertyAPI> objectProperties = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, OntologyDataPropertyAPI> dataProperties = new ConcurrentSkipListMap<>();
+
+    private final AxiomIndex axiomIndex = new AxiomIndex();
+    private final ClassHierarchy classHierarchy = new ClassHierarchy();
+
+    // Individuals are stored compactly with their names and values interned, the indexes share the dictionaries
+    private final NameDictionary individualIds = new NameDictionary();
+    private final NameDictionary classIds = new NameDictionary();
+    private final NameDictionary propertyIds = new NameDictionary();
+    private final NameDictionary valueIds = new NameDictionary();
+    private final IndividualStore individuals = new IndividualStore(individualIds, classIds, propertyIds, valueIds);
+    private final InstanceIndex instanceIndex = new InstanceIndex(classIds);
+    private final RelationIndex relationIndex = new RelationIndex(individualIds, propertyIds, individuals);
+    private final ValueIndex valueIndex = new ValueIndex(propertyIds, individuals);
+    private final SearchIndex searchIndex = new SearchIndex(individualIds, classIds, propertyIds);
+    private final OntologyChangeJournal journal = new OntologyChangeJournal(individualIds);
+
+    // Guards the OWLOntology: applying the journal takes it exclusively, serializing takes it shared
+    private final ReentrantReadWriteLock owlOntologyLock = new ReentrantReadWriteLock();
+
+    OntologyState(OntologyAPI ontology, OWLOntology owlOntology) {
+        this.ontology = ontology;
+        this.owlOntology = owlOntology;
+        this.owlOntologyLoader = null;
+    }
+
+    /**
+     * @param owlOntologyLoader parses the OWLOntology the entities were built from, called at most once
+     */
+    OntologyState(OntologyAPI ontology, Callable<OWLOntology> owlOntologyLoader) {
+        this.ontology = ontology;
+        this.owlOntologyLoader = owlOntologyLoader;
+    }
+
+    /**
+     * @return the OWLOntology if it is loaded, null while it is still left to the loader
+     */
+    OWLOntology getLoadedOwlOntology() {
+        return owlOntology;
+    }
+
+    OWLOntology getOwlOntology() {
+        OWLOntology loaded = owlOntology;
+        if (loaded != null || owlOntologyLoader == null) {
+            return loaded;
+        }
+        synchronized (this) {
+            if (owlOntology == null) {
+                try {
+                    loaded = owlOntologyLoader.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not load the ontology behind the snapshot", e);
+                }
+                axiomIndex.rebuild(loaded);
+                owlOntology = loaded;
+            }
+            return owlOntology;
+        }
+    }
+}
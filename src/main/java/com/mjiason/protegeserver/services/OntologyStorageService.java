@@ -1,144 +1,1147 @@
 package com.mjiason.protegeserver.services;
 
 import com.mjiason.protegeserver.models.*;
+import jakarta.annotation.PreDestroy;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.formats.OWLXMLDocumentFormat;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.semanticweb.owlapi.model.*;
-import org.semanticweb.owlapi.search.EntitySearcher;
 import org.semanticweb.owlapi.util.DefaultPrefixManager;
-import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
-import java.io.File;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * In-memory store of the ontology entities, backed by an OWLOntology that is kept in sync through the change journal.
+ * <p>
+ * Concurrency model: the entity maps are concurrent, so reads never take a lock. Writers share the snapshot lock and are
+ * serialized per entity kind, so writers of different kinds never wait for each other. The OWLOntology itself is guarded
+ * by the lock of its {@link OntologyState}: applying the journal takes it exclusively and serializing takes it shared,
+ * so neither of them stalls entity reads or writes.
+ * <p>
+ * Loading an ontology builds a complete new {@link OntologyState} off to the side and publishes it with a single
+ * reference swap. Readers keep using the previous state until the swap and never observe a half-populated ontology.
+ * Edits made to the previous state while the new one is being built are discarded with it.
+ */
 @Service
 public class OntologyStorageService {
 
-    private final OntologyAPI ontology = new OntologyAPI();
-    private final Map<String, OntologyClassAPI> ontologyClasses = new HashMap<>();
-    private final Map<String, OntologyObjectPropertyAPI> objectProperties = new HashMap<>();
-    private final Map<String, OntologyDataPropertyAPI> dataProperties = new HashMap<>();
-    private final Map<String, OntologyIndividualAPI> individuals = new HashMap<>();
+    // Smaller ontologies are populated sequentially, the pool overhead outweighs the gain
+    private static final int PARALLEL_POPULATION_THRESHOLD = 2048;
+    // Entities read by the pool before they are stored, bounds the models held during a parallel load
+    private static final int POPULATION_WINDOW = 8192;
 
-    private OWLOntology owlOntology;
-    private OWLDataFactory dataFactory;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
 
-    private OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    private static final int DEFAULT_CHANGE_FEED_CAPACITY = 10000;
+    private static final int MAX_CHANGES_PER_READ = 10000;
+
+    private static final Path SOURCE_ONTOLOGY = Path.of("src/main/resources/api-ontology.owl");
+    static final String SAVED_ONTOLOGY = "api-ontology.owl";
+    private static final String SNAPSHOT = "api-ontology.snapshot";
+    private static final String WRITE_AHEAD_LOG = "api-ontology.wal";
+
+    // Axioms are built from plain values, so every ontology of the server shares one factory and its caches
+    private static final OWLDataFactory DATA_FACTORY = OWLManager.getOWLDataFactory();
+    private static final Map<String, OWL2Datatype> BUILT_IN_DATATYPES = Arrays.stream(OWL2Datatype.values())
+            .collect(Collectors.toMap(OWL2Datatype::getShortForm, Function.identity(), (first, second) -> first));
+
+    // Rough heap cost of one entity and one axiom, only used to weigh loaded ontologies against each other
+    private static final long ENTITY_HEAP_ESTIMATE = 512;
+    private static final long INDIVIDUAL_HEAP_ESTIMATE = 400;
+    private static final long AXIOM_HEAP_ESTIMATE = 300;
+
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final Map<EntityKind, ReentrantLock> writeLocks = createWriteLocks();
+
+    private volatile OntologyState state = new OntologyState(new OntologyAPI(), (OWLOntology) null);
+
+    // Every mutation bumps the versions of the kinds it writes, and replacing the state bumps the generation. The epoch
+    // is random, so versions of another run or of an earlier load of a named ontology are never repeated.
+    private final Map<EntityKind, AtomicLong> versions = createVersions();
+    private final AtomicLong generation = new AtomicLong();
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    // Number of threads used to populate the entity maps of a freshly loaded ontology, 1 populates sequentially
+    private final int loadParallelism;
+
+    // Holds the saved ontology, its snapshot and the write-ahead log, null when nothing is persisted
+    private final Path storageDirectory;
+
+    // Every edit is appended before it is acknowledged, null until the logged edits have been replayed
+    private volatile WriteAheadLog writeAheadLog;
+    private final ScheduledExecutorService compactionScheduler;
+    private final long compactionSize;
+
+    // The most recent changes, for consumers following the ontology instead of reading it again
+    private final ChangeFeed changeFeed;
 
     public OntologyStorageService() {
+        this(1);
+    }
+
+    public OntologyStorageService(int loadParallelism) {
+        this(loadParallelism, "", "batch", Duration.ZERO, Duration.ZERO, DataSize.ofBytes(0), DEFAULT_CHANGE_FEED_CAPACITY);
+    }
+
+    @Autowired
+    public OntologyStorageService(@Value("${protege.load.parallelism:1}") int loadParallelism,
+                                  @Value("${protege.storage.dir:}") String storageDirectory,
+                                  @Value("${protege.wal.fsync:batch}") String fsyncPolicy,
+                                  @Value("${protege.wal.fsync-interval:200ms}") Duration fsyncInterval,
+                                  @Value("${protege.wal.compaction-interval:1m}") Duration compactionInterval,
+                                  @Value("${protege.wal.compaction-size:64MB}") DataSize compactionSize,
+                                  @Value("${protege.feed.capacity:10000}") int changeFeedCapacity) {
+        this.loadParallelism = loadParallelism > 0 ? loadParallelism : Runtime.getRuntime().availableProcessors();
+        this.storageDirectory = storageDirectory.isEmpty() ? null : Path.of(storageDirectory);
+        this.compactionSize = compactionSize.toBytes();
+        this.changeFeed = new ChangeFeed(changeFeedCapacity);
+        long logSequence = loadInitialOntology();
+
+        if (this.storageDirectory != null) {
+            openWriteAheadLog(WriteAheadLog.FsyncPolicy.valueOf(fsyncPolicy.trim().toUpperCase(Locale.ROOT)), fsyncInterval, logSequence);
+            compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "write-ahead-log-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = Math.max(1, compactionInterval.toMillis());
+            compactionScheduler.scheduleWithFixedDelay(this::compactIfLarge, millis, millis, TimeUnit.MILLISECONDS);
+        } else {
+            compactionScheduler = null;
+        }
+    }
+
+    /**
+     * Restores the snapshot when it was built from the current document, otherwise parses the document and writes one.
+     *
+     * @return the sequence of the last write-ahead log record contained in the loaded state
+     */
+    private long loadInitialOntology() {
         try {
-            File file = new File("src/main/resources/api-ontology.owl");
-            OWLOntology loadedOntology = loadOWLOntology(file);
+            Path source = SOURCE_ONTOLOGY;
+            if (storageDirectory != null && Files.isRegularFile(storageDirectory.resolve(SAVED_ONTOLOGY))) {
+                source = storageDirectory.resolve(SAVED_ONTOLOGY);
+            }
+            if (storageDirectory == null) {
+                populateOntologyFromOWL(loadOWLOntology(source.toFile()));
+                return 0;
+            }
+
+            String sourceHash = OntologySnapshot.hash(source);
+            Path snapshot = storageDirectory.resolve(SNAPSHOT);
+            File sourceFile = source.toFile();
+            try {
+                OntologySnapshot.Restored restored = OntologySnapshot.read(snapshot, sourceHash,
+                        () -> OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(sourceFile));
+                if (restored != null) {
+                    indexEntities(restored.getState());
+                    publish(restored.getState());
+                    System.out.println("Ontology restored from snapshot " + snapshot);
+                    return restored.getLogSequence();
+                }
+            } catch (IOException e) {
+                System.out.println("Ignoring unreadable snapshot " + snapshot + ": " + e.getMessage());
+            }
+
+            OWLOntology loadedOntology = loadOWLOntology(sourceFile);
+            if (loadedOntology == null) {
+                return 0;
+            }
             populateOntologyFromOWL(loadedOntology);
+            if (state.getOwlOntology() == loadedOntology) {
+                OntologySnapshot.write(state, sourceHash, 0, snapshot);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return 0;
+    }
+
+    // The logged edits are applied like new ones, the log is only attached afterwards so they are not logged again
+    private void openWriteAheadLog(WriteAheadLog.FsyncPolicy fsyncPolicy, Duration fsyncInterval, long logSequence) {
+        try {
+            Files.createDirectories(storageDirectory);
+            writeAheadLog = WriteAheadLog.open(storageDirectory.resolve(WRITE_AHEAD_LOG), fsyncPolicy, fsyncInterval, logSequence, this::replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the write-ahead log", e);
+        }
+    }
+
+    // Edits that no longer apply happen for edits already saved in the ontology when the log could not be emptied
+    // after the save. They are skipped one by one, so the rest of the record still applies
+    private void replay(List<OntologyChange> changes, long sequence) {
+        if (changes.get(0).getOperation() == OntologyChange.Operation.ADD) {
+            // Only a batch logs several changes in one record, it is replayed as a batch again, all or nothing
+            try {
+                addBatch(changes.stream().map(OntologyStorageService::toBatchItem).toList());
+            } catch (ValidationException | EntityNotFoundException e) {
+                System.out.println("Skipping logged record " + sequence + " adding " + changes.size()
+                        + " entities that no longer applies: " + e.getMessage());
+            }
+            return;
+        }
+        for (OntologyChange change : changes) {
+            try {
+                switch (change.getKind()) {
+                    case CLASS -> removeOntologyClass(change.getUniqueName());
+                    case OBJECT_PROPERTY -> removeObjectProperty(change.getUniqueName());
+                    case DATA_PROPERTY -> removeDataProperty(change.getUniqueName());
+                    case INDIVIDUAL -> removeIndividual(change.getUniqueName());
+                }
+            } catch (ValidationException | EntityNotFoundException e) {
+                System.out.println("Skipping logged removal of " + change.getKind() + " " + change.getUniqueName()
+                        + " in record " + sequence + " that no longer applies: " + e.getMessage());
+            }
+        }
+    }
+
+    private static OntologyBatchItemAPI toBatchItem(OntologyChange change) {
+        OntologyBatchItemAPI item = new OntologyBatchItemAPI();
+        switch (change.getKind()) {
+            case CLASS -> item.setOntologyClass((OntologyClassAPI) change.getEntity());
+            case OBJECT_PROPERTY -> item.setObjectProperty((OntologyObjectPropertyAPI) change.getEntity());
+            case DATA_PROPERTY -> item.setDataProperty((OntologyDataPropertyAPI) change.getEntity());
+            case INDIVIDUAL -> item.setIndividual((OntologyIndividualAPI) change.getEntity());
+        }
+        return item;
+    }
+
+    /**
+     * Saves the current ontology, edits included, to the storage directory together with a snapshot of its indexed
+     * state, so the next start restores it without parsing, and empties the write-ahead log. Writers wait until the
+     * files are written, readers do not.
+     */
+    public void writeSnapshot() throws IOException, OWLOntologyStorageException {
+        if (storageDirectory == null) {
+            throw new ValidationException("Snapshots are disabled, set protege.storage.dir to enable them.");
+        }
+        snapshotLock.writeLock().lock();
+        try {
+            applyChangesToOntology();
+            Files.createDirectories(storageDirectory);
+            Path saved = storageDirectory.resolve(SAVED_ONTOLOGY);
+            Path temporary = Files.createTempFile(storageDirectory, SAVED_ONTOLOGY, ".tmp");
+            try {
+                saveOntologyToFile(temporary);
+                Files.move(temporary, saved, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            WriteAheadLog log = writeAheadLog;
+            OntologySnapshot.write(state, OntologySnapshot.hash(saved), log == null ? 0 : log.getSequence(), storageDirectory.resolve(SNAPSHOT));
+            if (log != null) {
+                log.reset();
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfLarge() {
+        WriteAheadLog log = writeAheadLog;
+        if (log != null && log.size() >= compactionSize) {
+            compact();
+        }
+    }
+
+    // Folds the logged edits into the saved ontology and its snapshot
+    private void compact() {
+        try {
+            writeSnapshot();
+        } catch (Exception e) {
+            System.out.println("Could not compact the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        changeFeed.close();
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+        }
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            log.close();
+        }
     }
 
     public OntologyAPI getOntology() {
-        return ontology;
+        return state.getOntology();
+    }
+
+    /**
+     * Returns an opaque version of the entity collections of the given kinds, which differs from every earlier one as
+     * soon as any of the collections may have changed. Only counters are read, so it is cheap enough to check on every
+     * request. A version read before reading the collections never claims newer content than was read.
+     *
+     * @param kinds the collections, empty for the ontology itself, which only changes when it is replaced
+     */
+    public String getVersion(Set<EntityKind> kinds) {
+        StringBuilder version = new StringBuilder(Long.toHexString(epoch)).append('-').append(generation.get());
+        for (EntityKind kind : EntityKind.values()) {
+            if (kinds.contains(kind)) {
+                version.append('.').append(versions.get(kind).get());
+            }
+        }
+        return version.toString();
+    }
+
+    /**
+     * @return the sequence of the latest change, where a consumer that has just read the ontology starts following it
+     */
+    public long getLastChangeSequence() {
+        return changeFeed.getLastSequence();
+    }
+
+    /**
+     * Returns the changes following the given sequence, waiting up to the timeout for the next one when there is none
+     * yet. Changes are only kept for a while, a consumer that fell too far behind has to read the ontology again.
+     *
+     * @param after   sequence of the last change the consumer has seen
+     * @param limit   maximum number of changes returned
+     * @param timeout how long to wait for the next change, zero to return right away
+     * @return the changes, oldest first, empty if none arrived in time or the ontology was closed
+     * @throws ChangesExpiredException if changes following the sequence are no longer available
+     */
+    public List<OntologyChangeEventAPI> getChanges(long after, int limit, Duration timeout) throws InterruptedException {
+        if (limit < 1 || limit > MAX_CHANGES_PER_READ) {
+            throw new ValidationException("Limit must be between 1 and " + MAX_CHANGES_PER_READ);
+        }
+        if (timeout.isNegative()) {
+            throw new ValidationException("Timeout cannot be negative");
+        }
+        return changeFeed.await(after, limit, timeout.toMillis());
+    }
+
+    /**
+     * Ends the change feed ahead of closing the ontology, so consumers waiting for changes end their streams.
+     */
+    public void closeChangeFeed() {
+        changeFeed.close();
+    }
+
+    /**
+     * @return true once the ontology was closed, after which no more changes are recorded
+     */
+    public boolean isClosed() {
+        return changeFeed.isClosed();
+    }
+
+    /**
+     * @return a rough estimate of the heap held by the ontology, from its entity and axiom counts. The OWLOntology is
+     * only counted once it has been loaded.
+     */
+    public long estimateHeapUsage() {
+        OntologyState current = state;
+        long entities = current.getOntologyClasses().size() + current.getObjectProperties().size() + current.getDataProperties().size();
+        long estimate = entities * ENTITY_HEAP_ESTIMATE + current.getIndividuals().size() * INDIVIDUAL_HEAP_ESTIMATE;
+        OWLOntology owlOntology = current.getLoadedOwlOntology();
+        if (owlOntology != null) {
+            estimate += owlOntology.getAxiomCount() * AXIOM_HEAP_ESTIMATE;
+        }
+        return estimate;
     }
 
     public void addOntologyClass(OntologyClassAPI ontologyClass) {
-        validateOntologyClass(ontologyClass);
-        ontologyClasses.put(ontologyClass.getUniqueName(), ontologyClass);
+        write(EntityKind.CLASS, current -> {
+            normalizeParentClasses(ontologyClass);
+            validateOntologyClass(current, ontologyClass);
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.ADD, EntityKind.CLASS, ontologyClass.getUniqueName(), ontologyClass);
+            log(change);
+            storeOntologyClass(current, ontologyClass);
+            record(current, change);
+        });
     }
 
     public OntologyClassAPI getOntologyClass(String uniqueName) {
-        if (!ontologyClasses.containsKey(uniqueName)) {
+        OntologyClassAPI ontologyClass = state.getOntologyClasses().get(uniqueName);
+        if (ontologyClass == null) {
             throw new EntityNotFoundException("Ontology Class not found: " + uniqueName);
         }
-        return ontologyClasses.get(uniqueName);
+        return ontologyClass;
     }
 
     public void removeOntologyClass(String uniqueName) {
-        if (!ontologyClasses.containsKey(uniqueName)) {
-            throw new EntityNotFoundException("Ontology Class not found: " + uniqueName);
-        }
-        ontologyClasses.remove(uniqueName);
+        write(EntityKind.CLASS, current -> {
+            OntologyClassAPI removed = current.getOntologyClasses().get(uniqueName);
+            if (removed == null) {
+                throw new EntityNotFoundException("Ontology Class not found: " + uniqueName);
+            }
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.REMOVE, EntityKind.CLASS, uniqueName, removed);
+            log(change);
+            current.getOntologyClasses().remove(uniqueName);
+            current.getClassHierarchy().remove(uniqueName);
+            current.getSearchIndex().remove(EntityKind.CLASS, uniqueName, removed.getLabel(), removed.getComment());
+            record(current, change);
+        });
     }
 
     public Collection<OntologyClassAPI> getAllOntologyClasses() {
-        return ontologyClasses.values();
+        return Collections.unmodifiableCollection(state.getOntologyClasses().values());
+    }
+
+    public EntityPage<OntologyClassAPI> getOntologyClasses(String after, Integer limit) {
+        return page(state.getOntologyClasses(), after, limit);
+    }
+
+    /**
+     * @return the direct and indirect superclasses of the class, every class before its own superclasses
+     */
+    public List<String> getAncestorClasses(String uniqueName) {
+        OntologyState current = state;
+        requireOntologyClass(current, uniqueName);
+        return current.getClassHierarchy().getAncestors(uniqueName);
+    }
+
+    /**
+     * @return the direct and indirect subclasses of the class
+     */
+    public List<String> getDescendantClasses(String uniqueName) {
+        OntologyState current = state;
+        requireOntologyClass(current, uniqueName);
+        return current.getClassHierarchy().getDescendants(uniqueName);
+    }
+
+    /**
+     * @return true if the other class is the class itself or one of its direct or indirect subclasses
+     */
+    public boolean subsumes(String uniqueName, String otherName) {
+        OntologyState current = state;
+        requireOntologyClass(current, uniqueName);
+        requireOntologyClass(current, otherName);
+        return current.getClassHierarchy().subsumes(uniqueName, otherName);
+    }
+
+    private static void requireOntologyClass(OntologyState current, String uniqueName) {
+        if (!current.getOntologyClasses().containsKey(uniqueName)) {
+            throw new EntityNotFoundException("Ontology Class not found: " + uniqueName);
+        }
     }
 
     public void addObjectProperty(OntologyObjectPropertyAPI objectProperty) {
-        validateObjectProperty(objectProperty);
-        objectProperties.put(objectProperty.getUniqueName(), objectProperty);
+        write(EntityKind.OBJECT_PROPERTY, current -> {
+            validateObjectProperty(objectProperty);
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.ADD, EntityKind.OBJECT_PROPERTY, objectProperty.getUniqueName(), objectProperty);
+            log(change);
+            storeObjectProperty(current, objectProperty);
+            record(current, change);
+        });
     }
 
     public OntologyObjectPropertyAPI getObjectProperty(String uniqueName) {
-        if (!objectProperties.containsKey(uniqueName)) {
+        OntologyObjectPropertyAPI objectProperty = state.getObjectProperties().get(uniqueName);
+        if (objectProperty == null) {
             throw new EntityNotFoundException("Object Property not found: " + uniqueName);
         }
-        return objectProperties.get(uniqueName);
+        return objectProperty;
     }
 
     public void removeObjectProperty(String uniqueName) {
-        if (!objectProperties.containsKey(uniqueName)) {
-            throw new EntityNotFoundException("Object Property not found: " + uniqueName);
-        }
-        objectProperties.remove(uniqueName);
+        write(EntityKind.OBJECT_PROPERTY, current -> {
+            OntologyObjectPropertyAPI removed = current.getObjectProperties().get(uniqueName);
+            if (removed == null) {
+                throw new EntityNotFoundException("Object Property not found: " + uniqueName);
+            }
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.REMOVE, EntityKind.OBJECT_PROPERTY, uniqueName, removed);
+            log(change);
+            current.getObjectProperties().remove(uniqueName);
+            current.getSearchIndex().remove(EntityKind.OBJECT_PROPERTY, uniqueName, removed.getLabel(), removed.getComment());
+            record(current, change);
+        });
     }
 
     public Collection<OntologyObjectPropertyAPI> getAllObjectProperties() {
-        return objectProperties.values();
+        return Collections.unmodifiableCollection(state.getObjectProperties().values());
+    }
+
+    public EntityPage<OntologyObjectPropertyAPI> getObjectProperties(String after, Integer limit) {
+        return page(state.getObjectProperties(), after, limit);
     }
 
+    // A new range can change how the values of the property are indexed, so the individuals are locked as well
     public void addDataProperty(OntologyDataPropertyAPI dataProperty) {
-        validateDataProperty(dataProperty);
-        dataProperties.put(dataProperty.getUniqueName(), dataProperty);
+        write(EnumSet.of(EntityKind.DATA_PROPERTY, EntityKind.INDIVIDUAL), current -> {
+            validateDataProperty(dataProperty);
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.ADD, EntityKind.DATA_PROPERTY, dataProperty.getUniqueName(), dataProperty);
+            log(change);
+            storeDataProperty(current, dataProperty);
+            record(current, change);
+        });
     }
 
     public OntologyDataPropertyAPI getDataProperty(String uniqueName) {
-        if (!dataProperties.containsKey(uniqueName)) {
+        OntologyDataPropertyAPI dataProperty = state.getDataProperties().get(uniqueName);
+        if (dataProperty == null) {
             throw new EntityNotFoundException("Data Property not found: " + uniqueName);
         }
-        return dataProperties.get(uniqueName);
+        return dataProperty;
     }
 
     public void removeDataProperty(String uniqueName) {
-        if (!dataProperties.containsKey(uniqueName)) {
-            throw new EntityNotFoundException("Data Property not found: " + uniqueName);
-        }
-        dataProperties.remove(uniqueName);
+        write(EnumSet.of(EntityKind.DATA_PROPERTY, EntityKind.INDIVIDUAL), current -> {
+            OntologyDataPropertyAPI removed = current.getDataProperties().get(uniqueName);
+            if (removed == null) {
+                throw new EntityNotFoundException("Data Property not found: " + uniqueName);
+            }
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.REMOVE, EntityKind.DATA_PROPERTY, uniqueName, removed);
+            log(change);
+            current.getDataProperties().remove(uniqueName);
+            current.getValueIndex().setType(uniqueName, ValueIndex.ValueType.STRING);
+            current.getSearchIndex().remove(EntityKind.DATA_PROPERTY, uniqueName, removed.getLabel(), removed.getComment());
+            record(current, change);
+        });
     }
 
     public Collection<OntologyDataPropertyAPI> getAllDataProperties() {
-        return dataProperties.values();
+        return Collections.unmodifiableCollection(state.getDataProperties().values());
+    }
+
+    public EntityPage<OntologyDataPropertyAPI> getDataProperties(String after, Integer limit) {
+        return page(state.getDataProperties(), after, limit);
     }
 
     public void addIndividual(OntologyIndividualAPI individual) {
-        validateIndividual(individual);
-        individuals.put(individual.getUniqueName(), individual);
+        write(EntityKind.INDIVIDUAL, current -> {
+            normalizeClassNames(individual);
+            validateIndividual(individual);
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.ADD, EntityKind.INDIVIDUAL, individual.getUniqueName(), individual);
+            log(change);
+            storeIndividual(current, individual);
+            record(current, change);
+        });
     }
 
     public OntologyIndividualAPI getIndividual(String uniqueName) {
-        if (!individuals.containsKey(uniqueName)) {
+        OntologyIndividualAPI individual = state.getIndividuals().get(uniqueName);
+        if (individual == null) {
             throw new EntityNotFoundException("Individual not found: " + uniqueName);
         }
-        return individuals.get(uniqueName);
+        return individual;
     }
 
     public void removeIndividual(String uniqueName) {
-        if (!individuals.containsKey(uniqueName)) {
+        write(EntityKind.INDIVIDUAL, current -> {
+            CompactIndividual removed = current.getIndividuals().records().get(uniqueName);
+            if (removed == null) {
+                throw new EntityNotFoundException("Individual not found: " + uniqueName);
+            }
+            OntologyChange change = new OntologyChange(OntologyChange.Operation.REMOVE, EntityKind.INDIVIDUAL, uniqueName,
+                    current.getIndividuals().materialize(removed));
+            log(change);
+            current.getIndividuals().remove(uniqueName);
+            current.getInstanceIndex().remove(removed);
+            current.getRelationIndex().remove(removed);
+            current.getValueIndex().remove(removed);
+            current.getSearchIndex().remove(EntityKind.INDIVIDUAL, uniqueName, removed.getLabel(), removed.getComment());
+            record(current, change);
+        });
+    }
+
+    public Collection<OntologyIndividualAPI> getAllIndividuals() {
+        return state.getIndividuals().values();
+    }
+
+    public EntityPage<OntologyIndividualAPI> getIndividuals(String after, Integer limit) {
+        IndividualStore individuals = state.getIndividuals();
+        return page(individuals.records(), after, limit, individuals::materialize);
+    }
+
+    /**
+     * Pages through the individuals asserted to be of the class, in the order they became known to the index.
+     *
+     * @param transitive also include the individuals of all direct and indirect subclasses
+     * @param after      unique name of the last individual of the previous page, null to start at the beginning
+     * @param limit      maximum number of individuals in the page, null for all remaining individuals
+     */
+    public EntityPage<OntologyIndividualAPI> getInstances(String className, boolean transitive, String after, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new ValidationException("Limit must be at least 1.");
+        }
+        OntologyState current = state;
+        requireOntologyClass(current, className);
+
+        List<String> classNames = new ArrayList<>();
+        classNames.add(className);
+        if (transitive) {
+            classNames.addAll(current.getClassHierarchy().getDescendants(className));
+        }
+        // One id more than requested tells whether there is a next page
+        int max = limit == null ? Integer.MAX_VALUE : limit + 1;
+        int[] ids = current.getInstanceIndex().getInstances(classNames, findIndividualId(current, after), max);
+        return toIndividualPage(current, ids, limit);
+    }
+
+    /**
+     * Pages through the individuals whose data property values match all conditions, in the order they became known
+     * to the index. A condition is a data property, one of =, &lt;, &lt;=, &gt; and &gt;=, and a value, like "hasAge&gt;30"
+     * or "hasCity='Lviv'". Values are compared as the range of the property: numerically for numeric ranges, in time
+     * for dateTime and date, and as exact strings otherwise, which only support =.
+     *
+     * @param after unique name of the last individual of the previous page, null to start at the beginning
+     * @param limit maximum number of individuals in the page, null for all remaining individuals
+     */
+    public EntityPage<OntologyIndividualAPI> findIndividuals(List<String> conditions, String after, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new ValidationException("Limit must be at least 1.");
+        }
+        OntologyState current = state;
+        int[] ids = findIndividualIds(current, conditions);
+        // The individual to continue after matched the conditions unless it was edited since
+        int index = Arrays.binarySearch(ids, findIndividualId(current, after));
+        int from = index >= 0 ? index + 1 : -index - 1;
+        int to = limit == null ? ids.length : (int) Math.min(ids.length, (long) from + limit + 1);
+        return toIndividualPage(current, Arrays.copyOfRange(ids, from, to), limit);
+    }
+
+    /**
+     * @return the individuals whose data property values match all conditions, materialized one at a time while
+     * iterating
+     */
+    public Iterable<OntologyIndividualAPI> findAllIndividuals(List<String> conditions) {
+        OntologyState current = state;
+        IndividualStore individuals = current.getIndividuals();
+        int[] ids = findIndividualIds(current, conditions);
+        return () -> Arrays.stream(ids)
+                .mapToObj(individuals::get)
+                .filter(Objects::nonNull)
+                .map(individuals::materialize)
+                .iterator();
+    }
+
+    private static int[] findIndividualIds(OntologyState current, List<String> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            throw new ValidationException("At least one condition is required.");
+        }
+        ValueIndex valueIndex = current.getValueIndex();
+        List<ValueIndex.Condition> parsed = new ArrayList<>(conditions.size());
+        for (String condition : conditions) {
+            parsed.add(parseCondition(valueIndex, condition));
+        }
+        return valueIndex.find(parsed);
+    }
+
+    private static ValueIndex.Condition parseCondition(ValueIndex valueIndex, String condition) {
+        int start = 0;
+        while (start < condition.length() && "<>=".indexOf(condition.charAt(start)) < 0) {
+            start++;
+        }
+        String property = condition.substring(0, start).trim();
+        if (property.isEmpty() || start == condition.length()) {
+            throw new ValidationException("Condition must be a data property, one of =, <, <=, >, >= and a value: " + condition);
+        }
+        int end = condition.startsWith("=", start + 1) && condition.charAt(start) != '=' ? start + 2 : start + 1;
+        String symbol = condition.substring(start, end);
+        ValueIndex.Operator operator = Arrays.stream(ValueIndex.Operator.values())
+                .filter(candidate -> candidate.getSymbol().equals(symbol))
+                .findFirst()
+                .orElseThrow();
+        String value = condition.substring(end).trim();
+        // Quotes around the value are optional
+        if (value.length() >= 2 && (value.charAt(0) == '\'' || value.charAt(0) == '"') && value.charAt(value.length() - 1) == value.charAt(0)) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return valueIndex.condition(property, operator, value);
+    }
+
+    // The id to continue after, -1 to start at the beginning
+    private static int findIndividualId(OntologyState current, String after) {
+        if (after == null) {
+            return -1;
+        }
+        int afterId = current.getIndividualIds().find(after);
+        if (afterId < 0) {
+            throw new ValidationException("Unknown individual to continue after: " + after);
+        }
+        return afterId;
+    }
+
+    /**
+     * @param ids   the ids of the page in increasing order, followed by the first id of the next page if there is one
+     * @param limit the size of the page, null when the ids are all remaining ones
+     */
+    private static EntityPage<OntologyIndividualAPI> toIndividualPage(OntologyState current, int[] ids, Integer limit) {
+        int count = limit == null ? ids.length : Math.min(ids.length, limit);
+        List<OntologyIndividualAPI> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Skip an individual that was removed after its id was read
+            CompactIndividual individual = current.getIndividuals().get(ids[i]);
+            if (individual != null) {
+                items.add(current.getIndividuals().materialize(individual));
+            }
+        }
+        String nextCursor = ids.length > count ? current.getIndividualIds().name(ids[count - 1]) : null;
+        return new EntityPage<>(items, nextCursor);
+    }
+
+    /**
+     * Finds the individuals whose object property relations point at the given individual.
+     *
+     * @param property only consider this object property, null for all of them
+     * @return property name to the names of the individuals that point at the individual through it
+     */
+    public Map<String, List<String>> getReferencingIndividuals(String uniqueName, String property) {
+        OntologyState current = state;
+        if (!current.getIndividuals().contains(uniqueName)) {
             throw new EntityNotFoundException("Individual not found: " + uniqueName);
         }
-        individuals.remove(uniqueName);
+        Map<String, List<String>> referencing = new LinkedHashMap<>();
+        current.getRelationIndex().getSubjects(uniqueName, property).forEach((name, ids) -> {
+            List<String> subjects = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                subjects.add(current.getIndividualIds().name(id));
+            }
+            referencing.put(name, subjects);
+        });
+        return referencing;
     }
 
-    public Collection<OntologyIndividualAPI> getAllIndividuals() {
-        return individuals.values();
+    /**
+     * Finds entities of every kind by the words of their unique names, labels and comments, best match first. All
+     * words of the query have to match.
+     *
+     * @param kind   the kind of entities to find, null for all kinds
+     * @param prefix whether query words also match the longer words they start, as needed for typeahead
+     * @param fuzzy  whether query words of four or more characters also match words one edit away
+     * @param after  the position of the last hit of the previous page, null to start with the best hit
+     * @param limit  maximum number of hits in the page, 20 when null
+     */
+    public EntityPage<OntologySearchResultAPI> search(String query, EntityKind kind, boolean prefix, boolean fuzzy,
+                                                      String after, Integer limit) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Search query cannot be null or empty");
+        }
+        int pageSize = limit == null ? DEFAULT_SEARCH_LIMIT : limit;
+        if (pageSize < 1) {
+            throw new ValidationException("Limit must be at least 1.");
+        }
+        int offset;
+        try {
+            offset = after == null ? 0 : Integer.parseInt(after);
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid cursor: " + after);
+        }
+        if (offset < 0) {
+            throw new ValidationException("Invalid cursor: " + after);
+        }
+
+        OntologyState current = state;
+        SearchIndex searchIndex = current.getSearchIndex();
+        // One hit more than the page tells whether there is a next page
+        List<SearchIndex.Hit> hits = searchIndex.search(query, kind, prefix, fuzzy, (int) Math.min(Integer.MAX_VALUE, (long) offset + pageSize + 1));
+        List<OntologySearchResultAPI> results = new ArrayList<>();
+        for (SearchIndex.Hit hit : hits.subList(Math.min(offset, hits.size()), Math.min(offset + pageSize, hits.size()))) {
+            OntologySearchResultAPI result = toSearchResult(current, hit.getKind(), searchIndex.getName(hit));
+            // An entity removed since the search is left out rather than shifting the following pages
+            if (result != null) {
+                result.setScore(hit.getScore());
+                results.add(result);
+            }
+        }
+        return new EntityPage<>(results, hits.size() > offset + pageSize ? String.valueOf(offset + pageSize) : null);
+    }
+
+    private static OntologySearchResultAPI toSearchResult(OntologyState current, EntityKind kind, String uniqueName) {
+        switch (kind) {
+            case CLASS -> {
+                OntologyClassAPI ontologyClass = current.getOntologyClasses().get(uniqueName);
+                return ontologyClass == null ? null : new OntologySearchResultAPI(kind, uniqueName, ontologyClass.getLabel(), ontologyClass.getComment(), 0);
+            }
+            case OBJECT_PROPERTY -> {
+                OntologyObjectPropertyAPI objectProperty = current.getObjectProperties().get(uniqueName);
+                return objectProperty == null ? null : new OntologySearchResultAPI(kind, uniqueName, objectProperty.getLabel(), objectProperty.getComment(), 0);
+            }
+            case DATA_PROPERTY -> {
+                OntologyDataPropertyAPI dataProperty = current.getDataProperties().get(uniqueName);
+                return dataProperty == null ? null : new OntologySearchResultAPI(kind, uniqueName, dataProperty.getLabel(), dataProperty.getComment(), 0);
+            }
+            default -> {
+                CompactIndividual individual = current.getIndividuals().records().get(uniqueName);
+                return individual == null ? null : new OntologySearchResultAPI(kind, uniqueName, individual.getLabel(), individual.getComment(), 0);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a basic graph pattern query over the classes, relations and data property values of the individuals,
+     * see {@link GraphQuery} for the syntax. The query is parsed and planned right away, the solutions are found while
+     * they are iterated.
+     *
+     * @return the solutions, every one mapping the selected variables to unique names or literal values
+     */
+    public Iterable<Map<String, String>> query(String query) {
+        return new GraphQueryEngine(state, GraphQuery.parse(query)).solutions();
+    }
+
+    /**
+     * @return the triple patterns of the query in the order the planner chose to evaluate them
+     */
+    public List<String> explainQuery(String query) {
+        return new GraphQueryEngine(state, GraphQuery.parse(query)).explain();
+    }
+
+    /**
+     * Walks the object property relations breadth-first from the start individual.
+     *
+     * @param properties the object properties to follow, null or empty for all of them
+     * @param closure    follow symmetric properties both ways and treat chains of a transitive property as one step
+     * @param maxSteps   the maximum number of individuals to return, the start included
+     * @return the start and the individuals reached within maxDepth steps, nearest first
+     */
+    public List<OntologyTraversalStepAPI> traverse(String start, List<String> properties, TraversalDirection direction,
+                                                   int maxDepth, boolean closure, int maxSteps) {
+        OntologyState current = state;
+        RelationTraversal traversal = createTraversal(current, start, properties, direction, maxDepth, closure, maxSteps);
+        int startId = current.getIndividualIds().find(start);
+        return toSteps(current, traversal.traverse(startId, maxDepth, maxSteps));
+    }
+
+    /**
+     * Finds a shortest chain of object property relations between two individuals.
+     *
+     * @param maxSteps the maximum number of individuals to visit before giving up
+     * @return the steps from the start to the target, empty if they are not connected within maxDepth steps
+     */
+    public List<OntologyTraversalStepAPI> findPath(String start, String target, List<String> properties, TraversalDirection direction,
+                                                   int maxDepth, boolean closure, int maxSteps) {
+        OntologyState current = state;
+        RelationTraversal traversal = createTraversal(current, start, properties, direction, maxDepth, closure, maxSteps);
+        if (!current.getIndividuals().contains(target)) {
+            throw new EntityNotFoundException("Individual not found: " + target);
+        }
+        int startId = current.getIndividualIds().find(start);
+        int targetId = current.getIndividualIds().find(target);
+        return toSteps(current, traversal.findPath(startId, targetId, maxDepth, maxSteps));
+    }
+
+    private RelationTraversal createTraversal(OntologyState current, String start, List<String> properties, TraversalDirection direction,
+                                              int maxDepth, boolean closure, int maxSteps) {
+        if (!current.getIndividuals().contains(start)) {
+            throw new EntityNotFoundException("Individual not found: " + start);
+        }
+        if (maxDepth < 1) {
+            throw new ValidationException("Max depth must be at least 1.");
+        }
+        if (maxSteps < 1) {
+            throw new ValidationException("Limit must be at least 1.");
+        }
+        Set<String> followed = properties == null || properties.isEmpty() ? null : new HashSet<>(properties);
+        Set<String> symmetricProperties = new HashSet<>();
+        Set<String> transitiveProperties = new HashSet<>();
+        if (closure) {
+            for (OntologyObjectPropertyAPI objectProperty : current.getObjectProperties().values()) {
+                if (objectProperty.getPropertyTypes() == null) {
+                    continue;
+                }
+                if (objectProperty.isSymmetric()) {
+                    symmetricProperties.add(objectProperty.getUniqueName());
+                }
+                if (objectProperty.isTransitive()) {
+                    transitiveProperties.add(objectProperty.getUniqueName());
+                }
+            }
+        }
+        return new RelationTraversal(current.getRelationIndex(), followed, direction, symmetricProperties, transitiveProperties);
+    }
+
+    private static List<OntologyTraversalStepAPI> toSteps(OntologyState current, List<RelationTraversal.Step> steps) {
+        NameDictionary individualIds = current.getIndividualIds();
+        List<OntologyTraversalStepAPI> result = new ArrayList<>(steps.size());
+        for (RelationTraversal.Step step : steps) {
+            result.add(new OntologyTraversalStepAPI(individualIds.name(step.getIndividual()), step.getDepth(), step.getProperty(),
+                    step.getPredecessor() < 0 ? null : individualIds.name(step.getPredecessor()), step.isInverse()));
+        }
+        return result;
+    }
+
+    // Stores the individual and moves its index entries from the individual it replaces, if any
+    private static void storeIndividual(OntologyState current, OntologyIndividualAPI individual) {
+        CompactIndividual stored = current.getIndividuals().intern(individual);
+        CompactIndividual previous = current.getIndividuals().put(stored);
+        SearchIndex searchIndex = current.getSearchIndex();
+        if (previous != null) {
+            current.getInstanceIndex().remove(previous);
+            current.getRelationIndex().remove(previous);
+            current.getValueIndex().remove(previous);
+            searchIndex.remove(EntityKind.INDIVIDUAL, individual.getUniqueName(), previous.getLabel(), previous.getComment());
+        }
+        current.getInstanceIndex().add(stored);
+        current.getRelationIndex().add(stored);
+        current.getValueIndex().add(stored);
+        searchIndex.add(EntityKind.INDIVIDUAL, individual.getUniqueName(), stored.getLabel(), stored.getComment());
+    }
+
+    // The other kinds are only indexed for search, the search postings are moved from the entity replaced, if any
+    private static void storeOntologyClass(OntologyState current, OntologyClassAPI ontologyClass) {
+        String name = ontologyClass.getUniqueName();
+        OntologyClassAPI previous = current.getOntologyClasses().put(name, ontologyClass);
+        current.getClassHierarchy().put(name, ontologyClass.getParentClasses());
+        if (previous != null) {
+            current.getSearchIndex().remove(EntityKind.CLASS, name, previous.getLabel(), previous.getComment());
+        }
+        current.getSearchIndex().add(EntityKind.CLASS, name, ontologyClass.getLabel(), ontologyClass.getComment());
+    }
+
+    private static void storeObjectProperty(OntologyState current, OntologyObjectPropertyAPI objectProperty) {
+        String name = objectProperty.getUniqueName();
+        OntologyObjectPropertyAPI previous = current.getObjectProperties().put(name, objectProperty);
+        if (previous != null) {
+            current.getSearchIndex().remove(EntityKind.OBJECT_PROPERTY, name, previous.getLabel(), previous.getComment());
+        }
+        current.getSearchIndex().add(EntityKind.OBJECT_PROPERTY, name, objectProperty.getLabel(), objectProperty.getComment());
+    }
+
+    private static void storeDataProperty(OntologyState current, OntologyDataPropertyAPI dataProperty) {
+        String name = dataProperty.getUniqueName();
+        OntologyDataPropertyAPI previous = current.getDataProperties().put(name, dataProperty);
+        current.getValueIndex().setType(name, ValueIndex.ValueType.of(dataProperty.getRange()));
+        if (previous != null) {
+            current.getSearchIndex().remove(EntityKind.DATA_PROPERTY, name, previous.getLabel(), previous.getComment());
+        }
+        current.getSearchIndex().add(EntityKind.DATA_PROPERTY, name, dataProperty.getLabel(), dataProperty.getComment());
+    }
+
+    /**
+     * Creates all entities of the batch or none of them. The whole batch is validated in one pass before anything is
+     * stored, classes may use classes defined anywhere in the same batch as parent class.
+     */
+    public OntologyBatchResultAPI addBatch(List<OntologyBatchItemAPI> items) {
+        Map<String, OntologyClassAPI> classes = new LinkedHashMap<>();
+        Map<String, OntologyObjectPropertyAPI> objectProperties = new LinkedHashMap<>();
+        Map<String, OntologyDataPropertyAPI> dataProperties = new LinkedHashMap<>();
+        Map<String, OntologyIndividualAPI> batchIndividuals = new LinkedHashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            OntologyBatchItemAPI item = items.get(i);
+            if (item == null || Stream.of(item.getOntologyClass(), item.getObjectProperty(), item.getDataProperty(), item.getIndividual())
+                    .filter(Objects::nonNull).count() != 1) {
+                throw new ValidationException("Batch item " + i + " must contain exactly one entity.");
+            }
+            if (item.getOntologyClass() != null) {
+                normalizeParentClasses(item.getOntologyClass());
+                addToBatch(classes, item.getOntologyClass().getUniqueName(), item.getOntologyClass(), i);
+            } else if (item.getObjectProperty() != null) {
+                addToBatch(objectProperties, item.getObjectProperty().getUniqueName(), item.getObjectProperty(), i);
+            } else if (item.getDataProperty() != null) {
+                addToBatch(dataProperties, item.getDataProperty().getUniqueName(), item.getDataProperty(), i);
+            } else {
+                normalizeClassNames(item.getIndividual());
+                addToBatch(batchIndividuals, item.getIndividual().getUniqueName(), item.getIndividual(), i);
+            }
+        }
+
+        writeAll(current -> {
+            classes.values().forEach(ontologyClass -> validateOntologyClass(current, ontologyClass, classes));
+            validateNoParentCycles(classes);
+            objectProperties.values().forEach(this::validateObjectProperty);
+            dataProperties.values().forEach(this::validateDataProperty);
+            batchIndividuals.values().forEach(this::validateIndividual);
+
+            List<OntologyChange> changes = new ArrayList<>();
+            classes.forEach((name, ontologyClass) ->
+                    changes.add(new OntologyChange(OntologyChange.Operation.ADD, EntityKind.CLASS, name, ontologyClass)));
+            objectProperties.forEach((name, objectProperty) ->
+                    changes.add(new OntologyChange(OntologyChange.Operation.ADD, EntityKind.OBJECT_PROPERTY, name, objectProperty)));
+            dataProperties.forEach((name, dataProperty) ->
+                    changes.add(new OntologyChange(OntologyChange.Operation.ADD, EntityKind.DATA_PROPERTY, name, dataProperty)));
+            batchIndividuals.forEach((name, individual) ->
+                    changes.add(new OntologyChange(OntologyChange.Operation.ADD, EntityKind.INDIVIDUAL, name, individual)));
+            // One record, so the batch is replayed all or nothing
+            log(changes);
+
+            classes.values().forEach(ontologyClass -> storeOntologyClass(current, ontologyClass));
+            objectProperties.values().forEach(objectProperty -> storeObjectProperty(current, objectProperty));
+            dataProperties.values().forEach(dataProperty -> storeDataProperty(current, dataProperty));
+            batchIndividuals.values().forEach(individual -> storeIndividual(current, individual));
+            record(current, changes);
+        });
+        return new OntologyBatchResultAPI(classes.size(), objectProperties.size(), dataProperties.size(), batchIndividuals.size());
+    }
+
+    // Entities without a name are keyed by their position so validation reports them
+    private static <T> void addToBatch(Map<String, T> batch, String uniqueName, T entity, int position) {
+        String key = uniqueName == null || uniqueName.isEmpty() ? "#" + position : uniqueName;
+        if (batch.putIfAbsent(key, entity) != null) {
+            throw new ValidationException("Unique name '" + uniqueName + "' occurs more than once in the batch.");
+        }
+    }
+
+    // Locking helpers
+    private static Map<EntityKind, ReentrantLock> createWriteLocks() {
+        Map<EntityKind, ReentrantLock> locks = new EnumMap<>(EntityKind.class);
+        for (EntityKind kind : EntityKind.values()) {
+            locks.put(kind, new ReentrantLock());
+        }
+        return locks;
+    }
+
+    private static Map<EntityKind, AtomicLong> createVersions() {
+        Map<EntityKind, AtomicLong> versions = new EnumMap<>(EntityKind.class);
+        for (EntityKind kind : EntityKind.values()) {
+            versions.put(kind, new AtomicLong());
+        }
+        return versions;
+    }
+
+    // Takes the locks of every kind for mutations that span all kinds
+    private void writeAll(Consumer<OntologyState> mutation) {
+        write(EnumSet.allOf(EntityKind.class), mutation);
+    }
+
+    private void write(EntityKind kind, Consumer<OntologyState> mutation) {
+        write(EnumSet.of(kind), mutation);
+    }
+
+    // The snapshot lock keeps the state from being swapped while the mutation runs against it. The locks of the kinds
+    // are always taken in declaration order, which is the iteration order of the set.
+    private void write(EnumSet<EntityKind> kinds, Consumer<OntologyState> mutation) {
+        long appended;
+        snapshotLock.readLock().lock();
+        try {
+            List<ReentrantLock> locked = new ArrayList<>(kinds.size());
+            try {
+                for (EntityKind kind : kinds) {
+                    ReentrantLock writeLock = writeLocks.get(kind);
+                    writeLock.lock();
+                    locked.add(writeLock);
+                }
+                mutation.accept(state);
+            } finally {
+                // Also after a failed mutation, which may have changed some of the entities before it failed
+                if (locked.size() == kinds.size()) {
+                    kinds.forEach(kind -> versions.get(kind).incrementAndGet());
+                }
+                appended = changeFeed.getAppendedSequence();
+                for (int i = locked.size() - 1; i >= 0; i--) {
+                    locked.get(i).unlock();
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        awaitDurable();
+        // Every change appended to the feed so far was logged before the wait began, so the wait covered it as well
+        changeFeed.publish(appended);
+    }
+
+    private void log(OntologyChange change) {
+        log(List.of(change));
+    }
+
+    // Appends the changes of one validated mutation to the write-ahead log before they are applied, so an edit that
+    // cannot be logged fails without leaving a trace in the entities, the journal or the feed
+    private void log(List<OntologyChange> changes) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null || changes.isEmpty()) {
+            return;
+        }
+        try {
+            log.append(changes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the write-ahead log", e);
+        }
+    }
+
+    private void record(OntologyState current, OntologyChange change) {
+        record(current, List.of(change));
+    }
+
+    // Marks the applied changes for the OWLOntology and appends them to the change feed while the mutation still holds
+    // its locks, so the feed orders the changes of an entity as they were applied. They are published once durable
+    private void record(OntologyState current, List<OntologyChange> changes) {
+        for (OntologyChange change : changes) {
+            current.getJournal().record(change.getKind(), change.getUniqueName());
+            changeFeed.append(change);
+        }
+    }
+
+    // Waits for the log only after the locks are released, so concurrent writers can share one sync
+    private void awaitDurable() {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.awaitDurable();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync the write-ahead log", e);
+        }
+    }
+
+    private void publish(OntologyState next) {
+        snapshotLock.writeLock().lock();
+        try {
+            state = next;
+            generation.incrementAndGet();
+            changeFeed.appendReload();
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Collects the entities that follow the given unique name, in unique name order.
+     *
+     * @param entities the sorted entity map of the current state
+     * @param after    unique name of the last entity of the previous page, null to start at the beginning
+     * @param limit    maximum number of entities in the page, null for all remaining entities
+     */
+    private static <T> EntityPage<T> page(NavigableMap<String, T> entities, String after, Integer limit) {
+        return page(entities, after, limit, Function.identity());
+    }
+
+    /**
+     * @param materialize converts a stored entity into its API model, only called for the entities of the page
+     */
+    private static <S, T> EntityPage<T> page(NavigableMap<String, S> entities, String after, Integer limit, Function<S, T> materialize) {
+        if (limit != null && limit < 1) {
+            throw new ValidationException("Limit must be at least 1.");
+        }
+        NavigableMap<String, S> remaining = after == null ? entities : entities.tailMap(after, false);
+        List<T> items = new ArrayList<>();
+        String last = null;
+        for (Map.Entry<String, S> entry : remaining.entrySet()) {
+            if (limit != null && items.size() == limit) {
+                return new EntityPage<>(items, last);
+            }
+            items.add(materialize.apply(entry.getValue()));
+            last = entry.getKey();
+        }
+        return new EntityPage<>(items, null);
     }
 
     // Validation methods
-    private void validateOntologyClass(OntologyClassAPI ontologyClass) {
+    private void validateOntologyClass(OntologyState current, OntologyClassAPI ontologyClass) {
+        validateOntologyClass(current, ontologyClass, Collections.emptyMap());
+    }
+
+    /**
+     * @param batchClasses classes created together with this one, they may be used as parent class
+     */
+    private void validateOntologyClass(OntologyState current, OntologyClassAPI ontologyClass, Map<String, OntologyClassAPI> batchClasses) {
+        Map<String, OntologyClassAPI> ontologyClasses = current.getOntologyClasses();
+
         // Validate that uniqueName is not null or empty
         if (ontologyClass.getUniqueName() == null || ontologyClass.getUniqueName().isEmpty()) {
             throw new ValidationException("Unique name for Ontology Class cannot be null or empty.");
@@ -149,15 +1152,65 @@ public class OntologyStorageService {
             throw new ValidationException("Unique name '" + ontologyClass.getUniqueName() + "' already exists.");
         }
 
-        // Validate that the parent class exists in the ontologyClasses map
-        String parentClass = ontologyClass.getParentClass();
-        if (parentClass != null && !parentClass.isEmpty() && !ontologyClasses.containsKey(parentClass)) {
-            throw new ValidationException("Parent class '" + parentClass + "' does not exist in the ontology.");
+        // Validate that the parent classes exist in the ontologyClasses map
+        for (String parentClass : ontologyClass.getParentClasses()) {
+            if (!ontologyClasses.containsKey(parentClass) && !batchClasses.containsKey(parentClass)) {
+                throw new ValidationException("Parent class '" + parentClass + "' does not exist in the ontology.");
+            }
         }
 
         // Add any additional validations if needed.
     }
 
+    // Classes that exist already cannot be part of a cycle, so only paths inside the batch need to be followed
+    private void validateNoParentCycles(Map<String, OntologyClassAPI> batchClasses) {
+        Set<String> acyclic = new HashSet<>();
+        for (String start : batchClasses.keySet()) {
+            findParentCycle(batchClasses, start, new LinkedHashSet<>(), acyclic);
+        }
+    }
+
+    private void findParentCycle(Map<String, OntologyClassAPI> batchClasses, String name, LinkedHashSet<String> path, Set<String> acyclic) {
+        if (!batchClasses.containsKey(name) || acyclic.contains(name)) {
+            return;
+        }
+        if (!path.add(name)) {
+            throw new ValidationException("Parent classes form a cycle: " + String.join(" -> ", path) + " -> " + name);
+        }
+        for (String parentClass : batchClasses.get(name).getParentClasses()) {
+            findParentCycle(batchClasses, parentClass, path, acyclic);
+        }
+        path.remove(name);
+        acyclic.add(name);
+    }
+
+    // Merges parentClass into parentClasses and makes parentClass the first of them, so both views agree
+    private static void normalizeParentClasses(OntologyClassAPI ontologyClass) {
+        List<String> parentClasses = mergeNames(ontologyClass.getParentClass(), ontologyClass.getParentClasses());
+        ontologyClass.setParentClasses(parentClasses);
+        ontologyClass.setParentClass(parentClasses.isEmpty() ? "" : parentClasses.get(0));
+    }
+
+    // Merges className into classNames and makes className the first of them, so both views agree
+    private static void normalizeClassNames(OntologyIndividualAPI individual) {
+        List<String> classNames = mergeNames(individual.getClassName(), individual.getClassNames());
+        individual.setClassNames(classNames);
+        individual.setClassName(classNames.isEmpty() ? "" : classNames.get(0));
+    }
+
+    private static List<String> mergeNames(String first, List<String> others) {
+        Set<String> names = new LinkedHashSet<>();
+        if (first != null && !first.isEmpty()) {
+            names.add(first);
+        }
+        if (others != null) {
+            others.stream()
+                    .filter(name -> name != null && !name.isEmpty())
+                    .forEach(names::add);
+        }
+        return new ArrayList<>(names);
+    }
+
     private void validateObjectProperty(OntologyObjectPropertyAPI objectProperty) {
         if (objectProperty.getUniqueName() == null || objectProperty.getUniqueName().isEmpty()) {
             throw new ValidationException("Unique name for Object Property cannot be null or empty");
@@ -180,33 +1233,9 @@ public class OntologyStorageService {
     }
 
 
-    /**
-     * Retrieves the comment (rdfs:comment) of a given OWL class.
-     *
-     * @param owlClass The OWL class.
-     * @return The comment as a String, or an empty string if not found.
-     */
-    private String getClassComment(OWLClass owlClass) {
-        for (OWLAnnotation annotation : EntitySearcher.getAnnotations(owlClass, owlOntology, dataFactory.getRDFSComment()).toList())
-            if (annotation.getValue() instanceof OWLLiteral) {
-                return ((OWLLiteral) annotation.getValue()).getLiteral();
-            }
-
-        return "";
-    }
-
-    private String getLabelComment(OWLClass owlClass) {
-        for (OWLAnnotation annotation : EntitySearcher.getAnnotations(owlClass, owlOntology, dataFactory.getRDFSLabel()).toList())
-            if (annotation.getValue() instanceof OWLLiteral) {
-                return ((OWLLiteral) annotation.getValue()).getLiteral();
-            }
-
-        return "";
-    }
-
     public OWLOntology loadOWLOntology(File file) {
         try {
-            manager = OWLManager.createOWLOntologyManager();
+            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
             return manager.loadOntologyFromOntologyDocument(file);
         } catch (Exception e) {
             e.printStackTrace();
@@ -217,7 +1246,7 @@ public class OntologyStorageService {
 
     public OWLOntology loadOWLOntology(InputStream inputStream) {
         try {
-            manager = OWLManager.createOWLOntologyManager();
+            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
             return manager.loadOntologyFromOntologyDocument(inputStream);
         } catch (Exception e) {
             e.printStackTrace();
@@ -226,118 +1255,221 @@ public class OntologyStorageService {
         return null;
     }
 
+    /**
+     * Builds the indexed state for the given ontology without touching the current one, then publishes it atomically.
+     * With a storage directory the loaded ontology is saved in place of the logged edits before this returns.
+     *
+     * @throws RuntimeException if the state could not be built, in which case the current ontology is left as it was,
+     *                          or if the published ontology could not be saved
+     */
     public void populateOntologyFromOWL(OWLOntology loadedOWLOntology) {
-        try {
-            dataFactory = manager.getOWLDataFactory();
-            owlOntology = loadedOWLOntology;
+        OWLOntologyManager manager = loadedOWLOntology.getOWLOntologyManager();
+        OWLOntology owlOntology = loadedOWLOntology;
+        OntologyAPI ontology = new OntologyAPI();
 
-            String defaultPrefix = "http://www.example.com/ontologies/UnnamedOntology.owl#";
-            ontology.setUniqueName("UnnamedOntology");
+        String defaultPrefix = "http://www.example.com/ontologies/UnnamedOntology.owl#";
+        ontology.setUniqueName("UnnamedOntology");
 
-            OWLDocumentFormat format = manager.getOntologyFormat(owlOntology);
-            if (format instanceof PrefixDocumentFormat prefixFormat) {
-                if (prefixFormat.getDefaultPrefix() != null) {
-                    defaultPrefix = prefixFormat.getDefaultPrefix();
-                }
+        OWLDocumentFormat format = manager.getOntologyFormat(owlOntology);
+        if (format instanceof PrefixDocumentFormat prefixFormat) {
+            if (prefixFormat.getDefaultPrefix() != null) {
+                defaultPrefix = prefixFormat.getDefaultPrefix();
+            }
 
-                DefaultPrefixManager prefixManager = new DefaultPrefixManager(defaultPrefix);
-                prefixManager.setPrefix("owl:", "http://www.w3.org/2002/07/owl#");
+            DefaultPrefixManager prefixManager = new DefaultPrefixManager(defaultPrefix);
+            prefixManager.setPrefix("owl:", "http://www.w3.org/2002/07/owl#");
 
-                ontology.setBaseIRI(defaultPrefix);
+            ontology.setBaseIRI(defaultPrefix);
 
-                ontology.setUniqueName(owlOntology.getOntologyID().getOntologyIRI()
-                        .map(IRI::getShortForm)
-                        .orElse("UnnamedOntology"));
+            ontology.setUniqueName(owlOntology.getOntologyID().getOntologyIRI()
+                    .map(IRI::getShortForm)
+                    .orElse("UnnamedOntology"));
 
-                System.out.println("Prefix: " + prefixFormat.getDefaultPrefix());
-                System.out.println("owlOntology.getOntologyID().getOntologyIRI(): " + owlOntology.getOntologyID().getOntologyIRI().get());
-            } else {
-                System.out.println("The ontology format does not support prefixes.");
+            System.out.println("Prefix: " + prefixFormat.getDefaultPrefix());
+            System.out.println("owlOntology.getOntologyID().getOntologyIRI(): " + owlOntology.getOntologyID().getOntologyIRI().orElse(null));
+        } else {
+            System.out.println("The ontology format does not support prefixes.");
+        }
+
+        OntologyState next = new OntologyState(ontology, owlOntology);
+        populateEntities(next);
+        next.getAxiomIndex().rebuild(owlOntology);
+        publish(next);
+        // Edits logged so far belong to the replaced ontology, the loaded one is saved in their place
+        if (writeAheadLog != null) {
+            try {
+                writeSnapshot();
+            } catch (IOException | OWLOntologyStorageException e) {
+                throw new IllegalStateException("The ontology was loaded but could not be saved, a restart brings back "
+                        + "the previous one: " + e.getMessage(), e);
             }
+        }
+    }
 
-            setOWLOntology(owlOntology);
+    // Populate the in-memory data structures of a state that is not published yet
+    private void populateEntities(OntologyState target) {
+        OWLOntology owlOntology = target.getOwlOntology();
+        List<OWLClass> classes = owlOntology.classesInSignature().toList();
+        List<OWLObjectProperty> owlObjectProperties = owlOntology.objectPropertiesInSignature().toList();
+        List<OWLDataProperty> owlDataProperties = owlOntology.dataPropertiesInSignature().toList();
+        List<OWLNamedIndividual> owlIndividuals = owlOntology.individualsInSignature().toList();
+        AnnotationTable annotations = AnnotationTable.build(owlOntology);
+
+        int entityCount = classes.size() + owlObjectProperties.size() + owlDataProperties.size() + owlIndividuals.size();
+        if (loadParallelism <= 1 || entityCount < PARALLEL_POPULATION_THRESHOLD) {
+            classes.forEach(owlClass -> putOntologyClass(target, readOntologyClass(owlOntology, annotations, owlClass)));
+            owlObjectProperties.forEach(owlObjectProperty -> putObjectProperty(target, readObjectProperty(owlOntology, annotations, owlObjectProperty)));
+            owlDataProperties.forEach(owlDataProperty -> putDataProperty(target, readDataProperty(owlOntology, annotations, owlDataProperty)));
+            owlIndividuals.forEach(owlIndividual -> putIndividual(target, readIndividual(owlOntology, annotations, owlIndividual)));
+        } else {
+            populateEntitiesInParallel(target, annotations, classes, owlObjectProperties, owlDataProperties, owlIndividuals);
+        }
 
+        indexEntities(target);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Built in id order once all entities are stored, so most posting lists are only appended to
+    private static void indexEntities(OntologyState target) {
+        // The value types are known before the first value is indexed, so no index is rebuilt
+        target.getDataProperties().values().forEach(dataProperty ->
+                target.getValueIndex().setType(dataProperty.getUniqueName(), ValueIndex.ValueType.of(dataProperty.getRange())));
+        SearchIndex searchIndex = target.getSearchIndex();
+        IndividualStore individuals = target.getIndividuals();
+        NameDictionary individualIds = target.getIndividualIds();
+        for (int id = 0; id < individualIds.size(); id++) {
+            CompactIndividual individual = individuals.get(id);
+            if (individual != null) {
+                target.getInstanceIndex().add(individual);
+                target.getRelationIndex().add(individual);
+                target.getValueIndex().add(individual);
+                searchIndex.add(EntityKind.INDIVIDUAL, individualIds.name(id), individual.getLabel(), individual.getComment());
+            }
+        }
+        target.getOntologyClasses().values().forEach(ontologyClass ->
+                searchIndex.add(EntityKind.CLASS, ontologyClass.getUniqueName(), ontologyClass.getLabel(), ontologyClass.getComment()));
+        target.getObjectProperties().values().forEach(objectProperty ->
+                searchIndex.add(EntityKind.OBJECT_PROPERTY, objectProperty.getUniqueName(), objectProperty.getLabel(), objectProperty.getComment()));
+        target.getDataProperties().values().forEach(dataProperty ->
+                searchIndex.add(EntityKind.DATA_PROPERTY, dataProperty.getUniqueName(), dataProperty.getLabel(), dataProperty.getComment()));
+    }
+
+    // The pool reads the models of one window of entities from the OWLOntology, which is the expensive part, and this thread
+    // stores them in list order. Stores never contend on the maps and dictionaries, the ids come out exactly as in the
+    // sequential pass, and only one window of models is held at a time.
+    private void populateEntitiesInParallel(OntologyState target, AnnotationTable annotations, List<OWLClass> classes,
+                                            List<OWLObjectProperty> owlObjectProperties, List<OWLDataProperty> owlDataProperties,
+                                            List<OWLNamedIndividual> owlIndividuals) {
+        OWLOntology owlOntology = target.getOwlOntology();
+        ForkJoinPool pool = new ForkJoinPool(loadParallelism);
+        try {
+            populateInWindows(pool, classes, owlClass -> readOntologyClass(owlOntology, annotations, owlClass),
+                    ontologyClass -> putOntologyClass(target, ontologyClass));
+            populateInWindows(pool, owlObjectProperties, owlObjectProperty -> readObjectProperty(owlOntology, annotations, owlObjectProperty),
+                    objectProperty -> putObjectProperty(target, objectProperty));
+            populateInWindows(pool, owlDataProperties, owlDataProperty -> readDataProperty(owlOntology, annotations, owlDataProperty),
+                    dataProperty -> putDataProperty(target, dataProperty));
+            populateInWindows(pool, owlIndividuals, owlIndividual -> readIndividual(owlOntology, annotations, owlIndividual),
+                    individual -> putIndividual(target, individual));
+        } finally {
+            pool.shutdown();
         }
     }
 
-    // Populate the in-memory data structures from an OWLOntology
-    public void setOWLOntology(OWLOntology owlOntology) {
-        ontologyClasses.clear();
-        objectProperties.clear();
-        dataProperties.clear();
-        individuals.clear();
+    private static <E, M> void populateInWindows(ForkJoinPool pool, List<E> entities, Function<E, M> read, Consumer<M> put) {
+        for (int from = 0; from < entities.size(); from += POPULATION_WINDOW) {
+            List<E> window = entities.subList(from, Math.min(entities.size(), from + POPULATION_WINDOW));
+            pool.submit(() -> window.parallelStream().map(read).toList()).join().forEach(put);
+        }
+    }
 
-        owlOntology.classesInSignature().forEach(owlClass -> {
-            IRI iri = owlClass.getIRI();
-            String name = iri.getShortForm();
-            String parentClass = getParentClassName(owlClass);
+    private OntologyClassAPI readOntologyClass(OWLOntology owlOntology, AnnotationTable annotations, OWLClass owlClass) {
+        IRI iri = owlClass.getIRI();
+        String name = iri.getShortForm();
+        List<String> parentClasses = getParentClassNames(owlClass, owlOntology);
+        String parentClass = parentClasses.isEmpty() ? "" : parentClasses.get(0);
 
-            String label = getAnnotation(owlClass, owlOntology, OWLRDFVocabulary.RDFS_LABEL);
-            String comment = getAnnotation(owlClass, owlOntology, OWLRDFVocabulary.RDFS_COMMENT);
-            ontologyClasses.put(name, new OntologyClassAPI(name, parentClass, label, comment));
-        });
+        String label = annotations.getLabel(iri);
+        String comment = annotations.getComment(iri);
+        return new OntologyClassAPI(name, parentClass, label, comment, parentClasses);
+    }
 
-        owlOntology.objectPropertiesInSignature().forEach(owlObjectProperty -> {
-            IRI iri = owlObjectProperty.getIRI();
-            String name = iri.getShortForm();
-            String label = getAnnotation(owlObjectProperty, owlOntology, OWLRDFVocabulary.RDFS_LABEL);
-            String comment = getAnnotation(owlObjectProperty, owlOntology, OWLRDFVocabulary.RDFS_COMMENT);
+    private static void putOntologyClass(OntologyState target, OntologyClassAPI ontologyClass) {
+        target.getOntologyClasses().put(ontologyClass.getUniqueName(), ontologyClass);
+        target.getClassHierarchy().put(ontologyClass.getUniqueName(), ontologyClass.getParentClasses());
+    }
 
-            // Retrieve domain and range information as Lists of OntologyClassAPI
-            List<String> domain = getDomainClasses(owlObjectProperty, owlOntology);
-            List<String> range = getRangeClasses(owlObjectProperty, owlOntology);
+    private OntologyObjectPropertyAPI readObjectProperty(OWLOntology owlOntology, AnnotationTable annotations, OWLObjectProperty owlObjectProperty) {
+        IRI iri = owlObjectProperty.getIRI();
+        String name = iri.getShortForm();
+        String label = annotations.getLabel(iri);
+        String comment = annotations.getComment(iri);
 
-            List<PropertyType> propertyTypes = getPropertyTypes(owlObjectProperty, owlOntology);
+        // Retrieve domain and range information as Lists of OntologyClassAPI
+        List<String> domain = getDomainClasses(owlObjectProperty, owlOntology);
+        List<String> range = getRangeClasses(owlObjectProperty, owlOntology);
 
-            // Initialize object properties with domain and range as lists
-            objectProperties.put(name, new OntologyObjectPropertyAPI(name, domain, range, label, comment, propertyTypes));
-        });
+        List<PropertyType> propertyTypes = getPropertyTypes(owlObjectProperty, owlOntology);
 
-        // Populate Ontology Data Properties
-        owlOntology.dataPropertiesInSignature().forEach(owlDataProperty -> {
-            IRI iri = owlDataProperty.getIRI();
-            String name = iri.getShortForm();
-            String label = getAnnotation(owlDataProperty, owlOntology, OWLRDFVocabulary.RDFS_LABEL);
-            String comment = getAnnotation(owlDataProperty, owlOntology, OWLRDFVocabulary.RDFS_COMMENT);
+        // Initialize object properties with domain and range as lists
+        return new OntologyObjectPropertyAPI(name, domain, range, label, comment, propertyTypes);
+    }
 
-            // Retrieve domain and range for the data property
-            List<String> domain = getDomainClasses(owlDataProperty, owlOntology);
-            String range = getDataRange(owlDataProperty, owlOntology);
+    private static void putObjectProperty(OntologyState target, OntologyObjectPropertyAPI objectProperty) {
+        target.getObjectProperties().put(objectProperty.getUniqueName(), objectProperty);
+    }
 
-            // Initialize data properties with domain and range
-            dataProperties.put(name, new OntologyDataPropertyAPI(name, domain, range, label, comment));
-        });
+    private OntologyDataPropertyAPI readDataProperty(OWLOntology owlOntology, AnnotationTable annotations, OWLDataProperty owlDataProperty) {
+        IRI iri = owlDataProperty.getIRI();
+        String name = iri.getShortForm();
+        String label = annotations.getLabel(iri);
+        String comment = annotations.getComment(iri);
 
-        // Populate Ontology Individuals
-        owlOntology.individualsInSignature().forEach(owlIndividual -> {
-            IRI iri = owlIndividual.getIRI();
-            String name = iri.getShortForm();
-            String label = getAnnotation(owlIndividual, owlOntology, OWLRDFVocabulary.RDFS_LABEL);
-            String comment = getAnnotation(owlIndividual, owlOntology, OWLRDFVocabulary.RDFS_COMMENT);
+        // Retrieve domain and range for the data property
+        List<String> domain = getDomainClasses(owlDataProperty, owlOntology);
+        String range = getDataRange(owlDataProperty, owlOntology);
 
+        // Initialize data properties with domain and range
+        return new OntologyDataPropertyAPI(name, domain, range, label, comment);
+    }
 
-            Set<OWLClassAssertionAxiom> classAssertions = owlOntology.getClassAssertionAxioms(owlIndividual);
+    private static void putDataProperty(OntologyState target, OntologyDataPropertyAPI dataProperty) {
+        target.getDataProperties().put(dataProperty.getUniqueName(), dataProperty);
+    }
 
-            List<String> classAPI = new ArrayList<>();
-            // Iterate through the assertions and print their class names
-            for (OWLClassAssertionAxiom classAssertion : classAssertions) {
-                OWLClass owlClass = classAssertion.getClassExpression().asOWLClass();
-                String individualClassName = owlClass.getIRI().getShortForm();
+    private OntologyIndividualAPI readIndividual(OWLOntology owlOntology, AnnotationTable annotations, OWLNamedIndividual owlIndividual) {
+        IRI iri = owlIndividual.getIRI();
+        String name = iri.getShortForm();
+        String label = annotations.getLabel(iri);
+        String comment = annotations.getComment(iri);
+
+
+        Set<OWLClassAssertionAxiom> classAssertions = owlOntology.getClassAssertionAxioms(owlIndividual);
+
+        List<String> classAPI = new ArrayList<>();
+        // Iterate through the assertions and collect their named classes
+        for (OWLClassAssertionAxiom classAssertion : classAssertions) {
+            if (classAssertion.getClassExpression().isAnonymous()) {
+                continue;
+            }
+            OWLClass owlClass = classAssertion.getClassExpression().asOWLClass();
+            String individualClassName = owlClass.getIRI().getShortForm();
+            if (!classAPI.contains(individualClassName)) {
                 classAPI.add(individualClassName);
             }
+        }
 
-            // Retrieve associated object properties for the individual
-            Map<String, List<String>> individualObjectPropertyRelations = getIndividualObjectPropertyRelations(owlIndividual, owlOntology);
+        // Retrieve associated object properties for the individual
+        Map<String, List<String>> individualObjectPropertyRelations = getIndividualObjectPropertyRelations(owlIndividual, owlOntology);
 
-            // Retrieve associated data properties for the individual
-            Map<String, List<String>> individualFilledDataProperties = getIndividualFilledDataProperties(owlIndividual, owlOntology);
+        // Retrieve associated data properties for the individual
+        Map<String, List<String>> individualFilledDataProperties = getIndividualFilledDataProperties(owlIndividual, owlOntology);
 
-            // Create and add the individual to the storage
-            individuals.put(name, new OntologyIndividualAPI(name, !classAPI.isEmpty()? classAPI.get(0):"", label, comment, individualObjectPropertyRelations, individualFilledDataProperties));
-        });
+        return new OntologyIndividualAPI(name, !classAPI.isEmpty()? classAPI.get(0):"", label, comment, individualObjectPropertyRelations, individualFilledDataProperties, classAPI);
+    }
+
+    private static void putIndividual(OntologyState target, OntologyIndividualAPI individual) {
+        IndividualStore individuals = target.getIndividuals();
+        individuals.put(individuals.intern(individual));
     }
 
     private List<PropertyType> getPropertyTypes(OWLObjectProperty property, OWLOntology ontology) {
@@ -385,14 +1517,15 @@ public class OntologyStorageService {
     public OWLOntology getNewOWLOntology() throws OWLOntologyCreationException {
         OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
         OWLOntology ontology = manager.createOntology();
+        OntologyState current = state;
 
-        ontologyClasses.values().forEach(ontologyClass -> {
+        current.getOntologyClasses().values().forEach(ontologyClass -> {
             OWLClass owlClass = manager.getOWLDataFactory().getOWLClass(IRI.create(ontologyClass.getUniqueName()));
             addAnnotations(ontology, owlClass, ontologyClass.getLabel(), ontologyClass.getComment());
             manager.addAxiom(ontology, manager.getOWLDataFactory().getOWLDeclarationAxiom(owlClass));
         });
 
-        objectProperties.values().forEach(objectProperty -> {
+        current.getObjectProperties().values().forEach(objectProperty -> {
             OWLObjectProperty owlObjectProperty = manager.getOWLDataFactory().getOWLObjectProperty(IRI.create(objectProperty.getUniqueName()));
             addAnnotations(ontology, owlObjectProperty, objectProperty.getLabel(), objectProperty.getComment());
             // Define domain and range for the property
@@ -407,13 +1540,13 @@ public class OntologyStorageService {
             manager.addAxiom(ontology, manager.getOWLDataFactory().getOWLDeclarationAxiom(owlObjectProperty));
         });
 
-        dataProperties.values().forEach(dataProperty -> {
+        current.getDataProperties().values().forEach(dataProperty -> {
             OWLDataProperty owlDataProperty = manager.getOWLDataFactory().getOWLDataProperty(IRI.create(dataProperty.getUniqueName()));
             addAnnotations(ontology, owlDataProperty, dataProperty.getLabel(), dataProperty.getComment());
             manager.addAxiom(ontology, manager.getOWLDataFactory().getOWLDeclarationAxiom(owlDataProperty));
         });
 
-        individuals.values().forEach(individual -> {
+        current.getIndividuals().values().forEach(individual -> {
             OWLNamedIndividual owlIndividual = manager.getOWLDataFactory().getOWLNamedIndividual(IRI.create(individual.getUniqueName()));
             addAnnotations(ontology, owlIndividual, individual.getLabel(), individual.getComment());
             manager.addAxiom(ontology, manager.getOWLDataFactory().getOWLDeclarationAxiom(owlIndividual));
@@ -423,290 +1556,378 @@ public class OntologyStorageService {
     }
 
     public OWLOntology getOWLOntology() {
-        return owlOntology;
+        return state.getOwlOntology();
     }
 
-    public void saveOntologyToOutputStream(OutputStream outputStream) throws OWLOntologyStorageException {
-        OWLOntologyManager manager = owlOntology.getOWLOntologyManager();
-        OWLDataFactory dataFactory = manager.getOWLDataFactory();
-        String defaultPrefix = "http://www.example.com/ontologies/UnnamedOntology.owl#";
-        OWLDocumentFormat format = manager.getOntologyFormat(owlOntology);
+    public static OWLDataFactory getDataFactory() {
+        return DATA_FACTORY;
+    }
+
+    // The log edits are appended to, null when nothing is persisted
+    WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
 
-        if (format == null) {
-            format = new OWLXMLDocumentFormat();
-            format.asPrefixOWLDocumentFormat().setDefaultPrefix(defaultPrefix);
+    // The published state, for views derived from it that are cached until it or its journal changes
+    OntologyState getState() {
+        return state;
+    }
+
+    /**
+     * Serializes the ontology to the file, replacing its content. The OWLOntology is only locked while the file is
+     * written, which unlike a client connection proceeds at disk speed.
+     */
+    public void saveOntologyToFile(Path file) throws IOException, OWLOntologyStorageException {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+            saveOntologyToOutputStream(output);
         }
+    }
 
-        manager.saveOntology(owlOntology, format, outputStream);
+    public void saveOntologyToOutputStream(OutputStream outputStream) throws OWLOntologyStorageException {
+        OntologyState current = state;
+        OWLOntology owlOntology = current.getOwlOntology();
+        current.getOwlOntologyLock().readLock().lock();
+        try {
+            OWLOntologyManager manager = owlOntology.getOWLOntologyManager();
+            String defaultPrefix = "http://www.example.com/ontologies/UnnamedOntology.owl#";
+            OWLDocumentFormat format = manager.getOntologyFormat(owlOntology);
+
+            if (format == null) {
+                format = new OWLXMLDocumentFormat();
+                format.asPrefixOWLDocumentFormat().setDefaultPrefix(defaultPrefix);
+            }
+
+            manager.saveOntology(owlOntology, format, outputStream);
+        } finally {
+            current.getOwlOntologyLock().readLock().unlock();
+        }
     }
 
+    /**
+     * Writes the edits recorded since the last call into the backing OWLOntology.
+     * Only the entities in the journal are translated, and they are submitted to the manager as one change batch,
+     * so the cost depends on the number of edited entities rather than on the size of the ontology.
+     * Entities are matched on their exact IRI through the reverse axiom index. The current model of an entity replaces the
+     * axioms written from its previous one, and for a removed entity the axioms that reference it are dropped, except those
+     * other entities are written from, so the OWLOntology keeps matching the models that are still stored.
+     */
     public void applyChangesToOntology() {
-        OWLOntologyManager manager = owlOntology.getOWLOntologyManager();
-        OWLDataFactory dataFactory = manager.getOWLDataFactory();
+        OntologyState current = state;
+        current.getOwlOntologyLock().writeLock().lock();
+        try {
+            applyJournal(current);
+        } finally {
+            current.getOwlOntologyLock().writeLock().unlock();
+        }
+    }
 
-        // Apply changes for ontology classes
-        for (Map.Entry<String, OntologyClassAPI> entry : ontologyClasses.entrySet()) {
-            String shortName = entry.getKey();
-            OntologyClassAPI ontologyClassAPI = entry.getValue();
-            IRI classIRI = IRI.create(ontology.getBaseIRI() + shortName);
-            OWLClass owlClass = dataFactory.getOWLClass(classIRI);
+    // The drained entries are the consistent cut: edits recorded after the drain are picked up by the next call
+    private void applyJournal(OntologyState current) {
+        OntologyChangeJournal.Pending pending = current.getJournal().drain();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        OWLOntology owlOntology = current.getOwlOntology();
+        OWLOntologyManager manager = owlOntology.getOWLOntologyManager();
+        OWLDataFactory dataFactory = DATA_FACTORY;
+        AxiomIndex axiomIndex = current.getAxiomIndex();
+        String baseIRI = current.getOntology().getBaseIRI();
 
-            // Check if the class already exists, or add it
-            if (!owlOntology.containsClassInSignature(classIRI)) {
-                manager.addAxiom(owlOntology, dataFactory.getOWLDeclarationAxiom(owlClass));
+        // The index is updated while the batch is built so that a removal also sees axioms added earlier in the same batch
+        List<OWLOntologyChange> changes = new ArrayList<>();
+        try {
+            for (EntityKind kind : List.of(EntityKind.CLASS, EntityKind.OBJECT_PROPERTY, EntityKind.DATA_PROPERTY)) {
+                for (String uniqueName : pending.getNames(kind)) {
+                    Object model = switch (kind) {
+                        case CLASS -> current.getOntologyClasses().get(uniqueName);
+                        case OBJECT_PROPERTY -> current.getObjectProperties().get(uniqueName);
+                        default -> current.getDataProperties().get(uniqueName);
+                    };
+                    addAxiomChanges(changes, owlOntology, axiomIndex, kind, uniqueName, model, baseIRI, dataFactory);
+                }
+            }
+            BitSet individuals = pending.getIndividuals();
+            for (int id = individuals.nextSetBit(0); id >= 0; id = individuals.nextSetBit(id + 1)) {
+                String uniqueName = current.getIndividualIds().name(id);
+                addAxiomChanges(changes, owlOntology, axiomIndex, EntityKind.INDIVIDUAL, uniqueName,
+                        current.getIndividuals().get(uniqueName), baseIRI, dataFactory);
             }
+            manager.applyChanges(changes);
+        } catch (RuntimeException e) {
+            axiomIndex.rebuild(owlOntology);
+            current.getJournal().restore(pending);
+            throw e;
+        }
+    }
 
-            // Add subclass axioms if needed
-            if (ontologyClassAPI.getParentClass() != null && !ontologyClassAPI.getParentClass().isEmpty()) {
-                OWLClass parentClass = dataFactory.getOWLClass(IRI.create(ontology.getBaseIRI() + ontologyClassAPI.getParentClass()));
-                OWLAxiom subclassAxiom = dataFactory.getOWLSubClassOfAxiom(owlClass, parentClass);
-                manager.addAxiom(owlOntology, subclassAxiom);
+    // Writes the current model of the entity in place of the axioms of its previous one, or drops the entity when it is gone
+    private void addAxiomChanges(List<OWLOntologyChange> changes, OWLOntology owlOntology, AxiomIndex axiomIndex, EntityKind kind,
+                                 String uniqueName, Object model, String baseIRI, OWLDataFactory dataFactory) {
+        OWLEntity entity = resolveEntity(axiomIndex, getEntityType(kind), uniqueName, baseIRI, dataFactory);
+        for (OWLAxiom axiom : model == null ? getRemovedAxioms(axiomIndex, entity) : getModelledAxioms(axiomIndex, entity)) {
+            changes.add(new RemoveAxiom(owlOntology, axiom));
+            axiomIndex.remove(axiom);
+        }
+        if (model != null) {
+            for (OWLAxiom axiom : getAxioms(kind, model, entity, axiomIndex, baseIRI, dataFactory)) {
+                changes.add(new AddAxiom(owlOntology, axiom));
+                axiomIndex.add(axiom);
             }
+        }
+    }
 
-            // Add label annotation if provided
-            if (ontologyClassAPI.getLabel() != null && !ontologyClassAPI.getLabel().isEmpty()) {
-                OWLAnnotation labelAnnotation = dataFactory.getOWLAnnotation(
-                        dataFactory.getRDFSLabel(),
-                        dataFactory.getOWLLiteral(ontologyClassAPI.getLabel())
-                );
-                OWLAxiom labelAxiom = dataFactory.getOWLAnnotationAssertionAxiom(classIRI, labelAnnotation);
-                manager.addAxiom(owlOntology, labelAxiom);
+    // The entity a unique name stands for: the one under the base IRI, or the only one of the loaded ontology with that short form.
+    // A name shared by entities of several namespaces resolves to the base IRI, so an edit never touches the others.
+    private static OWLEntity resolveEntity(AxiomIndex axiomIndex, EntityType<?> entityType, String uniqueName, String baseIRI, OWLDataFactory dataFactory) {
+        OWLEntity preferred = dataFactory.getOWLEntity(entityType, IRI.create(baseIRI + uniqueName));
+        if (axiomIndex.contains(preferred)) {
+            return preferred;
+        }
+        Set<OWLEntity> entities = axiomIndex.getEntities(uniqueName, entityType);
+        return entities.size() == 1 ? entities.iterator().next() : preferred;
+    }
+
+    // The axioms written from the current model of the entity, which a new model of it replaces
+    private static Set<OWLAxiom> getModelledAxioms(AxiomIndex axiomIndex, OWLEntity entity) {
+        Set<OWLAxiom> axioms = new HashSet<>();
+        for (OWLAxiom axiom : axiomIndex.getAxioms(entity)) {
+            if (axiom instanceof OWLAnnotationAssertionAxiom annotation
+                    ? annotation.getProperty().isLabel() || annotation.getProperty().isComment()
+                    : entity.equals(getModellingEntity(axiom))) {
+                axioms.add(axiom);
             }
+        }
+        return axioms;
+    }
 
-            // Add comment annotation if provided
-            if (ontologyClassAPI.getComment() != null && !ontologyClassAPI.getComment().isEmpty()) {
-                OWLAnnotation commentAnnotation = dataFactory.getOWLAnnotation(
-                        dataFactory.getRDFSComment(),
-                        dataFactory.getOWLLiteral(ontologyClassAPI.getComment())
-                );
-                OWLAxiom commentAxiom = dataFactory.getOWLAnnotationAssertionAxiom(classIRI, commentAnnotation);
-                manager.addAxiom(owlOntology, commentAxiom);
+    // The axioms that go with the entity when it is removed. Axioms another entity is written from, such as the subclass
+    // axiom of a child or the class assertion of an individual, stay as long as that entity still lists the removed one.
+    private static Set<OWLAxiom> getRemovedAxioms(AxiomIndex axiomIndex, OWLEntity entity) {
+        Set<OWLAxiom> axioms = new HashSet<>();
+        for (OWLAxiom axiom : axiomIndex.getAxioms(entity)) {
+            OWLEntity modellingEntity = axiom instanceof OWLAnnotationAssertionAxiom ? entity : getModellingEntity(axiom);
+            if (modellingEntity == null || modellingEntity.equals(entity)) {
+                axioms.add(axiom);
             }
         }
+        return axioms;
+    }
+
+    // The entity whose API model holds the axiom, null for axioms no model covers, such as disjointness or restrictions
+    private static OWLEntity getModellingEntity(OWLAxiom axiom) {
+        if (axiom instanceof OWLDeclarationAxiom declaration) {
+            return declaration.getEntity();
+        }
+        if (axiom instanceof OWLSubClassOfAxiom subClassOf) {
+            return subClassOf.getSubClass().isAnonymous() || subClassOf.getSuperClass().isAnonymous()
+                    ? null : subClassOf.getSubClass().asOWLClass();
+        }
+        if (axiom instanceof OWLClassAssertionAxiom assertion) {
+            return assertion.getClassExpression().isAnonymous() || assertion.getIndividual().isAnonymous()
+                    ? null : assertion.getIndividual().asOWLNamedIndividual();
+        }
+        if (axiom instanceof OWLObjectPropertyAssertionAxiom assertion) {
+            return assertion.getProperty().isAnonymous() || assertion.getSubject().isAnonymous() || assertion.getObject().isAnonymous()
+                    ? null : assertion.getSubject().asOWLNamedIndividual();
+        }
+        if (axiom instanceof OWLDataPropertyAssertionAxiom assertion) {
+            return assertion.getSubject().isAnonymous() ? null : assertion.getSubject().asOWLNamedIndividual();
+        }
+        if (axiom instanceof OWLObjectPropertyDomainAxiom domain) {
+            return domain.getProperty().isAnonymous() || domain.getDomain().isAnonymous() ? null : domain.getProperty().asOWLObjectProperty();
+        }
+        if (axiom instanceof OWLObjectPropertyRangeAxiom range) {
+            return range.getProperty().isAnonymous() || range.getRange().isAnonymous() ? null : range.getProperty().asOWLObjectProperty();
+        }
+        if (axiom instanceof OWLObjectPropertyCharacteristicAxiom characteristic) {
+            return characteristic.getProperty().isAnonymous() ? null : characteristic.getProperty().asOWLObjectProperty();
+        }
+        if (axiom instanceof OWLDataPropertyDomainAxiom domain) {
+            return domain.getDomain().isAnonymous() ? null : domain.getProperty().asOWLDataProperty();
+        }
+        if (axiom instanceof OWLDataPropertyRangeAxiom range) {
+            return range.getRange().isOWLDatatype() ? range.getProperty().asOWLDataProperty() : null;
+        }
+        return null;
+    }
+
+    private static EntityType<?> getEntityType(EntityKind kind) {
+        return switch (kind) {
+            case CLASS -> EntityType.CLASS;
+            case OBJECT_PROPERTY -> EntityType.OBJECT_PROPERTY;
+            case DATA_PROPERTY -> EntityType.DATA_PROPERTY;
+            case INDIVIDUAL -> EntityType.NAMED_INDIVIDUAL;
+        };
+    }
+
+    private List<OWLAxiom> getAxioms(EntityKind kind, Object model, OWLEntity entity, AxiomIndex axiomIndex, String baseIRI, OWLDataFactory dataFactory) {
+        return switch (kind) {
+            case CLASS -> getClassAxioms((OntologyClassAPI) model, entity.asOWLClass(), axiomIndex, baseIRI, dataFactory);
+            case OBJECT_PROPERTY -> getObjectPropertyAxioms((OntologyObjectPropertyAPI) model, entity.asOWLObjectProperty(), axiomIndex, baseIRI, dataFactory);
+            case DATA_PROPERTY -> getDataPropertyAxioms((OntologyDataPropertyAPI) model, entity.asOWLDataProperty(), axiomIndex, baseIRI, dataFactory);
+            case INDIVIDUAL -> getIndividualAxioms((OntologyIndividualAPI) model, entity.asOWLNamedIndividual(), axiomIndex, baseIRI, dataFactory);
+        };
+    }
 
-        // Apply changes for object properties
-        for (Map.Entry<String, OntologyObjectPropertyAPI> entry : objectProperties.entrySet()) {
-            String shortName = entry.getKey();
-            OntologyObjectPropertyAPI objectPropertyAPI = entry.getValue();
-            IRI propertyIRI = IRI.create(ontology.getBaseIRI() + shortName);
-            OWLObjectProperty objectProperty = dataFactory.getOWLObjectProperty(propertyIRI);
+    private List<OWLAxiom> getClassAxioms(OntologyClassAPI ontologyClassAPI, OWLClass owlClass, AxiomIndex axiomIndex, String baseIRI, OWLDataFactory dataFactory) {
+        List<OWLAxiom> axioms = new ArrayList<>();
+        IRI classIRI = owlClass.getIRI();
 
-            // Check if the property already exists, or add it
-            if (!owlOntology.containsObjectPropertyInSignature(propertyIRI)) {
-                manager.addAxiom(owlOntology, dataFactory.getOWLDeclarationAxiom(objectProperty));
+        // Declare the class, adding an axiom that is already present is a no-op
+        axioms.add(dataFactory.getOWLDeclarationAxiom(owlClass));
+
+        // Add subclass axioms if needed
+        if (ontologyClassAPI.getParentClasses() != null) {
+            for (String parentClassName : ontologyClassAPI.getParentClasses()) {
+                OWLClass parentClass = resolveEntity(axiomIndex, EntityType.CLASS, parentClassName, baseIRI, dataFactory).asOWLClass();
+                axioms.add(dataFactory.getOWLSubClassOfAxiom(owlClass, parentClass));
             }
+        }
+
+        addAnnotationAxioms(axioms, classIRI, ontologyClassAPI.getLabel(), ontologyClassAPI.getComment(), dataFactory);
+        return axioms;
+    }
 
-            // Add domain and range axioms if applicable
+    private List<OWLAxiom> getObjectPropertyAxioms(OntologyObjectPropertyAPI objectPropertyAPI, OWLObjectProperty objectProperty, AxiomIndex axiomIndex,
+                                                   String baseIRI, OWLDataFactory dataFactory) {
+        List<OWLAxiom> axioms = new ArrayList<>();
+        IRI propertyIRI = objectProperty.getIRI();
+
+        axioms.add(dataFactory.getOWLDeclarationAxiom(objectProperty));
+
+        // Add domain and range axioms if applicable
+        if (objectPropertyAPI.getDomain() != null) {
             for (String domainClassName : objectPropertyAPI.getDomain()) {
-                OWLClass domainClass = dataFactory.getOWLClass(IRI.create(ontology.getBaseIRI() + domainClassName));
-                OWLObjectPropertyDomainAxiom domainAxiom = dataFactory.getOWLObjectPropertyDomainAxiom(objectProperty, domainClass);
-                manager.addAxiom(owlOntology, domainAxiom);
+                OWLClass domainClass = resolveEntity(axiomIndex, EntityType.CLASS, domainClassName, baseIRI, dataFactory).asOWLClass();
+                axioms.add(dataFactory.getOWLObjectPropertyDomainAxiom(objectProperty, domainClass));
             }
+        }
 
+        if (objectPropertyAPI.getRange() != null) {
             for (String rangeClassName : objectPropertyAPI.getRange()) {
-                OWLClass rangeClass = dataFactory.getOWLClass(IRI.create(ontology.getBaseIRI() + rangeClassName));
-                OWLObjectPropertyRangeAxiom rangeAxiom = dataFactory.getOWLObjectPropertyRangeAxiom(objectProperty, rangeClass);
-                manager.addAxiom(owlOntology, rangeAxiom);
-            }
-
-            // Add label annotation if provided
-            if (objectPropertyAPI.getLabel() != null && !objectPropertyAPI.getLabel().isEmpty()) {
-                OWLAnnotation labelAnnotation = dataFactory.getOWLAnnotation(
-                        dataFactory.getRDFSLabel(),
-                        dataFactory.getOWLLiteral(objectPropertyAPI.getLabel())
-                );
-                OWLAxiom labelAxiom = dataFactory.getOWLAnnotationAssertionAxiom(propertyIRI, labelAnnotation);
-                manager.addAxiom(owlOntology, labelAxiom);
+                OWLClass rangeClass = resolveEntity(axiomIndex, EntityType.CLASS, rangeClassName, baseIRI, dataFactory).asOWLClass();
+                axioms.add(dataFactory.getOWLObjectPropertyRangeAxiom(objectProperty, rangeClass));
             }
+        }
 
-            // Add comment annotation if provided
-            if (objectPropertyAPI.getComment() != null && !objectPropertyAPI.getComment().isEmpty()) {
-                OWLAnnotation commentAnnotation = dataFactory.getOWLAnnotation(
-                        dataFactory.getRDFSComment(),
-                        dataFactory.getOWLLiteral(objectPropertyAPI.getComment())
-                );
-                OWLAxiom commentAxiom = dataFactory.getOWLAnnotationAssertionAxiom(propertyIRI, commentAnnotation);
-                manager.addAxiom(owlOntology, commentAxiom);
-            }
+        addAnnotationAxioms(axioms, propertyIRI, objectPropertyAPI.getLabel(), objectPropertyAPI.getComment(), dataFactory);
 
+        if (objectPropertyAPI.getPropertyTypes() != null) {
             for (PropertyType type : objectPropertyAPI.getPropertyTypes()) {
                 switch (type) {
-                    case FunctionalProperty -> {
-                        // Create functional property axiom
-                        OWLFunctionalObjectPropertyAxiom functionalAxiom = dataFactory.getOWLFunctionalObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, functionalAxiom);
-                    }
-                    case InverseFunctionalProperty -> {
-                        // Create inverse functional property axiom
-                        OWLInverseFunctionalObjectPropertyAxiom inverseFunctionalAxiom = dataFactory.getOWLInverseFunctionalObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, inverseFunctionalAxiom);
-                    }
-                    case TransitiveProperty -> {
-                        // Create transitive property axiom
-                        OWLTransitiveObjectPropertyAxiom transitiveAxiom = dataFactory.getOWLTransitiveObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, transitiveAxiom);
-                    }
-                    case SymmetricProperty -> {
-                        // Create symmetric property axiom
-                        OWLSymmetricObjectPropertyAxiom symmetricAxiom = dataFactory.getOWLSymmetricObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, symmetricAxiom);
-                    }
-                    case AsymmetricProperty -> {
-                        // Create asymmetric property axiom
-                        OWLAsymmetricObjectPropertyAxiom asymmetricAxiom = dataFactory.getOWLAsymmetricObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, asymmetricAxiom);
-                    }
-                    case ReflexiveProperty -> {
-                        // Create reflexive property axiom
-                        OWLReflexiveObjectPropertyAxiom reflexiveAxiom = dataFactory.getOWLReflexiveObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, reflexiveAxiom);
-                    }
-                    case IrreflexiveProperty -> {
-                        // Create irreflexive property axiom
-                        OWLIrreflexiveObjectPropertyAxiom irreflexiveAxiom = dataFactory.getOWLIrreflexiveObjectPropertyAxiom(objectProperty);
-                        owlOntology.getOWLOntologyManager().addAxiom(owlOntology, irreflexiveAxiom);
-                    }
+                    case FunctionalProperty -> axioms.add(dataFactory.getOWLFunctionalObjectPropertyAxiom(objectProperty));
+                    case InverseFunctionalProperty -> axioms.add(dataFactory.getOWLInverseFunctionalObjectPropertyAxiom(objectProperty));
+                    case TransitiveProperty -> axioms.add(dataFactory.getOWLTransitiveObjectPropertyAxiom(objectProperty));
+                    case SymmetricProperty -> axioms.add(dataFactory.getOWLSymmetricObjectPropertyAxiom(objectProperty));
+                    case AsymmetricProperty -> axioms.add(dataFactory.getOWLAsymmetricObjectPropertyAxiom(objectProperty));
+                    case ReflexiveProperty -> axioms.add(dataFactory.getOWLReflexiveObjectPropertyAxiom(objectProperty));
+                    case IrreflexiveProperty -> axioms.add(dataFactory.getOWLIrreflexiveObjectPropertyAxiom(objectProperty));
                     default -> throw new IllegalArgumentException("Unsupported PropertyType: " + type);
                 }
             }
         }
+        return axioms;
+    }
 
-        // Apply changes for data properties
-        for (Map.Entry<String, OntologyDataPropertyAPI> entry : dataProperties.entrySet()) {
-            String shortName = entry.getKey();
-            OntologyDataPropertyAPI dataPropertyAPI = entry.getValue();
-            IRI propertyIRI = IRI.create(ontology.getBaseIRI() + shortName);
-            OWLDataProperty dataProperty = dataFactory.getOWLDataProperty(propertyIRI);
+    private List<OWLAxiom> getDataPropertyAxioms(OntologyDataPropertyAPI dataPropertyAPI, OWLDataProperty dataProperty, AxiomIndex axiomIndex,
+                                                 String baseIRI, OWLDataFactory dataFactory) {
+        List<OWLAxiom> axioms = new ArrayList<>();
+        IRI propertyIRI = dataProperty.getIRI();
 
-            // Check if the property already exists, or add it
-            if (!owlOntology.containsDataPropertyInSignature(propertyIRI)) {
-                manager.addAxiom(owlOntology, dataFactory.getOWLDeclarationAxiom(dataProperty));
-            }
+        axioms.add(dataFactory.getOWLDeclarationAxiom(dataProperty));
 
-            // Add domain and range axioms if applicable
+        // Add domain and range axioms if applicable
+        if (dataPropertyAPI.getDomain() != null) {
             for (String domainClassName : dataPropertyAPI.getDomain()) {
-                OWLClass domainClass = dataFactory.getOWLClass(IRI.create(ontology.getBaseIRI() + domainClassName));
-                OWLDataPropertyDomainAxiom domainAxiom = dataFactory.getOWLDataPropertyDomainAxiom(dataProperty, domainClass);
-                manager.addAxiom(owlOntology, domainAxiom);
+                OWLClass domainClass = resolveEntity(axiomIndex, EntityType.CLASS, domainClassName, baseIRI, dataFactory).asOWLClass();
+                axioms.add(dataFactory.getOWLDataPropertyDomainAxiom(dataProperty, domainClass));
             }
+        }
 
-            if (dataPropertyAPI.getRange() != null) {
-                OWLDatatype dataRange = dataFactory.getOWLDatatype(IRI.create(ontology.getBaseIRI() + dataPropertyAPI.getRange()));
-                OWLDataPropertyRangeAxiom rangeAxiom = dataFactory.getOWLDataPropertyRangeAxiom(dataProperty, dataRange);
-                manager.addAxiom(owlOntology, rangeAxiom);
-            }
+        // The range is read back as the short form of the datatype, which for the built-in ones is not under the base IRI
+        if (dataPropertyAPI.getRange() != null && !dataPropertyAPI.getRange().isEmpty()) {
+            OWL2Datatype builtIn = BUILT_IN_DATATYPES.get(dataPropertyAPI.getRange());
+            IRI rangeIRI = builtIn != null ? builtIn.getIRI() : IRI.create(baseIRI + dataPropertyAPI.getRange());
+            axioms.add(dataFactory.getOWLDataPropertyRangeAxiom(dataProperty, dataFactory.getOWLDatatype(rangeIRI)));
+        }
 
-            // Add label annotation if provided
-            if (dataPropertyAPI.getLabel() != null && !dataPropertyAPI.getLabel().isEmpty()) {
-                OWLAnnotation labelAnnotation = dataFactory.getOWLAnnotation(
-                        dataFactory.getRDFSLabel(),
-                        dataFactory.getOWLLiteral(dataPropertyAPI.getLabel())
-                );
-                OWLAxiom labelAxiom = dataFactory.getOWLAnnotationAssertionAxiom(propertyIRI, labelAnnotation);
-                manager.addAxiom(owlOntology, labelAxiom);
-            }
+        addAnnotationAxioms(axioms, propertyIRI, dataPropertyAPI.getLabel(), dataPropertyAPI.getComment(), dataFactory);
+        return axioms;
+    }
 
-            // Add comment annotation if provided
-            if (dataPropertyAPI.getComment() != null && !dataPropertyAPI.getComment().isEmpty()) {
-                OWLAnnotation commentAnnotation = dataFactory.getOWLAnnotation(
-                        dataFactory.getRDFSComment(),
-                        dataFactory.getOWLLiteral(dataPropertyAPI.getComment())
-                );
-                OWLAxiom commentAxiom = dataFactory.getOWLAnnotationAssertionAxiom(propertyIRI, commentAnnotation);
-                manager.addAxiom(owlOntology, commentAxiom);
-            }
-        }
+    private List<OWLAxiom> getIndividualAxioms(OntologyIndividualAPI individualAPI, OWLNamedIndividual individual, AxiomIndex axiomIndex,
+                                               String baseIRI, OWLDataFactory dataFactory) {
+        List<OWLAxiom> axioms = new ArrayList<>();
 
-        // Apply changes for individuals
-        for (Map.Entry<String, OntologyIndividualAPI> entry : individuals.entrySet()) {
-            String shortName = entry.getKey();
-            OntologyIndividualAPI individualAPI = entry.getValue();
-            IRI individualIRI = IRI.create(ontology.getBaseIRI() + shortName);
-            OWLNamedIndividual individual = dataFactory.getOWLNamedIndividual(individualIRI);
+        axioms.add(dataFactory.getOWLDeclarationAxiom(individual));
 
-            // Check if the individual already exists, or add it
-            if (!owlOntology.containsIndividualInSignature(individualIRI)) {
-                manager.addAxiom(owlOntology, dataFactory.getOWLDeclarationAxiom(individual));
+        if (individualAPI.getClassNames() != null) {
+            for (String className : individualAPI.getClassNames()) {
+                OWLClass owlClass = resolveEntity(axiomIndex, EntityType.CLASS, className, baseIRI, dataFactory).asOWLClass();
+                axioms.add(dataFactory.getOWLClassAssertionAxiom(owlClass, individual));
             }
+        }
 
-            OWLClass owlClass = dataFactory.getOWLClass(IRI.create(ontology.getBaseIRI() + individualAPI.getClassName()));
-            OWLClassAssertionAxiom classAssertionAxiom = dataFactory.getOWLClassAssertionAxiom(owlClass, individual);
-            manager.addAxiom(owlOntology, classAssertionAxiom);
-
-            // Add property assertions (e.g., individual has property relations)
+        // Add property assertions (e.g., individual has property relations)
+        if (individualAPI.getObjectPropertyRelations() != null) {
             for (Map.Entry<String, List<String>> propertyRelation : individualAPI.getObjectPropertyRelations().entrySet()) {
-                String propertyName = propertyRelation.getKey();
-                List<String> relatedIndividuals = propertyRelation.getValue();
-
-                // Iterate over all related individuals for the current property
-                for (String relatedIndividualName : relatedIndividuals) {
-                    // Create object property
-                    OWLObjectProperty objectProperty = dataFactory.getOWLObjectProperty(IRI.create(ontology.getBaseIRI() + propertyName));
-                    // Create related individual
-                    OWLNamedIndividual relatedIndividual = dataFactory.getOWLNamedIndividual(IRI.create(ontology.getBaseIRI() + relatedIndividualName));
-                    // Create object property assertion axiom
-                    OWLObjectPropertyAssertionAxiom objectPropertyAssertion = dataFactory.getOWLObjectPropertyAssertionAxiom(objectProperty, individual, relatedIndividual);
-                    // Add the axiom to the ontology
-                    manager.addAxiom(owlOntology, objectPropertyAssertion);
+                OWLObjectProperty objectProperty = resolveEntity(axiomIndex, EntityType.OBJECT_PROPERTY, propertyRelation.getKey(), baseIRI, dataFactory).asOWLObjectProperty();
+                for (String relatedIndividualName : propertyRelation.getValue()) {
+                    OWLNamedIndividual relatedIndividual = resolveEntity(axiomIndex, EntityType.NAMED_INDIVIDUAL, relatedIndividualName, baseIRI, dataFactory).asOWLNamedIndividual();
+                    axioms.add(dataFactory.getOWLObjectPropertyAssertionAxiom(objectProperty, individual, relatedIndividual));
                 }
             }
+        }
 
-            // Add data property assertions (e.g., individual has data property relations)
+        // Add data property assertions (e.g., individual has data property relations)
+        if (individualAPI.getFilledDataProperties() != null) {
             for (Map.Entry<String, List<String>> dataPropertyRelation : individualAPI.getFilledDataProperties().entrySet()) {
-                String propertyName = dataPropertyRelation.getKey();
-                List<String> propertyValues = dataPropertyRelation.getValue();
-
-                // Iterate over all values for the current data property
-                for (String value : propertyValues) {
-                    // Create data property
-                    OWLDataProperty dataProperty = dataFactory.getOWLDataProperty(IRI.create(ontology.getBaseIRI() + propertyName));
-                    // Create literal for the value
-                    OWLLiteral literalValue = dataFactory.getOWLLiteral(value);
-                    // Create data property assertion axiom
-                    OWLDataPropertyAssertionAxiom dataPropertyAssertion = dataFactory.getOWLDataPropertyAssertionAxiom(dataProperty, individual, literalValue);
-                    // Add the axiom to the ontology
-                    manager.addAxiom(owlOntology, dataPropertyAssertion);
+                OWLDataProperty dataProperty = resolveEntity(axiomIndex, EntityType.DATA_PROPERTY, dataPropertyRelation.getKey(), baseIRI, dataFactory).asOWLDataProperty();
+                for (String value : dataPropertyRelation.getValue()) {
+                    axioms.add(dataFactory.getOWLDataPropertyAssertionAxiom(dataProperty, individual, dataFactory.getOWLLiteral(value)));
                 }
             }
         }
+
+        addAnnotationAxioms(axioms, individual.getIRI(), individualAPI.getLabel(), individualAPI.getComment(), dataFactory);
+        return axioms;
+    }
+
+    // Adds rdfs:label and rdfs:comment assertions when the values are provided
+    private void addAnnotationAxioms(List<OWLAxiom> axioms, IRI subject, String label, String comment, OWLDataFactory dataFactory) {
+        if (label != null && !label.isEmpty()) {
+            OWLAnnotation labelAnnotation = dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(), dataFactory.getOWLLiteral(label));
+            axioms.add(dataFactory.getOWLAnnotationAssertionAxiom(subject, labelAnnotation));
+        }
+        if (comment != null && !comment.isEmpty()) {
+            OWLAnnotation commentAnnotation = dataFactory.getOWLAnnotation(dataFactory.getRDFSComment(), dataFactory.getOWLLiteral(comment));
+            axioms.add(dataFactory.getOWLAnnotationAssertionAxiom(subject, commentAnnotation));
+        }
     }
 
     // Helper method to get annotations from OWLEntity
     // Other service methods and fields...
 
     /**
-     * Retrieves the name of the parent class (if any) of a given OWL class.
+     * Retrieves the names of the named parent classes of a given OWL class.
      *
      * @param owlClass The OWL class.
-     * @return The parent class name, or an empty string if there is no parent class.
+     * @param owlOntology The ontology to search.
+     * @return The parent class names, empty if there is no parent class.
      */
-    private String getParentClassName(OWLClass owlClass) {
+    private List<String> getParentClassNames(OWLClass owlClass, OWLOntology owlOntology) {
+        List<String> parentClasses = new ArrayList<>();
         for (OWLSubClassOfAxiom axiom : owlOntology.subClassAxiomsForSubClass(owlClass).toList()) {
             OWLClassExpression superClass = axiom.getSuperClass();
             if (!superClass.isAnonymous()) {
-                return superClass.asOWLClass().getIRI().getShortForm();
+                String parentClass = superClass.asOWLClass().getIRI().getShortForm();
+                if (!parentClasses.contains(parentClass)) {
+                    parentClasses.add(parentClass);
+                }
             }
         }
-        return "";
-    }
-
-    /**
-     * Retrieves the annotation value (label or comment) for a given OWLEntity from the provided OWLOntology.
-     *
-     * @param entity the OWLEntity whose annotation is to be retrieved
-     * @param ontology the OWLOntology to search for the annotation
-     * @param annotationType the annotation type (RDFS_LABEL or RDFS_COMMENT)
-     * @return the annotation value (String), or null if the annotation is not found
-     */
-    private String getAnnotation(OWLEntity entity, OWLOntology ontology, OWLRDFVocabulary annotationType) {
-        // Fetch annotations of the given OWLEntity
-        Stream<OWLAnnotation> annotations = EntitySearcher.getAnnotations(entity, ontology, OWLManager.getOWLDataFactory().getOWLAnnotationProperty(annotationType.getIRI()));
-
-        // Try to find the first annotation and return its literal value
-        return annotations
-                .findFirst()  // Get the first annotation found
-                .map(annotation -> ((OWLLiteral) annotation.getValue()).getLiteral())  // Extract the literal value
-                .orElse("");  // If no annotation is found, return null
+        return parentClasses;
     }
 
     private List<String> getDomainClasses(OWLObjectProperty property, OWLOntology ontology) {
@@ -798,7 +2019,7 @@ public class OntologyStorageService {
 
     // Helper method to add label and comment annotations
     private void addAnnotations(OWLOntology ontology, OWLEntity entity, String label, String comment) {
-        OWLDataFactory dataFactory = OWLManager.getOWLDataFactory();
+        OWLDataFactory dataFactory = DATA_FACTORY;
         if (label != null) {
             OWLAnnotation labelAnnotation = dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(), dataFactory.getOWLLiteral(label));
             ontology.getOWLOntologyManager().addAxiom(ontology, dataFactory.getOWLAnnotationAssertionAxiom(entity.getIRI(), labelAnnotation));
@@ -0,0 +1,34 @@
+package com.mjiason.protegeserver.services;
+
+/**
+ * Cardinalities of one property over the individuals, kept up to date by the index of the property so that queries
+ * can be planned without reading any posting list. Writers hold the individual lock, so the counts are only ever
+ * changed by one thread at a time and readers see them as they were after some write.
+ */
+class PropertyStatistics {
+
+    private volatile long triples;      // Number of individual and value pairs
+    private volatile long subjects;     // Number of individuals with at least one value
+    private volatile long objects;      // Number of distinct values
+
+    long getTriples() {
+        return triples;
+    }
+
+    long getSubjects() {
+        return subjects;
+    }
+
+    long getObjects() {
+        return objects;
+    }
+
+    /**
+     * Adds the differences to the counts, negative ones when values are removed.
+     */
+    void update(long triples, long subjects, long objects) {
+        this.triples += triples;
+        this.subjects += subjects;
+        this.objects += objects;
+    }
+}
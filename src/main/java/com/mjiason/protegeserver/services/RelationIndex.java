@@ -0,0 +1,176 @@
+package com.mjiason.protegeserver.services;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The object property relations of the individuals as int adjacency, in both directions. The individuals a subject
+ * points at are read from its compact record in the {@link IndividualStore}, the inverse direction is kept here as
+ * posting lists of the individuals that point at every related individual, grouped by property id. The
+ * {@link PropertyStatistics} of every object property are kept up to date along with the posting lists.
+ * Writers hold the individual lock, readers only ever see whole records and posting lists.
+ */
+class RelationIndex {
+
+    private final NameDictionary individualIds;
+    private final NameDictionary propertyIds;
+    private final IndividualStore individuals;
+    private final Map<Integer, Map<Integer, IntSet>> subjectsByObject = new ConcurrentHashMap<>();
+    private final Map<Integer, PropertyStatistics> statistics = new ConcurrentHashMap<>();
+
+    RelationIndex(NameDictionary individualIds, NameDictionary propertyIds, IndividualStore individuals) {
+        this.individualIds = individualIds;
+        this.propertyIds = propertyIds;
+        this.individuals = individuals;
+    }
+
+    void add(CompactIndividual individual) {
+        int[] relations = individual.getObjectRelations();
+        if (relations == null) {
+            return;
+        }
+        int position = 0;
+        while (position < relations.length) {
+            int property = relations[position++];
+            int count = relations[position++];
+            int end = position + count;
+            int objects = 0;
+            for (; position < end; position++) {
+                IntSet subjects = subjectsByObject.computeIfAbsent(relations[position], k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(property, k -> new IntSet());
+                if (subjects.add(individual.getId()) && subjects.size() == 1) {
+                    objects++;
+                }
+            }
+            if (count > 0) {
+                statistics.computeIfAbsent(property, k -> new PropertyStatistics()).update(count, 1, objects);
+            }
+        }
+    }
+
+    void remove(CompactIndividual individual) {
+        int[] relations = individual.getObjectRelations();
+        if (relations == null) {
+            return;
+        }
+        int position = 0;
+        while (position < relations.length) {
+            int property = relations[position++];
+            int count = relations[position++];
+            int end = position + count;
+            int objects = 0;
+            for (; position < end; position++) {
+                Map<Integer, IntSet> subjectsByProperty = subjectsByObject.get(relations[position]);
+                IntSet subjects = subjectsByProperty == null ? null : subjectsByProperty.get(property);
+                if (subjects != null && subjects.remove(individual.getId()) && subjects.size() == 0) {
+                    objects++;
+                }
+            }
+            PropertyStatistics propertyStatistics = statistics.get(property);
+            if (count > 0 && propertyStatistics != null) {
+                propertyStatistics.update(-count, -1, -objects);
+            }
+        }
+    }
+
+    /**
+     * @return the cardinalities of the object property, all zero if no individual uses it
+     */
+    PropertyStatistics getStatistics(int property) {
+        PropertyStatistics propertyStatistics = statistics.get(property);
+        return propertyStatistics == null ? new PropertyStatistics() : propertyStatistics;
+    }
+
+    /**
+     * @return the properties through which the subject points at other individuals
+     */
+    Set<String> getObjectProperties(int subject) {
+        CompactIndividual individual = individuals.get(subject);
+        if (individual == null || individual.getObjectRelations() == null) {
+            return Collections.emptySet();
+        }
+        Set<String> properties = new HashSet<>();
+        int[] relations = individual.getObjectRelations();
+        for (int position = 0; position < relations.length; position += 2 + relations[position + 1]) {
+            properties.add(propertyIds.name(relations[position]));
+        }
+        return properties;
+    }
+
+    /**
+     * @return the ids of the individuals the subject points at through the property
+     */
+    int[] getObjectIds(int subject, String property) {
+        CompactIndividual individual = individuals.get(subject);
+        int propertyId = propertyIds.find(property);
+        if (individual == null || individual.getObjectRelations() == null || propertyId < 0) {
+            return CompactIndividual.NO_IDS;
+        }
+        int[] relations = individual.getObjectRelations();
+        for (int position = 0; position < relations.length; position += 2 + relations[position + 1]) {
+            if (relations[position] == propertyId) {
+                return Arrays.copyOfRange(relations, position + 2, position + 2 + relations[position + 1]);
+            }
+        }
+        return CompactIndividual.NO_IDS;
+    }
+
+    /**
+     * @return the properties through which other individuals point at the object
+     */
+    Set<String> getSubjectProperties(int object) {
+        Map<Integer, IntSet> subjectsByProperty = subjectsByObject.get(object);
+        if (subjectsByProperty == null) {
+            return Collections.emptySet();
+        }
+        Set<String> properties = new HashSet<>();
+        subjectsByProperty.keySet().forEach(property -> properties.add(propertyIds.name(property)));
+        return properties;
+    }
+
+    /**
+     * @return the ids of the individuals that point at the object through the property
+     */
+    int[] getSubjectIds(int object, String property) {
+        return getSubjectIds(object, propertyIds.find(property));
+    }
+
+    int[] getSubjectIds(int object, int property) {
+        Map<Integer, IntSet> subjectsByProperty = subjectsByObject.get(object);
+        IntSet subjects = subjectsByProperty == null ? null : subjectsByProperty.get(property);
+        return subjects == null ? CompactIndividual.NO_IDS : subjects.toArray();
+    }
+
+    /**
+     * @return the number of individuals that point at the object through the property
+     */
+    int countSubjects(int object, int property) {
+        Map<Integer, IntSet> subjectsByProperty = subjectsByObject.get(object);
+        IntSet subjects = subjectsByProperty == null ? null : subjectsByProperty.get(property);
+        return subjects == null ? 0 : subjects.size();
+    }
+
+    /**
+     * @param property only return the subjects of this property, null for all properties
+     * @return property name to the ids of the individuals that point at the object through it, properties without
+     * subjects are left out
+     */
+    Map<String, int[]> getSubjects(String object, String property) {
+        int objectId = individualIds.find(object);
+        Map<Integer, IntSet> subjectsByProperty = objectId < 0 ? null : subjectsByObject.get(objectId);
+        if (subjectsByProperty == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, int[]> result = new TreeMap<>();
+        subjectsByProperty.forEach((propertyId, subjects) -> {
+            String name = propertyIds.name(propertyId);
+            if (property == null || property.equals(name)) {
+                int[] ids = subjects.after(-1, Integer.MAX_VALUE);
+                if (ids.length > 0) {
+                    result.put(name, ids);
+                }
+            }
+        });
+        return result;
+    }
+}
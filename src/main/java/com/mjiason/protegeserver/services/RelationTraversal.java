@@ -0,0 +1,171 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.TraversalDirection;
+import lombok.Value;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Breadth-first traversal of the object property relations of the individuals over the int adjacency of a
+ * {@link RelationIndex}. Visited individuals are tracked in a bit set over their ids, and the traversal stops as soon
+ * as the step budget is used up or the target is reached, so its memory is bounded by the budget.
+ * <p>
+ * With the closure enabled the characteristics of the properties are taken into account: a symmetric property is
+ * followed in both directions, and every individual reachable through a chain of a transitive property counts as a
+ * single step, since the property relates them directly.
+ */
+class RelationTraversal {
+
+    @Value
+    static class Step {
+        int individual;         // Id of the individual reached
+        int depth;              // Number of steps from the start
+        String property;        // Property followed, null for the start
+        int predecessor;        // Id of the individual the step was taken from, -1 for the start
+        boolean inverse;        // True if the property was followed from its object to its subject
+    }
+
+    private final RelationIndex relations;
+    private final Set<String> properties;
+    private final TraversalDirection direction;
+    private final Set<String> symmetricProperties;
+    private final Set<String> transitiveProperties;
+
+    /**
+     * @param properties           the properties to follow, null for all of them
+     * @param symmetricProperties  properties followed in both directions, empty unless the closure is wanted
+     * @param transitiveProperties properties whose chains count as one step, empty unless the closure is wanted
+     */
+    RelationTraversal(RelationIndex relations, Set<String> properties, TraversalDirection direction,
+                      Set<String> symmetricProperties, Set<String> transitiveProperties) {
+        this.relations = relations;
+        this.properties = properties;
+        this.direction = direction;
+        this.symmetricProperties = symmetricProperties;
+        this.transitiveProperties = transitiveProperties;
+    }
+
+    /**
+     * @return the start and every individual reached within the depth, in breadth-first order, at most maxSteps of them
+     */
+    List<Step> traverse(int start, int maxDepth, int maxSteps) {
+        List<Step> steps = new ArrayList<>();
+        search(start, -1, maxDepth, maxSteps, steps::add);
+        return steps;
+    }
+
+    /**
+     * @return the steps of a shortest path from the start to the target, empty if there is none within the depth
+     * or the target was not reached after maxSteps individuals
+     */
+    List<Step> findPath(int start, int target, int maxDepth, int maxSteps) {
+        Map<Integer, Step> reached = new HashMap<>();
+        Step last = search(start, target, maxDepth, maxSteps, step -> reached.put(step.getIndividual(), step));
+        if (last == null) {
+            return List.of();
+        }
+        LinkedList<Step> path = new LinkedList<>();
+        for (Step step = last; step != null; step = reached.get(step.getPredecessor())) {
+            path.addFirst(step);
+        }
+        return path;
+    }
+
+    // Returns the step that reached the target, or null if there is no target or it was not reached
+    private Step search(int start, int target, int maxDepth, int maxSteps, Consumer<Step> visitor) {
+        BitSet visited = new BitSet();
+        ArrayDeque<Step> queue = new ArrayDeque<>();
+        Step first = new Step(start, 0, null, -1, false);
+        visited.set(start);
+        visitor.accept(first);
+        if (start == target) {
+            return first;
+        }
+        queue.add(first);
+        int count = 1;
+
+        while (!queue.isEmpty()) {
+            Step step = queue.poll();
+            if (step.getDepth() >= maxDepth) {
+                continue;
+            }
+            for (Step next : expand(step)) {
+                if (visited.get(next.getIndividual())) {
+                    continue;
+                }
+                visited.set(next.getIndividual());
+                visitor.accept(next);
+                if (next.getIndividual() == target) {
+                    return next;
+                }
+                if (++count >= maxSteps) {
+                    return null;
+                }
+                queue.add(next);
+            }
+        }
+        return null;
+    }
+
+    // The individuals one step away, transitive chains are expanded in full when the closure is wanted
+    private List<Step> expand(Step step) {
+        List<Step> next = new ArrayList<>();
+        int node = step.getIndividual();
+        for (String property : propertiesAt(node)) {
+            if (transitiveProperties.contains(property)) {
+                collectChain(step, property, next);
+            } else {
+                collectNeighbors(node, property, (neighbor, inverse) ->
+                        next.add(new Step(neighbor, step.getDepth() + 1, property, node, inverse)));
+            }
+        }
+        return next;
+    }
+
+    // Every individual reachable through the transitive property is related to the node directly
+    private void collectChain(Step step, String property, List<Step> next) {
+        int node = step.getIndividual();
+        BitSet seen = new BitSet();
+        seen.set(node);
+        ArrayDeque<Integer> chain = new ArrayDeque<>();
+        chain.add(node);
+        while (!chain.isEmpty()) {
+            collectNeighbors(chain.poll(), property, (neighbor, inverse) -> {
+                if (!seen.get(neighbor)) {
+                    seen.set(neighbor);
+                    chain.add(neighbor);
+                    next.add(new Step(neighbor, step.getDepth() + 1, property, node, inverse));
+                }
+            });
+        }
+    }
+
+    private interface NeighborConsumer {
+        void accept(int neighbor, boolean inverse);
+    }
+
+    private void collectNeighbors(int node, String property, NeighborConsumer consumer) {
+        boolean bothWays = direction == TraversalDirection.BOTH || symmetricProperties.contains(property);
+        if (bothWays || direction == TraversalDirection.OUTGOING) {
+            for (int object : relations.getObjectIds(node, property)) {
+                consumer.accept(object, false);
+            }
+        }
+        if (bothWays || direction == TraversalDirection.INCOMING) {
+            for (int subject : relations.getSubjectIds(node, property)) {
+                consumer.accept(subject, true);
+            }
+        }
+    }
+
+    // The followed properties the node has relations of, in either direction
+    private Set<String> propertiesAt(int node) {
+        Set<String> present = new TreeSet<>(relations.getObjectProperties(node));
+        present.addAll(relations.getSubjectProperties(node));
+        if (properties != null) {
+            present.retainAll(properties);
+        }
+        return present;
+    }
+}
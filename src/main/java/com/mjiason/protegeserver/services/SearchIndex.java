@@ -0,0 +1,624 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import lombok.Value;
+
+import java.text.BreakIterator;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over the unique names, labels and comments of the entities of every kind, for finding entities by
+ * what they are called. Text is split into words by the Unicode word rules of {@link BreakIterator}, so scripts
+ * written without spaces are segmented as well, and every word is case-folded and stripped of its diacritics. Unique
+ * names are also split at camel case humps, digits and separators, and their letters are indexed as one word, so
+ * "HotDogStand12" is found by "dog" as well as by "hotdog". Leaving out the digits keeps numbered names from adding a
+ * word each.
+ * <p>
+ * A posting packs the dictionary id of the entity with its kind and the field the word occurs in, so apart from the
+ * words themselves the index holds only ints. Posting lists are found through a hash map, a sorted copy of the
+ * vocabulary serves prefixes. A query word matches a word exactly, as the prefix of a longer word, or with one edit. A
+ * prefix expands to its shortest completions, which are the ones scoring highest, and runs of words too long to be
+ * among them are skipped in the vocabulary. The edits of a query word are enumerated over the alphabet of the index
+ * and looked up one by one, which costs a few hundred lookups instead of a scan of the vocabulary.
+ * <p>
+ * Writers hold the lock of the kind they change and the posting lists are synchronized, so readers see every list
+ * whole. Emptied posting lists stay in the index, dropping one could lose a word added concurrently by another kind.
+ */
+class SearchIndex {
+
+    enum Field {
+        UNIQUE_NAME(2.0),
+        LABEL(3.0),
+        COMMENT(1.0);
+
+        private final double weight;
+
+        Field(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    @Value
+    static class Hit {
+        EntityKind kind;
+        int id;             // Id of the entity in the dictionary of its kind
+        double score;       // Sum over the query words of the best weighted match of each
+    }
+
+    // A word matched by a query word
+    @Value
+    private static class Match {
+        IntSet postingList;
+        double score;       // Score of the match before the weight of the field
+    }
+
+    // A posting is the entity id followed by two bits of kind and two bits of field
+    private static final int ID_LIMIT = 1 << 27;
+
+    // Longer words are ranked below shorter ones they complete, words within one edit below both
+    private static final double EXACT_SCORE = 1.0;
+    private static final double PREFIX_SCORE = 0.8;
+    private static final double FUZZY_SCORE = 0.4;
+
+    // Upper bound of the words a single query word expands to, which bounds the work of a short prefix
+    private static final int MAX_EXPANSIONS = 64;
+    // Upper bound of the vocabulary lookups made to find the shortest completions of a prefix
+    private static final int MAX_PREFIX_VISITS = 4096;
+    // Shorter query words are too ambiguous to match with an edit
+    private static final int MIN_FUZZY_LENGTH = 4;
+    // Past this many distinct characters only the characters of the query word are tried for insertions and substitutions
+    private static final int MAX_ALPHABET = 128;
+    // Rough cost of looking a posting up in a posting list, relative to reading one posting
+    private static final int PROBE_COST = 20;
+    // Postings copied out of a posting list at a time when only its head is needed
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingDouble(Hit::getScore).reversed()
+            .thenComparingInt(Hit::getId)
+            .thenComparing(Hit::getKind);
+
+    private static final EntityKind[] KINDS = EntityKind.values();
+    private static final Field[] FIELDS = Field.values();
+    private static final double MAX_WEIGHT = Arrays.stream(FIELDS).mapToDouble(field -> field.weight).max().orElseThrow();
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern IDENTIFIER_PARTS = Pattern.compile(
+            "[^\\p{L}\\p{N}]+|(?<=\\p{Ll})(?=\\p{Lu})|(?<=\\p{Lu})(?=\\p{Lu}\\p{Ll})|(?<=\\p{L})(?=\\p{N})|(?<=\\p{N})(?=\\p{L})");
+    private static final Pattern NON_LETTERS = Pattern.compile("[^\\p{L}]+");
+
+    private final NameDictionary individualIds;
+    private final NameDictionary classIds;
+    private final NameDictionary propertyIds;
+
+    // Writers of different kinds share words, so a posting list is only changed within a compute of its word, which
+    // also drops the word once its last posting is removed
+    private final Map<String, IntSet> postings = new ConcurrentHashMap<>();
+    // The same posting lists in word order, a word is added here when it is first posted and removed along with it
+    private final ConcurrentSkipListMap<String, IntSet> vocabulary = new ConcurrentSkipListMap<>();
+    private final Set<Character> alphabet = ConcurrentHashMap.newKeySet();
+
+    SearchIndex(NameDictionary individualIds, NameDictionary classIds, NameDictionary propertyIds) {
+        this.individualIds = individualIds;
+        this.classIds = classIds;
+        this.propertyIds = propertyIds;
+    }
+
+    void add(EntityKind kind, String uniqueName, String label, String comment) {
+        int id = dictionary(kind).id(uniqueName);
+        if (id >= ID_LIMIT) {
+            return;
+        }
+        int entity = id << 2 | kind.ordinal();
+        for (String word : identifierWords(uniqueName)) {
+            post(word, entity, Field.UNIQUE_NAME);
+        }
+        for (String word : words(label)) {
+            post(word, entity, Field.LABEL);
+        }
+        for (String word : words(comment)) {
+            post(word, entity, Field.COMMENT);
+        }
+    }
+
+    /**
+     * Removes the postings of an entity, given the texts it was added with.
+     */
+    void remove(EntityKind kind, String uniqueName, String label, String comment) {
+        int id = dictionary(kind).find(uniqueName);
+        if (id < 0 || id >= ID_LIMIT) {
+            return;
+        }
+        int entity = id << 2 | kind.ordinal();
+        for (String word : identifierWords(uniqueName)) {
+            unpost(word, entity, Field.UNIQUE_NAME);
+        }
+        for (String word : words(label)) {
+            unpost(word, entity, Field.LABEL);
+        }
+        for (String word : words(comment)) {
+            unpost(word, entity, Field.COMMENT);
+        }
+    }
+
+    /**
+     * @return the number of distinct words with postings
+     */
+    int size() {
+        return postings.size();
+    }
+
+    String getName(Hit hit) {
+        return dictionary(hit.getKind()).name(hit.getId());
+    }
+
+    /**
+     * Finds the entities matching every word of the query, best first. Entities with the same score are ordered by
+     * when they were first indexed, so pages of the result are stable while the index does not change.
+     * <p>
+     * The entities are taken from the heads of the posting lists of the rarest query word: the words it matches are
+     * visited best first, and the entities of a posting list come in indexing order, so the search stops once no later
+     * posting can make it into the result. The other query words are only looked up for those entities. When the
+     * lookups cost more than reading the posting lists would, all entities of the rarest word are scored instead, and
+     * those of the other words for them.
+     *
+     * @param kind   the kind of entities to find, null for all kinds
+     * @param prefix whether query words also match the words they are a prefix of
+     * @param fuzzy  whether query words also match words one edit away
+     * @param max    the maximum number of hits to return
+     */
+    List<Hit> search(String query, EntityKind kind, boolean prefix, boolean fuzzy, int max) {
+        List<List<Match>> terms = new ArrayList<>();
+        for (String term : words(query)) {
+            List<Match> matches = match(term, prefix, fuzzy);
+            if (matches.isEmpty()) {
+                return List.of();
+            }
+            terms.add(matches);
+        }
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        terms.sort(Comparator.comparingLong(SearchIndex::postingCount));
+        List<Hit> hits = searchHeads(terms, kind, max);
+        return hits != null ? hits : searchAll(terms, kind, max);
+    }
+
+    // The words the term matches, best first. A word is matched once, by its best match.
+    private List<Match> match(String term, boolean prefix, boolean fuzzy) {
+        Map<String, Match> matches = new LinkedHashMap<>();
+        addMatch(term, EXACT_SCORE, matches);
+        if (prefix) {
+            for (String word : completions(term, MAX_EXPANSIONS, matches.keySet())) {
+                addMatch(word, PREFIX_SCORE * completion(term, word), matches);
+            }
+        }
+        if (fuzzy && term.length() >= MIN_FUZZY_LENGTH) {
+            Set<String> variants = edits(term);
+            int budget = MAX_EXPANSIONS;
+            for (Iterator<String> iterator = variants.iterator(); iterator.hasNext() && budget > 0; ) {
+                if (addMatch(iterator.next(), FUZZY_SCORE, matches)) {
+                    budget--;
+                }
+            }
+            for (Iterator<String> iterator = variants.iterator(); prefix && iterator.hasNext() && budget > 0; ) {
+                String variant = iterator.next();
+                // The completions of the term without its last character are mostly completions of the term
+                if (term.startsWith(variant)) {
+                    continue;
+                }
+                for (String word : completions(variant, budget, matches.keySet())) {
+                    if (addMatch(word, FUZZY_SCORE * completion(term, word), matches)) {
+                        budget--;
+                    }
+                }
+            }
+        }
+        List<Match> sorted = new ArrayList<>(matches.values());
+        sorted.sort(Comparator.comparingDouble(Match::getScore).reversed());
+        return sorted;
+    }
+
+    // Returns false when the word has no postings or was matched before
+    private boolean addMatch(String word, double score, Map<String, Match> matches) {
+        IntSet postingList = postings.get(word);
+        if (postingList == null || postingList.size() == 0 || matches.containsKey(word)) {
+            return false;
+        }
+        matches.put(word, new Match(postingList, score));
+        return true;
+    }
+
+    // The shortest words longer than the prefix starting with it, which are the completions scoring highest
+    private List<String> completions(String prefix, int max, Set<String> excluded) {
+        // Longest word on top, so it is the one dropped
+        PriorityQueue<String> shortest = new PriorityQueue<>(Comparator.comparingInt(String::length).reversed());
+        int visited = 0;
+        for (String word = vocabulary.higherKey(prefix); word != null && word.startsWith(prefix) && visited < MAX_PREFIX_VISITS; visited++) {
+            if (shortest.size() == max && word.length() >= shortest.peek().length()) {
+                // Every word sharing the first characters of this one is as long, so they are skipped together
+                word = vocabulary.higherKey(word.substring(0, shortest.peek().length()) + Character.MAX_VALUE);
+                continue;
+            }
+            // Words matched already still take their place, so the skipping starts as early
+            shortest.add(word);
+            if (shortest.size() > max) {
+                shortest.poll();
+            }
+            word = vocabulary.higherKey(word);
+        }
+        shortest.removeAll(excluded);
+        return new ArrayList<>(shortest);
+    }
+
+    // Between one half for a word much longer than the term and one for a word as long as the term
+    private static double completion(String term, String word) {
+        return (1 + Math.min(1.0, (double) term.length() / word.length())) / 2;
+    }
+
+    // Visits the postings of every word and field of the first term in order of score and of entity, scoring the
+    // entities with the other terms. Returns null when the lookups in the other terms get too expensive.
+    private List<Hit> searchHeads(List<List<Match>> terms, EntityKind kind, int max) {
+        List<List<Match>> others = terms.subList(1, terms.size());
+        double othersBest = 0;
+        long lookupCost = 0;
+        long budget = 0;
+        for (List<Match> matches : terms) {
+            budget += postingCount(matches);
+        }
+        for (List<Match> matches : others) {
+            othersBest += matches.get(0).getScore() * MAX_WEIGHT;
+            lookupCost += (long) matches.size() * FIELDS.length * PROBE_COST;
+        }
+
+        List<Map.Entry<Match, Field>> groups = new ArrayList<>();
+        for (Match match : terms.get(0)) {
+            for (Field field : FIELDS) {
+                groups.add(Map.entry(match, field));
+            }
+        }
+        groups.sort(Comparator.comparingDouble((Map.Entry<Match, Field> group) -> score(group.getKey(), group.getValue())).reversed());
+
+        // Keeps the best hits seen so far with the worst of them on top, so it can be dropped
+        PriorityQueue<Hit> best = new PriorityQueue<>(HIT_ORDER.reversed());
+        Scores seen = new Scores();
+        long cost = 0;
+        for (Map.Entry<Match, Field> group : groups) {
+            double score = score(group.getKey(), group.getValue());
+            // The best score an entity first seen in this group can reach
+            double bound = score + othersBest;
+            if (best.size() == max && bound < best.peek().getScore()) {
+                break;
+            }
+            int after = -1;
+            scan:
+            for (int[] chunk; (chunk = group.getKey().getPostingList().after(after, CHUNK_SIZE)).length > 0; after = chunk[chunk.length - 1]) {
+                for (int posting : chunk) {
+                    int entity = posting >>> 2;
+                    if ((posting & 3) != group.getValue().ordinal() || kind != null && (entity & 3) != kind.ordinal()) {
+                        continue;
+                    }
+                    // The later entities of the group come after this one, at best they tie with the worst hit and lose
+                    if (best.size() == max && !isBetter(bound, entity, best.peek())) {
+                        break scan;
+                    }
+                    if (seen.contains(entity)) {
+                        continue;
+                    }
+                    seen.max(entity, score);
+                    double total = score;
+                    for (List<Match> matches : others) {
+                        double termScore = lookup(matches, entity);
+                        total = termScore == 0 ? 0 : total + termScore;
+                        if (total == 0) {
+                            break;
+                        }
+                    }
+                    cost += lookupCost;
+                    if (cost > budget) {
+                        return null;
+                    }
+                    if (total > 0 && (best.size() < max || isBetter(total, entity, best.peek()))) {
+                        best.add(new Hit(KINDS[entity & 3], entity >>> 2, total));
+                        if (best.size() > max) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(HIT_ORDER);
+        return hits;
+    }
+
+    private static boolean isBetter(double score, int entity, Hit hit) {
+        return score > hit.getScore() || score == hit.getScore() && entity < (hit.getId() << 2 | hit.getKind().ordinal());
+    }
+
+    // Scores every entity of the first term, then the other terms for the entities matching all terms before
+    private static List<Hit> searchAll(List<List<Match>> terms, EntityKind kind, int max) {
+        Scores scores = scan(terms.get(0), kind, null);
+        for (List<Match> matches : terms.subList(1, terms.size())) {
+            if (scores.size() == 0) {
+                return List.of();
+            }
+            Scores termScores = (long) scores.size() * matches.size() * FIELDS.length * PROBE_COST < postingCount(matches)
+                    ? probe(matches, scores) : scan(matches, kind, scores);
+            termScores.addAll(scores);
+            scores = termScores;
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(HIT_ORDER.reversed());
+        scores.forEach((entity, score) -> {
+            if (best.size() < max || isBetter(score, entity, best.peek())) {
+                best.add(new Hit(KINDS[entity & 3], entity >>> 2, score));
+                if (best.size() > max) {
+                    best.poll();
+                }
+            }
+        });
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(HIT_ORDER);
+        return hits;
+    }
+
+    // Scores every posting of the matched words, restricted to the given entities unless they are null
+    private static Scores scan(List<Match> matches, EntityKind kind, Scores restrict) {
+        Scores scores = new Scores();
+        for (Match match : matches) {
+            for (int posting : match.getPostingList().toArray()) {
+                int entity = posting >>> 2;
+                if (kind != null && (entity & 3) != kind.ordinal() || restrict != null && !restrict.contains(entity)) {
+                    continue;
+                }
+                scores.max(entity, score(match, FIELDS[posting & 3]));
+            }
+        }
+        return scores;
+    }
+
+    // Scores the given entities by looking each of them up in the posting lists of the matched words
+    private static Scores probe(List<Match> matches, Scores candidates) {
+        Scores scores = new Scores();
+        candidates.forEach((entity, candidateScore) -> {
+            double score = lookup(matches, entity);
+            if (score > 0) {
+                scores.max(entity, score);
+            }
+        });
+        return scores;
+    }
+
+    // The best score of the entity for the matched words, 0 when it has none of them
+    private static double lookup(List<Match> matches, int entity) {
+        double best = 0;
+        for (Match match : matches) {
+            // The matches are ordered by score, none of the rest can do better
+            if (match.getScore() * MAX_WEIGHT <= best) {
+                break;
+            }
+            for (Field field : FIELDS) {
+                double score = score(match, field);
+                if (score > best && match.getPostingList().contains(entity << 2 | field.ordinal())) {
+                    best = score;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static double score(Match match, Field field) {
+        return match.getScore() * field.weight;
+    }
+
+    private static long postingCount(List<Match> matches) {
+        long count = 0;
+        for (Match match : matches) {
+            count += match.getPostingList().size();
+        }
+        return count;
+    }
+
+    // Every string one deletion, transposition, substitution or insertion away from the term
+    private Set<String> edits(String term) {
+        Collection<Character> characters = alphabet.size() <= MAX_ALPHABET ? alphabet
+                : term.chars().mapToObj(c -> (char) c).toList();
+        Set<String> edits = new LinkedHashSet<>();
+        StringBuilder builder = new StringBuilder(term.length() + 1);
+        for (int i = 0; i < term.length(); i++) {
+            edits.add(builder.append(term, 0, i).append(term, i + 1, term.length()).toString());
+            builder.setLength(0);
+            if (i + 1 < term.length()) {
+                edits.add(builder.append(term, 0, i).append(term.charAt(i + 1)).append(term.charAt(i))
+                        .append(term, i + 2, term.length()).toString());
+                builder.setLength(0);
+            }
+        }
+        for (char c : characters) {
+            for (int i = 0; i <= term.length(); i++) {
+                if (i < term.length()) {
+                    edits.add(builder.append(term, 0, i).append(c).append(term, i + 1, term.length()).toString());
+                    builder.setLength(0);
+                }
+                edits.add(builder.append(term, 0, i).append(c).append(term, i, term.length()).toString());
+                builder.setLength(0);
+            }
+        }
+        edits.remove(term);
+        return edits;
+    }
+
+    private void post(String word, int entity, Field field) {
+        postings.compute(word, (k, postingList) -> {
+            if (postingList == null) {
+                for (int i = 0; i < k.length(); i++) {
+                    alphabet.add(k.charAt(i));
+                }
+                postingList = new IntSet();
+                vocabulary.put(k, postingList);
+            }
+            postingList.add(entity << 2 | field.ordinal());
+            return postingList;
+        });
+    }
+
+    private void unpost(String word, int entity, Field field) {
+        postings.computeIfPresent(word, (k, postingList) -> {
+            postingList.remove(entity << 2 | field.ordinal());
+            if (postingList.size() > 0) {
+                return postingList;
+            }
+            vocabulary.remove(k, postingList);
+            return null;
+        });
+    }
+
+    private NameDictionary dictionary(EntityKind kind) {
+        return switch (kind) {
+            case CLASS -> classIds;
+            case OBJECT_PROPERTY, DATA_PROPERTY -> propertyIds;
+            case INDIVIDUAL -> individualIds;
+        };
+    }
+
+    /**
+     * @return the distinct words of the text, case-folded and without diacritics
+     */
+    static List<String> words(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        Set<String> words = new LinkedHashSet<>();
+        if (text.chars().allMatch(c -> c < 0x80)) {
+            // Plain ASCII needs no segmentation rules, words are the runs of letters and digits
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (wordChar && start < 0) {
+                    start = i;
+                } else if (!wordChar && start >= 0) {
+                    words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                    start = -1;
+                }
+            }
+            return new ArrayList<>(words);
+        }
+        BreakIterator iterator = BreakIterator.getWordInstance(Locale.ROOT);
+        iterator.setText(text);
+        for (int start = iterator.first(), end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            // Segments between words are spaces and punctuation
+            if (Character.isLetterOrDigit(text.codePointAt(start))) {
+                words.add(fold(text.substring(start, end)));
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    // The parts of the name and its letters as one word
+    private static List<String> identifierWords(String uniqueName) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String part : IDENTIFIER_PARTS.split(uniqueName)) {
+            if (!part.isEmpty()) {
+                words.add(fold(part));
+            }
+        }
+        String whole = NON_LETTERS.matcher(uniqueName).replaceAll("");
+        if (!whole.isEmpty()) {
+            words.add(fold(whole));
+        }
+        return new ArrayList<>(words);
+    }
+
+    private static String fold(String word) {
+        boolean ascii = word.chars().allMatch(c -> c < 0x80);
+        String stripped = ascii ? word : COMBINING_MARKS.matcher(Normalizer.normalize(word, Normalizer.Form.NFKD)).replaceAll("");
+        return stripped.toLowerCase(Locale.ROOT);
+    }
+
+    // Open addressing map from entity to score, the entities of a common word can be a large part of the index
+    private static final class Scores {
+        private static final int EMPTY = -1;
+
+        private int[] keys = filled(16);
+        private double[] values = new double[16];
+        private int size;
+
+        interface Consumer {
+            void accept(int entity, double score);
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(int entity) {
+            return keys[slot(keys, entity)] == entity;
+        }
+
+        // Keeps the higher of the present and the given score
+        void max(int entity, double score) {
+            int slot = slot(keys, entity);
+            if (keys[slot] == entity) {
+                values[slot] = Math.max(values[slot], score);
+                return;
+            }
+            keys[slot] = entity;
+            values[slot] = score;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        // Adds the scores the other map has for the entities of this one
+        void addAll(Scores other) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    values[i] += other.values[slot(other.keys, keys[i])];
+                }
+            }
+        }
+
+        void forEach(Consumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    consumer.accept(keys[i], values[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            keys = filled(oldKeys.length * 2);
+            values = new double[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        // The slot holding the entity, or the empty slot it belongs in
+        private static int slot(int[] keys, int entity) {
+            int mask = keys.length - 1;
+            int hash = entity * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != entity) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int[] filled(int length) {
+            int[] keys = new int[length];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.mjiason.protegeserver.services;
+
+public class UploadTooLargeException extends RuntimeException {
+    public UploadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,394 @@
+package com.mjiason.protegeserver.services;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the data property values of the individuals, one per data property. The range of the data
+ * property decides how its values are indexed: numbers and points in time are parsed and kept sorted, so ranges of
+ * them are read off in order, every other value is kept as is in a hash index. Values that do not parse as the range
+ * of their property are left out and match no condition. Every indexed value maps to the posting list of the ids of
+ * the individuals that have it, and the {@link PropertyStatistics} of every data property are kept along with them.
+ * <p>
+ * Conditions are answered by intersecting the ids matched by each of them, starting with the most selective one. A
+ * condition matching far more individuals than are left is checked against the values of those individuals instead,
+ * reading its whole range would cost more than the intersection saves.
+ * <p>
+ * Writers hold the individual lock, and changing the range of a data property also holds it while the index of the
+ * property is rebuilt. A rebuilt index replaces the previous one as a whole, readers only ever see whole indexes and
+ * posting lists.
+ */
+class ValueIndex {
+
+    enum ValueType {
+        NUMBER,
+        DATE_TIME,
+        STRING;
+
+        private static final Set<String> NUMBER_RANGES = Set.of("decimal", "integer", "int", "long", "short", "byte",
+                "nonNegativeInteger", "positiveInteger", "nonPositiveInteger", "negativeInteger",
+                "unsignedLong", "unsignedInt", "unsignedShort", "unsignedByte", "double", "float");
+        private static final Set<String> DATE_TIME_RANGES = Set.of("dateTime", "dateTimeStamp", "date");
+
+        /**
+         * @param range the datatype of a data property, as short form like "int", prefixed like "xsd:int" or as IRI
+         */
+        static ValueType of(String range) {
+            if (range == null) {
+                return STRING;
+            }
+            String localName = range.substring(Math.max(range.lastIndexOf('#'), Math.max(range.lastIndexOf(':'), range.lastIndexOf('/'))) + 1);
+            if (NUMBER_RANGES.contains(localName)) {
+                return NUMBER;
+            }
+            return DATE_TIME_RANGES.contains(localName) ? DATE_TIME : STRING;
+        }
+
+        /**
+         * @return the value as the comparable type of this range, null when it is not of this type
+         */
+        Object parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return switch (this) {
+                    case NUMBER -> new BigDecimal(value.trim());
+                    case DATE_TIME -> parseDateTime(value.trim());
+                    case STRING -> value;
+                };
+            } catch (NumberFormatException | DateTimeParseException e) {
+                return null;
+            }
+        }
+
+        // A date or a date and time without an offset is taken as UTC
+        private static Instant parseDateTime(String value) {
+            if (value.indexOf('T') < 0) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+            }
+            try {
+                return OffsetDateTime.parse(value).toInstant();
+            } catch (DateTimeParseException e) {
+                return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC);
+            }
+        }
+    }
+
+    enum Operator {
+        EQUAL("="),
+        LESS("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER(">"),
+        GREATER_OR_EQUAL(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        String getSymbol() {
+            return symbol;
+        }
+    }
+
+    /**
+     * A condition on the values of one data property, an individual matches it when any of its values does.
+     */
+    @Value
+    static class Condition {
+        int property;       // Id of the data property in the property dictionary
+        Operator operator;
+        Object value;       // The value compared with, parsed as the range of the property
+    }
+
+    // Ids of the individuals having a value, keyed by the value
+    private static final class PropertyValues {
+        private final ValueType type;
+        // Sorted for numbers and points in time, hashed for strings
+        private final Map<Object, IntSet> values;
+        private final PropertyStatistics statistics = new PropertyStatistics();
+
+        private PropertyValues(ValueType type) {
+            this.type = type;
+            this.values = type == ValueType.STRING ? new ConcurrentHashMap<>() : new ConcurrentSkipListMap<>();
+        }
+
+        // The first value of an individual counts it as a subject of the property
+        private void add(int id, String value, boolean first) {
+            Object key = type.parse(value);
+            IntSet ids = key == null ? null : values.computeIfAbsent(key, k -> new IntSet());
+            boolean distinct = ids != null && ids.add(id) && ids.size() == 1;
+            statistics.update(1, first ? 1 : 0, distinct ? 1 : 0);
+        }
+
+        private void remove(int id, String value, boolean first) {
+            Object key = type.parse(value);
+            IntSet ids = key == null ? null : values.get(key);
+            boolean distinct = ids != null && ids.remove(id) && ids.size() == 0;
+            statistics.update(-1, first ? -1 : 0, distinct ? -1 : 0);
+        }
+    }
+
+    // Reading a posting list of the range of a condition costs about this much more per id than checking an individual
+    private static final int CHECK_COST = 8;
+
+    private final NameDictionary propertyIds;
+    private final IndividualStore individuals;
+    private final Map<Integer, PropertyValues> byProperty = new ConcurrentHashMap<>();
+
+    ValueIndex(NameDictionary propertyIds, IndividualStore individuals) {
+        this.propertyIds = propertyIds;
+        this.individuals = individuals;
+    }
+
+    void add(CompactIndividual individual) {
+        // The values of a property are next to each other, so a new property starts with the first of its values
+        int[] previous = {-1};
+        forEachValue(individual, (property, value) -> {
+            byProperty.computeIfAbsent(property, k -> new PropertyValues(ValueType.STRING))
+                    .add(individual.getId(), value, property != previous[0]);
+            previous[0] = property;
+        });
+    }
+
+    void remove(CompactIndividual individual) {
+        int[] previous = {-1};
+        forEachValue(individual, (property, value) -> {
+            PropertyValues propertyValues = byProperty.get(property);
+            if (propertyValues != null) {
+                propertyValues.remove(individual.getId(), value, property != previous[0]);
+            }
+            previous[0] = property;
+        });
+    }
+
+    /**
+     * Indexes the values of the data property as the given type from now on, rebuilding its index from the values of
+     * all individuals if they were indexed as another type. Properties that are not declared are indexed as strings.
+     */
+    void setType(String property, ValueType type) {
+        int propertyId = propertyIds.id(property);
+        PropertyValues current = byProperty.get(propertyId);
+        if (current != null && current.type == type || current == null && type == ValueType.STRING) {
+            return;
+        }
+        PropertyValues rebuilt = new PropertyValues(type);
+        if (current != null) {
+            for (CompactIndividual individual : individuals.records().values()) {
+                boolean[] first = {true};
+                forEachValue(individual, (valueProperty, value) -> {
+                    if (valueProperty == propertyId) {
+                        rebuilt.add(individual.getId(), value, first[0]);
+                        first[0] = false;
+                    }
+                });
+            }
+        }
+        byProperty.put(propertyId, rebuilt);
+    }
+
+    ValueType getType(String property) {
+        int propertyId = propertyIds.find(property);
+        PropertyValues propertyValues = propertyId < 0 ? null : byProperty.get(propertyId);
+        return propertyValues == null ? ValueType.STRING : propertyValues.type;
+    }
+
+    /**
+     * @return the cardinalities of the data property, all zero if no individual uses it
+     */
+    PropertyStatistics getStatistics(int property) {
+        PropertyValues propertyValues = byProperty.get(property);
+        return propertyValues == null ? new PropertyStatistics() : propertyValues.statistics;
+    }
+
+    /**
+     * Parses the value of a condition as the range of the property.
+     */
+    Condition condition(String property, Operator operator, String value) {
+        ValueType type = getType(property);
+        if (type == ValueType.STRING && operator != Operator.EQUAL) {
+            throw new ValidationException("Data property '" + property + "' has no numeric or temporal range, "
+                    + "its values can only be compared with '='.");
+        }
+        Object parsed = type.parse(value);
+        if (parsed == null) {
+            throw new ValidationException("Value '" + value + "' of the condition on '" + property + "' is not a "
+                    + (type == ValueType.NUMBER ? "number." : "date or date and time."));
+        }
+        // A property that was never used has no id and no index, so the condition matches nothing
+        return new Condition(propertyIds.find(property), operator, parsed);
+    }
+
+    /**
+     * @return the ids of the individuals matching all conditions, in increasing order
+     */
+    int[] find(List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            return new int[0];
+        }
+        // The most selective condition first, every count stops once it exceeds the smallest one so far
+        List<Condition> ordered = new ArrayList<>(conditions);
+        Map<Condition, Long> counts = new HashMap<>();
+        long smallest = Long.MAX_VALUE;
+        for (Condition condition : ordered) {
+            long count = count(condition, smallest);
+            counts.put(condition, count);
+            smallest = Math.min(smallest, count);
+        }
+        ordered.sort(Comparator.comparingLong(counts::get));
+
+        int[] ids = ids(ordered.get(0));
+        for (Condition condition : ordered.subList(1, ordered.size())) {
+            if (ids.length == 0) {
+                break;
+            }
+            ids = counts.get(condition) > (long) ids.length * CHECK_COST ? check(ids, condition) : intersect(ids, ids(condition));
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of postings in the range of the condition, counting stops once it exceeds the limit
+     */
+    long count(Condition condition, long limit) {
+        long count = 0;
+        for (IntSet ids : postingLists(condition)) {
+            count += ids.size();
+            if (count > limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private int[] ids(Condition condition) {
+        List<int[]> lists = new ArrayList<>();
+        int total = 0;
+        for (IntSet postingList : postingLists(condition)) {
+            int[] ids = postingList.toArray();
+            lists.add(ids);
+            total += ids.length;
+        }
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        int[] merged = new int[total];
+        int position = 0;
+        for (int[] ids : lists) {
+            System.arraycopy(ids, 0, merged, position, ids.length);
+            position += ids.length;
+        }
+        // An individual with several values in the range is in several posting lists
+        Arrays.sort(merged);
+        int size = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (size == 0 || merged[size - 1] != merged[i]) {
+                merged[size++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    private Collection<IntSet> postingLists(Condition condition) {
+        PropertyValues propertyValues = byProperty.get(condition.getProperty());
+        if (propertyValues == null) {
+            return List.of();
+        }
+        if (condition.getOperator() == Operator.EQUAL) {
+            IntSet ids = propertyValues.values.get(condition.getValue());
+            return ids == null ? List.of() : List.of(ids);
+        }
+        ConcurrentNavigableMap<Object, IntSet> sorted = (ConcurrentNavigableMap<Object, IntSet>) propertyValues.values;
+        return switch (condition.getOperator()) {
+            case LESS -> sorted.headMap(condition.getValue(), false).values();
+            case LESS_OR_EQUAL -> sorted.headMap(condition.getValue(), true).values();
+            case GREATER -> sorted.tailMap(condition.getValue(), false).values();
+            case GREATER_OR_EQUAL -> sorted.tailMap(condition.getValue(), true).values();
+            case EQUAL -> throw new IllegalStateException();
+        };
+    }
+
+    // Keeps the individuals having a value that matches the condition
+    private int[] check(int[] ids, Condition condition) {
+        PropertyValues propertyValues = byProperty.get(condition.getProperty());
+        if (propertyValues == null) {
+            return new int[0];
+        }
+        int[] matching = new int[ids.length];
+        int size = 0;
+        for (int id : ids) {
+            CompactIndividual individual = individuals.get(id);
+            if (individual != null && matches(individual, condition, propertyValues.type)) {
+                matching[size++] = id;
+            }
+        }
+        return Arrays.copyOf(matching, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matches(CompactIndividual individual, Condition condition, ValueType type) {
+        boolean[] matched = {false};
+        forEachValue(individual, (property, value) -> {
+            Object key = property == condition.getProperty() && !matched[0] ? type.parse(value) : null;
+            if (key == null) {
+                return;
+            }
+            int comparison = type == ValueType.STRING ? (key.equals(condition.getValue()) ? 0 : 1)
+                    : ((Comparable<Object>) key).compareTo(condition.getValue());
+            matched[0] = switch (condition.getOperator()) {
+                case EQUAL -> comparison == 0;
+                case LESS -> comparison < 0;
+                case LESS_OR_EQUAL -> comparison <= 0;
+                case GREATER -> comparison > 0;
+                case GREATER_OR_EQUAL -> comparison >= 0;
+            };
+        });
+        return matched[0];
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] common = new int[Math.min(left.length, right.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < left.length && j < right.length; ) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                common[size++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    private interface ValueConsumer {
+        void accept(int property, String value);
+    }
+
+    private void forEachValue(CompactIndividual individual, ValueConsumer consumer) {
+        int[] relations = individual.getDataRelations();
+        if (relations == null) {
+            return;
+        }
+        int position = 0;
+        while (position < relations.length) {
+            int property = relations[position++];
+            int count = relations[position++];
+            int end = position + count;
+            for (; position < end; position++) {
+                consumer.accept(property, individuals.getValue(relations[position]));
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.mjiason.protegeserver.services;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mjiason.protegeserver.models.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the edits made since the last snapshot, replayed on startup so that a restart keeps every
+ * acknowledged edit.
+ * <p>
+ * Every mutation is appended as one record holding its changes, a batch is one record so it is replayed all or
+ * nothing. A record is framed by its length and CRC32C, a torn record at the end of the log is cut off when it is
+ * opened. Records are appended while the writer holds its locks, and the writer waits for them to reach the disk only
+ * after releasing them, so with batched syncing concurrent writers share a single fsync.
+ * <p>
+ * The log is emptied whenever a snapshot is written, the snapshot remembers the sequence of the last record it
+ * contains so the log can be replayed on top of it.
+ */
+class WriteAheadLog implements Closeable {
+
+    enum FsyncPolicy {
+        ALWAYS,     // Every record is synced before its writer continues
+        BATCH,      // Writers wait for a sync, one sync covers every record appended before it started
+        INTERVAL    // Records are synced periodically, writers do not wait
+    }
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final FileChannel channel;
+    private final FsyncPolicy fsyncPolicy;
+    private final ScheduledExecutorService syncScheduler;
+
+    // Appending is serialized on the log itself
+    private volatile long sequence;
+    private long size;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncFinished = syncLock.newCondition();
+    private volatile long syncedSequence;
+    private boolean syncing;
+
+    private WriteAheadLog(FileChannel channel, FsyncPolicy fsyncPolicy, Duration fsyncInterval, long sequence, long size) {
+        this.channel = channel;
+        this.fsyncPolicy = fsyncPolicy;
+        this.sequence = sequence;
+        this.syncedSequence = sequence;
+        this.size = size;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "write-ahead-log-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = Math.max(1, fsyncInterval.toMillis());
+            syncScheduler.scheduleWithFixedDelay(this::syncQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        } else {
+            syncScheduler = null;
+        }
+    }
+
+    /**
+     * Opens the log, creating it if needed, and hands every intact record after the given sequence to the replay
+     * consumer, together with its sequence, before returning.
+     *
+     * @param afterSequence sequence of the last record already contained in the loaded state
+     */
+    static WriteAheadLog open(Path path, FsyncPolicy fsyncPolicy, Duration fsyncInterval, long afterSequence,
+                              ObjLongConsumer<List<OntologyChange>> replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long valid = 0;
+            long sequence = afterSequence;
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                byte[] payload = readRecord(input, channel.size() - valid);
+                if (payload == null) {
+                    break;
+                }
+                JsonNode record = MAPPER.readTree(payload);
+                long recordSequence = record.get("sequence").asLong();
+                if (recordSequence > afterSequence) {
+                    replay.accept(decode(record), recordSequence);
+                }
+                sequence = Math.max(sequence, recordSequence);
+                valid += HEADER_SIZE + payload.length;
+            }
+            // Drop a record torn by a crash, appending after it would hide every later record
+            if (channel.size() > valid) {
+                System.out.println("Cutting off " + (channel.size() - valid) + " bytes of a torn record after record "
+                        + sequence + " of the write-ahead log " + path);
+            }
+            channel.truncate(valid);
+            channel.position(valid);
+            return new WriteAheadLog(channel, fsyncPolicy, fsyncInterval, sequence, valid);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the changes of one mutation as a single record. Unless the policy is to sync every record, the record
+     * may not be on disk yet when this returns, see {@link #awaitDurable()}.
+     */
+    synchronized void append(List<OntologyChange> changes) throws IOException {
+        long next = sequence + 1;
+        byte[] payload = MAPPER.writeValueAsBytes(encode(next, changes));
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        size += buffer.limit();
+        sequence = next;
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            channel.force(false);
+            syncedSequence = next;
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is on disk when syncing in batches. The first waiter syncs for all
+     * records appended until then, writers arriving during the sync wait for it and share the next one.
+     */
+    void awaitDurable() throws IOException {
+        long target = sequence;
+        if (fsyncPolicy != FsyncPolicy.BATCH || syncedSequence >= target) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (syncedSequence < target) {
+                if (syncing) {
+                    syncFinished.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long covered = sequence;
+                syncLock.unlock();
+                try {
+                    channel.force(false);
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    syncFinished.signalAll();
+                }
+                syncedSequence = Math.max(syncedSequence, covered);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Empties the log once a snapshot contains all of its records. Sequences continue where they were.
+     */
+    synchronized void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        size = 0;
+        syncedSequence = sequence;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+        }
+        synchronized (this) {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        long covered = sequence;
+        try {
+            if (syncedSequence < covered) {
+                channel.force(false);
+                syncedSequence = covered;
+            }
+        } catch (IOException e) {
+            System.out.println("Could not sync the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    // Returns null at the end of the log or at a record that is incomplete or damaged
+    private static byte[] readRecord(DataInputStream input, long remaining) throws IOException {
+        if (remaining < HEADER_SIZE) {
+            return null;
+        }
+        int length = input.readInt();
+        int checksum = input.readInt();
+        if (length < 0 || length > remaining - HEADER_SIZE) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    private static ObjectNode encode(long sequence, List<OntologyChange> changes) {
+        ObjectNode record = MAPPER.createObjectNode();
+        record.put("sequence", sequence);
+        ArrayNode encoded = record.putArray("changes");
+        for (OntologyChange change : changes) {
+            ObjectNode node = encoded.addObject();
+            node.put("operation", change.getOperation().name());
+            node.put("kind", change.getKind().name());
+            node.put("uniqueName", change.getUniqueName());
+            // A removal is replayed by name, the removed entity is not needed
+            if (change.getOperation() == OntologyChange.Operation.ADD) {
+                node.set("entity", MAPPER.valueToTree(change.getEntity()));
+            }
+        }
+        return record;
+    }
+
+    private static List<OntologyChange> decode(JsonNode record) throws IOException {
+        List<OntologyChange> changes = new ArrayList<>();
+        for (JsonNode node : record.get("changes")) {
+            OntologyChange.Operation operation = OntologyChange.Operation.valueOf(node.get("operation").asText());
+            EntityKind kind = EntityKind.valueOf(node.get("kind").asText());
+            Object entity = null;
+            if (operation == OntologyChange.Operation.ADD) {
+                Class<?> type = switch (kind) {
+                    case CLASS -> OntologyClassAPI.class;
+                    case OBJECT_PROPERTY -> OntologyObjectPropertyAPI.class;
+                    case DATA_PROPERTY -> OntologyDataPropertyAPI.class;
+                    case INDIVIDUAL -> OntologyIndividualAPI.class;
+                };
+                entity = MAPPER.treeToValue(node.get("entity"), type);
+            }
+            changes.add(new OntologyChange(operation, kind, node.get("uniqueName").asText(), entity));
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,162 @@
+package com.mjiason.protegeserver.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+class ResponseCacheTest {
+
+    // Named ontologies are only served with a storage directory
+    @TempDir
+    static Path storageDirectory;
+
+    @DynamicPropertySource
+    static void storageProperties(DynamicPropertyRegistry registry) {
+        registry.add("protege.storage.dir", storageDirectory::toString);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void unchangedResponsesAreAnsweredWithNotModified() throws Exception {
+        createIndividual("/api/ontology", "etagAlice");
+        String path = "/api/ontology/individuals/etagAlice";
+
+        MvcResult first = mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertTrue(first.getResponse().getContentAsString().contains("\"uniqueName\":\"etagAlice\""));
+
+        mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, "\"stale\", " + etag))
+                .andExpect(status().isNotModified());
+
+        // A hit is served from the cache as the handler built it, and gzipped under an ETag of its own
+        mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(first.getResponse().getContentAsByteArray()));
+        MvcResult gzipped = mockMvc.perform(get(path).header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        String gzipEtag = gzipped.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, gzipEtag);
+        assertArrayEquals(first.getResponse().getContentAsByteArray(), gunzip(gzipped.getResponse().getContentAsByteArray()));
+        mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void writesToTheCollectionInvalidateItsResponses() throws Exception {
+        createIndividual("/api/ontology", "invalidationBob");
+        String path = "/api/ontology/individuals?limit=1000";
+        String etag = mockMvc.perform(get(path)).andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Other collections have versions of their own
+        mockMvc.perform(post("/api/ontology/classes").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"uniqueName\":\"InvalidationClass\",\"label\":\"Invalidation\",\"comment\":\"\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        createIndividual("/api/ontology", "invalidationCarol");
+        MvcResult changed = mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertNotEquals(etag, changed.getResponse().getHeader(HttpHeaders.ETAG));
+        assertTrue(changed.getResponse().getContentAsString().contains("invalidationCarol"));
+
+        mockMvc.perform(delete("/api/ontology/individuals/invalidationCarol")).andExpect(status().isOk());
+        String afterDelete = mockMvc.perform(get(path)).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertFalse(afterDelete.contains("invalidationCarol"));
+        assertTrue(afterDelete.contains("invalidationBob"));
+    }
+
+    @Test
+    void namedOntologiesAreCachedApartFromTheDefaultOne() throws Exception {
+        mockMvc.perform(put("/api/ontologies/cached")).andExpect(status().isCreated());
+        createIndividual("/api/ontologies/cached", "namedDave");
+        String namedPath = "/api/ontologies/cached/individuals";
+        String defaultPath = "/api/ontology/individuals";
+
+        MvcResult named = mockMvc.perform(get(namedPath)).andExpect(status().isOk()).andReturn();
+        assertTrue(named.getResponse().getContentAsString().contains("namedDave"));
+        MvcResult unnamed = mockMvc.perform(get(defaultPath)).andExpect(status().isOk()).andReturn();
+        assertFalse(unnamed.getResponse().getContentAsString().contains("namedDave"));
+        String namedEtag = named.getResponse().getHeader(HttpHeaders.ETAG);
+        String defaultEtag = unnamed.getResponse().getHeader(HttpHeaders.ETAG);
+
+        // An edit of the named ontology leaves the responses of the default one valid
+        createIndividual("/api/ontologies/cached", "namedErin");
+        mockMvc.perform(get(defaultPath).header(HttpHeaders.IF_NONE_MATCH, defaultEtag))
+                .andExpect(status().isNotModified());
+        MvcResult edited = mockMvc.perform(get(namedPath).header(HttpHeaders.IF_NONE_MATCH, namedEtag))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(edited.getResponse().getContentAsString().contains("namedErin"));
+        mockMvc.perform(get(namedPath).header(HttpHeaders.IF_NONE_MATCH, edited.getResponse().getHeader(HttpHeaders.ETAG)))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(delete("/api/ontologies/cached")).andExpect(status().isOk());
+        mockMvc.perform(get(namedPath)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void gzipIsNotAcceptedWithAQualityOfZero() throws Exception {
+        assertTrue(ResponseCache.acceptsGzip("GZIP"));
+        assertTrue(ResponseCache.acceptsGzip("br;q=1.0, gzip;q=0.5"));
+        assertFalse(ResponseCache.acceptsGzip(null));
+        assertFalse(ResponseCache.acceptsGzip("gzip;q=0"));
+        assertFalse(ResponseCache.acceptsGzip("deflate, gzip; q=0.000"));
+        assertFalse(ResponseCache.acceptsGzip("x-gzip-like"));
+
+        // The download negotiates its compression the same way
+        mockMvc.perform(get("/api/ontology/file/download").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+        mockMvc.perform(get("/api/ontology/file/download").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+    }
+
+    private void createIndividual(String ontologyPath, String uniqueName) throws Exception {
+        mockMvc.perform(post(ontologyPath + "/individuals").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"uniqueName\":\"" + uniqueName + "\",\"label\":\"" + uniqueName + "\",\"comment\":\"\"}"))
+                .andExpect(status().isOk());
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mjiason.protegeserver.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+class NdjsonExportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void collectionsAreStreamedOneEntityPerLine() throws Exception {
+        mockMvc.perform(post("/api/ontology/data-properties").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"uniqueName\":\"exportAge\",\"range\":\"xsd:integer\",\"label\":\"age\",\"comment\":\"\"}"))
+                .andExpect(status().isOk());
+        createIndividual("exportCarol", 50);
+        createIndividual("exportAlice", 30);
+        createIndividual("exportBob", 20);
+
+        // Unique name order, every line a whole entity
+        List<String> lines = stream("/api/ontology/individuals");
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"uniqueName\":\"exportAlice\""), lines.get(0));
+        assertTrue(lines.get(0).contains("\"filledDataProperties\":{\"exportAge\":[\"30\"]}"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"uniqueName\":\"exportBob\""), lines.get(1));
+        assertTrue(lines.get(2).startsWith("{\"uniqueName\":\"exportCarol\""), lines.get(2));
+
+        // Projected onto the fields and restricted by the conditions, in the order the individuals were added
+        assertEquals(List.of("{\"uniqueName\":\"exportCarol\"}", "{\"uniqueName\":\"exportAlice\"}"),
+                stream("/api/ontology/individuals?fields=uniqueName&where=exportAge>25"));
+
+        assertEquals(List.of("{\"uniqueName\":\"exportAge\",\"range\":\"xsd:integer\"}"),
+                stream("/api/ontology/data-properties?fields=uniqueName,range"));
+    }
+
+    @Test
+    void plainJsonStaysTheDefault() throws Exception {
+        mockMvc.perform(get("/api/ontology/classes").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$").isArray());
+    }
+
+    private List<String> stream(String path) throws Exception {
+        MvcResult started = mockMvc.perform(get(path).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(body.isEmpty() || body.endsWith("\n"), body);
+        return body.isEmpty() ? List.of() : Arrays.asList(body.split("\n"));
+    }
+
+    private void createIndividual(String uniqueName, int age) throws Exception {
+        mockMvc.perform(post("/api/ontology/individuals").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"uniqueName\":\"" + uniqueName + "\",\"label\":\"" + uniqueName + "\",\"comment\":\"\","
+                                + "\"filledDataProperties\":{\"exportAge\":[\"" + age + "\"]}}"))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,118 @@
+package com.mjiason.protegeserver.controllers;
+
+import com.mjiason.protegeserver.services.OntologyStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {"protege.feed.capacity=4", "protege.feed.max-streams=1"})
+@AutoConfigureMockMvc
+@DirtiesContext
+class OntologyChangeControllerTest {
+
+    private static final String SEQUENCE_HEADER = "X-Change-Sequence";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OntologyStorageService storageService;
+
+    @Test
+    void consumersResumeFromTheSequenceHeader() throws Exception {
+        long start = sequence(mockMvc.perform(get("/api/ontology/changes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)))
+                .andReturn());
+        createIndividual("resumeAlice");
+        createIndividual("resumeBob");
+        createIndividual("resumeCarol");
+
+        MvcResult firstPage = mockMvc.perform(get("/api/ontology/changes").param("after", Long.toString(start)).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].uniqueName").value(contains("resumeAlice", "resumeBob")))
+                .andReturn();
+        long next = sequence(firstPage);
+        assertEquals(start + 2, next);
+
+        MvcResult secondPage = mockMvc.perform(get("/api/ontology/changes").param("after", Long.toString(next)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].uniqueName").value(contains("resumeCarol")))
+                .andExpect(jsonPath("$[0].operation").value("ADD"))
+                .andReturn();
+        // Nothing new, so the consumer keeps its position
+        mockMvc.perform(get("/api/ontology/changes").param("after", Long.toString(sequence(secondPage))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)))
+                .andExpect(header().string(SEQUENCE_HEADER, Long.toString(start + 3)));
+    }
+
+    @Test
+    void consumersThatFellBehindTheBufferAreToldToReadAgain() throws Exception {
+        long start = sequence(mockMvc.perform(get("/api/ontology/changes")).andReturn());
+        for (int i = 0; i < 5; i++) {
+            createIndividual("overflow" + i);
+        }
+
+        // Four changes are kept, the first one after the start was overwritten
+        mockMvc.perform(get("/api/ontology/changes").param("after", Long.toString(start)))
+                .andExpect(status().isGone());
+        mockMvc.perform(get("/api/ontology/changes/stream").param("after", Long.toString(start)))
+                .andExpect(status().isGone());
+        mockMvc.perform(get("/api/ontology/changes").param("after", Long.toString(start + 1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    void streamsBeyondTheMaximumAreTurnedAway() throws Exception {
+        MvcResult stream = mockMvc.perform(get("/api/ontology/changes/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(get("/api/ontology/changes/stream"))
+                .andExpect(status().isServiceUnavailable());
+
+        createIndividual("streamedAlice");
+        awaitContent(stream, "streamedAlice");
+        assertTrue(stream.getResponse().getContentAsString().contains("event:change"));
+
+        // Closing the ontology ends the stream, which frees its place
+        storageService.closeChangeFeed();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (mockMvc.perform(get("/api/ontology/changes/stream")).andReturn().getResponse().getStatus() == 503) {
+            assertTrue(System.currentTimeMillis() < deadline, "The ended stream still counts against the maximum");
+            Thread.sleep(20);
+        }
+    }
+
+    private void awaitContent(MvcResult stream, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!stream.getResponse().getContentAsString().contains(expected)) {
+            assertTrue(System.currentTimeMillis() < deadline, "The stream did not send " + expected);
+            Thread.sleep(20);
+        }
+    }
+
+    private void createIndividual(String uniqueName) throws Exception {
+        mockMvc.perform(post("/api/ontology/individuals").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"uniqueName\":\"" + uniqueName + "\",\"label\":\"" + uniqueName + "\",\"comment\":\"\"}"))
+                .andExpect(status().isOk());
+    }
+
+    private static long sequence(MvcResult result) {
+        return Long.parseLong(result.getResponse().getHeader(SEQUENCE_HEADER));
+    }
+}
@@ -0,0 +1,71 @@
+package com.mjiason.protegeserver.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {"protege.page.default-size=2", "protege.page.max-size=3"})
+@AutoConfigureMockMvc
+@DirtiesContext
+class PageLimitsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void requestsWithoutALimitGetTheDefaultPageSize() throws Exception {
+        for (String name : new String[]{"pageA", "pageB", "pageC", "pageD", "pageE"}) {
+            mockMvc.perform(post("/api/ontology/individuals").contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"uniqueName\":\"" + name + "\",\"label\":\"" + name + "\",\"comment\":\"\"}"))
+                    .andExpect(status().isOk());
+        }
+
+        MvcResult first = mockMvc.perform(get("/api/ontology/individuals?fields=uniqueName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].uniqueName").value(contains("pageA", "pageB")))
+                .andReturn();
+        String cursor = first.getResponse().getHeader(EntityPages.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+        // The query is part of the URI, which keys the cached responses
+        mockMvc.perform(get("/api/ontology/individuals?fields=uniqueName&limit=3&cursor=" + cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].uniqueName").value(contains("pageC", "pageD", "pageE")))
+                .andExpect(header().doesNotExist(EntityPages.NEXT_CURSOR_HEADER));
+
+        mockMvc.perform(get("/api/ontology/search?q=pagea&prefix=false&fuzzy=false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    void limitsAboveTheMaximumAreRejected() throws Exception {
+        for (String path : new String[]{"/api/ontology/individuals", "/api/ontology/classes", "/api/ontology/object-properties",
+                "/api/ontology/data-properties", "/api/ontology/classes/Thing/instances"}) {
+            mockMvc.perform(get(path).param("limit", "4")).andExpect(status().isBadRequest());
+            mockMvc.perform(get(path).param("limit", "0")).andExpect(status().isBadRequest());
+        }
+        mockMvc.perform(get("/api/ontology/individuals").param("limit", "2000000000").param("where", "age>1"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/ontology/search").param("q", "page").param("limit", "4"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void theDefaultPageSizeCannotExceedTheMaximum() {
+        assertThrows(IllegalArgumentException.class, () -> new PageLimits(20, 10));
+        assertThrows(IllegalArgumentException.class, () -> new PageLimits(0, 10));
+        assertEquals(10, new PageLimits(10, 10).resolve(null));
+    }
+}
@@ -0,0 +1,122 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.models.OntologyChangeEventAPI;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    private final ChangeFeed feed = new ChangeFeed(4);
+
+    @Test
+    void overwrittenPositionsHaveExpired() {
+        long start = feed.getLastSequence();
+        for (int i = 0; i < 10; i++) {
+            append("individual" + i);
+        }
+        assertEquals(start + 10, feed.getLastSequence());
+
+        // The buffer holds the last four events, so reading can resume right before the oldest of them
+        assertEquals(List.of("individual6", "individual7", "individual8", "individual9"), names(feed.read(start + 6, 10)));
+        assertThrows(ChangesExpiredException.class, () -> feed.read(start + 5, 10));
+        assertThrows(ChangesExpiredException.class, () -> feed.read(start, 10));
+        // Positions after the last event and those of an earlier feed are not this feed's either
+        assertThrows(ChangesExpiredException.class, () -> feed.read(start + 11, 10));
+        assertThrows(ChangesExpiredException.class, () -> feed.read(start - 1, 10));
+        assertTrue(feed.read(start + 10, 10).isEmpty());
+    }
+
+    @Test
+    void readingResumesAfterTheLastSequenceSeen() {
+        long position = feed.getLastSequence();
+        List<String> seen = new ArrayList<>();
+        for (int round = 0; round < 5; round++) {
+            append("first" + round);
+            append("second" + round);
+            append("third" + round);
+            // Pages smaller than what was appended, every one continuing from the last sequence of the previous one
+            for (List<OntologyChangeEventAPI> page = feed.read(position, 2); !page.isEmpty(); page = feed.read(position, 2)) {
+                for (OntologyChangeEventAPI event : page) {
+                    assertEquals(position + 1, event.getSequence());
+                    position = event.getSequence();
+                    seen.add(event.getUniqueName());
+                }
+            }
+        }
+        assertEquals(15, seen.size());
+        assertEquals(List.of("first4", "second4", "third4"), seen.subList(12, 15));
+    }
+
+    @Test
+    void waitingConsumersWakeUpOnTheNextEventOrWhenClosed() throws Exception {
+        long position = feed.getLastSequence();
+        assertTrue(feed.await(position, 10, 50).isEmpty());
+
+        CompletableFuture<List<OntologyChangeEventAPI>> next = CompletableFuture.supplyAsync(() -> await(position));
+        Thread.sleep(100);
+        assertFalse(next.isDone());
+        append("alice");
+        assertEquals(List.of("alice"), names(next.get(10, TimeUnit.SECONDS)));
+
+        CompletableFuture<List<OntologyChangeEventAPI>> closed = CompletableFuture.supplyAsync(() -> await(position + 1));
+        Thread.sleep(100);
+        feed.close();
+        assertTrue(closed.get(10, TimeUnit.SECONDS).isEmpty());
+        assertTrue(feed.isClosed());
+    }
+
+    @Test
+    void eventsAreOnlySeenOncePublished() throws Exception {
+        long position = feed.getLastSequence();
+        CompletableFuture<List<OntologyChangeEventAPI>> next = CompletableFuture.supplyAsync(() -> await(position));
+        appendUnpublished("alice");
+        appendUnpublished("bob");
+        Thread.sleep(100);
+        assertFalse(next.isDone());
+        assertTrue(feed.read(position, 10).isEmpty());
+        assertEquals(position, feed.getLastSequence());
+        assertEquals(position + 2, feed.getAppendedSequence());
+
+        // Publishing a sequence publishes the events before it, and never more than was appended
+        feed.publish(position + 1);
+        assertEquals(List.of("alice"), names(next.get(10, TimeUnit.SECONDS)));
+        feed.publish(position + 5);
+        assertEquals(position + 2, feed.getLastSequence());
+        feed.publish(position);
+        assertEquals(List.of("alice", "bob"), names(feed.read(position, 10)));
+
+        // A reload publishes along with the changes it supersedes
+        appendUnpublished("carol");
+        feed.appendReload();
+        assertEquals(position + 4, feed.getLastSequence());
+        assertEquals(OntologyChangeEventAPI.Operation.RELOAD, feed.read(position + 3, 10).get(0).getOperation());
+    }
+
+    private void append(String uniqueName) {
+        appendUnpublished(uniqueName);
+        feed.publish(feed.getAppendedSequence());
+    }
+
+    private void appendUnpublished(String uniqueName) {
+        feed.append(new OntologyChange(OntologyChange.Operation.ADD, EntityKind.INDIVIDUAL, uniqueName, null));
+    }
+
+    private List<OntologyChangeEventAPI> await(long after) {
+        try {
+            return feed.await(after, 10, TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> names(List<OntologyChangeEventAPI> events) {
+        return events.stream().map(OntologyChangeEventAPI::getUniqueName).toList();
+    }
+}
@@ -0,0 +1,146 @@
+package com.mjiason.protegeserver.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassHierarchyTest {
+
+    @Test
+    void closureMatchesABreadthFirstSearchOverRandomHierarchies() {
+        Random random = new Random(20261018L);
+        for (int round = 0; round < 20; round++) {
+            Map<String, List<String>> parentsByClass = new LinkedHashMap<>();
+            ClassHierarchy hierarchy = new ClassHierarchy();
+            int classCount = 20 + random.nextInt(60);
+            for (int i = 0; i < classCount; i++) {
+                put(hierarchy, parentsByClass, "C" + i, randomParents(random, i, 3));
+            }
+            verify(hierarchy, parentsByClass, random);
+
+            int nextClass = classCount;
+            for (int step = 0; step < 200; step++) {
+                List<String> names = new ArrayList<>(parentsByClass.keySet());
+                int operation = random.nextInt(10);
+                if (operation < 5) {
+                    // New leaf below existing classes
+                    put(hierarchy, parentsByClass, "C" + nextClass++, randomExisting(random, names, 3));
+                } else if (operation < 7 && !names.isEmpty()) {
+                    String removed = names.get(random.nextInt(names.size()));
+                    hierarchy.remove(removed);
+                    parentsByClass.remove(removed);
+                } else if (operation < 8 && !names.isEmpty()) {
+                    // Move a class below classes created before it, so the hierarchy stays acyclic
+                    String moved = names.get(random.nextInt(names.size()));
+                    int number = Integer.parseInt(moved.substring(1));
+                    put(hierarchy, parentsByClass, moved, randomParents(random, number, 2));
+                } else if (operation < 9) {
+                    // Parent that is not a class yet, added later on
+                    String future = "C" + nextClass;
+                    put(hierarchy, parentsByClass, "C" + (nextClass + 1), List.of(future));
+                    nextClass += 2;
+                    put(hierarchy, parentsByClass, future, randomExisting(random, names, 1));
+                } else {
+                    put(hierarchy, parentsByClass, "C" + nextClass++, List.of());
+                }
+                if (step % 10 == 0 || random.nextBoolean()) {
+                    verify(hierarchy, parentsByClass, random);
+                }
+            }
+            verify(hierarchy, parentsByClass, random);
+        }
+    }
+
+    @Test
+    void manySiblingsAddedOneByOneStayWithinTheRangeOfTheirParent() {
+        Map<String, List<String>> parentsByClass = new LinkedHashMap<>();
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        put(hierarchy, parentsByClass, "Thing", List.of());
+        put(hierarchy, parentsByClass, "Agent", List.of("Thing"));
+        hierarchy.getAncestors("Agent");
+        // Halving the free range of the parent for each new class runs out after a few dozen, then the closure is rebuilt
+        String parent = "Agent";
+        for (int i = 0; i < 200; i++) {
+            put(hierarchy, parentsByClass, "Person" + i, List.of(i % 2 == 0 ? "Agent" : parent));
+            parent = "Person" + i;
+            assertTrue(hierarchy.subsumes("Thing", parent));
+        }
+        verify(hierarchy, parentsByClass, new Random(1));
+    }
+
+    private static void put(ClassHierarchy hierarchy, Map<String, List<String>> parentsByClass, String name, List<String> parents) {
+        hierarchy.put(name, parents);
+        parentsByClass.put(name, parents);
+    }
+
+    private static List<String> randomParents(Random random, int number, int maxParents) {
+        List<String> parents = new ArrayList<>();
+        if (number > 0) {
+            int count = random.nextInt(maxParents + 1);
+            for (int i = 0; i < count; i++) {
+                parents.add("C" + random.nextInt(number));
+            }
+        }
+        return parents;
+    }
+
+    private static List<String> randomExisting(Random random, List<String> names, int maxParents) {
+        List<String> parents = new ArrayList<>();
+        int count = names.isEmpty() ? 0 : 1 + random.nextInt(maxParents);
+        for (int i = 0; i < count; i++) {
+            parents.add(names.get(random.nextInt(names.size())));
+        }
+        return parents;
+    }
+
+    private static void verify(ClassHierarchy hierarchy, Map<String, List<String>> parentsByClass, Random random) {
+        List<String> names = new ArrayList<>(parentsByClass.keySet());
+        for (String name : names) {
+            Set<String> expectedAncestors = ancestors(parentsByClass, name);
+            List<String> ancestors = hierarchy.getAncestors(name);
+            assertEquals(expectedAncestors, new HashSet<>(ancestors), "ancestors of " + name);
+            assertEquals(ancestors.size(), expectedAncestors.size(), "duplicate ancestors of " + name);
+            // Every class is listed before its own superclasses
+            for (int i = 0; i < ancestors.size(); i++) {
+                Set<String> above = ancestors(parentsByClass, ancestors.get(i));
+                for (int j = 0; j < i; j++) {
+                    assertFalse(above.contains(ancestors.get(j)), ancestors.get(j) + " listed before its subclass " + ancestors.get(i));
+                }
+            }
+
+            Set<String> expectedDescendants = new HashSet<>();
+            for (String other : names) {
+                if (!other.equals(name) && ancestors(parentsByClass, other).contains(name)) {
+                    expectedDescendants.add(other);
+                }
+            }
+            List<String> descendants = hierarchy.getDescendants(name);
+            assertEquals(expectedDescendants, new HashSet<>(descendants), "descendants of " + name);
+            assertEquals(descendants.size(), expectedDescendants.size(), "duplicate descendants of " + name);
+        }
+        for (int i = 0; i < names.size() * 4; i++) {
+            String ancestor = names.get(random.nextInt(names.size()));
+            String descendant = names.get(random.nextInt(names.size()));
+            boolean expected = ancestor.equals(descendant) || ancestors(parentsByClass, descendant).contains(ancestor);
+            assertEquals(expected, hierarchy.subsumes(ancestor, descendant), ancestor + " subsumes " + descendant);
+        }
+        assertTrue(hierarchy.getAncestors("Unknown").isEmpty());
+        assertFalse(hierarchy.subsumes("Unknown", "Unknown"));
+    }
+
+    // Breadth-first search over the parents that are classes of the hierarchy
+    private static Set<String> ancestors(Map<String, List<String>> parentsByClass, String name) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>(List.of(name));
+        while (!queue.isEmpty()) {
+            for (String parent : parentsByClass.getOrDefault(queue.poll(), List.of())) {
+                if (parentsByClass.containsKey(parent) && !parent.equals(name) && seen.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,113 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyClassAPI;
+import com.mjiason.protegeserver.models.OntologyDataPropertyAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import com.mjiason.protegeserver.models.OntologyObjectPropertyAPI;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphQueryEngineTest {
+
+    private final OntologyStorageService storageService = new OntologyStorageService();
+
+    @BeforeEach
+    void populate() {
+        storageService.addOntologyClass(new OntologyClassAPI("Person", null, "Person", ""));
+        storageService.addOntologyClass(new OntologyClassAPI("City", null, "City", ""));
+        storageService.addObjectProperty(new OntologyObjectPropertyAPI("knows", List.of(), List.of(), "knows", "", new ArrayList<>()));
+        storageService.addObjectProperty(new OntologyObjectPropertyAPI("livesIn", List.of(), List.of(), "lives in", "", new ArrayList<>()));
+        storageService.addDataProperty(new OntologyDataPropertyAPI("age", List.of(), "xsd:integer", "age", ""));
+
+        storageService.addIndividual(individual("paris", "City", Map.of(), Map.of()));
+        storageService.addIndividual(individual("lyon", "City", Map.of(), Map.of()));
+        storageService.addIndividual(individual("alice", "Person", Map.of("knows", List.of("bob", "carol"), "livesIn", List.of("paris")), Map.of("age", List.of("30"))));
+        storageService.addIndividual(individual("bob", "Person", Map.of("knows", List.of("carol"), "livesIn", List.of("paris")), Map.of("age", List.of("35"))));
+        storageService.addIndividual(individual("carol", "Person", Map.of("livesIn", List.of("lyon")), Map.of("age", List.of("41"))));
+        // Knows no one but dave, and lives nowhere
+        storageService.addIndividual(individual("dave", "Person", Map.of("knows", List.of("dave")), Map.of("age", List.of("25"))));
+    }
+
+    @Test
+    void patternsAreJoinedOnTheirSharedVariables() {
+        assertEquals(Set.of(Map.of("person", "alice", "friend", "bob")),
+                query("SELECT ?person ?friend WHERE { ?person knows ?friend . ?friend livesIn paris }"));
+
+        // Friends of friends, through a variable that is not selected
+        assertEquals(Set.of(Map.of("a", "alice", "c", "carol"), Map.of("a", "dave", "c", "dave")),
+                query("SELECT ?a ?c WHERE { ?a knows ?b . ?b knows ?c }"));
+
+        // Classes, relations and values of one subject, joined with the class of the related individual
+        assertEquals(Set.of(Map.of("person", "alice", "age", "30"), Map.of("person", "bob", "age", "35")),
+                query("""
+                        SELECT ?person ?age WHERE {
+                            ?person a Person ;
+                                    livesIn ?city ;
+                                    age ?age .
+                            ?city rdf:type City .
+                            FILTER(?age >= 30 && ?age < 40)
+                        }"""));
+    }
+
+    @Test
+    void variablesAreBoundConsistentlyAcrossPatternsAndFilters() {
+        // A variable used twice in one pattern binds both ends to the same individual
+        assertEquals(Set.of(Map.of("x", "dave")), query("SELECT ?x WHERE { ?x knows ?x }"));
+        assertEquals(Set.of(Map.of("friend", "bob"), Map.of("friend", "carol")), query("SELECT ?friend WHERE { alice knows ?friend }"));
+        assertEquals(Set.of(Map.of("city", "paris")), query("SELECT * WHERE { bob livesIn ?city }"));
+
+        // Filters compare two bound literals, and individuals by unique name
+        assertEquals(Set.of(Map.of("p", "alice", "f", "bob"), Map.of("p", "alice", "f", "carol"), Map.of("p", "bob", "f", "carol")),
+                query("SELECT ?p ?f WHERE { ?p knows ?f ; age ?pa . ?f age ?fa FILTER(?fa > ?pa) }"));
+        assertEquals(Set.of(Map.of("p", "carol")), query("SELECT ?p WHERE { ?p livesIn ?c FILTER(?c != paris) }"));
+
+        assertEquals(2, query("SELECT ?p WHERE { ?p a Person } LIMIT 2").size());
+        assertEquals(1, query("SELECT ?p WHERE { ?p a Person } LIMIT 10 OFFSET 3").size());
+    }
+
+    @Test
+    void inconsistentVariablesAndUnknownPropertiesAreRejected() {
+        assertThrows(ValidationException.class, () -> storageService.query("SELECT * WHERE { ?x knows ?y . ?y age ?x }"));
+        assertThrows(ValidationException.class, () -> storageService.query("SELECT * WHERE { ?x a ?c . ?c knows ?y }"));
+        assertThrows(ValidationException.class, () -> storageService.query("SELECT ?z WHERE { ?x knows ?y }"));
+        assertThrows(ValidationException.class, () -> storageService.query("SELECT * WHERE { ?x knows ?y FILTER(?z = 1) }"));
+        assertThrows(ValidationException.class, () -> storageService.query("SELECT * WHERE { ?x likes ?y }"));
+        // Unknown constants are valid, they only match nothing
+        assertTrue(query("SELECT * WHERE { nobody knows ?y }").isEmpty());
+    }
+
+    @Test
+    void queriesAreLimitedToSixteenPatterns() {
+        // dave knows dave, so a chain of any length matches dave alone
+        Set<Map<String, String>> solutions = query(chain(16));
+        assertEquals(1, solutions.size());
+        assertEquals(Set.of("dave"), new HashSet<>(solutions.iterator().next().values()));
+
+        ValidationException exception = assertThrows(ValidationException.class, () -> storageService.query(chain(17)));
+        assertEquals("Query can have at most 16 triple patterns.", exception.getMessage());
+    }
+
+    // A chain of knows patterns through one more variable than there are patterns
+    private static String chain(int patterns) {
+        StringBuilder query = new StringBuilder("SELECT * WHERE {");
+        for (int i = 0; i < patterns; i++) {
+            query.append(" ?p").append(i).append(" knows ?p").append(i + 1).append(" .");
+        }
+        return query.append(" }").toString();
+    }
+
+    private Set<Map<String, String>> query(String query) {
+        Set<Map<String, String>> solutions = new HashSet<>();
+        storageService.query(query).forEach(solutions::add);
+        return solutions;
+    }
+
+    private static OntologyIndividualAPI individual(String name, String className, Map<String, List<String>> relations,
+                                                    Map<String, List<String>> values) {
+        return new OntologyIndividualAPI(name, className, name, "", new HashMap<>(relations), new HashMap<>(values), List.of());
+    }
+}
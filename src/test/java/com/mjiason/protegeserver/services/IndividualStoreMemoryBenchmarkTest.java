@@ -0,0 +1,76 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the heap used by the individuals kept as API models in a sorted map with the heap used by the compact
+ * {@link IndividualStore}. The names are built anew for every reference, as they are when read from an ontology, and
+ * the measured sizes are printed so they can be compared across changes.
+ * Only runs with the benchmark profile: {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class IndividualStoreMemoryBenchmarkTest {
+
+    private static final int CLASSES = 500;
+    private static final int PROPERTIES = 20;
+    private static final int INDIVIDUALS = 200_000;
+    private static final int RELATIONS = 4;
+
+    @Test
+    void compactStoreUsesAFifthOfTheHeapOfApiModels() {
+        long baseline = usedHeap();
+        Map<String, OntologyIndividualAPI> models = new ConcurrentSkipListMap<>();
+        for (int i = 0; i < INDIVIDUALS; i++) {
+            OntologyIndividualAPI individual = createIndividual(i);
+            models.put(individual.getUniqueName(), individual);
+        }
+        long modelBytes = usedHeap() - baseline;
+
+        // The store is filled from fresh models, so it does not share any strings with the map above
+        baseline = usedHeap();
+        IndividualStore store = new IndividualStore(new NameDictionary(), new NameDictionary(), new NameDictionary(), new NameDictionary());
+        for (int i = 0; i < INDIVIDUALS; i++) {
+            store.put(store.intern(createIndividual(i)));
+        }
+        long storeBytes = usedHeap() - baseline;
+
+        assertEquals(INDIVIDUALS, store.size());
+        for (int i = 0; i < INDIVIDUALS; i += INDIVIDUALS / 100) {
+            String name = "individual" + i;
+            assertEquals(models.get(name), store.get(name));
+        }
+        System.out.printf("%d individuals: API models %d bytes each, compact store %d bytes each, reduction %.1fx%n",
+                INDIVIDUALS, modelBytes / INDIVIDUALS, storeBytes / INDIVIDUALS, (double) modelBytes / storeBytes);
+        assertTrue(storeBytes * 5 <= modelBytes, "The compact store should use at most a fifth of the heap of the API models");
+    }
+
+    private static OntologyIndividualAPI createIndividual(int i) {
+        List<String> classNames = new ArrayList<>(List.of("Class" + i % CLASSES, "Class" + (i * 7 + 1) % CLASSES));
+        Map<String, List<String>> relations = new HashMap<>();
+        for (int r = 0; r < RELATIONS; r++) {
+            relations.computeIfAbsent("property" + (i + r) % PROPERTIES, k -> new ArrayList<>())
+                    .add("individual" + (i * 31 + r) % INDIVIDUALS);
+        }
+        Map<String, List<String>> data = new HashMap<>();
+        data.put("age", new ArrayList<>(List.of(String.valueOf(i % 100))));
+        return new OntologyIndividualAPI("individual" + i, classNames.get(0), "", "", relations, data, classNames);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Repeated collections let the measurement settle, the smallest reading is the live heap
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
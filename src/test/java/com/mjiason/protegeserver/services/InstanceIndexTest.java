@@ -0,0 +1,86 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyClassAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceIndexTest {
+
+    private final OntologyStorageService storageService = new OntologyStorageService();
+
+    @BeforeEach
+    void addClassesAndIndividuals() {
+        storageService.addOntologyClass(new OntologyClassAPI("Animal", null, "Animal", ""));
+        storageService.addOntologyClass(new OntologyClassAPI("Dog", "Animal", "Dog", ""));
+        storageService.addOntologyClass(new OntologyClassAPI("Cat", "Animal", "Cat", ""));
+        storageService.addIndividual(individual("rex", "Dog"));
+        storageService.addIndividual(individual("animal", "Animal"));
+        storageService.addIndividual(individual("tom", "Cat"));
+        storageService.addIndividual(individual("odie", "Dog", "Cat"));
+        storageService.addIndividual(individual("fido", "Dog"));
+    }
+
+    @Test
+    void subclassInstancesAreOnlyIncludedTransitively() {
+        assertEquals(List.of("animal"), instances("Animal", false, null));
+        assertEquals(List.of("rex", "odie", "fido"), instances("Dog", false, null));
+        // In the order the individuals became known, an individual of several subclasses only once
+        assertEquals(List.of("rex", "animal", "tom", "odie", "fido"), instances("Animal", true, null));
+    }
+
+    @Test
+    void transitiveInstancesArePagedByCursor() {
+        List<String> names = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            EntityPage<OntologyIndividualAPI> page = storageService.getInstances("Animal", true, after, 2);
+            page.getItems().forEach(individual -> names.add(individual.getUniqueName()));
+            after = page.getNextCursor();
+            pages++;
+        } while (after != null);
+
+        assertEquals(List.of("rex", "animal", "tom", "odie", "fido"), names);
+        assertEquals(3, pages);
+        assertEquals(List.of("odie", "fido"), instances("Dog", false, "rex"));
+    }
+
+    @Test
+    void reclassifiedAndRemovedIndividualsLeaveThePostingLists() {
+        InstanceIndex index = storageService.getState().getInstanceIndex();
+        assertEquals(6, index.getStatistics(5).getTriples());
+
+        storageService.addIndividual(individual("rex", "Cat"));
+        storageService.removeIndividual("odie");
+
+        assertEquals(List.of("fido"), instances("Dog", false, null));
+        assertEquals(List.of("rex", "tom"), instances("Cat", false, null));
+        assertEquals(List.of("rex", "animal", "tom", "fido"), instances("Animal", true, null));
+        assertEquals(4, index.getStatistics(4).getTriples());
+        assertEquals(3, index.getStatistics(4).getObjects());
+    }
+
+    @Test
+    void unknownClassesAndLimitsBelowOneAreRejected() {
+        assertThrows(EntityNotFoundException.class, () -> storageService.getInstances("Bird", true, null, null));
+        assertThrows(ValidationException.class, () -> storageService.getInstances("Dog", false, null, 0));
+        assertThrows(ValidationException.class, () -> storageService.getInstances("Dog", false, "nobody", 1));
+    }
+
+    private List<String> instances(String className, boolean transitive, String after) {
+        return storageService.getInstances(className, transitive, after, null).getItems().stream()
+                .map(OntologyIndividualAPI::getUniqueName)
+                .toList();
+    }
+
+    private static OntologyIndividualAPI individual(String name, String... classNames) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(), new HashMap<>(), List.of(classNames));
+    }
+}
@@ -0,0 +1,66 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyChangeJournalTest {
+
+    @Test
+    void repeatedEditsOfAnEntityAreHeldOnce() {
+        NameDictionary individualIds = new NameDictionary();
+        OntologyChangeJournal journal = new OntologyChangeJournal(individualIds);
+        for (int i = 0; i < 1000; i++) {
+            journal.record(EntityKind.INDIVIDUAL, "alice");
+            journal.record(EntityKind.CLASS, "Person");
+        }
+        journal.record(EntityKind.INDIVIDUAL, "bob");
+
+        assertEquals(3, journal.size());
+        assertEquals(2001, journal.lastSequence(EntityKind.INDIVIDUAL));
+        assertEquals(2000, journal.lastSequence(EntityKind.CLASS));
+        assertEquals(0, journal.lastSequence(EntityKind.DATA_PROPERTY));
+    }
+
+    @Test
+    void drainedEntriesAreHandedBackWhenTheyCouldNotBeApplied() {
+        NameDictionary individualIds = new NameDictionary();
+        OntologyChangeJournal journal = new OntologyChangeJournal(individualIds);
+        journal.record(EntityKind.INDIVIDUAL, "alice");
+        journal.record(EntityKind.OBJECT_PROPERTY, "knows");
+
+        OntologyChangeJournal.Pending pending = journal.drain();
+        assertEquals(0, journal.size());
+        assertEquals(Set.of("knows"), pending.getNames(EntityKind.OBJECT_PROPERTY));
+        assertTrue(pending.getIndividuals().get(individualIds.find("alice")));
+
+        journal.record(EntityKind.INDIVIDUAL, "bob");
+        journal.restore(pending);
+        assertEquals(3, journal.size());
+    }
+
+    @Test
+    void journalIsBoundedWithoutEverBeingApplied() {
+        OntologyStorageService storageService = new OntologyStorageService();
+        for (int i = 0; i < 5000; i++) {
+            storageService.addIndividual(individual("individual" + (i % 100), "value" + i));
+        }
+        storageService.removeIndividual("individual0");
+
+        assertEquals(100, storageService.getState().getJournal().size());
+
+        storageService.applyChangesToOntology();
+        assertEquals(0, storageService.getState().getJournal().size());
+        assertEquals(99, storageService.getOWLOntology().individualsInSignature().count());
+    }
+
+    private static OntologyIndividualAPI individual(String name, String label) {
+        return new OntologyIndividualAPI(name, null, label, "", new HashMap<>(), new HashMap<>(), List.of());
+    }
+}
@@ -0,0 +1,97 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyImportAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyImportServiceTest {
+
+    // An anonymous ontology, it has no ontology IRI to name it after
+    private static final String ZOO = """
+            @prefix : <http://example.org/zoo#> .
+            @prefix owl: <http://www.w3.org/2002/07/owl#> .
+            @prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .
+            :Animal a owl:Class .
+            :Zebra a owl:Class ;
+                rdfs:subClassOf :Animal .
+            """;
+
+    @TempDir
+    Path storageDirectory;
+
+    private final OntologyImportService importService = new OntologyImportService(DataSize.ofMegabytes(1));
+
+    @Test
+    void importedOntologyReplacesTheCurrentOne() {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.addIndividual(individual("alice"));
+
+        OntologyImportAPI result = importService.importOntology(storageService, "zoo", body(ZOO), null, "text/turtle");
+        assertEquals(OntologyImportAPI.Status.COMPLETED, result.getStatus());
+        assertNull(result.getError());
+        assertEquals("Zebra", storageService.getOntologyClass("Zebra").getUniqueName());
+        assertThrows(EntityNotFoundException.class, () -> storageService.getIndividual("alice"));
+    }
+
+    @Test
+    void unparsableUploadsFailAndLeaveTheCurrentOntology() {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.addIndividual(individual("alice"));
+
+        assertThrows(ValidationException.class,
+                () -> importService.importOntology(storageService, "broken", body(":Zebra a"), null, "text/turtle"));
+        assertEquals(OntologyImportAPI.Status.FAILED, importService.getImport(storageService, "broken").getStatus());
+        assertEquals("alice", storageService.getIndividual("alice").getUniqueName());
+    }
+
+    @Test
+    void importsThatCannotBeSavedAreReportedAsFailed() throws Exception {
+        OntologyStorageService storageService = new OntologyStorageService(1, storageDirectory.toString(), "batch",
+                Duration.ofMillis(10), Duration.ofHours(1), DataSize.ofMegabytes(64), 100);
+        // A closed log cannot be emptied once the imported ontology is saved in place of its edits
+        storageService.getWriteAheadLog().close();
+
+        assertThrows(IllegalStateException.class,
+                () -> importService.importOntology(storageService, "unsaved", body(ZOO), null, "text/turtle"));
+        OntologyImportAPI progress = importService.getImport(storageService, "unsaved");
+        assertEquals(OntologyImportAPI.Status.FAILED, progress.getStatus());
+        assertTrue(progress.getError().startsWith("The ontology was loaded but could not be saved"), progress.getError());
+        storageService.close();
+    }
+
+    @Test
+    void everyOntologyOnlySeesItsOwnImports() {
+        OntologyStorageService zoo = new OntologyStorageService();
+        OntologyStorageService farm = new OntologyStorageService();
+
+        importService.importOntology(zoo, "animals", body(ZOO), null, "text/turtle");
+        assertEquals(List.of("animals"), importService.getAllImports(zoo).stream().map(OntologyImportAPI::getImportId).toList());
+        assertEquals(List.of(), importService.getAllImports(farm));
+        assertThrows(EntityNotFoundException.class, () -> importService.getImport(farm, "animals"));
+
+        // The same id may be used by another ontology without touching the first import
+        assertThrows(ValidationException.class,
+                () -> importService.importOntology(farm, "animals", body(":Cow a"), null, "text/turtle"));
+        assertEquals(OntologyImportAPI.Status.COMPLETED, importService.getImport(zoo, "animals").getStatus());
+        assertEquals(OntologyImportAPI.Status.FAILED, importService.getImport(farm, "animals").getStatus());
+    }
+
+    private static ByteArrayInputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static OntologyIndividualAPI individual(String name) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(), new HashMap<>(), List.of());
+    }
+}
@@ -0,0 +1,112 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the sequential and the parallel population of the entity maps on a synthetic ontology.
+ * The maps must be identical, and on a machine with several processors the parallel load must be faster.
+ * Only runs with the benchmark profile: {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class OntologyPopulationBenchmarkTest {
+
+    private static final String BASE_IRI = "http://example.org/benchmark#";
+    private static final int CLASSES = 200;
+    private static final int INDIVIDUALS = 20_000;
+    private static final int ROUNDS = 3;
+
+    @Test
+    void parallelPopulationMatchesSequentialPopulation() throws Exception {
+        OWLOntology owlOntology = createOntology();
+        int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        OntologyStorageService sequential = new OntologyStorageService(1);
+        OntologyStorageService parallel = new OntologyStorageService(parallelism);
+
+        // Warm up both paths before measuring
+        sequential.populateOntologyFromOWL(owlOntology);
+        parallel.populateOntologyFromOWL(owlOntology);
+
+        long sequentialNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            sequential.populateOntologyFromOWL(owlOntology);
+            sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            parallel.populateOntologyFromOWL(owlOntology);
+            parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+        }
+
+        assertEquals(INDIVIDUALS, parallel.getAllIndividuals().size());
+        assertEquals(byName(sequential.getAllOntologyClasses(), OntologyClassAPI::getUniqueName),
+                byName(parallel.getAllOntologyClasses(), OntologyClassAPI::getUniqueName));
+        assertEquals(byName(sequential.getAllObjectProperties(), OntologyObjectPropertyAPI::getUniqueName),
+                byName(parallel.getAllObjectProperties(), OntologyObjectPropertyAPI::getUniqueName));
+        assertEquals(byName(sequential.getAllDataProperties(), OntologyDataPropertyAPI::getUniqueName),
+                byName(parallel.getAllDataProperties(), OntologyDataPropertyAPI::getUniqueName));
+        assertEquals(byName(sequential.getAllIndividuals(), OntologyIndividualAPI::getUniqueName),
+                byName(parallel.getAllIndividuals(), OntologyIndividualAPI::getUniqueName));
+
+        double speedup = (double) sequentialNanos / parallelNanos;
+        System.out.printf("Populated %d individuals: sequential %d ms, parallel (%d threads) %d ms, speedup %.2fx%n",
+                INDIVIDUALS, sequentialNanos / 1_000_000, parallelism, parallelNanos / 1_000_000, speedup);
+
+        // With a single processor the threads only take turns, there is nothing to gain
+        assumeTrue(Runtime.getRuntime().availableProcessors() >= 2, "Needs several processors to compare the timings");
+        assertTrue(speedup > 1.0, () -> String.format("Parallel population is slower than sequential: %.2fx", speedup));
+    }
+
+    private static <T> Map<String, T> byName(Collection<T> entities, Function<T, String> name) {
+        return entities.stream().collect(Collectors.toMap(name, Function.identity()));
+    }
+
+    private static OWLOntology createOntology() throws OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory dataFactory = manager.getOWLDataFactory();
+        OWLOntology owlOntology = manager.createOntology(IRI.create(BASE_IRI.substring(0, BASE_IRI.length() - 1)));
+
+        OWLObjectProperty knows = dataFactory.getOWLObjectProperty(IRI.create(BASE_IRI + "knows"));
+        OWLDataProperty age = dataFactory.getOWLDataProperty(IRI.create(BASE_IRI + "age"));
+        OWLClass thing = dataFactory.getOWLClass(IRI.create(BASE_IRI + "Thing0"));
+        List<OWLAxiom> axioms = new ArrayList<>();
+        axioms.add(dataFactory.getOWLObjectPropertyDomainAxiom(knows, thing));
+        axioms.add(dataFactory.getOWLObjectPropertyRangeAxiom(knows, thing));
+        axioms.add(dataFactory.getOWLDataPropertyDomainAxiom(age, thing));
+        axioms.add(dataFactory.getOWLDataPropertyRangeAxiom(age, dataFactory.getIntegerOWLDatatype()));
+
+        for (int c = 0; c < CLASSES; c++) {
+            OWLClass owlClass = dataFactory.getOWLClass(IRI.create(BASE_IRI + "Thing" + c));
+            axioms.add(dataFactory.getOWLDeclarationAxiom(owlClass));
+            if (c > 0) {
+                axioms.add(dataFactory.getOWLSubClassOfAxiom(owlClass, dataFactory.getOWLClass(IRI.create(BASE_IRI + "Thing" + (c - 1) / 2))));
+            }
+            axioms.add(dataFactory.getOWLAnnotationAssertionAxiom(owlClass.getIRI(),
+                    dataFactory.getRDFSLabel(dataFactory.getOWLLiteral("Thing " + c))));
+        }
+
+        for (int i = 0; i < INDIVIDUALS; i++) {
+            OWLNamedIndividual individual = dataFactory.getOWLNamedIndividual(IRI.create(BASE_IRI + "individual" + i));
+            axioms.add(dataFactory.getOWLClassAssertionAxiom(dataFactory.getOWLClass(IRI.create(BASE_IRI + "Thing" + i % CLASSES)), individual));
+            axioms.add(dataFactory.getOWLObjectPropertyAssertionAxiom(knows, individual,
+                    dataFactory.getOWLNamedIndividual(IRI.create(BASE_IRI + "individual" + (i + 1) % INDIVIDUALS))));
+            axioms.add(dataFactory.getOWLDataPropertyAssertionAxiom(age, individual, i % 100));
+            axioms.add(dataFactory.getOWLAnnotationAssertionAxiom(individual.getIRI(),
+                    dataFactory.getRDFSLabel(dataFactory.getOWLLiteral("Individual " + i))));
+        }
+        manager.addAxioms(owlOntology, axioms.stream());
+        return owlOntology;
+    }
+}
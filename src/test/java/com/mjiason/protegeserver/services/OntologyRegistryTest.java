@@ -0,0 +1,135 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyRegistryTest {
+
+    // Every individual is estimated at a few hundred bytes, so ten of them weigh more than an empty ontology
+    private static final int INDIVIDUALS = 10;
+
+    @TempDir
+    Path storageDirectory;
+
+    private final OntologyStorageService defaultStorageService = new OntologyStorageService();
+    private OntologyRegistry registry;
+
+    @AfterEach
+    void close() {
+        if (registry != null) {
+            registry.close();
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedOntologiesAreUnloadedAndReloadedFromTheirLog() {
+        open(DataSize.ofGigabytes(1).toBytes());
+        long perOntology = 0;
+        for (String ontologyId : List.of("a", "b", "c")) {
+            registry.createOntology(ontologyId);
+            try (OntologyRegistry.Lease lease = registry.acquire(ontologyId)) {
+                addIndividuals(lease.getStorageService(), ontologyId);
+                perOntology = lease.getStorageService().estimateHeapUsage();
+            }
+        }
+
+        // A restart with room for two of the ontologies next to the default one, they are loaded again from their logs
+        open(defaultStorageService.estimateHeapUsage() + perOntology * 5 / 2);
+        for (String ontologyId : List.of("a", "b", "c")) {
+            assertFalse(registry.getOntology(ontologyId).isLoaded());
+            registry.acquire(ontologyId).close();
+        }
+        assertFalse(registry.getOntology("a").isLoaded());
+        assertTrue(registry.getOntology("b").isLoaded());
+        assertTrue(registry.getOntology("c").isLoaded());
+
+        try (OntologyRegistry.Lease lease = registry.acquire("a")) {
+            assertEquals(INDIVIDUALS, lease.getStorageService().getAllIndividuals().size());
+            assertEquals("a0", lease.getStorageService().getIndividual("a0").getUniqueName());
+        }
+        // Loading the first one again unloads the one used least recently since
+        assertFalse(registry.getOntology("b").isLoaded());
+        assertTrue(registry.getOntology("c").isLoaded());
+    }
+
+    @Test
+    void leasedOntologiesAreNotUnloaded() {
+        open(defaultStorageService.estimateHeapUsage());
+        registry.createOntology("a");
+        registry.createOntology("b");
+
+        try (OntologyRegistry.Lease leaseOfA = registry.acquire("a")) {
+            addIndividuals(leaseOfA.getStorageService(), "a");
+            // Over the budget, but both ontologies are leased
+            OntologyRegistry.Lease leaseOfB = registry.acquire("b");
+            assertTrue(registry.getOntology("a").isLoaded());
+            assertTrue(registry.getOntology("b").isLoaded());
+
+            leaseOfB.close();
+            assertFalse(registry.getOntology("b").isLoaded());
+            assertTrue(registry.getOntology("a").isLoaded());
+            assertEquals(INDIVIDUALS, leaseOfA.getStorageService().getAllIndividuals().size());
+        }
+        assertFalse(registry.getOntology("a").isLoaded());
+    }
+
+    @Test
+    void deletingWaitsUntilTheLastLeaseIsReleased() throws Exception {
+        open(DataSize.ofGigabytes(1).toBytes());
+        registry.createOntology("a");
+        OntologyRegistry.Lease lease = registry.acquire("a");
+
+        CompletableFuture<Void> deletion = CompletableFuture.runAsync(() -> registry.deleteOntology("a"));
+        assertThrows(TimeoutException.class, () -> deletion.get(200, TimeUnit.MILLISECONDS));
+
+        // The leased store is still open and new requests for the ontology are turned away
+        OntologyStorageService storageService = lease.getStorageService();
+        storageService.addIndividual(individual("alice"));
+        assertEquals("alice", storageService.getIndividual("alice").getUniqueName());
+        assertThrows(EntityNotFoundException.class, () -> registry.acquire("a"));
+        assertTrue(storageService.isClosed(), "Change streams of a deleted ontology are ended right away");
+
+        lease.close();
+        deletion.get(10, TimeUnit.SECONDS);
+        assertThrows(EntityNotFoundException.class, () -> registry.getOntology("a"));
+        assertFalse(Files.exists(storageDirectory.resolve("ontologies").resolve("a")));
+
+        // The id can be used again
+        registry.createOntology("a");
+        try (OntologyRegistry.Lease recreated = registry.acquire("a")) {
+            assertTrue(recreated.getStorageService().getAllIndividuals().isEmpty());
+        }
+    }
+
+    private void open(long memoryBudget) {
+        if (registry != null) {
+            registry.close();
+        }
+        registry = new OntologyRegistry(defaultStorageService, 1, storageDirectory.toString(), "batch", Duration.ofMillis(10),
+                Duration.ofHours(1), DataSize.ofMegabytes(64), DataSize.ofBytes(memoryBudget), 100);
+    }
+
+    private static void addIndividuals(OntologyStorageService storageService, String prefix) {
+        for (int i = 0; i < INDIVIDUALS; i++) {
+            storageService.addIndividual(individual(prefix + i));
+        }
+    }
+
+    private static OntologyIndividualAPI individual(String name) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(), new HashMap<>(), List.of());
+    }
+}
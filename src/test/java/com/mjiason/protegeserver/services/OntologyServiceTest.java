@@ -0,0 +1,50 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OWLClassShort;
+import com.mjiason.protegeserver.models.OntologyClassAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyServiceTest {
+
+    private final OntologyStorageService storageService = new OntologyStorageService();
+    private final OntologyService ontologyService = new OntologyService(storageService);
+
+    @Test
+    void missingParentsAndCommentsAreListedAsEmptyStrings() {
+        storageService.addOntologyClass(new OntologyClassAPI("Animal", null, "Animal", null));
+        storageService.addOntologyClass(new OntologyClassAPI("Dog", "Animal", "Dog", "Barks"));
+
+        assertEquals(List.of(new OWLClassShort("Animal", "", ""), new OWLClassShort("Dog", "Animal", "Barks")),
+                ontologyService.getOntologyClasses());
+    }
+
+    @Test
+    void theListingIsReusedUntilTheClassesChange() throws Exception {
+        storageService.addOntologyClass(new OntologyClassAPI("Animal", null, "Animal", ""));
+        List<OWLClassShort> listing = ontologyService.getOntologyClasses();
+        assertSame(listing, ontologyService.getOntologyClasses());
+
+        // Edits of other kinds leave the listing valid
+        storageService.addIndividual(new OntologyIndividualAPI("rex", null, "rex", "", new HashMap<>(), new HashMap<>(), List.of()));
+        assertSame(listing, ontologyService.getOntologyClasses());
+
+        storageService.addOntologyClass(new OntologyClassAPI("Dog", "Animal", "Dog", ""));
+        List<OWLClassShort> refreshed = ontologyService.getOntologyClasses();
+        assertNotSame(listing, refreshed);
+        assertEquals(List.of("Animal", "Dog"), refreshed.stream().map(OWLClassShort::getClassName).toList());
+
+        storageService.removeOntologyClass("Dog");
+        assertEquals(List.of("Animal"), ontologyService.getOntologyClasses().stream().map(OWLClassShort::getClassName).toList());
+
+        // Loading another ontology replaces the state, whose journal starts over
+        storageService.populateOntologyFromOWL(OWLManager.createOWLOntologyManager().createOntology());
+        assertEquals(List.of(), ontologyService.getOntologyClasses());
+    }
+}
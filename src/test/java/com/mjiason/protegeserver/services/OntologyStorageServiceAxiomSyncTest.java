@@ -0,0 +1,149 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyClassAPI;
+import com.mjiason.protegeserver.models.OntologyDataPropertyAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import com.mjiason.protegeserver.models.OntologyObjectPropertyAPI;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyStorageServiceAxiomSyncTest {
+
+    private static final String BASE = "http://example.org/base#";
+    private static final String OTHER = "http://example.org/other#";
+
+    private static final String DOCUMENT = """
+            <?xml version="1.0"?>
+            <rdf:RDF xmlns="http://example.org/base#"
+                 xml:base="http://example.org/base"
+                 xmlns:other="http://example.org/other#"
+                 xmlns:owl="http://www.w3.org/2002/07/owl#"
+                 xmlns:rdf="http://www.w3.org/1999/02/22-rdf-syntax-ns#"
+                 xmlns:xsd="http://www.w3.org/2001/XMLSchema#"
+                 xmlns:rdfs="http://www.w3.org/2000/01/rdf-schema#">
+                <owl:Ontology rdf:about="http://example.org/base"/>
+                <owl:Class rdf:about="http://example.org/base#Agent"/>
+                <owl:Class rdf:about="http://example.org/base#Person">
+                    <rdfs:subClassOf rdf:resource="http://example.org/base#Agent"/>
+                </owl:Class>
+                <owl:Class rdf:about="http://example.org/other#Person">
+                    <rdfs:subClassOf rdf:resource="http://example.org/other#Agent"/>
+                </owl:Class>
+                <owl:Class rdf:about="http://example.org/other#Agent"/>
+                <owl:DatatypeProperty rdf:about="http://example.org/base#age">
+                    <rdfs:range rdf:resource="http://www.w3.org/2001/XMLSchema#integer"/>
+                </owl:DatatypeProperty>
+            </rdf:RDF>
+            """;
+
+    @Test
+    void replacingAnIndividualDropsTheAxiomsOfItsPreviousModel() {
+        OntologyStorageService storageService = loadDocument();
+        storageService.addObjectProperty(new OntologyObjectPropertyAPI("knows", List.of(), List.of(), "", "", new ArrayList<>()));
+        storageService.addIndividual(individual("bob", List.of("Person"), Map.of(), "Bob"));
+        storageService.addIndividual(individual("alice", List.of("Person"), Map.of("knows", List.of("bob")), "Alice"));
+        storageService.applyChangesToOntology();
+
+        storageService.addIndividual(individual("alice", List.of("Agent"), Map.of(), "Alicia"));
+        storageService.applyChangesToOntology();
+
+        OWLOntology owlOntology = storageService.getOWLOntology();
+        OWLNamedIndividual alice = individual(owlOntology, BASE + "alice");
+        assertEquals(Set.of(owlClass(owlOntology, BASE + "Agent")),
+                owlOntology.classAssertionAxioms(alice).map(OWLClassAssertionAxiom::getClassExpression).collect(Collectors.toSet()));
+        assertEquals(0, owlOntology.objectPropertyAssertionAxioms(alice).count());
+        assertEquals(List.of("Alicia"), labels(owlOntology, alice));
+        assertTrue(owlOntology.containsAxiom(factory(owlOntology).getOWLDeclarationAxiom(alice)));
+    }
+
+    @Test
+    void replacingADataPropertyKeepsItsBuiltInRange() {
+        OntologyStorageService storageService = loadDocument();
+        assertEquals("integer", storageService.getDataProperty("age").getRange());
+
+        storageService.addDataProperty(new OntologyDataPropertyAPI("age", List.of("Person"), "integer", "Age", ""));
+        storageService.applyChangesToOntology();
+
+        OWLOntology owlOntology = storageService.getOWLOntology();
+        OWLDataProperty age = factory(owlOntology).getOWLDataProperty(IRI.create(BASE + "age"));
+        assertEquals(List.of(OWL2Datatype.XSD_INTEGER.getIRI()),
+                owlOntology.dataPropertyRangeAxioms(age).map(axiom -> axiom.getRange().asOWLDatatype().getIRI()).toList());
+        assertEquals(1, owlOntology.dataPropertyDomainAxioms(age).count());
+    }
+
+    @Test
+    void removingAClassKeepsTheAxiomsOtherEntitiesAreWrittenFrom() {
+        OntologyStorageService storageService = loadDocument();
+        storageService.addOntologyClass(new OntologyClassAPI("Student", "Person", "", ""));
+        storageService.addIndividual(individual("carol", List.of("Person"), Map.of(), ""));
+        storageService.applyChangesToOntology();
+
+        storageService.removeOntologyClass("Person");
+        storageService.applyChangesToOntology();
+
+        OWLOntology owlOntology = storageService.getOWLOntology();
+        OWLDataFactory dataFactory = factory(owlOntology);
+        OWLClass person = owlClass(owlOntology, BASE + "Person");
+        assertFalse(owlOntology.containsAxiom(dataFactory.getOWLDeclarationAxiom(person)));
+        assertFalse(owlOntology.containsAxiom(dataFactory.getOWLSubClassOfAxiom(person, owlClass(owlOntology, BASE + "Agent"))));
+
+        // The models of the student class and of carol still list the removed class, and so do their axioms
+        assertEquals(List.of("Person"), storageService.getOntologyClass("Student").getParentClasses());
+        assertTrue(owlOntology.containsAxiom(dataFactory.getOWLSubClassOfAxiom(owlClass(owlOntology, BASE + "Student"), person)));
+        assertEquals(List.of("Person"), storageService.getIndividual("carol").getClassNames());
+        assertTrue(owlOntology.containsAxiom(dataFactory.getOWLClassAssertionAxiom(person, individual(owlOntology, BASE + "carol"))));
+    }
+
+    @Test
+    void removingAClassLeavesTheClassesOfOtherNamespacesAlone() {
+        OntologyStorageService storageService = loadDocument();
+        storageService.removeOntologyClass("Person");
+        storageService.applyChangesToOntology();
+
+        OWLOntology owlOntology = storageService.getOWLOntology();
+        OWLDataFactory dataFactory = factory(owlOntology);
+        assertFalse(owlOntology.containsAxiom(dataFactory.getOWLSubClassOfAxiom(owlClass(owlOntology, BASE + "Person"),
+                owlClass(owlOntology, BASE + "Agent"))));
+        assertTrue(owlOntology.containsAxiom(dataFactory.getOWLSubClassOfAxiom(owlClass(owlOntology, OTHER + "Person"),
+                owlClass(owlOntology, OTHER + "Agent"))));
+    }
+
+    private static OntologyStorageService loadDocument() {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.populateOntologyFromOWL(storageService.loadOWLOntology(
+                new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8))));
+        assertEquals(BASE, storageService.getOntology().getBaseIRI());
+        return storageService;
+    }
+
+    private static OntologyIndividualAPI individual(String name, List<String> classNames, Map<String, List<String>> relations, String label) {
+        return new OntologyIndividualAPI(name, classNames.get(0), label, "", new HashMap<>(relations), new HashMap<>(), classNames);
+    }
+
+    private static List<String> labels(OWLOntology owlOntology, OWLEntity entity) {
+        return owlOntology.annotationAssertionAxioms(entity.getIRI())
+                .filter(axiom -> axiom.getProperty().isLabel())
+                .map(axiom -> axiom.getValue().asLiteral().map(OWLLiteral::getLiteral).orElse(""))
+                .toList();
+    }
+
+    private static OWLDataFactory factory(OWLOntology owlOntology) {
+        return owlOntology.getOWLOntologyManager().getOWLDataFactory();
+    }
+
+    private static OWLClass owlClass(OWLOntology owlOntology, String iri) {
+        return factory(owlOntology).getOWLClass(IRI.create(iri));
+    }
+
+    private static OWLNamedIndividual individual(OWLOntology owlOntology, String iri) {
+        return factory(owlOntology).getOWLNamedIndividual(IRI.create(iri));
+    }
+}
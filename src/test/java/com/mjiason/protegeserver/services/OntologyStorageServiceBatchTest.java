@@ -0,0 +1,104 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyStorageServiceBatchTest {
+
+    @TempDir
+    Path storageDirectory;
+
+    @Test
+    void parentsMayBeDefinedLaterInTheBatch() throws Exception {
+        OntologyStorageService storageService = open();
+        OntologyBatchResultAPI result = storageService.addBatch(List.of(
+                classItem("Puppy", "Dog"),
+                classItem("Dog", "Animal"),
+                classItem("Animal", null),
+                objectPropertyItem("owns"),
+                individualItem("rex")));
+
+        assertEquals(new OntologyBatchResultAPI(3, 1, 0, 1), result);
+        assertEquals("Dog", storageService.getOntologyClass("Puppy").getParentClass());
+        assertEquals(List.of("Dog", "Animal"), storageService.getAncestorClasses("Puppy"));
+        assertNotNull(storageService.getObjectProperty("owns"));
+        assertNotNull(storageService.getIndividual("rex"));
+        storageService.close();
+
+        // The batch was logged and is replayed as a whole
+        storageService = open();
+        assertEquals(List.of("Dog", "Animal"), storageService.getAncestorClasses("Puppy"));
+        assertNotNull(storageService.getIndividual("rex"));
+        storageService.close();
+    }
+
+    @Test
+    void oneInvalidItemLeavesTheOntologyUntouched() throws Exception {
+        OntologyStorageService storageService = open();
+        storageService.addIndividual(individual("alice"));
+        long lastChange = storageService.getLastChangeSequence();
+        int journalSize = storageService.getState().getJournal().size();
+        long logSize = Files.size(storageDirectory.resolve("api-ontology.wal"));
+
+        assertThrows(ValidationException.class, () -> storageService.addBatch(List.of(
+                classItem("Cat", null),
+                objectPropertyItem("chases"),
+                individualItem("tom"),
+                individualItem(""))));
+        // A parent cycle within the batch is rejected as a whole as well
+        assertThrows(ValidationException.class, () -> storageService.addBatch(List.of(
+                classItem("Cat", "Feline"),
+                classItem("Feline", "Cat"))));
+        // So are names given twice
+        assertThrows(ValidationException.class, () -> storageService.addBatch(List.of(
+                individualItem("tom"),
+                individualItem("tom"))));
+
+        assertThrows(EntityNotFoundException.class, () -> storageService.getOntologyClass("Cat"));
+        assertThrows(EntityNotFoundException.class, () -> storageService.getObjectProperty("chases"));
+        assertThrows(EntityNotFoundException.class, () -> storageService.getIndividual("tom"));
+        assertEquals(List.of("alice"), storageService.getAllIndividuals().stream().map(OntologyIndividualAPI::getUniqueName).toList());
+        assertEquals(journalSize, storageService.getState().getJournal().size());
+        assertEquals(lastChange, storageService.getLastChangeSequence());
+        assertEquals(logSize, Files.size(storageDirectory.resolve("api-ontology.wal")));
+        storageService.close();
+    }
+
+    private OntologyStorageService open() {
+        return new OntologyStorageService(1, storageDirectory.toString(), "batch", Duration.ofMillis(10), Duration.ofHours(1),
+                DataSize.ofMegabytes(64), 100);
+    }
+
+    private static OntologyBatchItemAPI classItem(String name, String parent) {
+        OntologyBatchItemAPI item = new OntologyBatchItemAPI();
+        item.setOntologyClass(new OntologyClassAPI(name, parent, name, ""));
+        return item;
+    }
+
+    private static OntologyBatchItemAPI objectPropertyItem(String name) {
+        OntologyBatchItemAPI item = new OntologyBatchItemAPI();
+        item.setObjectProperty(new OntologyObjectPropertyAPI(name, List.of(), List.of(), name, "", new ArrayList<>()));
+        return item;
+    }
+
+    private static OntologyBatchItemAPI individualItem(String name) {
+        OntologyBatchItemAPI item = new OntologyBatchItemAPI();
+        item.setIndividual(individual(name));
+        return item;
+    }
+
+    private static OntologyIndividualAPI individual(String name) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(), new HashMap<>(), List.of());
+    }
+}
@@ -0,0 +1,127 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyClassAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyStorageServiceConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int INDIVIDUALS_PER_WRITER = 500;
+    private static final int READERS = 4;
+
+    @Test
+    void concurrentWritersDoNotLoseUpdates() throws Exception {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.addOntologyClass(new OntologyClassAPI("Person", "", "Person", ""));
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        // Iterating while writers are active must never throw ConcurrentModificationException
+                        storageService.getAllIndividuals().forEach(individual -> assertNotNull(individual.getUniqueName()));
+                        storageService.getAllOntologyClasses().forEach(ontologyClass -> assertNotNull(ontologyClass.getUniqueName()));
+                        reads.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < INDIVIDUALS_PER_WRITER; i++) {
+                        storageService.addIndividual(individual("w" + writer + "-" + i));
+                        if (i % 50 == 0) {
+                            storageService.addOntologyClass(new OntologyClassAPI("C" + writer + "-" + i, "Person", "", ""));
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : writers) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<?> future : readers) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(WRITERS * INDIVIDUALS_PER_WRITER, storageService.getAllIndividuals().size());
+        assertEquals(1 + WRITERS * (INDIVIDUALS_PER_WRITER / 50), storageService.getAllOntologyClasses().size());
+        assertTrue(reads.get() > 0);
+
+        storageService.applyChangesToOntology();
+        assertEquals(WRITERS * INDIVIDUALS_PER_WRITER, storageService.getOWLOntology().individualsInSignature().count());
+    }
+
+    @Test
+    void readersAndUnrelatedWritersDoNotBlockOnWriter() throws Exception {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.addIndividual(individual("existing"));
+
+        CountDownLatch insideWriteLock = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // The unique name is first read by the validation, which runs while the individual write lock is held
+        OntologyIndividualAPI slowIndividual = new OntologyIndividualAPI("slow", "", "", "", new HashMap<>(), new HashMap<>()) {
+            @Override
+            public String getUniqueName() {
+                insideWriteLock.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getUniqueName();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> slowWriter = executor.submit(() -> storageService.addIndividual(slowIndividual));
+            assertTrue(insideWriteLock.await(10, TimeUnit.SECONDS));
+
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+                assertEquals("existing", storageService.getIndividual("existing").getUniqueName());
+                assertEquals(1, storageService.getAllIndividuals().size());
+                storageService.addOntologyClass(new OntologyClassAPI("Unrelated", "", "", ""));
+                assertEquals("Unrelated", storageService.getOntologyClass("Unrelated").getUniqueName());
+            });
+
+            // A second writer of the same kind is serialized behind the slow one
+            Future<?> sameKindWriter = executor.submit(() -> storageService.addIndividual(individual("queued")));
+            assertThrows(TimeoutException.class, () -> sameKindWriter.get(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            slowWriter.get(10, TimeUnit.SECONDS);
+            sameKindWriter.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(3, storageService.getAllIndividuals().size());
+    }
+
+    private static OntologyIndividualAPI individual(String name) {
+        return new OntologyIndividualAPI(name, "Person", name, "", new HashMap<>(), new HashMap<>());
+    }
+}
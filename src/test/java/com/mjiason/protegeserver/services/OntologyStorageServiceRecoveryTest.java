@@ -0,0 +1,146 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.models.OntologyBatchItemAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OntologyStorageServiceRecoveryTest {
+
+    @TempDir
+    Path storageDirectory;
+
+    @Test
+    void tornLastRecordIsCutOffAndEarlierEditsSurvive() throws Exception {
+        OntologyStorageService storageService = open("batch");
+        storageService.addIndividual(individual("alice"));
+        storageService.addIndividual(individual("bob"));
+        storageService.close();
+
+        Path log = storageDirectory.resolve("api-ontology.wal");
+        long intact = Files.size(log);
+        // A record whose header promises more bytes than the crash left behind
+        Files.write(log, new byte[]{0, 0, 1, 0, 1, 2, 3, 4, '{', '"'}, StandardOpenOption.APPEND);
+
+        storageService = open("batch");
+        assertNotNull(storageService.getIndividual("alice"));
+        assertNotNull(storageService.getIndividual("bob"));
+        assertEquals(intact, Files.size(log));
+
+        // Records appended after the cut are replayed as well
+        storageService.addIndividual(individual("carol"));
+        storageService.close();
+        storageService = open("batch");
+        assertNotNull(storageService.getIndividual("carol"));
+        storageService.close();
+    }
+
+    @Test
+    void logIsReplayedOnTopOfTheSnapshot() throws Exception {
+        OntologyStorageService storageService = open("batch");
+        storageService.addIndividual(individual("alice"));
+        storageService.addIndividual(individual("bob"));
+        storageService.writeSnapshot();
+        assertEquals(0, Files.size(storageDirectory.resolve("api-ontology.wal")));
+
+        storageService.removeIndividual("alice");
+        storageService.addIndividual(individual("carol"));
+        storageService.close();
+
+        storageService = open("batch");
+        assertMissing(storageService, "alice");
+        assertNotNull(storageService.getIndividual("bob"));
+        assertNotNull(storageService.getIndividual("carol"));
+        storageService.close();
+    }
+
+    @Test
+    void editsThatNoLongerApplyAreSkippedOneByOne() throws Exception {
+        OntologyStorageService storageService = open("batch");
+        storageService.addIndividual(individual("alice"));
+        storageService.close();
+
+        // The removal of an individual that does not exist must not keep the rest of the record from applying
+        Path log = storageDirectory.resolve("api-ontology.wal");
+        try (WriteAheadLog writeAheadLog = WriteAheadLog.open(log, WriteAheadLog.FsyncPolicy.ALWAYS, Duration.ZERO, 0, (changes, sequence) -> {
+        })) {
+            writeAheadLog.append(List.of(
+                    new OntologyChange(OntologyChange.Operation.REMOVE, EntityKind.INDIVIDUAL, "ghost", null),
+                    new OntologyChange(OntologyChange.Operation.REMOVE, EntityKind.INDIVIDUAL, "alice", null)));
+            writeAheadLog.append(List.of(new OntologyChange(OntologyChange.Operation.ADD, EntityKind.INDIVIDUAL, "bob", individual("bob"))));
+        }
+
+        storageService = open("batch");
+        assertMissing(storageService, "alice");
+        assertNotNull(storageService.getIndividual("bob"));
+        storageService.close();
+    }
+
+    @Test
+    void editsThatCannotBeLoggedAreNotApplied() throws Exception {
+        OntologyStorageService storageService = open("batch");
+        storageService.addIndividual(individual("alice"));
+        long lastChange = storageService.getLastChangeSequence();
+        int journalSize = storageService.getState().getJournal().size();
+
+        // A closed channel fails every append like a full or broken disk would
+        storageService.getWriteAheadLog().close();
+        assertThrows(UncheckedIOException.class, () -> storageService.addIndividual(individual("bob")));
+        assertThrows(UncheckedIOException.class, () -> storageService.removeIndividual("alice"));
+        OntologyBatchItemAPI item = new OntologyBatchItemAPI();
+        item.setIndividual(individual("carol"));
+        assertThrows(UncheckedIOException.class, () -> storageService.addBatch(List.of(item)));
+
+        assertMissing(storageService, "bob");
+        assertMissing(storageService, "carol");
+        assertNotNull(storageService.getIndividual("alice"));
+        assertEquals(lastChange, storageService.getLastChangeSequence());
+        assertEquals(journalSize, storageService.getState().getJournal().size());
+        storageService.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"always", "batch", "interval"})
+    void acknowledgedEditsSurviveARestartWithEveryFsyncPolicy(String fsyncPolicy) throws Exception {
+        OntologyStorageService storageService = open(fsyncPolicy);
+        for (int i = 0; i < 20; i++) {
+            storageService.addIndividual(individual("individual" + i));
+        }
+        storageService.removeIndividual("individual0");
+        storageService.close();
+
+        storageService = open(fsyncPolicy);
+        assertMissing(storageService, "individual0");
+        for (int i = 1; i < 20; i++) {
+            assertNotNull(storageService.getIndividual("individual" + i), "individual" + i);
+        }
+        storageService.close();
+    }
+
+    private OntologyStorageService open(String fsyncPolicy) {
+        return new OntologyStorageService(1, storageDirectory.toString(), fsyncPolicy, Duration.ofMillis(10),
+                Duration.ofHours(1), DataSize.ofMegabytes(64), 100);
+    }
+
+    private static void assertMissing(OntologyStorageService storageService, String uniqueName) {
+        assertThrows(EntityNotFoundException.class, () -> storageService.getIndividual(uniqueName));
+    }
+
+    private static OntologyIndividualAPI individual(String name) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(), new HashMap<>(), List.of());
+    }
+}
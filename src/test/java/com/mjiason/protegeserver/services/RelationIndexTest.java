@@ -0,0 +1,74 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelationIndexTest {
+
+    private final OntologyStorageService storageService = new OntologyStorageService();
+
+    @BeforeEach
+    void addRelations() {
+        storageService.addIndividual(individual("alice", Map.of("knows", List.of("bob", "carol"))));
+        storageService.addIndividual(individual("bob", Map.of("likes", List.of("carol"))));
+        storageService.addIndividual(individual("carol", Map.of()));
+        storageService.addIndividual(individual("dave", Map.of("knows", List.of("bob"))));
+    }
+
+    @Test
+    void referencingIndividualsAreFoundThroughTheInverseLists() {
+        assertEquals(Map.of("knows", List.of("alice", "dave")), storageService.getReferencingIndividuals("bob", null));
+        assertEquals(Map.of("knows", List.of("alice"), "likes", List.of("bob")), storageService.getReferencingIndividuals("carol", null));
+        assertEquals(Map.of("likes", List.of("bob")), storageService.getReferencingIndividuals("carol", "likes"));
+        assertEquals(Map.of(), storageService.getReferencingIndividuals("alice", null));
+        assertThrows(EntityNotFoundException.class, () -> storageService.getReferencingIndividuals("erin", null));
+    }
+
+    @Test
+    void statisticsCountRelationsSubjectsAndDistinctObjects() {
+        PropertyStatistics knows = statistics("knows");
+        assertEquals(3, knows.getTriples());
+        assertEquals(2, knows.getSubjects());
+        assertEquals(2, knows.getObjects());
+        assertEquals(1, statistics("likes").getTriples());
+        assertEquals(0, statistics("unused").getTriples());
+    }
+
+    @Test
+    void editedAndRemovedRelationsLeaveTheInverseListsAndStatistics() {
+        storageService.addIndividual(individual("alice", Map.of("knows", List.of("carol"))));
+        assertEquals(Map.of("knows", List.of("dave")), storageService.getReferencingIndividuals("bob", null));
+        PropertyStatistics knows = statistics("knows");
+        assertEquals(2, knows.getTriples());
+        assertEquals(2, knows.getSubjects());
+        assertEquals(2, knows.getObjects());
+
+        storageService.removeIndividual("dave");
+        // A property nobody points at the individual through any longer is left out
+        assertEquals(Map.of(), storageService.getReferencingIndividuals("bob", null));
+        assertEquals(1, knows.getTriples());
+        assertEquals(1, knows.getSubjects());
+        assertEquals(1, knows.getObjects());
+        assertEquals(0, storageService.getState().getRelationIndex()
+                .countSubjects(storageService.getState().getIndividualIds().find("bob"), propertyId("knows")));
+    }
+
+    private PropertyStatistics statistics(String property) {
+        return storageService.getState().getRelationIndex().getStatistics(propertyId(property));
+    }
+
+    private int propertyId(String property) {
+        return storageService.getState().getPropertyIds().find(property);
+    }
+
+    private static OntologyIndividualAPI individual(String name, Map<String, List<String>> relations) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(relations), new HashMap<>(), List.of());
+    }
+}
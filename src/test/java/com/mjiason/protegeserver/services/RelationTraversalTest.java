@@ -0,0 +1,100 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelationTraversalTest {
+
+    private final OntologyStorageService storageService = new OntologyStorageService();
+
+    // room partOf flat partOf house partOf street, room knows guest likes host, knows is only asserted one way
+    @BeforeEach
+    void addRelations() {
+        storageService.addObjectProperty(objectProperty("partOf", PropertyType.TransitiveProperty));
+        storageService.addObjectProperty(objectProperty("knows", PropertyType.SymmetricProperty));
+        storageService.addObjectProperty(objectProperty("likes"));
+        storageService.addIndividual(individual("room", Map.of("partOf", List.of("flat"), "knows", List.of("guest"))));
+        storageService.addIndividual(individual("flat", Map.of("partOf", List.of("house"))));
+        storageService.addIndividual(individual("house", Map.of("partOf", List.of("street"))));
+        storageService.addIndividual(individual("street", Map.of()));
+        storageService.addIndividual(individual("guest", Map.of("likes", List.of("host"))));
+        storageService.addIndividual(individual("host", Map.of()));
+    }
+
+    @Test
+    void individualsAreReachedNearestFirstWithinTheDepth() {
+        List<OntologyTraversalStepAPI> steps = storageService.traverse("room", null, TraversalDirection.OUTGOING, 2, false, 100);
+
+        assertEquals(List.of("room", "guest", "flat", "host", "house"), names(steps));
+        assertEquals(new OntologyTraversalStepAPI("room", 0, null, null, false), steps.get(0));
+        assertEquals(new OntologyTraversalStepAPI("house", 2, "partOf", "flat", false), steps.get(4));
+        assertEquals(List.of("street", "house"),
+                names(storageService.traverse("street", List.of("partOf"), TraversalDirection.INCOMING, 1, false, 100)));
+    }
+
+    @Test
+    void transitiveChainsCountAsOneStepWithTheClosure() {
+        List<OntologyTraversalStepAPI> steps = storageService.traverse("room", List.of("partOf"), TraversalDirection.OUTGOING, 1, true, 100);
+
+        assertEquals(List.of("room", "flat", "house", "street"), names(steps));
+        assertTrue(steps.stream().skip(1).allMatch(step -> step.getDepth() == 1 && "room".equals(step.getPredecessor())));
+        assertEquals(List.of("room", "flat"),
+                names(storageService.traverse("room", List.of("partOf"), TraversalDirection.OUTGOING, 1, false, 100)));
+    }
+
+    @Test
+    void symmetricPropertiesAreFollowedBothWaysWithTheClosure() {
+        List<OntologyTraversalStepAPI> steps = storageService.traverse("guest", List.of("knows"), TraversalDirection.OUTGOING, 1, true, 100);
+
+        assertEquals(List.of("guest", "room"), names(steps));
+        assertTrue(steps.get(1).isInverse());
+        assertEquals(List.of("guest"),
+                names(storageService.traverse("guest", List.of("knows"), TraversalDirection.OUTGOING, 1, false, 100)));
+    }
+
+    @Test
+    void shortestPathsFollowTheClosure() {
+        assertEquals(List.of("host", "guest", "room", "flat", "house", "street"),
+                names(storageService.findPath("host", "street", null, TraversalDirection.BOTH, 10, false, 100)));
+
+        List<OntologyTraversalStepAPI> path = storageService.findPath("host", "street", null, TraversalDirection.BOTH, 10, true, 100);
+        assertEquals(List.of("host", "guest", "room", "street"), names(path));
+        assertEquals(new OntologyTraversalStepAPI("street", 3, "partOf", "room", false), path.get(3));
+
+        // Not connected within the depth, or not reached before the budget is spent
+        assertEquals(List.of(), storageService.findPath("host", "street", null, TraversalDirection.BOTH, 4, false, 100));
+        assertEquals(List.of(), storageService.findPath("host", "street", null, TraversalDirection.OUTGOING, 10, true, 100));
+        assertEquals(List.of(), storageService.findPath("host", "street", null, TraversalDirection.BOTH, 10, false, 3));
+    }
+
+    @Test
+    void traversalsStopAfterMaxSteps() {
+        assertEquals(List.of("room", "guest", "flat"),
+                names(storageService.traverse("room", null, TraversalDirection.BOTH, 10, true, 3)));
+        assertThrows(ValidationException.class, () -> storageService.traverse("room", null, TraversalDirection.BOTH, 10, true, 0));
+        assertThrows(ValidationException.class, () -> storageService.traverse("room", null, TraversalDirection.BOTH, 0, true, 10));
+        assertThrows(EntityNotFoundException.class, () -> storageService.traverse("garden", null, TraversalDirection.BOTH, 1, true, 10));
+        assertThrows(EntityNotFoundException.class,
+                () -> storageService.findPath("room", "garden", null, TraversalDirection.BOTH, 1, true, 10));
+    }
+
+    private static List<String> names(List<OntologyTraversalStepAPI> steps) {
+        return steps.stream().map(OntologyTraversalStepAPI::getIndividual).toList();
+    }
+
+    private static OntologyObjectPropertyAPI objectProperty(String name, PropertyType... types) {
+        return new OntologyObjectPropertyAPI(name, List.of(), List.of(), name, "", new ArrayList<>(List.of(types)));
+    }
+
+    private static OntologyIndividualAPI individual(String name, Map<String, List<String>> relations) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(relations), new HashMap<>(), List.of());
+    }
+}
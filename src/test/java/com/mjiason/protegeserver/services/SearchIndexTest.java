@@ -0,0 +1,124 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.EntityKind;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import com.mjiason.protegeserver.models.OntologySearchResultAPI;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+
+    private final NameDictionary individualIds = new NameDictionary();
+    private final NameDictionary classIds = new NameDictionary();
+    private final SearchIndex index = new SearchIndex(individualIds, classIds, new NameDictionary());
+
+    @Test
+    void wordsAreCaseFoldedAndStrippedOfTheirAccents() {
+        index.add(EntityKind.CLASS, "Dessert", "Crème Brûlée", "Served in a café");
+        index.add(EntityKind.CLASS, "Pastry", "Naïve pastry", "");
+
+        assertEquals(List.of("Dessert"), names(index.search("creme brulee", null, false, false, 10)));
+        assertEquals(List.of("Dessert"), names(index.search("CAFÉ", null, false, false, 10)));
+        assertEquals(List.of("Pastry"), names(index.search("naive", null, false, false, 10)));
+        assertEquals(List.of("Pastry"), names(index.search("NAÏVE", null, false, false, 10)));
+    }
+
+    @Test
+    void uniqueNamesAreSplitAtCamelCaseHumps() {
+        index.add(EntityKind.INDIVIDUAL, "HotDogStand12", "", "");
+
+        assertEquals(List.of("HotDogStand12"), names(index.search("dog", null, false, false, 10)));
+        assertEquals(List.of("HotDogStand12"), names(index.search("hotdogstand", null, false, false, 10)));
+    }
+
+    @Test
+    void fuzzyWordsMatchWithinOneEdit() {
+        index.add(EntityKind.CLASS, "Elephant", "Elephant", "");
+
+        // Deletion, insertion and substitution are one edit each
+        for (String query : List.of("elephnt", "elephaant", "elephamt")) {
+            assertEquals(List.of("Elephant"), names(index.search(query, null, false, true, 10)), query);
+            assertTrue(index.search(query, null, false, false, 10).isEmpty(), query);
+        }
+        // Two edits are too many
+        assertTrue(index.search("elefant", null, false, true, 10).isEmpty());
+        // Short words are not matched fuzzily
+        index.add(EntityKind.CLASS, "Cat", "cat", "");
+        assertTrue(index.search("cut", null, false, true, 10).isEmpty());
+    }
+
+    @Test
+    void exactMatchesRankAboveFuzzyAndPrefixMatches() {
+        index.add(EntityKind.INDIVIDUAL, "fuzzy", "Grant", "");
+        index.add(EntityKind.INDIVIDUAL, "prefix", "Granted", "");
+        index.add(EntityKind.INDIVIDUAL, "exact", "Grand", "");
+
+        List<SearchIndex.Hit> hits = index.search("grand", null, false, true, 10);
+        assertEquals(List.of("exact", "fuzzy"), names(hits));
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+
+        hits = index.search("grant", null, true, false, 10);
+        assertEquals(List.of("fuzzy", "prefix"), names(hits));
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    void removedEntitiesAreNoLongerFound() {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.addIndividual(individual("zebra1", "Zebra crossing"));
+        storageService.addIndividual(individual("zebra2", "Zebra herd"));
+        assertEquals(List.of("zebra1", "zebra2"), resultNames(storageService.search("zebra", null, false, false, null, null).getItems()));
+
+        storageService.removeIndividual("zebra1");
+        assertEquals(List.of("zebra2"), resultNames(storageService.search("zebra", null, false, false, null, null).getItems()));
+        assertTrue(storageService.search("crossing", null, true, true, null, null).getItems().isEmpty());
+    }
+
+    @Test
+    void replacedEntitiesAreFoundByTheirNewLabelOnly() {
+        OntologyStorageService storageService = new OntologyStorageService();
+        storageService.addIndividual(individual("felix", "Housecat carnivore"));
+        assertEquals(List.of("felix"), resultNames(storageService.search("housecat", EntityKind.INDIVIDUAL, false, false, null, null).getItems()));
+
+        storageService.addIndividual(individual("felix", "Tomcat carnivore"));
+        assertTrue(storageService.search("housecat", EntityKind.INDIVIDUAL, true, true, null, null).getItems().isEmpty());
+        assertEquals(List.of("felix"), resultNames(storageService.search("tomcat", EntityKind.INDIVIDUAL, false, false, null, null).getItems()));
+        // A word of both labels finds the entity once
+        assertEquals(List.of("felix"), resultNames(storageService.search("carnivore", EntityKind.INDIVIDUAL, false, false, null, null).getItems()));
+    }
+
+    @Test
+    void wordsWithoutPostingsAreDropped() {
+        index.add(EntityKind.CLASS, "Giraffe", "Tall giraffe", "Savanna");
+        index.add(EntityKind.INDIVIDUAL, "giraffe1", "Tall giraffe", "");
+        // giraffe, tall, savanna and the 1 of giraffe1
+        assertEquals(4, index.size());
+
+        index.remove(EntityKind.INDIVIDUAL, "giraffe1", "Tall giraffe", "");
+        assertEquals(3, index.size());
+        index.remove(EntityKind.CLASS, "Giraffe", "Tall giraffe", "Savanna");
+        assertEquals(0, index.size());
+        // Neither exact, prefix nor fuzzy lookups find the dropped words
+        assertTrue(index.search("giraffe", null, true, true, 10).isEmpty());
+        assertTrue(index.search("savana", null, true, true, 10).isEmpty());
+
+        index.add(EntityKind.CLASS, "Giraffe", "Tall giraffe", "");
+        assertEquals(List.of("Giraffe"), names(index.search("tal", null, true, false, 10)));
+    }
+
+    private List<String> names(List<SearchIndex.Hit> hits) {
+        return hits.stream().map(index::getName).toList();
+    }
+
+    private static List<String> resultNames(List<OntologySearchResultAPI> results) {
+        return results.stream().map(OntologySearchResultAPI::getUniqueName).toList();
+    }
+
+    private static OntologyIndividualAPI individual(String name, String label) {
+        return new OntologyIndividualAPI(name, null, label, "", new HashMap<>(), new HashMap<>(), List.of());
+    }
+}
@@ -0,0 +1,149 @@
+package com.mjiason.protegeserver.services;
+
+import com.mjiason.protegeserver.models.OntologyDataPropertyAPI;
+import com.mjiason.protegeserver.models.OntologyIndividualAPI;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueIndexTest {
+
+    private final OntologyStorageService storageService = new OntologyStorageService();
+
+    @Test
+    void numbersAreComparedByValueNotAsText() {
+        storageService.addDataProperty(dataProperty("age", "xsd:integer"));
+        storageService.addIndividual(individual("nine", Map.of("age", List.of("9"))));
+        storageService.addIndividual(individual("ten", Map.of("age", List.of("10"))));
+        storageService.addIndividual(individual("hundred", Map.of("age", List.of("100"))));
+        storageService.addIndividual(individual("unknown", Map.of("age", List.of("old"))));
+
+        assertEquals(List.of("hundred", "ten"), find("age >= 10"));
+        assertEquals(List.of("nine"), find("age < 10"));
+        assertEquals(List.of("nine", "ten"), find("age <= 10.0"));
+        assertEquals(List.of("ten"), find("age = 10", "age < 100"));
+        assertEquals(List.of("ten"), find("age = '1E1'"));
+        // A value that is not a number matches no condition, and a condition value that is not one is rejected
+        assertTrue(find("age > -1000").stream().noneMatch("unknown"::equals));
+        assertThrows(ValidationException.class, () -> find("age > old"));
+    }
+
+    @Test
+    void pointsInTimeAreComparedAcrossOffsetsAndDates() {
+        storageService.addDataProperty(dataProperty("born", "http://www.w3.org/2001/XMLSchema#dateTime"));
+        storageService.addIndividual(individual("ada", Map.of("born", List.of("1815-12-10"))));
+        storageService.addIndividual(individual("alan", Map.of("born", List.of("1912-06-23T02:00:00+02:00"))));
+        storageService.addIndividual(individual("grace", Map.of("born", List.of("1912-06-23T01:00:00"))));
+
+        // Without an offset a point in time is taken as UTC, so alan was born at midnight UTC, an hour before grace
+        assertEquals(List.of("alan"), find("born = 1912-06-23T00:00:00Z"));
+        assertEquals(List.of("ada", "alan"), find("born < 1912-06-23T01:00:00Z"));
+        assertEquals(List.of("alan", "grace"), find("born >= 1912-06-23"));
+        assertEquals(List.of("ada"), find("born > 1815-12-09T23:59:59Z", "born < 1900-01-01"));
+        assertThrows(ValidationException.class, () -> find("born < yesterday"));
+    }
+
+    @Test
+    void valuesWithoutAnOrderedRangeOnlySupportEquality() {
+        storageService.addIndividual(individual("rex", Map.of("colour", List.of("brown", "white"))));
+        storageService.addIndividual(individual("tom", Map.of("colour", List.of("grey"))));
+
+        assertEquals(List.of("rex"), find("colour = white"));
+        assertEquals(List.of("tom"), find("colour = \"grey\""));
+        assertThrows(ValidationException.class, () -> find("colour > brown"));
+        assertTrue(find("unused = anything").isEmpty());
+    }
+
+    @Test
+    void aNewRangeReindexesTheValuesAlreadyStored() {
+        storageService.addIndividual(individual("small", Map.of("weight", List.of("5"))));
+        storageService.addIndividual(individual("large", Map.of("weight", List.of("50"))));
+        assertThrows(ValidationException.class, () -> find("weight > 10"));
+
+        storageService.addDataProperty(dataProperty("weight", "decimal"));
+        assertEquals(List.of("large"), find("weight > 10"));
+
+        storageService.removeDataProperty("weight");
+        assertThrows(ValidationException.class, () -> find("weight > 10"));
+        assertEquals(List.of("small"), find("weight = 5"));
+    }
+
+    @Test
+    void replacedAndRemovedValuesAreNoLongerFound() {
+        storageService.addDataProperty(dataProperty("age", "int"));
+        storageService.addIndividual(individual("alice", Map.of("age", List.of("30"), "city", List.of("Paris"))));
+        storageService.addIndividual(individual("bob", Map.of("age", List.of("35"))));
+        assertEquals(List.of("alice", "bob"), find("age >= 30"));
+
+        storageService.addIndividual(individual("alice", Map.of("age", List.of("40"), "city", List.of("Lyon"))));
+        assertTrue(find("age = 30").isEmpty());
+        assertTrue(find("city = Paris").isEmpty());
+        assertEquals(List.of("alice"), find("age > 35"));
+        assertEquals(List.of("alice"), find("city = Lyon", "age = 40"));
+
+        storageService.removeIndividual("bob");
+        assertEquals(List.of("alice"), find("age >= 30"));
+        assertEquals(List.of("alice"), storageService.findIndividuals(List.of("age >= 30"), null, 1).getItems().stream()
+                .map(OntologyIndividualAPI::getUniqueName).toList());
+    }
+
+    @Test
+    void broadConditionsAreCheckedAgainstTheFewIndividualsLeft() {
+        storageService.addDataProperty(dataProperty("rank", "integer"));
+        for (int i = 0; i < 100; i++) {
+            storageService.addIndividual(individual("member" + i, Map.of("club", List.of("chess"), "rank", List.of(String.valueOf(i)))));
+        }
+        storageService.addIndividual(individual("guest", Map.of("club", List.of("go"), "rank", List.of("3"))));
+
+        // The club condition matches a hundred individuals, the rank condition two of them
+        assertEquals(List.of("member3"), find("club = chess", "rank = 3"));
+        assertEquals(List.of("member0", "member1"), find("rank < 2", "club = chess"));
+        assertEquals(List.of("guest"), find("club = go", "rank >= 0"));
+    }
+
+    @Test
+    void matchesArePagedByCursor() {
+        storageService.addDataProperty(dataProperty("score", "integer"));
+        for (int i = 0; i < 7; i++) {
+            storageService.addIndividual(individual("player" + i, Map.of("score", List.of(String.valueOf(i * 10)))));
+        }
+
+        List<String> names = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            EntityPage<OntologyIndividualAPI> page = storageService.findIndividuals(List.of("score >= 10"), after, 2);
+            page.getItems().forEach(individual -> names.add(individual.getUniqueName()));
+            after = page.getNextCursor();
+            pages++;
+        } while (after != null);
+        assertEquals(List.of("player1", "player2", "player3", "player4", "player5", "player6"), names);
+        assertEquals(3, pages);
+
+        // A page continues after its cursor even when the individual no longer matches
+        EntityPage<OntologyIndividualAPI> first = storageService.findIndividuals(List.of("score >= 10"), null, 2);
+        storageService.addIndividual(individual("player2", Map.of("score", List.of("0"))));
+        assertEquals(List.of("player3", "player4"), storageService.findIndividuals(List.of("score >= 10"), first.getNextCursor(), 2)
+                .getItems().stream().map(OntologyIndividualAPI::getUniqueName).toList());
+    }
+
+    private List<String> find(String... conditions) {
+        return storageService.findIndividuals(List.of(conditions), null, null).getItems().stream()
+                .map(OntologyIndividualAPI::getUniqueName)
+                .sorted()
+                .toList();
+    }
+
+    private static OntologyDataPropertyAPI dataProperty(String name, String range) {
+        return new OntologyDataPropertyAPI(name, List.of(), range, name, "");
+    }
+
+    private static OntologyIndividualAPI individual(String name, Map<String, List<String>> values) {
+        return new OntologyIndividualAPI(name, null, name, "", new HashMap<>(), new HashMap<>(values), List.of());
+    }
+}